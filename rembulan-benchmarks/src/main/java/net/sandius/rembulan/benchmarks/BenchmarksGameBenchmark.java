@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.Variable;
+import net.sandius.rembulan.compiler.CompiledModule;
+import net.sandius.rembulan.compiler.CompilerChunkLoader;
+import net.sandius.rembulan.compiler.LuaCompiler;
+import net.sandius.rembulan.exec.CallException;
+import net.sandius.rembulan.exec.CallPausedException;
+import net.sandius.rembulan.exec.DirectCallExecutor;
+import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.load.ChunkClassLoader;
+import net.sandius.rembulan.runtime.LuaFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the scripts from the Computer Language Benchmarks Game.
+ *
+ * <p>Only the scripts that run unmodified on Rembulan are included (the others
+ * depend on Lua 5.1 functions such as {@code loadstring}, or on standard input).</p>
+ *
+ * <p>The scripts are compiled once per trial; every invocation executes the main chunk
+ * in a fresh state with its output discarded.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class BenchmarksGameBenchmark {
+
+	public enum Script {
+
+		NBODY("nbody.lua", "20000"),
+		NBODY_2("nbody.lua-2.lua", "20000"),
+		FANNKUCHREDUX("fannkuchredux.lua", "9"),
+		BINARYTREES("binarytrees.lua-2.lua", "14"),
+		SPECTRALNORM("spectralnorm.lua", "300");
+
+		final String fileName;
+		final String arg;
+
+		Script(String fileName, String arg) {
+			this.fileName = fileName;
+			this.arg = arg;
+		}
+
+	}
+
+	@Param
+	public Script script;
+
+	@Param({"DEFAULT", "NO_CPU_ACCOUNTING"})
+	public CompilerSettingsVariant settings;
+
+	private CompilerChunkLoader loader;
+	private Class<?> mainClass;
+
+	private StateContext state;
+	private LuaFunction main;
+
+	private DirectCallExecutor executor;
+
+	@Setup(Level.Trial)
+	public void compile() throws Exception {
+		String sourceText = Scripts.benchmarksGameScript(script.fileName);
+
+		LuaCompiler compiler = new LuaCompiler(settings.settings());
+		CompiledModule module = compiler.compile(sourceText, script.fileName, "benchmarksgame_main");
+
+		ChunkClassLoader classLoader = new ChunkClassLoader();
+		mainClass = classLoader.loadClass(classLoader.install(module));
+
+		loader = CompilerChunkLoader.of(compiler, "benchmarksgame_");
+		executor = DirectCallExecutor.newExecutor();
+	}
+
+	@Setup(Level.Invocation)
+	public void instantiate() throws Exception {
+		state = StateContexts.newDefaultInstance();
+		Table env = Scripts.installEnv(state, loader, script.arg);
+		main = (LuaFunction) mainClass.getConstructor(Variable.class).newInstance(new Variable(env));
+	}
+
+	@Benchmark
+	public Object[] run() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, main);
+	}
+
+}
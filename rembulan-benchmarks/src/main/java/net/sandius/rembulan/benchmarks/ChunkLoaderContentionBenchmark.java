@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.Variable;
+import net.sandius.rembulan.compiler.CompilerChunkLoader;
+import net.sandius.rembulan.compiler.CompilerSettings;
+import net.sandius.rembulan.compiler.LuaCompiler;
+import net.sandius.rembulan.load.LoaderException;
+import net.sandius.rembulan.runtime.LuaFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of a single {@link CompilerChunkLoader} shared by 32 threads,
+ * each loading distinct chunks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+@Threads(32)
+public class ChunkLoaderContentionBenchmark {
+
+	@Param({"shared", "isolated"})
+	public String mode;
+
+	private CompilerChunkLoader loader;
+	private final AtomicInteger threadIds = new AtomicInteger();
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+
+		int threadId = -1;
+		int idx;
+
+	}
+
+	@Setup
+	public void setup() {
+		ClassLoader classLoader = ChunkLoaderContentionBenchmark.class.getClassLoader();
+		LuaCompiler compiler = new LuaCompiler(CompilerSettings.defaultSettings());
+		loader = "isolated".equals(mode)
+				? CompilerChunkLoader.isolated(classLoader, compiler, "contention_")
+				: CompilerChunkLoader.of(classLoader, compiler, "contention_");
+	}
+
+	@Benchmark
+	public LuaFunction load(ThreadState ts) throws LoaderException {
+		if (ts.threadId < 0) {
+			ts.threadId = threadIds.getAndIncrement();
+		}
+		int n = ts.idx++;
+
+		// distinct source text for every load
+		String sourceText = "local a, b = ...\n"
+				+ "local function f(x) return x * " + ts.threadId + " + " + n + " end\n"
+				+ "for i = 1, 10 do a = f(a or i) end\n"
+				+ "return a, b\n";
+
+		return loader.loadTextChunk(new Variable(null), "chunk_" + ts.threadId + "_" + n, sourceText);
+	}
+
+}
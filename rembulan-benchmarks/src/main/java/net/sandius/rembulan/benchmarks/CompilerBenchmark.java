@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.compiler.CompiledModule;
+import net.sandius.rembulan.compiler.LuaCompiler;
+import net.sandius.rembulan.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the compilation of Lua source text to Java bytecode
+ * using {@link LuaCompiler}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class CompilerBenchmark {
+
+	@State(Scope.Thread)
+	public static class ScriptState {
+
+		@Param({"nbody.lua", "fannkuchredux.lua", "binarytrees.lua-2.lua", "spectralnorm.lua", "fasta.lua"})
+		public String script;
+
+		@Param({"DEFAULT", "NO_CONST_FOLDING", "PARALLEL"})
+		public CompilerSettingsVariant settings;
+
+		String sourceText;
+		LuaCompiler compiler;
+
+		@Setup
+		public void setup() throws Exception {
+			sourceText = Scripts.benchmarksGameScript(script);
+			compiler = new LuaCompiler(settings.settings());
+		}
+
+	}
+
+	/**
+	 * A synthetic chunk consisting of a large number of small functions.
+	 */
+	@State(Scope.Thread)
+	public static class SyntheticState {
+
+		@Param({"50000"})
+		public int lines;
+
+		@Param({"DEFAULT", "PARALLEL"})
+		public CompilerSettingsVariant settings;
+
+		String sourceText;
+		LuaCompiler compiler;
+
+		@Setup
+		public void setup() {
+			sourceText = syntheticChunk(lines);
+			compiler = new LuaCompiler(settings.settings());
+		}
+
+	}
+
+	// every function takes 6 lines; functions are grouped into nested functions of 100
+	// to keep the size of every class within the limits of the class file format
+	static String syntheticChunk(int lines) {
+		StringBuilder bld = new StringBuilder();
+		bld.append("local groups = {}\n");
+		int i = 0;
+		while (lines > 0) {
+			if (i % 100 == 0) {
+				if (i > 0) {
+					bld.append("  return t\nend\n");
+				}
+				bld.append("groups[").append(i / 100 + 1).append("] = function()\n")
+						.append("  local t = {}\n");
+			}
+			bld.append("  local function f").append(i).append("(a, b)\n")
+					.append("    local x = a * ").append(i).append(" + b\n")
+					.append("    if x > ").append(i).append(" then return x - 1 end\n")
+					.append("    return x\n")
+					.append("  end\n")
+					.append("  t[").append(i % 100 + 1).append("] = f").append(i).append("\n");
+			lines -= 6;
+			i++;
+		}
+		bld.append("  return t\nend\n");
+		bld.append("return groups\n");
+		return bld.toString();
+	}
+
+	@Benchmark
+	public CompiledModule compileScript(ScriptState s) throws ParseException {
+		return s.compiler.compile(s.sourceText, s.script, "compiler_benchmark");
+	}
+
+	@Benchmark
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 5)
+	public CompiledModule compileSynthetic(SyntheticState s) throws ParseException {
+		return s.compiler.compile(s.sourceText, "synthetic", "compiler_benchmark");
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.compiler.CompilerSettings;
+
+/**
+ * Compiler settings used as a benchmark parameter, allowing the comparison
+ * of runs across different settings.
+ */
+public enum CompilerSettingsVariant {
+
+	DEFAULT(CompilerSettings.defaultSettings()),
+	NO_CPU_ACCOUNTING(CompilerSettings.defaultNoAccountingSettings()),
+	NO_CONST_FOLDING(CompilerSettings.defaultSettings().withConstFolding(false)),
+	NO_CONST_CACHING(CompilerSettings.defaultSettings().withConstCaching(false)),
+	NO_NODE_SIZE_LIMIT(CompilerSettings.defaultSettings().withNodeSizeLimit(0)),
+	PARALLEL(CompilerSettings.defaultSettings().withParallelCompilation(true));
+
+	private final CompilerSettings settings;
+
+	CompilerSettingsVariant(CompilerSettings settings) {
+		this.settings = settings;
+	}
+
+	public CompilerSettings settings() {
+		return settings;
+	}
+
+}
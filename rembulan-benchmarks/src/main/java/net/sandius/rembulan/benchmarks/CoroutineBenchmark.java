@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.Variable;
+import net.sandius.rembulan.compiler.CompilerChunkLoader;
+import net.sandius.rembulan.exec.CallException;
+import net.sandius.rembulan.exec.CallPausedException;
+import net.sandius.rembulan.exec.DirectCallExecutor;
+import net.sandius.rembulan.impl.SchedulingContexts;
+import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.load.LoaderException;
+import net.sandius.rembulan.runtime.Coroutine;
+import net.sandius.rembulan.runtime.LuaFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of switching to and from coroutines in the stackless and the threaded
+ * {@linkplain Coroutine.Mode coroutine mode}.
+ *
+ * <p>Every invocation runs a generator that yields {@value #YIELDS} values, each of them
+ * from the bottom of a fresh chain of {@code depth} nested Lua calls, and consumes all
+ * of them. The reported time is per a single yield and the corresponding resume, including
+ * the calls. In the stackless mode, every yield captures and resumes all {@code depth}
+ * frames; in the threaded mode, the frames stay on the stack of the coroutine thread.</p>
+ *
+ * <p>The threaded mode uses virtual threads when run on a virtual machine that supports them.
+ * Note that the benchmark thread itself is a platform thread, so that every switch
+ * in the threaded mode involves the scheduler of the operating system.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CoroutineBenchmark {
+
+	static final int YIELDS = 10000;
+
+	@Param({"STACKLESS", "THREADED"})
+	public Coroutine.Mode mode;
+
+	@Param({"0", "10", "100"})
+	public int depth;
+
+	private StateContext state;
+	private LuaFunction generate;
+	private DirectCallExecutor executor;
+
+	@Setup
+	public void setup() throws LoaderException {
+		state = StateContexts.newDefaultInstance();
+		CompilerChunkLoader loader = CompilerChunkLoader.of("coroutine_");
+		Table env = Scripts.installEnv(state, loader);
+
+		generate = loader.loadTextChunk(new Variable(env), "generate",
+				"local depth, count = ...\n"
+				+ "local function gen(d, i)\n"
+				+ "  if d > 0 then\n"
+				+ "    gen(d - 1, i)\n"  // not a tail call: the frames remain on the stack
+				+ "  else\n"
+				+ "    coroutine.yield(i)\n"
+				+ "  end\n"
+				+ "end\n"
+				+ "local co = coroutine.wrap(function() for i = 1, count do gen(depth, i) end end)\n"
+				+ "local sum = 0\n"
+				+ "for i = 1, count do sum = sum + co() end\n"
+				+ "co()\n"  // run the coroutine to completion
+				+ "return sum");
+
+		executor = DirectCallExecutor.newExecutor(SchedulingContexts.neverPauseFactory(), mode);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(YIELDS)
+	public Object[] yieldAndResume() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, generate, (long) depth, (long) YIELDS);
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.impl.DefaultTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the raw operations on {@link DefaultTable}: reads, writes, traversal
+ * using {@code next}, and the length operator.
+ *
+ * <p>Every benchmark processes {@code size} elements per invocation.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class DefaultTableBenchmark {
+
+	@Param({"1000", "1000000"})
+	public int size;
+
+	private Table array;
+	private Table hash;
+	private String[] keys;
+	private Long[] values;
+
+	@Setup
+	public void setup() {
+		keys = new String[size];
+		values = new Long[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = "k" + i;
+			values[i] = Long.valueOf(i);
+		}
+
+		array = new DefaultTable();
+		for (int i = 0; i < size; i++) {
+			array.rawset(i + 1, values[i]);
+		}
+
+		hash = new DefaultTable();
+		for (int i = 0; i < size; i++) {
+			hash.rawset(keys[i], values[i]);
+		}
+	}
+
+	@Benchmark
+	public void arrayGet(Blackhole bh) {
+		for (int i = 1; i <= size; i++) {
+			bh.consume(array.rawget(i));
+		}
+	}
+
+	@Benchmark
+	public Table arraySet() {
+		Table t = new DefaultTable();
+		for (int i = 0; i < size; i++) {
+			t.rawset(i + 1, values[i]);
+		}
+		return t;
+	}
+
+	@Benchmark
+	public void hashGet(Blackhole bh) {
+		for (int i = 0; i < size; i++) {
+			bh.consume(hash.rawget(keys[i]));
+		}
+	}
+
+	@Benchmark
+	public Table hashSet() {
+		Table t = new DefaultTable();
+		for (int i = 0; i < size; i++) {
+			t.rawset(keys[i], values[i]);
+		}
+		return t;
+	}
+
+	@Benchmark
+	public void arrayNext(Blackhole bh) {
+		Object k = array.initialKey();
+		while (k != null) {
+			bh.consume(array.rawget(k));
+			k = array.successorKeyOf(k);
+		}
+	}
+
+	@Benchmark
+	public void hashNext(Blackhole bh) {
+		Object k = hash.initialKey();
+		while (k != null) {
+			bh.consume(hash.rawget(k));
+			k = hash.successorKeyOf(k);
+		}
+	}
+
+	/**
+	 * Appends {@code size} elements using {@code t[#t + 1] = v}, the idiom whose cost
+	 * is dominated by the length operator.
+	 */
+	@Benchmark
+	public Table appendUsingLength() {
+		Table t = new DefaultTable();
+		for (int i = 0; i < size; i++) {
+			t.rawset(t.rawlen() + 1, values[i]);
+		}
+		return t;
+	}
+
+	@Benchmark
+	public void length(Blackhole bh) {
+		for (int i = 0; i < size; i++) {
+			bh.consume(array.rawlen());
+		}
+	}
+
+}
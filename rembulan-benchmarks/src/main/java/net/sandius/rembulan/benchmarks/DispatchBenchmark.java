@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.exec.CallException;
+import net.sandius.rembulan.exec.CallPausedException;
+import net.sandius.rembulan.exec.DirectCallExecutor;
+import net.sandius.rembulan.impl.NonsuspendableFunctionException;
+import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.runtime.AbstractFunction0;
+import net.sandius.rembulan.runtime.AbstractFunction1;
+import net.sandius.rembulan.runtime.Dispatch;
+import net.sandius.rembulan.runtime.ExecutionContext;
+import net.sandius.rembulan.runtime.LuaFunction;
+import net.sandius.rembulan.runtime.ResolvedControlThrowable;
+import net.sandius.rembulan.runtime.UnresolvedControlThrowable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks of arithmetic, indexing and calls through {@link Dispatch}.
+ *
+ * <p>The indexing and call benchmarks need an execution context, and are therefore
+ * run as a loop inside a Java function called using a {@link DirectCallExecutor}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class DispatchBenchmark {
+
+	static final int OPS = 10000;
+
+	private Long l1;
+	private Long l2;
+	private Double d1;
+	private Double d2;
+
+	private StateContext state;
+	private DirectCallExecutor executor;
+
+	private LuaFunction indexLoop;
+	private LuaFunction callLoop;
+
+	static class IndexLoop extends AbstractFunction0 {
+
+		private final Table table;
+		private final Object[] keys;
+
+		IndexLoop(Table table, Object[] keys) {
+			this.table = table;
+			this.keys = keys;
+		}
+
+		@Override
+		public void invoke(ExecutionContext context) throws ResolvedControlThrowable {
+			Object last = null;
+			try {
+				for (int i = 0; i < OPS; i++) {
+					Dispatch.index(context, table, keys[i % keys.length]);
+					last = context.getReturnBuffer().get0();
+				}
+			}
+			catch (UnresolvedControlThrowable ct) {
+				throw ct.resolve(this, null);
+			}
+			context.getReturnBuffer().setTo(last);
+		}
+
+		@Override
+		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+			throw new NonsuspendableFunctionException();
+		}
+
+	}
+
+	static class Identity extends AbstractFunction1 {
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			context.getReturnBuffer().setTo(arg1);
+		}
+
+		@Override
+		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+			throw new NonsuspendableFunctionException();
+		}
+
+	}
+
+	static class CallLoop extends AbstractFunction0 {
+
+		private final LuaFunction target;
+
+		CallLoop(LuaFunction target) {
+			this.target = target;
+		}
+
+		@Override
+		public void invoke(ExecutionContext context) throws ResolvedControlThrowable {
+			Object last = null;
+			try {
+				for (int i = 0; i < OPS; i++) {
+					Dispatch.call(context, target, Long.valueOf(i));
+					last = context.getReturnBuffer().get0();
+				}
+			}
+			catch (UnresolvedControlThrowable ct) {
+				throw ct.resolve(this, null);
+			}
+			context.getReturnBuffer().setTo(last);
+		}
+
+		@Override
+		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+			throw new NonsuspendableFunctionException();
+		}
+
+	}
+
+	@Setup
+	public void setup() {
+		l1 = Long.valueOf(1234567L);
+		l2 = Long.valueOf(89L);
+		d1 = Double.valueOf(1234.5);
+		d2 = Double.valueOf(0.25);
+
+		state = StateContexts.newDefaultInstance();
+		executor = DirectCallExecutor.newExecutor();
+
+		Table t = state.newTable();
+		Object[] keys = new Object[64];
+		for (int i = 0; i < keys.length; i++) {
+			Object k = (i % 2 == 0) ? Long.valueOf(i / 2 + 1) : "key" + i;
+			t.rawset(k, Long.valueOf(i));
+			keys[i] = k;
+		}
+
+		indexLoop = new IndexLoop(t, keys);
+		callLoop = new CallLoop(new Identity());
+	}
+
+	@Benchmark
+	public Number addInteger() {
+		return Dispatch.add(l1, l2);
+	}
+
+	@Benchmark
+	public Number addFloat() {
+		return Dispatch.add(d1, d2);
+	}
+
+	@Benchmark
+	public Number addMixed() {
+		return Dispatch.add(l1, d2);
+	}
+
+	@Benchmark
+	public Number mulInteger() {
+		return Dispatch.mul(l1, l2);
+	}
+
+	@Benchmark
+	public void compare(Blackhole bh) {
+		bh.consume(Dispatch.lt(l1, l2));
+		bh.consume(Dispatch.lt(d1, l2));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] index() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, indexLoop);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] call() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, callLoop);
+	}
+
+}
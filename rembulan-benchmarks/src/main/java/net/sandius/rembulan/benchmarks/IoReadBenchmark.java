@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.Variable;
+import net.sandius.rembulan.compiler.CompilerChunkLoader;
+import net.sandius.rembulan.env.RuntimeEnvironment;
+import net.sandius.rembulan.env.RuntimeEnvironments;
+import net.sandius.rembulan.exec.CallException;
+import net.sandius.rembulan.exec.CallPausedException;
+import net.sandius.rembulan.exec.DirectCallExecutor;
+import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.lib.StandardLibrary;
+import net.sandius.rembulan.lib.io.BufferedChannelReader;
+import net.sandius.rembulan.load.LoaderException;
+import net.sandius.rembulan.runtime.LuaFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of reading a file line by line and as a whole, using the buffered reader
+ * of the I/O library directly and from Lua, compared to reading from a plain
+ * {@link BufferedInputStream} with a buffer of the same size. Whole-file reads are
+ * also measured with the file mapped into memory.
+ *
+ * <p>Every invocation reads the entire file of about {@value #FILE_SIZE} bytes.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IoReadBenchmark {
+
+	static final int FILE_SIZE = 16 * 1024 * 1024;
+
+	@Param({"8192", "65536", "1048576"})
+	public int bufferSize;
+
+	private Path path;
+
+	private StateContext state;
+	private LuaFunction readLines;
+	private LuaFunction iterateLines;
+	private DirectCallExecutor executor;
+
+	@Setup
+	public void setup() throws IOException, LoaderException {
+		path = Files.createTempFile("rembulan-io-benchmark", ".txt");
+		try (OutputStream out = Files.newOutputStream(path)) {
+			StringBuilder line = new StringBuilder();
+			int written = 0;
+			for (int i = 0; written < FILE_SIZE; i++) {
+				line.setLength(0);
+				line.append(i).append(',').append("value").append(i * 31 % 1000).append(',');
+				for (int j = 0; j < i % 80; j++) {
+					line.append((char) ('a' + j % 26));
+				}
+				line.append('\n');
+				byte[] bytes = line.toString().getBytes("US-ASCII");
+				out.write(bytes);
+				written += bytes.length;
+			}
+		}
+
+		state = StateContexts.newDefaultInstance();
+		RuntimeEnvironment runtimeEnv = RuntimeEnvironments.system(
+				new ByteArrayInputStream(new byte[0]), Scripts.NULL_OUTPUT, Scripts.NULL_OUTPUT);
+		CompilerChunkLoader loader = CompilerChunkLoader.of("ioread_");
+		Table env = StandardLibrary.in(runtimeEnv)
+				.withLoader(loader)
+				.withIoBufferSize(bufferSize)
+				.installInto(state);
+
+		readLines = loader.loadTextChunk(new Variable(env), "readLines",
+				"local f = assert(io.open(..., 'r'))\n"
+				+ "local n = 0\n"
+				+ "while true do\n"
+				+ "  local line = f:read('l')\n"
+				+ "  if not line then break end\n"
+				+ "  n = n + #line\n"
+				+ "end\n"
+				+ "f:close()\n"
+				+ "return n");
+
+		iterateLines = loader.loadTextChunk(new Variable(env), "iterateLines",
+				"local n = 0\n"
+				+ "for line in io.lines(...) do\n"
+				+ "  n = n + #line\n"
+				+ "end\n"
+				+ "return n");
+
+		executor = DirectCallExecutor.newExecutor();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	@Benchmark
+	public void readerLines(Blackhole bh) throws IOException {
+		try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+			BufferedChannelReader reader = new BufferedChannelReader(channel, bufferSize);
+			ByteString line;
+			while ((line = reader.readLine(false)) != null) {
+				bh.consume(line);
+			}
+		}
+	}
+
+	/**
+	 * Reads the lines byte by byte from a {@code BufferedInputStream}, producing
+	 * the same byte strings as {@link #readerLines(Blackhole)}.
+	 */
+	@Benchmark
+	public void bufferedInputStreamLines(Blackhole bh) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(path), bufferSize)) {
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			int b;
+			while ((b = in.read()) >= 0) {
+				if (b == '\n') {
+					bh.consume(ByteString.of(line));
+					line.reset();
+				}
+				else {
+					line.write(b);
+				}
+			}
+			if (line.size() > 0) {
+				bh.consume(ByteString.of(line));
+			}
+		}
+	}
+
+	@Benchmark
+	public ByteString readerAll() throws IOException {
+		try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+			return new BufferedChannelReader(channel, bufferSize).readRest();
+		}
+	}
+
+	/**
+	 * Reads the whole file by mapping it into memory, as {@code file:read("a")} does when
+	 * the I/O library is configured to map reads.
+	 */
+	@Benchmark
+	public ByteString mappedReaderAll() throws IOException {
+		try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+			return new BufferedChannelReader(channel, bufferSize, true).readRest();
+		}
+	}
+
+	@Benchmark
+	public ByteString bufferedInputStreamAll() throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(path), bufferSize)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[bufferSize];
+			int n;
+			while ((n = in.read(buf)) >= 0) {
+				out.write(buf, 0, n);
+			}
+			return ByteString.of(out);
+		}
+	}
+
+	/**
+	 * Reads the lines using {@code file:read("l")} in a Lua loop.
+	 */
+	@Benchmark
+	public Object[] luaLines() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, readLines, path.toString());
+	}
+
+	/**
+	 * Reads the lines using the {@code io.lines} iterator in a generic {@code for} loop.
+	 */
+	@Benchmark
+	public Object[] luaIoLines() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, iterateLines, path.toString());
+	}
+
+}
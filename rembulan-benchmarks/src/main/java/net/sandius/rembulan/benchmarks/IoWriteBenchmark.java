@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.Variable;
+import net.sandius.rembulan.compiler.CompilerChunkLoader;
+import net.sandius.rembulan.env.RuntimeEnvironment;
+import net.sandius.rembulan.env.RuntimeEnvironments;
+import net.sandius.rembulan.exec.CallException;
+import net.sandius.rembulan.exec.CallPausedException;
+import net.sandius.rembulan.exec.DirectCallExecutor;
+import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.lib.StandardLibrary;
+import net.sandius.rembulan.load.LoaderException;
+import net.sandius.rembulan.runtime.LuaFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of writing a CSV file cell by cell from Lua, using each of the buffering
+ * modes of {@code file:setvbuf}.
+ *
+ * <p>Every invocation writes {@value #ROWS} rows of {@value #COLUMNS} cells.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IoWriteBenchmark {
+
+	static final int ROWS = 10000;
+	static final int COLUMNS = 10;
+
+	@Param({"no", "line", "full"})
+	public String mode;
+
+	private Path path;
+
+	private StateContext state;
+	private LuaFunction writeCsv;
+	private DirectCallExecutor executor;
+
+	@Setup
+	public void setup() throws IOException, LoaderException {
+		path = Files.createTempFile("rembulan-io-benchmark", ".csv");
+
+		state = StateContexts.newDefaultInstance();
+		RuntimeEnvironment runtimeEnv = RuntimeEnvironments.system(
+				new ByteArrayInputStream(new byte[0]), Scripts.NULL_OUTPUT, Scripts.NULL_OUTPUT);
+		CompilerChunkLoader loader = CompilerChunkLoader.of("iowrite_");
+		Table env = StandardLibrary.in(runtimeEnv)
+				.withLoader(loader)
+				.installInto(state);
+
+		writeCsv = loader.loadTextChunk(new Variable(env), "writeCsv",
+				"local filename, mode, rows, columns = ...\n"
+				+ "local f = assert(io.open(filename, 'w'))\n"
+				+ "f:setvbuf(mode)\n"
+				+ "for i = 1, rows do\n"
+				+ "  for j = 1, columns - 1 do\n"
+				+ "    f:write(i * j, ',')\n"
+				+ "  end\n"
+				+ "  f:write(i * columns, '\\n')\n"
+				+ "end\n"
+				+ "f:close()\n");
+
+		executor = DirectCallExecutor.newExecutor();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	@Benchmark
+	public Object[] luaWriteCells() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, writeCsv, path.toString(), mode, ROWS, COLUMNS);
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.env.RuntimeEnvironment;
+import net.sandius.rembulan.env.RuntimeEnvironments;
+import net.sandius.rembulan.lib.StandardLibrary;
+import net.sandius.rembulan.load.ChunkLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Scanner;
+
+/**
+ * Utilities for setting up Lua benchmarks.
+ */
+final class Scripts {
+
+	private Scripts() {
+		// not to be instantiated
+	}
+
+	/**
+	 * An output stream discarding everything written to it.
+	 */
+	static final OutputStream NULL_OUTPUT = new OutputStream() {
+		@Override
+		public void write(int b) {
+			// no-op
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// no-op
+		}
+	};
+
+	static String resourceText(String name) throws IOException {
+		try (InputStream in = Scripts.class.getResourceAsStream(name)) {
+			if (in == null) {
+				throw new IOException("Resource not found: " + name);
+			}
+			Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+			return scanner.hasNext() ? scanner.next() : "";
+		}
+	}
+
+	/**
+	 * Returns the source text of the benchmarksgame script {@code fileName}.
+	 */
+	static String benchmarksGameScript(String fileName) throws IOException {
+		return resourceText("/benchmarksgame/" + fileName);
+	}
+
+	/**
+	 * Installs the standard library into {@code state}, with the standard output
+	 * and standard error discarded, and sets the global {@code arg} to a table
+	 * containing {@code args}.
+	 */
+	static Table installEnv(StateContext state, ChunkLoader loader, String... args) {
+		RuntimeEnvironment runtimeEnv = RuntimeEnvironments.system(
+				new ByteArrayInputStream(new byte[0]), NULL_OUTPUT, NULL_OUTPUT);
+
+		Table env = StandardLibrary.in(runtimeEnv)
+				.withLoader(loader)
+				.installInto(state);
+
+		Table argTable = state.newTable();
+		for (int i = 0; i < args.length; i++) {
+			argTable.rawset(i + 1, args[i]);
+		}
+		env.rawset("arg", argTable);
+
+		return env;
+	}
+
+}
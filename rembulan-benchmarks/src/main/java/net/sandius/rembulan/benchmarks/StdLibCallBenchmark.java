@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.env.RuntimeEnvironments;
+import net.sandius.rembulan.exec.CallException;
+import net.sandius.rembulan.exec.CallPausedException;
+import net.sandius.rembulan.exec.DirectCallExecutor;
+import net.sandius.rembulan.impl.NonsuspendableFunctionException;
+import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.lib.StandardLibrary;
+import net.sandius.rembulan.runtime.AbstractFunction0;
+import net.sandius.rembulan.runtime.Dispatch;
+import net.sandius.rembulan.runtime.ExecutionContext;
+import net.sandius.rembulan.runtime.LuaFunction;
+import net.sandius.rembulan.runtime.ResolvedControlThrowable;
+import net.sandius.rembulan.runtime.UnresolvedControlThrowable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks of calls of standard library functions with a fixed number of arguments.
+ *
+ * <p>The functions are called through {@link Dispatch} in a loop inside a Java function
+ * called using a {@link DirectCallExecutor}, as in {@link DispatchBenchmark}.
+ * The arguments are chosen so that none of the functions needs to allocate its results.
+ * When run with the GC profiler ({@code -prof gc}), {@code gc.alloc.rate.norm} is therefore
+ * the number of bytes allocated by the calling convention per call.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StdLibCallBenchmark {
+
+	static final int OPS = 10000;
+
+	private StateContext state;
+	private DirectCallExecutor executor;
+
+	private LuaFunction typeLoop;
+	private LuaFunction rawgetLoop;
+	private LuaFunction rawequalLoop;
+	private LuaFunction mathFloorLoop;
+	private LuaFunction mathAbsLoop;
+	private LuaFunction stringByteLoop;
+	private LuaFunction stringLenLoop;
+	private LuaFunction tableInsertRemoveLoop;
+
+	static class CallLoop extends AbstractFunction0 {
+
+		private final LuaFunction target;
+		private final Object[] args;
+
+		CallLoop(LuaFunction target, Object... args) {
+			this.target = target;
+			this.args = args;
+		}
+
+		@Override
+		public void invoke(ExecutionContext context) throws ResolvedControlThrowable {
+			Object last = null;
+			try {
+				for (int i = 0; i < OPS; i++) {
+					switch (args.length) {
+						case 1: Dispatch.call(context, target, args[0]); break;
+						case 2: Dispatch.call(context, target, args[0], args[1]); break;
+						case 3: Dispatch.call(context, target, args[0], args[1], args[2]); break;
+						default: throw new IllegalStateException();
+					}
+					last = context.getReturnBuffer().get0();
+				}
+			}
+			catch (UnresolvedControlThrowable ct) {
+				throw ct.resolve(this, null);
+			}
+			context.getReturnBuffer().setTo(last);
+		}
+
+		@Override
+		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+			throw new NonsuspendableFunctionException();
+		}
+
+	}
+
+	static class InsertRemoveLoop extends AbstractFunction0 {
+
+		private final LuaFunction insert;
+		private final LuaFunction remove;
+		private final Table table;
+		private final Object value;
+
+		InsertRemoveLoop(LuaFunction insert, LuaFunction remove, Table table, Object value) {
+			this.insert = insert;
+			this.remove = remove;
+			this.table = table;
+			this.value = value;
+		}
+
+		@Override
+		public void invoke(ExecutionContext context) throws ResolvedControlThrowable {
+			Object last = null;
+			try {
+				for (int i = 0; i < OPS; i++) {
+					Dispatch.call(context, insert, table, value);
+					Dispatch.call(context, remove, table);
+					last = context.getReturnBuffer().get0();
+				}
+			}
+			catch (UnresolvedControlThrowable ct) {
+				throw ct.resolve(this, null);
+			}
+			context.getReturnBuffer().setTo(last);
+		}
+
+		@Override
+		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+			throw new NonsuspendableFunctionException();
+		}
+
+	}
+
+	private static LuaFunction function(Table env, String module, String name) {
+		Table t = module != null ? (Table) env.rawget(module) : env;
+		return (LuaFunction) t.rawget(name);
+	}
+
+	@Setup
+	public void setup() {
+		state = StateContexts.newDefaultInstance();
+		executor = DirectCallExecutor.newExecutor();
+
+		Table env = StandardLibrary.in(RuntimeEnvironments.system()).installInto(state);
+
+		Table t = state.newTable();
+		for (int i = 1; i <= 64; i++) {
+			t.rawset(i, Long.valueOf(i));
+		}
+		ByteString key = ByteString.of("key");
+		t.rawset(key, ByteString.of("value"));
+
+		ByteString s = ByteString.of("hello world");
+
+		typeLoop = new CallLoop(function(env, null, "type"), t);
+		rawgetLoop = new CallLoop(function(env, null, "rawget"), t, key);
+		rawequalLoop = new CallLoop(function(env, null, "rawequal"), t, t);
+		mathFloorLoop = new CallLoop(function(env, "math", "floor"), Double.valueOf(2.5));
+		mathAbsLoop = new CallLoop(function(env, "math", "abs"), Long.valueOf(-3L));
+		stringByteLoop = new CallLoop(function(env, "string", "byte"), s, Long.valueOf(2L));
+		stringLenLoop = new CallLoop(function(env, "string", "len"), s);
+		tableInsertRemoveLoop = new InsertRemoveLoop(
+				function(env, "table", "insert"), function(env, "table", "remove"), t, s);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] type() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, typeLoop);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] rawget() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, rawgetLoop);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] rawequal() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, rawequalLoop);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] mathFloor() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, mathFloorLoop);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] mathAbs() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, mathAbsLoop);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] stringByte() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, stringByteLoop);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] stringLen() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, stringLenLoop);
+	}
+
+	/**
+	 * Appends a value to a table using {@code table.insert} and removes it again
+	 * using {@code table.remove}. Every operation consists of both calls.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(OPS)
+	public Object[] tableInsertRemove() throws CallException, CallPausedException, InterruptedException {
+		return executor.call(state, tableInsertRemoveLoop);
+	}
+
+}
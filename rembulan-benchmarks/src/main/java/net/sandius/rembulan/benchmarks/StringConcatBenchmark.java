@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.ByteStringBuilder;
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.Table;
+import net.sandius.rembulan.Variable;
+import net.sandius.rembulan.compiler.CompilerChunkLoader;
+import net.sandius.rembulan.exec.CallException;
+import net.sandius.rembulan.exec.CallPausedException;
+import net.sandius.rembulan.exec.DirectCallExecutor;
+import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.load.LoaderException;
+import net.sandius.rembulan.runtime.LuaFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of building a 10 MB string incrementally by repeated concatenation,
+ * as in the Lua idiom {@code s = s .. piece}.
+ *
+ * <p>Every benchmark returns the hash code of the result in order to force any lazily
+ * concatenated string to be materialised.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StringConcatBenchmark {
+
+	static final int TOTAL_SIZE = 10 * 1024 * 1024;
+
+	@Param({"16", "256", "4096"})
+	public int pieceSize;
+
+	private ByteString piece;
+	private int count;
+
+	private StateContext state;
+	private LuaFunction luaAppend;
+	private DirectCallExecutor executor;
+
+	@Setup
+	public void setup() throws LoaderException {
+		byte[] bytes = new byte[pieceSize];
+		Arrays.fill(bytes, (byte) 'x');
+		piece = ByteString.copyOf(bytes);
+		count = TOTAL_SIZE / pieceSize;
+
+		state = StateContexts.newDefaultInstance();
+		Table env = state.newTable();
+		env.rawset("piece", piece);
+		env.rawset("count", (long) count);
+
+		CompilerChunkLoader loader = CompilerChunkLoader.of("concat_");
+		luaAppend = loader.loadTextChunk(new Variable(env), "append",
+				"local s = ''\n"
+				+ "for i = 1, count do s = s .. piece end\n"
+				+ "return s");
+		executor = DirectCallExecutor.newExecutor();
+	}
+
+	/**
+	 * Appends pieces using {@link ByteString#concat(ByteString)}.
+	 */
+	@Benchmark
+	public int append() {
+		ByteString s = ByteString.empty();
+		for (int i = 0; i < count; i++) {
+			s = s.concat(piece);
+		}
+		return s.hashCode();
+	}
+
+	/**
+	 * Prepends pieces using {@link ByteString#concat(ByteString)}.
+	 */
+	@Benchmark
+	public int prepend() {
+		ByteString s = ByteString.empty();
+		for (int i = 0; i < count; i++) {
+			s = piece.concat(s);
+		}
+		return s.hashCode();
+	}
+
+	/**
+	 * Appends pieces to a {@link ByteStringBuilder}, for comparison.
+	 */
+	@Benchmark
+	public int builder() {
+		ByteStringBuilder bld = new ByteStringBuilder();
+		for (int i = 0; i < count; i++) {
+			bld.append(piece);
+		}
+		return bld.toByteString().hashCode();
+	}
+
+	/**
+	 * Appends pieces in a Lua loop.
+	 */
+	@Benchmark
+	public int luaAppend() throws CallException, CallPausedException, InterruptedException {
+		Object[] result = executor.call(state, luaAppend);
+		return result[0].hashCode();
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.benchmarks;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.lib.StringPattern;
+import net.sandius.rembulan.lib.StringPatternCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of Lua pattern parsing and matching.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class StringPatternBenchmark {
+
+	@Param({"%a+", "(%d+)%-(%d+)", "%s*(%S+)%s*=%s*(%S+)", "[%w_]+%.lua", "%b()"})
+	public String pattern;
+
+	private ByteString text;
+	private StringPattern compiled;
+	private ByteString patternBytes;
+	private StringPatternCache cache;
+
+	@Setup
+	public void setup() {
+		StringBuilder bld = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			bld.append("key").append(i).append(" = value").append(i * 7)
+					.append(" (range ").append(i).append('-').append(i + 10).append(") ")
+					.append("file_").append(i).append(".lua\n");
+		}
+		text = ByteString.of(bld.toString());
+		compiled = StringPattern.fromString(pattern);
+		patternBytes = ByteString.of(pattern);
+		cache = StringPatternCache.of(StringPatternCache.DEFAULT_CAPACITY);
+	}
+
+	@Benchmark
+	public StringPattern parse() {
+		return StringPattern.fromString(pattern);
+	}
+
+	/**
+	 * Looks the pattern up in a pattern cache, as the string library functions do.
+	 */
+	@Benchmark
+	public StringPattern cachedParse() {
+		return cache.get(patternBytes);
+	}
+
+	/**
+	 * Finds all matches of the pattern in the text, as {@code string.gmatch} does.
+	 */
+	@Benchmark
+	public void matchAll(Blackhole bh) {
+		int idx = 0;
+		while (idx <= text.length()) {
+			StringPattern.Match m = compiled.match(text, idx);
+			if (m == null) {
+				break;
+			}
+			bh.consume(m.captures());
+			idx = m.endIndex() > idx ? m.endIndex() : idx + 1;
+		}
+	}
+
+	@Benchmark
+	public StringPattern.Match matchFirst() {
+		return compiled.match(text, 0);
+	}
+
+}
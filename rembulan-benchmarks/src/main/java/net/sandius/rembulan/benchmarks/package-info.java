@@ -0,0 +1,28 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * JMH benchmarks.
+ *
+ * <p>To build the benchmarks, activate the {@code benchmarks} profile
+ * ({@code mvn -Pbenchmarks package}); to run them, use
+ * {@code java -jar rembulan-benchmarks/target/benchmarks.jar}, optionally followed
+ * by the usual JMH command-line options (e.g., a regular expression selecting
+ * the benchmarks to run). The GC profiler (reporting allocation rates) is enabled
+ * by default.</p>
+ */
+package net.sandius.rembulan.benchmarks;
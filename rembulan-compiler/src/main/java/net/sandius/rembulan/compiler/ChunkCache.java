@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.compiler;
+
+/**
+ * A cache of compiled Lua chunks, used by {@link CompilerChunkLoader} to avoid
+ * recompiling chunks it has already compiled.
+ *
+ * <p>Keys are strings of lowercase hexadecimal digits computed by the chunk loader
+ * from the source text, the chunk name, the class name prefix, the compiler settings
+ * and the compiler version. Implementations must be safe for use by multiple threads.</p>
+ */
+public interface ChunkCache {
+
+	/**
+	 * Returns the compiled module stored under the key {@code key}, or {@code null}
+	 * if there is no such module in this cache.
+	 *
+	 * @param key  the key, must not be {@code null}
+	 * @return  the module stored under {@code key}, or {@code null} if not found
+	 *
+	 * @throws NullPointerException  if {@code key} is {@code null}
+	 */
+	CompiledModule get(String key);
+
+	/**
+	 * Stores the compiled module {@code module} under the key {@code key}.
+	 *
+	 * <p>Failure to store the module is not reported to the caller: the cache
+	 * is merely an optimisation.</p>
+	 *
+	 * @param key  the key, must not be {@code null}
+	 * @param module  the module to store, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code key} or {@code module} is {@code null}
+	 */
+	void put(String key, CompiledModule module);
+
+}
@@ -25,25 +25,123 @@ import net.sandius.rembulan.parser.Parser;
 import net.sandius.rembulan.parser.TokenMgrError;
 import net.sandius.rembulan.runtime.LuaFunction;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A chunk loader that uses the {@linkplain LuaCompiler compiler} to convert Lua source
  * text to Java classfiles, and loads these classfiles into the VM using a {@link ClassLoader}.
+ *
+ * <p>This class is thread-safe: chunks loaded concurrently are compiled in parallel,
+ * with only the class name allocation and class definition coordinated between threads.</p>
  */
 public class CompilerChunkLoader implements ChunkLoader {
 
+	private final ClassLoader parentClassLoader;
 	private final ChunkClassLoader chunkClassLoader;
 	private final String rootClassPrefix;
 	private final LuaCompiler compiler;
+	private final ChunkCache cache;
+	private final boolean isolated;
 
-	private int idx;
+	private final AtomicInteger idx;
 
-	CompilerChunkLoader(ClassLoader classLoader, LuaCompiler compiler, String rootClassPrefix) {
-		this.chunkClassLoader = new ChunkClassLoader(Objects.requireNonNull(classLoader));
+	CompilerChunkLoader(ClassLoader classLoader, LuaCompiler compiler, String rootClassPrefix,
+			ChunkCache cache, boolean isolated) {
+		this.parentClassLoader = Objects.requireNonNull(classLoader);
+		this.chunkClassLoader = new ChunkClassLoader(classLoader);
 		this.compiler = Objects.requireNonNull(compiler);
 		this.rootClassPrefix = Objects.requireNonNull(rootClassPrefix);
-		this.idx = 0;
+		this.cache = cache;
+		this.isolated = isolated;
+		this.idx = new AtomicInteger();
+	}
+
+	CompilerChunkLoader(ClassLoader classLoader, LuaCompiler compiler, String rootClassPrefix) {
+		this(classLoader, compiler, rootClassPrefix, null, false);
+	}
+
+	/**
+	 * Returns a new instance of {@code CompilerChunkLoader} that compiles chunks using
+	 * {@code compiler} and defines every loaded chunk in a separate, freshly-created
+	 * {@link ChunkClassLoader} whose parent is {@code classLoader}.
+	 *
+	 * <p>The classes of a chunk loaded by such a chunk loader become eligible for garbage
+	 * collection (together with their class loader) once the function returned
+	 * by {@link #loadTextChunk(Variable, String, String)} and all its instances
+	 * are unreachable. This makes the chunk loader suitable for long-running hosts
+	 * that load an unbounded number of chunks. Note that the chunk class loader returned
+	 * by {@link #getChunkClassLoader()} is not used to define any classes in this mode.</p>
+	 *
+	 * <p>When {@code cache} is not {@code null}, compiled chunks are looked up in
+	 * and stored to {@code cache}, as in
+	 * {@link #of(ClassLoader, LuaCompiler, String, ChunkCache)}.</p>
+	 *
+	 * @param classLoader  the parent class loader of the per-chunk class loaders,
+	 *                     must not be {@code null}
+	 * @param compiler  the compiler instance used by this chunk loader, must not be {@code null}
+	 * @param rootClassPrefix  the class name prefix for compiled classes, must not be {@code null}
+	 * @param cache  the compiled chunk cache, may be {@code null}
+	 * @return  a new instance of {@code CompilerChunkLoader}
+	 *
+	 * @throws NullPointerException  if {@code classLoader}, {@code compiler}
+	 *                               or {@code rootClassPrefix} is {@code null}
+	 */
+	public static CompilerChunkLoader isolated(ClassLoader classLoader, LuaCompiler compiler, String rootClassPrefix,
+			ChunkCache cache) {
+		return new CompilerChunkLoader(classLoader, compiler, rootClassPrefix, cache, true);
+	}
+
+	/**
+	 * Returns a new instance of {@code CompilerChunkLoader} that compiles chunks using
+	 * {@code compiler} and defines every loaded chunk in a separate, freshly-created
+	 * {@link ChunkClassLoader} whose parent is {@code classLoader}, without caching
+	 * compiled chunks.
+	 *
+	 * <p>This is equivalent to {@code isolated(classLoader, compiler, rootClassPrefix, null)}.</p>
+	 *
+	 * @param classLoader  the parent class loader of the per-chunk class loaders,
+	 *                     must not be {@code null}
+	 * @param compiler  the compiler instance used by this chunk loader, must not be {@code null}
+	 * @param rootClassPrefix  the class name prefix for compiled classes, must not be {@code null}
+	 * @return  a new instance of {@code CompilerChunkLoader}
+	 *
+	 * @throws NullPointerException  if {@code classLoader}, {@code compiler}
+	 *                               or {@code rootClassPrefix} is {@code null}
+	 *
+	 * @see #isolated(ClassLoader, LuaCompiler, String, ChunkCache)
+	 */
+	public static CompilerChunkLoader isolated(ClassLoader classLoader, LuaCompiler compiler, String rootClassPrefix) {
+		return isolated(classLoader, compiler, rootClassPrefix, null);
+	}
+
+	/**
+	 * Returns a new instance of {@code CompilerChunkLoader} that uses the specified
+	 * class loader {@code classLoader} to load classes it compiles using {@code compiler},
+	 * looking up compiled chunks in {@code cache} first and storing newly-compiled chunks
+	 * in it.
+	 *
+	 * <p>Since the compiled classes are shared between loads of the same chunk,
+	 * the main chunk class names are derived from the cache key rather than
+	 * from a counter: every main chunk class has the class name {@code rootClassPrefix}
+	 * followed by an underscore and a hexadecimal digest of the chunk. Loading the same
+	 * chunk repeatedly using the same chunk loader instantiates the same class.</p>
+	 *
+	 * @param classLoader  the class loader used by this chunk loader, must not be {@code null}
+	 * @param compiler  the compiler instance used by this chunk loader, must not be {@code null}
+	 * @param rootClassPrefix  the class name prefix for compiled classes, must not be {@code null}
+	 * @param cache  the compiled chunk cache, must not be {@code null}
+	 * @return  a new instance of {@code CompilerChunkLoader}
+	 *
+	 * @throws NullPointerException  if {@code classLoader}, {@code compiler},
+	 *                               {@code rootClassPrefix} or {@code cache} is {@code null}
+	 */
+	public static CompilerChunkLoader of(ClassLoader classLoader, LuaCompiler compiler, String rootClassPrefix,
+			ChunkCache cache) {
+		return new CompilerChunkLoader(classLoader, compiler, rootClassPrefix, Objects.requireNonNull(cache), false);
 	}
 
 	/**
@@ -154,6 +252,16 @@ public class CompilerChunkLoader implements ChunkLoader {
 		return of(CompilerSettings.defaultSettings(), rootClassPrefix);
 	}
 
+	/**
+	 * Returns the chunk class loader used by this chunk loader to define the classes
+	 * of the chunks it loads.
+	 *
+	 * <p>For chunk loaders obtained using
+	 * {@link #isolated(ClassLoader, LuaCompiler, String, ChunkCache)}, the returned class
+	 * loader does not define any classes.</p>
+	 *
+	 * @return  the chunk class loader used by this chunk loader
+	 */
 	public ChunkClassLoader getChunkClassLoader() {
 		return chunkClassLoader;
 	}
@@ -164,35 +272,117 @@ public class CompilerChunkLoader implements ChunkLoader {
 		Objects.requireNonNull(chunkName);
 		Objects.requireNonNull(sourceText);
 
-		synchronized (this) {
-			String rootClassName = rootClassPrefix + (idx++);
-			try {
-				CompiledModule result = compiler.compile(sourceText, chunkName, rootClassName);
+		try {
+			Class<?> clazz = isolated
+					? loadIsolated(chunkName, sourceText)
+					: loadShared(chunkName, sourceText);
 
-				String mainClassName = chunkClassLoader.install(result);
-				Class<?> clazz = chunkClassLoader.loadClass(mainClassName);
+			return (LuaFunction) clazz.getConstructor(Variable.class).newInstance(env);
+		}
+		catch (TokenMgrError ex) {
+			String msg = ex.getMessage();
+			int line = 0;  // TODO
+			boolean partial = msg != null && msg.contains("Encountered: <EOF>");  // TODO: is there really no better way?
+			throw new LoaderException(ex, chunkName, line, partial);
+		}
+		catch (ParseException ex) {
+			boolean partial = ex.currentToken != null
+					&& ex.currentToken.next != null
+					&& ex.currentToken.next.kind == Parser.EOF;
+			int line = ex.currentToken != null
+					? ex.currentToken.beginLine
+					: 0;
+			throw new LoaderException(ex, chunkName, line, partial);
+		}
+		catch (RuntimeException | LinkageError | ReflectiveOperationException ex) {
+			throw new LoaderException(ex, chunkName, 0, false);
+		}
+	}
 
-				return (LuaFunction) clazz.getConstructor(Variable.class).newInstance(env);
-			}
-			catch (TokenMgrError ex) {
-				String msg = ex.getMessage();
-				int line = 0;  // TODO
-				boolean partial = msg != null && msg.contains("Encountered: <EOF>");  // TODO: is there really no better way?
-				throw new LoaderException(ex, chunkName, line, partial);
-			}
-			catch (ParseException ex) {
-				boolean partial = ex.currentToken != null
-						&& ex.currentToken.next != null
-						&& ex.currentToken.next.kind == Parser.EOF;
-				int line = ex.currentToken != null
-						? ex.currentToken.beginLine
-						: 0;
-				throw new LoaderException(ex, chunkName, line, partial);
-			}
-			catch (RuntimeException | LinkageError | ReflectiveOperationException ex) {
-				throw new LoaderException(ex, chunkName, 0, false);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static void update(MessageDigest md, String s) {
+		byte[] bytes = s.getBytes(UTF_8);
+		int len = bytes.length;
+		md.update(new byte[] { (byte) (len >>> 24), (byte) (len >>> 16), (byte) (len >>> 8), (byte) len });
+		md.update(bytes);
+	}
+
+	private String cacheKey(String chunkName, String sourceText) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+
+		update(md, CompilerFingerprint.value());
+		update(md, compiler.settings().outputKey());
+		update(md, rootClassPrefix);
+		update(md, chunkName);
+		update(md, sourceText);
+
+		StringBuilder bld = new StringBuilder();
+		for (byte b : md.digest()) {
+			bld.append(Character.forDigit((b >>> 4) & 0x0f, 16));
+			bld.append(Character.forDigit(b & 0x0f, 16));
+		}
+		return bld.toString();
+	}
+
+	private static String rootClassName(String rootClassPrefix, String key) {
+		return rootClassPrefix + "_" + key.substring(0, 32);
+	}
+
+	private CompiledModule compileCached(String key, String chunkName, String sourceText)
+			throws ParseException {
+
+		String rootClassName = rootClassName(rootClassPrefix, key);
+
+		CompiledModule module = cache.get(key);
+		if (module == null || !module.mainClassName().equals(rootClassName)) {
+			module = compiler.compile(sourceText, chunkName, rootClassName);
+			cache.put(key, module);
+		}
+		return module;
+	}
+
+	private Class<?> loadShared(String chunkName, String sourceText)
+			throws ParseException, ClassNotFoundException {
+
+		if (cache == null) {
+			String rootClassName = rootClassPrefix + idx.getAndIncrement();
+			CompiledModule module = compiler.compile(sourceText, chunkName, rootClassName);
+			return chunkClassLoader.loadClass(chunkClassLoader.install(module));
+		}
+
+		String key = cacheKey(chunkName, sourceText);
+		String rootClassName = rootClassName(rootClassPrefix, key);
+
+		if (!chunkClassLoader.isInstalled(rootClassName)) {
+			CompiledModule module = compileCached(key, chunkName, sourceText);
+
+			// another thread may have installed the same chunk in the meantime
+			synchronized (chunkClassLoader) {
+				if (!chunkClassLoader.isInstalled(rootClassName)) {
+					chunkClassLoader.install(module);
+				}
 			}
 		}
+
+		return chunkClassLoader.loadClass(rootClassName);
+	}
+
+	private Class<?> loadIsolated(String chunkName, String sourceText)
+			throws ParseException, ClassNotFoundException {
+
+		CompiledModule module = cache != null
+				? compileCached(cacheKey(chunkName, sourceText), chunkName, sourceText)
+				: compiler.compile(sourceText, chunkName, rootClassPrefix + idx.getAndIncrement());
+
+		ChunkClassLoader loader = new ChunkClassLoader(parentClassLoader);
+		return loader.loadClass(loader.install(module));
 	}
 
 //	@Override
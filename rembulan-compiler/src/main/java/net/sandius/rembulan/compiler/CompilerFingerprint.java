@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler;
+
+import net.sandius.rembulan.runtime.LuaFunction;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A fingerprint of the code generator, used in the keys of cached compiled chunks.
+ *
+ * <p>The fingerprint is a digest of the class files of the compiler and of the runtime
+ * that the generated code links against, read from the locations these classes were
+ * loaded from (a JAR file or a directory). It therefore changes whenever either of them
+ * is rebuilt differently, including in development builds that carry no version.
+ * When the class files cannot be read, the fingerprint falls back to
+ * {@link #CODEGEN_VERSION} and the implementation version of the compiler package.</p>
+ */
+final class CompilerFingerprint {
+
+	/**
+	 * The version of the format of the generated code. Must be incremented whenever
+	 * the generated code changes in a way that makes previously cached chunks invalid.
+	 */
+	static final int CODEGEN_VERSION = 1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private CompilerFingerprint() {
+		// not to be instantiated
+	}
+
+	private static final class Holder {
+		static final String VALUE = compute();
+	}
+
+	/**
+	 * Returns the fingerprint of the code generator.
+	 *
+	 * <p>The fingerprint is computed on first use, and is constant for the lifetime
+	 * of the class loader that loaded the compiler.</p>
+	 *
+	 * @return  the fingerprint of the code generator
+	 */
+	static String value() {
+		return Holder.VALUE;
+	}
+
+	private static String compute() {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+
+		md.update(("codegen-" + CODEGEN_VERSION).getBytes(UTF_8));
+
+		Set<Path> locations = new LinkedHashSet<>();
+		try {
+			locations.add(locationOf(LuaCompiler.class));
+			locations.add(locationOf(LuaFunction.class));
+			for (Path location : locations) {
+				update(md, location);
+			}
+		}
+		catch (IOException | URISyntaxException | RuntimeException ex) {
+			String version = LuaCompiler.class.getPackage().getImplementationVersion();
+			return "codegen-" + CODEGEN_VERSION + "-" + (version != null ? version : "unknown");
+		}
+
+		return toHex(md.digest());
+	}
+
+	private static Path locationOf(Class<?> clazz) throws URISyntaxException {
+		CodeSource cs = clazz.getProtectionDomain().getCodeSource();
+		URL url = cs != null ? cs.getLocation() : null;
+		if (url == null) {
+			throw new IllegalStateException("Unknown location of " + clazz.getName());
+		}
+		return Paths.get(url.toURI());
+	}
+
+	private static void update(MessageDigest md, Path location) throws IOException {
+		if (Files.isDirectory(location)) {
+			final List<Path> classFiles = new ArrayList<>();
+			Files.walkFileTree(location, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					if (file.getFileName().toString().endsWith(".class")) {
+						classFiles.add(file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			// the order of a directory listing is unspecified
+			Collections.sort(classFiles);
+			for (Path file : classFiles) {
+				md.update(location.relativize(file).toString().getBytes(UTF_8));
+				md.update(Files.readAllBytes(file));
+			}
+		}
+		else {
+			md.update(Files.readAllBytes(location));
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder bld = new StringBuilder();
+		for (byte b : bytes) {
+			bld.append(Character.forDigit((b >>> 4) & 0x0f, 16));
+			bld.append(Character.forDigit(b & 0x0f, 16));
+		}
+		return bld.toString();
+	}
+
+}
@@ -16,6 +16,12 @@
 
 package net.sandius.rembulan.compiler;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -35,7 +41,10 @@ import java.util.Objects;
  *       Java methods (each containing at most the specified number of IR nodes); otherwise,
  *       a single method containing the entire function code is generated. Java class files
  *       impose a strict limit of 64 kB per method: this setting allows the compilation
- *       of arbitrarily-long Lua functions.</li>
+ *       of arbitrarily-long Lua functions;</li>
+ *     <li><b>parallel compilation</b> (boolean): when {@code true}, the functions
+ *       of a chunk are processed and emitted in parallel on a fork-join pool. The generated
+ *       bytecode is the same as in sequential mode.</li>
  * </ul>
  *
  * <p>To obtain the settings with sensible defaults, use {@link CompilerSettings#defaultSettings()}.
@@ -92,24 +101,32 @@ public final class CompilerSettings {
 	 */
 	public static final int DEFAULT_NODE_SIZE_LIMIT = 2000;
 
+	/**
+	 * The default parallel compilation mode.
+	 */
+	public static final boolean DEFAULT_PARALLEL_COMPILATION_MODE = false;
+
 	private final CPUAccountingMode cpuAccountingMode;
 	private final boolean constFolding;
 	private final boolean constCaching;
 	private final boolean byteStrings;
 	private final int nodeSizeLimit;
+	private final boolean parallelCompilation;
 
 	CompilerSettings(
 			CPUAccountingMode cpuAccountingMode,
 			boolean constFolding,
 			boolean constCaching,
 			boolean byteStrings,
-			int nodeSizeLimit) {
+			int nodeSizeLimit,
+			boolean parallelCompilation) {
 
 		this.cpuAccountingMode = Objects.requireNonNull(cpuAccountingMode);
 		this.constFolding = constFolding;
 		this.constCaching = constCaching;
 		this.byteStrings = byteStrings;
 		this.nodeSizeLimit = nodeSizeLimit;
+		this.parallelCompilation = parallelCompilation;
 	}
 
 	@Override
@@ -123,7 +140,8 @@ public final class CompilerSettings {
 				&& this.constFolding == that.constFolding
 				&& this.constCaching == that.constCaching
 				&& this.byteStrings == that.byteStrings
-				&& this.nodeSizeLimit == that.nodeSizeLimit;
+				&& this.nodeSizeLimit == that.nodeSizeLimit
+				&& this.parallelCompilation == that.parallelCompilation;
 	}
 
 	@Override
@@ -133,9 +151,52 @@ public final class CompilerSettings {
 		result = 31 * result + (constCaching ? 1 : 0);
 		result = 31 * result + (byteStrings ? 1 : 0);
 		result = 31 * result + nodeSizeLimit;
+		result = 31 * result + (parallelCompilation ? 1 : 0);
 		return result;
 	}
 
+	/**
+	 * Returns a string identifying the settings that affect the compiler output,
+	 * for use in the keys of cached compiled chunks.
+	 *
+	 * <p>The string is derived from all fields of this class, so that new settings are
+	 * included automatically. The parallel compilation mode is excluded, since it does not
+	 * affect the output.</p>
+	 *
+	 * @return  a string identifying the output-relevant settings
+	 */
+	String outputKey() {
+		CompilerSettings normalised = this.withParallelCompilation(false);
+		List<Field> fields = new ArrayList<>();
+		for (Field f : CompilerSettings.class.getDeclaredFields()) {
+			if (!Modifier.isStatic(f.getModifiers())) {
+				fields.add(f);
+			}
+		}
+		// the order of declared fields is unspecified
+		Collections.sort(fields, new Comparator<Field>() {
+			@Override
+			public int compare(Field a, Field b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+
+		StringBuilder bld = new StringBuilder();
+		for (Field f : fields) {
+			try {
+				// enums are included by name: their hash codes are not stable across JVMs
+				Object value = f.get(normalised);
+				bld.append(f.getName()).append('=')
+						.append(value instanceof Enum ? ((Enum<?>) value).name() : String.valueOf(value))
+						.append(';');
+			}
+			catch (IllegalAccessException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+		return bld.toString();
+	}
+
 	/**
 	 * Returns the compiler settings with the given parameters.
 	 *
@@ -159,7 +220,8 @@ public final class CompilerSettings {
 			int nodeSizeLimit) {
 
 		return new CompilerSettings(
-				cpuAccountingMode, constFolding, constCaching, byteStrings, nodeSizeLimit);
+				cpuAccountingMode, constFolding, constCaching, byteStrings, nodeSizeLimit,
+				DEFAULT_PARALLEL_COMPILATION_MODE);
 	}
 
 	/**
@@ -225,6 +287,15 @@ public final class CompilerSettings {
 		return nodeSizeLimit;
 	}
 
+	/**
+	 * Returns the parallel compilation mode.
+	 *
+	 * @return  the parallel compilation mode
+	 */
+	public boolean parallelCompilation() {
+		return parallelCompilation;
+	}
+
 	/**
 	 * Returns compiler settings derived from this compiler settings by updating
 	 * the CPU accounting mode to {@code mode}.
@@ -237,7 +308,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withCPUAccountingMode(CPUAccountingMode mode) {
 		return mode != this.cpuAccountingMode
-				? new CompilerSettings(mode, constFolding, constCaching, byteStrings, nodeSizeLimit)
+				? new CompilerSettings(mode, constFolding, constCaching, byteStrings, nodeSizeLimit, parallelCompilation)
 				: this;
 	}
 
@@ -251,7 +322,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withConstFolding(boolean mode) {
 		return mode != this.constFolding
-				? new CompilerSettings(cpuAccountingMode, mode, constCaching, byteStrings, nodeSizeLimit)
+				? new CompilerSettings(cpuAccountingMode, mode, constCaching, byteStrings, nodeSizeLimit, parallelCompilation)
 				: this;
 	}
 
@@ -265,7 +336,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withConstCaching(boolean mode) {
 		return mode != this.constCaching
-				? new CompilerSettings(cpuAccountingMode, constFolding, mode, byteStrings, nodeSizeLimit)
+				? new CompilerSettings(cpuAccountingMode, constFolding, mode, byteStrings, nodeSizeLimit, parallelCompilation)
 				: this;
 	}
 
@@ -278,7 +349,7 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withByteStrings(boolean mode) {
 		return mode != this.byteStrings
-				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, mode, nodeSizeLimit)
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, mode, nodeSizeLimit, parallelCompilation)
 				: this;
 	}
 
@@ -292,7 +363,21 @@ public final class CompilerSettings {
 	 */
 	public CompilerSettings withNodeSizeLimit(int limit) {
 		return limit != this.nodeSizeLimit
-				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, byteStrings, limit)
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, byteStrings, limit, parallelCompilation)
+				: this;
+	}
+
+	/**
+	 * Returns compiler settings derived from this compiler settings by updating
+	 * the parallel compilation mode to {@code mode}.
+	 *
+	 * @param mode  new parallel compilation mode
+	 * @return  settings derived from {@code this} by updating the parallel compilation mode
+	 *          to {@code mode}
+	 */
+	public CompilerSettings withParallelCompilation(boolean mode) {
+		return mode != this.parallelCompilation
+				? new CompilerSettings(cpuAccountingMode, constFolding, constCaching, byteStrings, nodeSizeLimit, mode)
 				: this;
 	}
 
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sandius.rembulan.compiler;
+
+import net.sandius.rembulan.util.ByteVector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A chunk cache storing compiled modules in a directory on disk, one file per module.
+ *
+ * <p>Entries are written to a temporary file first and then atomically moved
+ * into place, so that concurrent readers (including other processes sharing the same
+ * directory) never observe partially-written entries. Entries that cannot be read
+ * are treated as missing and removed.</p>
+ *
+ * <p>The total size of the entries is bounded: whenever it exceeds the configured maximum
+ * after a write, the least recently used entries are evicted.</p>
+ */
+public class FileChunkCache implements ChunkCache {
+
+	private static final int MAGIC = 0x52424c43;  // "RBLC"
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String SUFFIX = ".chunk";
+
+	private final Path directory;
+	private final long maxSize;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	FileChunkCache(Path directory, long maxSize) {
+		this.directory = Objects.requireNonNull(directory);
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Maximum size must be non-negative: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * Returns a new file chunk cache storing its entries in {@code directory}, with
+	 * the total size of the entries bounded by {@code maxSize} bytes. The directory
+	 * is created if it does not exist.
+	 *
+	 * @param directory  the cache directory, must not be {@code null}
+	 * @param maxSize  the maximum total size of the cache entries in bytes,
+	 *                 must be non-negative
+	 * @return  a new file chunk cache in {@code directory}
+	 *
+	 * @throws NullPointerException  if {@code directory} is {@code null}
+	 * @throws IllegalArgumentException  if {@code maxSize} is negative
+	 * @throws IOException  if the directory cannot be created
+	 */
+	public static FileChunkCache of(Path directory, long maxSize) throws IOException {
+		Files.createDirectories(directory);
+		return new FileChunkCache(directory, maxSize);
+	}
+
+	/**
+	 * Returns the directory in which this cache stores its entries.
+	 *
+	 * @return  the cache directory
+	 */
+	public Path directory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the maximum total size of the entries in this cache, in bytes.
+	 *
+	 * @return  the maximum size of this cache
+	 */
+	public long maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of successful lookups in this cache.
+	 *
+	 * @return  the number of cache hits
+	 */
+	public long hitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of unsuccessful lookups in this cache.
+	 *
+	 * @return  the number of cache misses
+	 */
+	public long missCount() {
+		return misses.get();
+	}
+
+	private Path pathOf(String key) {
+		Objects.requireNonNull(key);
+		if (key.isEmpty()) {
+			throw new IllegalArgumentException("Illegal key: empty");
+		}
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+				throw new IllegalArgumentException("Illegal key: " + key);
+			}
+		}
+		return directory.resolve(key + SUFFIX);
+	}
+
+	@Override
+	public CompiledModule get(String key) {
+		Path path = pathOf(key);
+
+		CompiledModule result = null;
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+			result = read(new DataInputStream(in));
+		}
+		catch (NoSuchFileException ex) {
+			// not cached
+		}
+		catch (IOException | RuntimeException ex) {
+			// corrupted entry
+			delete(path);
+		}
+
+		if (result != null) {
+			hits.incrementAndGet();
+			touch(path);
+		}
+		else {
+			misses.incrementAndGet();
+		}
+		return result;
+	}
+
+	@Override
+	public void put(String key, CompiledModule module) {
+		Path path = pathOf(key);
+		Objects.requireNonNull(module);
+
+		Path tmp = null;
+		try {
+			tmp = Files.createTempFile(directory, key, ".tmp");
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+				write(new DataOutputStream(out), module);
+			}
+
+			try {
+				Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+		}
+		catch (IOException ex) {
+			// the cache is only an optimisation: ignore
+		}
+		finally {
+			if (tmp != null) {
+				delete(tmp);
+			}
+		}
+
+		evict();
+	}
+
+	private static CompiledModule read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+			throw new IOException("Unsupported cache entry format");
+		}
+
+		String mainClassName = in.readUTF();
+		int numClasses = in.readInt();
+		if (numClasses < 0) {
+			throw new IOException("Illegal number of classes: " + numClasses);
+		}
+
+		Map<String, ByteVector> classMap = new HashMap<>();
+		for (int i = 0; i < numClasses; i++) {
+			String name = in.readUTF();
+			int len = in.readInt();
+			if (len < 0) {
+				throw new IOException("Illegal class size: " + len);
+			}
+			byte[] bytes = new byte[len];
+			in.readFully(bytes);
+			classMap.put(name, ByteVector.wrap(bytes));
+		}
+
+		if (in.read() != -1) {
+			throw new IOException("Trailing bytes in cache entry");
+		}
+
+		return new CompiledModule(Collections.unmodifiableMap(classMap), mainClassName);
+	}
+
+	private static void write(DataOutputStream out, CompiledModule module) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(module.mainClassName());
+
+		Map<String, ByteVector> classMap = module.classMap();
+		out.writeInt(classMap.size());
+		for (Map.Entry<String, ByteVector> e : classMap.entrySet()) {
+			out.writeUTF(e.getKey());
+			ByteVector bytes = e.getValue();
+			out.writeInt(bytes.size());
+			out.write(bytes.copyToNewArray());
+		}
+		out.flush();
+	}
+
+	private static void delete(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		}
+		catch (IOException ex) {
+			// ignore
+		}
+	}
+
+	private static void touch(Path path) {
+		try {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+		}
+		catch (IOException ex) {
+			// ignore
+		}
+	}
+
+	private static class Entry {
+
+		final Path path;
+		final long size;
+		final long lastModified;
+
+		Entry(Path path, long size, long lastModified) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+	}
+
+	private synchronized void evict() {
+		List<Entry> entries = new ArrayList<>();
+		long totalSize = 0;
+
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path p : ds) {
+				try {
+					long size = Files.size(p);
+					long lastModified = Files.getLastModifiedTime(p).toMillis();
+					entries.add(new Entry(p, size, lastModified));
+					totalSize += size;
+				}
+				catch (IOException ex) {
+					// removed in the meantime
+				}
+			}
+		}
+		catch (IOException ex) {
+			return;
+		}
+
+		if (totalSize <= maxSize) {
+			return;
+		}
+
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return Long.compare(a.lastModified, b.lastModified);
+			}
+		});
+
+		for (Entry e : entries) {
+			if (totalSize <= maxSize) {
+				break;
+			}
+			delete(e.path);
+			totalSize -= e.size;
+		}
+	}
+
+}
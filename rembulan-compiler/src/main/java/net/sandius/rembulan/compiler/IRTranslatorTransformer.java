@@ -358,11 +358,46 @@ class IRTranslatorTransformer extends Transformer {
 		insns.add(new BinOp(bop, dest, swap ? r : l, swap ? l : r));
 	}
 
+	private static boolean isConcat(Expr e) {
+		return e instanceof BinaryOperationExpr
+				&& ((BinaryOperationExpr) e).op() == Operator.Binary.CONCAT;
+	}
+
+	// a .. b .. c is parsed as a .. (b .. c): collects the operands along the right spine
+	// of the chain, and translates chains of more than two operands into a single node
+	private void concat(BinaryOperationExpr e) {
+		List<Expr> operands = new ArrayList<>();
+		Expr x = e;
+		while (isConcat(x)) {
+			BinaryOperationExpr be = (BinaryOperationExpr) x;
+			operands.add(be.left());
+			x = be.right();
+		}
+		operands.add(x);
+
+		if (operands.size() == 2) {
+			eagerBinOp(e.op(), e.left(), e.right());
+		}
+		else {
+			List<Val> args = new ArrayList<>();
+			for (Expr operand : operands) {
+				operand.accept(this);
+				args.add(popVal());
+			}
+
+			Val dest = provider.newVal();
+			vals.push(dest);
+
+			insns.add(new Concat(dest, Collections.unmodifiableList(args)));
+		}
+	}
+
 	@Override
 	public Expr transform(BinaryOperationExpr e) {
 		switch (e.op()) {
 			case AND: and(e.left(), e.right()); break;
 			case OR: or(e.left(), e.right()); break;
+			case CONCAT: concat(e); break;
 			default: eagerBinOp(e.op(), e.left(), e.right()); break;
 		}
 		return e;
@@ -865,22 +900,73 @@ class IRTranslatorTransformer extends Transformer {
 		Var v_var = var(new Variable(node.name()));  // FIXME
 		insns.add(new VarInit(v_var, t_var1));
 
+		// An integer loop runs a number of times precomputed from the initial value,
+		// the limit and the step, so that its variable may never overflow; any other loop
+		// compares its variable to the limit in every iteration. The loop kind is determined
+		// by the types of the initial value and the step, and once these are known,
+		// the check and the code for the other kind of loop are pruned away.
+
+		Val t_cnt0 = provider.newVal();
+		insns.add(new NumLoopCount(t_cnt0, t_var0, t_limit, t_step));
+		Var v_cnt = provider.newVar();
+		insns.add(new VarInit(v_cnt, t_cnt0));
+
+		Val t_zero = loadConst(0);
+		Val t_minusOne = loadConst(-1);
+
+		Label l_int = insns.newLabel();
+		Label l_body = insns.newLabel();
+
 		insns.add(l_top);
 
-		Val t_var2 = provider.newVal();
-		insns.add(new VarLoad(t_var2, v_var));
+		insns.addBranch(new Branch.Condition.IntLoop(t_var0, t_step), l_int);
+
+		{
+			// var = var + step; check end-condition
+			Val t_var2 = provider.newVal();
+			insns.add(new VarLoad(t_var2, v_var));
+
+			Val t_var3 = provider.newVal();
+			insns.add(new BinOp(BinOp.Op.ADD, t_var3, t_var2, t_step));
+
+			insns.addBranch(new Branch.Condition.NumLoopEnd(t_var3, t_limit, t_step), l_done);
+
+			insns.add(new VarStore(v_var, t_var3));
+			insns.add(new Jmp(l_body));
+		}
+
+		insns.add(l_int);
+
+		{
+			// cnt = cnt - 1; done when below zero
+			Val t_cnt1 = provider.newVal();
+			insns.add(new VarLoad(t_cnt1, v_cnt));
+
+			Val t_cnt2 = provider.newVal();
+			insns.add(new BinOp(BinOp.Op.ADD, t_cnt2, t_cnt1, t_minusOne));
+
+			insns.addBranch(new Branch.Condition.NumLoopEnd(t_cnt2, t_zero, t_minusOne), l_done);
+
+			insns.add(new VarStore(v_cnt, t_cnt2));
+
+			// var = var + step
+			Val t_var4 = provider.newVal();
+			insns.add(new VarLoad(t_var4, v_var));
+
+			Val t_var5 = provider.newVal();
+			insns.add(new BinOp(BinOp.Op.ADD, t_var5, t_var4, t_step));
 
-		Val t_var3 = provider.newVal();
-		insns.add(new BinOp(BinOp.Op.ADD, t_var3, t_var2, t_step));
+			insns.add(new VarStore(v_var, t_var5));
+		}
 
-		// check end-condition
-		insns.addBranch(new Branch.Condition.NumLoopEnd(t_var3, t_limit, t_step), l_done);
+		insns.add(l_body);
 
-		insns.add(new VarStore(v_var, t_var3));
+		Val t_var6 = provider.newVal();
+		insns.add(new VarLoad(t_var6, v_var));
 
 		VarMapping vm = TranslationUtils.varMapping(node);
 		Var v_v = var(vm.get());
-		insns.add(new VarInit(v_v, t_var3));
+		insns.add(new VarInit(v_v, t_var6));
 
 		breakLabels.push(l_done);
 		nestedBlock(node.block());
@@ -894,6 +980,159 @@ class IRTranslatorTransformer extends Transformer {
 		return node;
 	}
 
+	// returns the name of the variable or of the constant field of _ENV referenced by e,
+	// or null if e is neither
+	private static String nameOf(Expr e) {
+		if (e instanceof VarExpr) {
+			return ((VarExpr) e).name().value();
+		}
+		else if (e instanceof IndexExpr) {
+			IndexExpr ie = (IndexExpr) e;
+			if (ie.object() instanceof VarExpr
+					&& ((VarExpr) ie.object()).name().equals(Variable.ENV_NAME)
+					&& ie.key() instanceof LiteralExpr
+					&& ((LiteralExpr) ie.key()).value() instanceof StringLiteral) {
+				return ((StringLiteral) ((LiteralExpr) ie.key()).value()).value().toString();
+			}
+		}
+		return null;
+	}
+
+	// true iff exprs is "pairs(...)", "ipairs(...)" or begins with "next"
+	private static boolean isTraversal(List<Expr> exprs) {
+		if (exprs.isEmpty()) {
+			return false;
+		}
+
+		Expr e = exprs.get(0);
+		if (e instanceof CallExpr.FunctionCallExpr) {
+			String name = nameOf(((CallExpr.FunctionCallExpr) e).fn());
+			return exprs.size() == 1 && ("pairs".equals(name) || "ipairs".equals(name));
+		}
+		else {
+			return "next".equals(nameOf(e));
+		}
+	}
+
+	// calls the iterator function, assigns the results to the loop variables
+	// and leaves the loop if the first of them is nil
+	private void callStep(GenericForStatement node, VarMapping vm, Label l_done,
+			Val t_f, Val t_s, Var v_var) {
+
+		Val t_var1 = provider.newVal();
+		insns.add(new VarLoad(t_var1, v_var));
+
+		List<Val> ts = new ArrayList<>();
+		ts.add(t_s);
+		ts.add(t_var1);
+		MultiVal mv = provider.newMultiVal();
+		insns.add(new Call(mv, t_f, new VList(Collections.unmodifiableList(ts), null)));
+
+		for (int i = 0; i < node.names().size(); i++) {
+			Var v = var(vm.get(i));
+			Val t = provider.newVal();
+			insns.add(new MultiGet(t, mv, i));
+			insns.add(new VarInit(v, t));
+		}
+
+		Val t_v1 = provider.newVal();
+		insns.add(new VarLoad(t_v1, var(vm.get(0))));
+
+		insns.addBranch(new Branch.Condition.Nil(t_v1), l_done);
+
+		insns.add(new VarStore(v_var, t_v1));
+	}
+
+	// like callStep, but uses the loop cursor provided by the iterator function (if any)
+	// for as long as the cursor is able to provide the entries; since the loop variables
+	// are assigned on two paths, the results are passed to them through auxiliary variables
+	private void traversalStep(GenericForStatement node, VarMapping vm, Label l_top, Label l_done,
+			Val t_f, Val t_s, Val t_var0, Var v_var) {
+
+		Label l_call = insns.newLabel();
+		Label l_fallback = insns.newLabel();
+		Label l_assign = insns.newLabel();
+
+		int n = node.names().size();
+
+		Val t_cur0 = provider.newVal();
+		insns.add(new CursorInit(t_cur0, t_f, t_s, t_var0));
+		Var v_cur = provider.newVar();
+		insns.add(new VarInit(v_cur, t_cur0));
+
+		Val t_nil0 = provider.newVal();
+		insns.add(new LoadConst.Nil(t_nil0));
+		List<Var> v_results = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			Var r = provider.newVar();
+			insns.add(new VarInit(r, t_nil0));
+			v_results.add(r);
+		}
+
+		insns.add(l_top);
+
+		Val t_cur = provider.newVal();
+		insns.add(new VarLoad(t_cur, v_cur));
+		insns.addBranch(new Branch.Condition.Nil(t_cur), l_call);
+
+		Val t_k = provider.newVal();
+		insns.add(new CursorNext(t_k, t_cur));
+		insns.addBranch(new Branch.Condition.Nil(t_k), l_done);
+
+		Val t_v = provider.newVal();
+		insns.add(new CursorValue(t_v, t_cur));
+		insns.addBranch(new Branch.Condition.Nil(t_v), l_fallback);
+
+		// the cursor yields key-value pairs; once the cursor is discarded, it is never
+		// used again, so the remaining results are still nil
+		insns.add(new VarStore(v_results.get(0), t_k));
+		if (n > 1) {
+			insns.add(new VarStore(v_results.get(1), t_v));
+		}
+		insns.add(new VarStore(v_var, t_k));
+		insns.add(new Jmp(l_assign));
+
+		// the cursor is unable to provide the entry: discard it, and carry on
+		// by calling the iterator function
+		insns.add(l_fallback);
+		Val t_nil = provider.newVal();
+		insns.add(new LoadConst.Nil(t_nil));
+		insns.add(new VarStore(v_cur, t_nil));
+
+		insns.add(l_call);
+
+		Val t_var1 = provider.newVal();
+		insns.add(new VarLoad(t_var1, v_var));
+
+		List<Val> ts = new ArrayList<>();
+		ts.add(t_s);
+		ts.add(t_var1);
+		MultiVal mv = provider.newMultiVal();
+		insns.add(new Call(mv, t_f, new VList(Collections.unmodifiableList(ts), null)));
+
+		Val t_v1 = null;
+		for (int i = 0; i < n; i++) {
+			Val t = provider.newVal();
+			insns.add(new MultiGet(t, mv, i));
+			insns.add(new VarStore(v_results.get(i), t));
+			if (i == 0) {
+				t_v1 = t;
+			}
+		}
+
+		insns.addBranch(new Branch.Condition.Nil(t_v1), l_done);
+
+		insns.add(new VarStore(v_var, t_v1));
+
+		insns.add(l_assign);
+
+		for (int i = 0; i < n; i++) {
+			Val t = provider.newVal();
+			insns.add(new VarLoad(t, v_results.get(i)));
+			insns.add(new VarInit(var(vm.get(i)), t));
+		}
+	}
+
 	@Override
 	public BodyStatement transform(GenericForStatement node) {
 		Label l_top = insns.newLabel();
@@ -961,30 +1200,13 @@ class IRTranslatorTransformer extends Transformer {
 			insns.add(new VarInit(v_var, t_var0));
 		}
 
-		insns.add(l_top);
-
-		Val t_var1 = provider.newVal();
-		insns.add(new VarLoad(t_var1, v_var));
-
-		List<Val> ts = new ArrayList<>();
-		ts.add(t_s);
-		ts.add(t_var1);
-		MultiVal mv = provider.newMultiVal();
-		insns.add(new Call(mv, t_f, new VList(Collections.unmodifiableList(ts), null)));
-
-		for (int i = 0; i < node.names().size(); i++) {
-			Var v = var(vm.get(i));
-			Val t = provider.newVal();
-			insns.add(new MultiGet(t, mv, i));
-			insns.add(new VarInit(v, t));
+		if (isTraversal(node.exprs())) {
+			traversalStep(node, vm, l_top, l_done, t_f, t_s, t_var0, v_var);
+		}
+		else {
+			insns.add(l_top);
+			callStep(node, vm, l_done, t_f, t_s, v_var);
 		}
-
-		Val t_v1 = provider.newVal();
-		insns.add(new VarLoad(t_v1, var(vm.get(0))));
-
-		insns.addBranch(new Branch.Condition.Nil(t_v1), l_done);
-
-		insns.add(new VarStore(v_var, t_v1));
 
 		breakLabels.push(l_done);
 		nestedBlock(node.block());
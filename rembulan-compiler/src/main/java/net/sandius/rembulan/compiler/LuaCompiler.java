@@ -43,13 +43,19 @@ import net.sandius.rembulan.util.ByteVector;
 
 import java.io.ByteArrayInputStream;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * A Lua-to-Java-bytecode compiler.
@@ -147,19 +153,81 @@ public class LuaCompiler {
 		fn = CPUAccounter.insertCPUAccounting(fn);
 		fn = optimise(fn);
 
-		SlotAllocInfo slots = SlotAllocator.allocateSlots(fn);
 		TypeInfo types = Typer.analyseTypes(fn);
+		SlotAllocInfo slots = SlotAllocator.allocateSlots(fn, types);
 		DependencyInfo deps = DependencyAnalyser.analyse(fn);
 
 		return new ProcessedFunc(fn, slots, types, deps);
 	}
 
+	// lazily initialised: only created when parallel compilation is used
+	private static class PoolHolder {
+		static final ForkJoinPool POOL = new ForkJoinPool();
+	}
+
+	private static ForkJoinPool compilationPool() {
+		return PoolHolder.POOL;
+	}
+
+	// invokes all tasks, in parallel if requested; results are in the order of the tasks
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<>(tasks.size());
+
+		if (!settings.parallelCompilation() || tasks.size() < 2) {
+			for (Callable<T> task : tasks) {
+				try {
+					results.add(task.call());
+				}
+				catch (RuntimeException ex) {
+					throw ex;
+				}
+				catch (Exception ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		}
+		else {
+			for (Future<T> f : compilationPool().invokeAll(tasks)) {
+				try {
+					results.add(f.get());
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(ex);
+				}
+				catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					else {
+						throw new IllegalStateException(cause);
+					}
+				}
+			}
+		}
+
+		return results;
+	}
+
 	private Iterable<ProcessedFunc> processModule(Module m) {
 		Map<FunctionId, ProcessedFunc> pfs = new HashMap<>();
 
-		for (IRFunc fn : sortTopologically(m)) {
-			ProcessedFunc pf = processFunction(fn);
-			pfs.put(fn.id(), pf);
+		List<Callable<ProcessedFunc>> tasks = new ArrayList<>();
+		for (final IRFunc fn : sortTopologically(m)) {
+			tasks.add(new Callable<ProcessedFunc>() {
+				@Override
+				public ProcessedFunc call() {
+					return processFunction(fn);
+				}
+			});
+		}
+
+		for (ProcessedFunc pf : invokeAll(tasks)) {
+			pfs.put(pf.fn.id(), pf);
 		}
 
 		ProcessedFunc main = pfs.get(FunctionId.root());
@@ -209,7 +277,7 @@ public class LuaCompiler {
 	 * @throws ParseException  when {@code sourceText} cannot be parsed following the Lua
 	 *                         grammar
 	 */
-	public CompiledModule compile(String sourceText, String sourceFileName, String rootClassName)
+	public CompiledModule compile(String sourceText, final String sourceFileName, final String rootClassName)
 			throws ParseException, TokenMgrError {
 
 		Objects.requireNonNull(sourceText);
@@ -218,10 +286,25 @@ public class LuaCompiler {
 
 		Iterable<ProcessedFunc> pfs = processModule(module);
 
+		List<Callable<CompiledClass>> tasks = new ArrayList<>();
+		List<ProcessedFunc> pfList = new ArrayList<>();
+		for (final ProcessedFunc pf : pfs) {
+			pfList.add(pf);
+			tasks.add(new Callable<CompiledClass>() {
+				@Override
+				public CompiledClass call() {
+					return compileFunction(pf, sourceFileName, rootClassName);
+				}
+			});
+		}
+
+		List<CompiledClass> ccs = invokeAll(tasks);
+
 		Map<String, ByteVector> classMap = new HashMap<>();
 		String mainClass = null;
-		for (ProcessedFunc pf : pfs) {
-			CompiledClass cc = compileFunction(pf, sourceFileName, rootClassName);
+		for (int i = 0; i < ccs.size(); i++) {
+			ProcessedFunc pf = pfList.get(i);
+			CompiledClass cc = ccs.get(i);
 
 			if (pf.fn.id().isRoot()) {
 				assert (mainClass == null);
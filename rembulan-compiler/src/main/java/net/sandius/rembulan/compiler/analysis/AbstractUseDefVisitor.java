@@ -73,6 +73,14 @@ abstract class AbstractUseDefVisitor extends IRVisitor {
 		def(node.dest());
 	}
 
+	@Override
+	public void visit(Concat node) {
+		for (Val v : node.args()) {
+			use(v);
+		}
+		def(node.dest());
+	}
+
 	@Override
 	public void visit(TabNew node) {
 		def(node.dest());
@@ -111,6 +119,34 @@ abstract class AbstractUseDefVisitor extends IRVisitor {
 		use(node.src());
 	}
 
+	@Override
+	public void visit(NumLoopCount node) {
+		use(node.init());
+		use(node.limit());
+		use(node.step());
+		def(node.dest());
+	}
+
+	@Override
+	public void visit(CursorInit node) {
+		use(node.fn());
+		use(node.state());
+		use(node.control());
+		def(node.dest());
+	}
+
+	@Override
+	public void visit(CursorNext node) {
+		use(node.cursor());
+		def(node.dest());
+	}
+
+	@Override
+	public void visit(CursorValue node) {
+		use(node.cursor());
+		def(node.dest());
+	}
+
 	@Override
 	public void visit(VarInit node) {
 		use(node.src());
@@ -243,6 +279,12 @@ abstract class AbstractUseDefVisitor extends IRVisitor {
 		use(cond.addr());
 	}
 
+	@Override
+	public void visit(Branch.Condition.IntLoop cond) {
+		use(cond.init());
+		use(cond.step());
+	}
+
 	@Override
 	public void visit(Branch.Condition.NumLoopEnd cond) {
 		use(cond.var());
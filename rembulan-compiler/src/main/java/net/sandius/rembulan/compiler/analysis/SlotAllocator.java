@@ -17,6 +17,8 @@
 package net.sandius.rembulan.compiler.analysis;
 
 import net.sandius.rembulan.compiler.IRFunc;
+import net.sandius.rembulan.compiler.analysis.types.LuaTypes;
+import net.sandius.rembulan.compiler.analysis.types.Type;
 import net.sandius.rembulan.compiler.ir.*;
 
 import java.util.*;
@@ -24,16 +26,35 @@ import java.util.*;
 public class SlotAllocator {
 
 	private final IRFunc fn;
+	private final TypeInfo types;
 
 	private final Map<AbstractVal, Integer> valSlots;
 	private final Map<Var, Integer> varSlots;
 
+	private final Map<Integer, SlotKind> slotKinds;
+	private final Map<Var, SlotKind> varKinds;
+
 	private IRNode currentNode;
 
-	public SlotAllocator(IRFunc fn) {
+	// values of different kinds never share a slot, so that numeric slots
+	// may be kept unboxed
+	enum SlotKind {
+		INTEGER,
+		FLOAT,
+		OTHER
+	}
+
+	public SlotAllocator(IRFunc fn, TypeInfo types) {
 		this.fn = Objects.requireNonNull(fn);
+		this.types = types;
 		this.valSlots = new HashMap<>();
 		this.varSlots = new HashMap<>();
+		this.slotKinds = new HashMap<>();
+		this.varKinds = new HashMap<>();
+	}
+
+	public SlotAllocator(IRFunc fn) {
+		this(fn, null);
 	}
 
 	public static SlotAllocInfo allocateSlots(IRFunc fn) {
@@ -41,6 +62,77 @@ public class SlotAllocator {
 		return allocator.process();
 	}
 
+	/**
+	 * Allocates slots for the function {@code fn}, keeping values statically known
+	 * to be integers or floats in slots separate from all other values.
+	 *
+	 * @param fn  the function, must not be {@code null}
+	 * @param types  type information for {@code fn}, must not be {@code null}
+	 * @return  the slot allocation info
+	 */
+	public static SlotAllocInfo allocateSlots(IRFunc fn, TypeInfo types) {
+		SlotAllocator allocator = new SlotAllocator(fn, Objects.requireNonNull(types));
+		return allocator.process();
+	}
+
+	private static SlotKind kindOf(Type t) {
+		if (t != null && t.isSubtypeOf(LuaTypes.NUMBER_INTEGER)) {
+			return SlotKind.INTEGER;
+		}
+		else if (t != null && t.isSubtypeOf(LuaTypes.NUMBER_FLOAT)) {
+			return SlotKind.FLOAT;
+		}
+		else {
+			return SlotKind.OTHER;
+		}
+	}
+
+	private SlotKind kindOf(AbstractVal v) {
+		return types != null ? kindOf(types.typeOf(v)) : SlotKind.OTHER;
+	}
+
+	private SlotKind kindOf(Var v) {
+		SlotKind k = varKinds.get(v);
+		return k != null ? k : SlotKind.OTHER;
+	}
+
+	private void computeVarKinds() {
+		if (types == null) {
+			return;
+		}
+
+		Map<Var, Type> varTypes = new HashMap<>();
+		Iterator<BasicBlock> it = fn.code().blockIterator();
+		while (it.hasNext()) {
+			for (BodyNode n : it.next().body()) {
+				Var v = null;
+				Val src = null;
+				if (n instanceof VarInit) {
+					v = ((VarInit) n).var();
+					src = ((VarInit) n).src();
+				}
+				else if (n instanceof VarStore) {
+					v = ((VarStore) n).var();
+					src = ((VarStore) n).src();
+				}
+
+				if (v != null) {
+					Type t = types.isReified(v) ? LuaTypes.ANY : types.typeOf(src);
+					Type ot = varTypes.get(v);
+					Type nt = ot != null ? ot.unionWith(t) : t;
+					varTypes.put(v, nt != null ? nt : LuaTypes.ANY);
+				}
+			}
+		}
+
+		for (Map.Entry<Var, Type> e : varTypes.entrySet()) {
+			varKinds.put(e.getKey(), kindOf(e.getValue()));
+		}
+		for (Var p : fn.params()) {
+			varKinds.put(p, SlotKind.OTHER);
+		}
+	}
+
 	private IRNode node() {
 		if (currentNode == null) {
 			throw new IllegalStateException("Current node is null");
@@ -104,22 +196,29 @@ public class SlotAllocator {
 		return occupied;
 	}
 
-	private int findFreeSlot(LivenessInfo liveness, IRNode node) {
+	private boolean isCompatible(int idx, SlotKind kind) {
+		SlotKind k = slotKinds.get(idx);
+		return k == null || k == kind;
+	}
+
+	private int findFreeSlot(LivenessInfo liveness, IRNode node, SlotKind kind) {
 		BitSet occupied = occupiedSlots(liveness, node);
 
 		int idx = 0;
-		while (occupied.get(idx)) {
+		while (occupied.get(idx) || !isCompatible(idx, kind)) {
 			idx++;
 		}
 
 		assert (!occupied.get(idx));
 
+		slotKinds.put(idx, kind);
 		return idx;
 	}
 
 	private void assignParamSlots(List<Var> params) {
 		int idx = 0;
 		for (Var v : params) {
+			slotKinds.put(idx, SlotKind.OTHER);
 			varSlots.put(v, idx++);
 		}
 	}
@@ -128,14 +227,14 @@ public class SlotAllocator {
 		if (hasSlot(v)) {
 			throw new IllegalStateException("Slot already assigned for variable " + v);
 		}
-		varSlots.put(v, findFreeSlot(liveness, node));
+		varSlots.put(v, findFreeSlot(liveness, node, kindOf(v)));
 	}
 
 	private void assignSlot(AbstractVal v, LivenessInfo liveness, IRNode node) {
 		if (hasSlot(v)) {
 			throw new IllegalStateException("Slot already assigned for value " + v);
 		}
-		valSlots.put(v, findFreeSlot(liveness, node));
+		valSlots.put(v, findFreeSlot(liveness, node, kindOf(v)));
 	}
 
 	public SlotAllocInfo process() {
@@ -147,6 +246,7 @@ public class SlotAllocator {
 
 		AllocatorVisitor visitor = new AllocatorVisitor(liveness);
 
+		computeVarKinds();
 		assignParamSlots(fn.params());
 
 		while (!open.isEmpty()) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler.analysis;
+
+import net.sandius.rembulan.compiler.IRFunc;
+import net.sandius.rembulan.compiler.analysis.types.LuaTypes;
+import net.sandius.rembulan.compiler.analysis.types.Type;
+import net.sandius.rembulan.compiler.ir.*;
+
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * Computes the types of register slots, i.e., the join of the types of all values
+ * and variables that the slot allocator assigned to a given slot.
+ *
+ * <p>Slots whose type is a subtype of a numeric type may be stored in unboxed form
+ * by the bytecode emitter.</p>
+ */
+public class SlotTypeAnalyser {
+
+	private final IRFunc fn;
+	private final SlotAllocInfo slots;
+	private final TypeInfo types;
+
+	private final Type[] slotTypes;
+
+	private SlotTypeAnalyser(IRFunc fn, SlotAllocInfo slots, TypeInfo types) {
+		this.fn = Objects.requireNonNull(fn);
+		this.slots = Objects.requireNonNull(slots);
+		this.types = Objects.requireNonNull(types);
+		this.slotTypes = new Type[slots.numSlots()];
+	}
+
+	public static SlotTypeInfo analyseSlotTypes(IRFunc fn, SlotAllocInfo slots, TypeInfo types) {
+		SlotTypeAnalyser analyser = new SlotTypeAnalyser(fn, slots, types);
+		return analyser.analyse();
+	}
+
+	private void join(int idx, Type t) {
+		Type ot = slotTypes[idx];
+		Type nt = ot != null ? ot.unionWith(t) : t;
+		slotTypes[idx] = nt != null ? nt : LuaTypes.ANY;
+	}
+
+	private SlotTypeInfo analyse() {
+		// parameters may be anything
+		for (Var p : fn.params()) {
+			join(slots.slotOf(p), LuaTypes.DYNAMIC);
+		}
+
+		DefVisitor visitor = new DefVisitor();
+
+		Iterator<BasicBlock> it = fn.code().blockIterator();
+		while (it.hasNext()) {
+			BasicBlock b = it.next();
+			for (BodyNode n : b.body()) {
+				n.accept(visitor);
+			}
+			b.end().accept(visitor);
+		}
+
+		// slots that are never written to
+		for (int i = 0; i < slotTypes.length; i++) {
+			if (slotTypes[i] == null) {
+				slotTypes[i] = LuaTypes.ANY;
+			}
+		}
+
+		return new SlotTypeInfo(slotTypes);
+	}
+
+	private class DefVisitor extends AbstractUseDefVisitor {
+
+		private void store(Var v, Val src) {
+			join(slots.slotOf(v), types.isReified(v) ? LuaTypes.ANY : types.typeOf(src));
+		}
+
+		@Override
+		public void visit(VarInit node) {
+			store(node.var(), node.src());
+		}
+
+		@Override
+		public void visit(VarStore node) {
+			store(node.var(), node.src());
+		}
+
+		@Override
+		protected void def(Val v) {
+			join(slots.slotOf(v), types.typeOf(v));
+		}
+
+		@Override
+		protected void use(Val v) {
+			// no effect
+		}
+
+		@Override
+		protected void def(PhiVal pv) {
+			join(slots.slotOf(pv), types.typeOf(pv));
+		}
+
+		@Override
+		protected void use(PhiVal pv) {
+			// no effect
+		}
+
+		@Override
+		protected void def(MultiVal mv) {
+			// not stored in a slot
+		}
+
+		@Override
+		protected void use(MultiVal mv) {
+			// no effect
+		}
+
+		@Override
+		protected void def(Var v) {
+			// handled in visit(VarInit) and visit(VarStore)
+		}
+
+		@Override
+		protected void use(Var v) {
+			// no effect
+		}
+
+		@Override
+		protected void def(UpVar uv) {
+			// not stored in a slot
+		}
+
+		@Override
+		protected void use(UpVar uv) {
+			// no effect
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler.analysis;
+
+import net.sandius.rembulan.compiler.analysis.types.Type;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+public class SlotTypeInfo {
+
+	private final Type[] slotTypes;
+
+	SlotTypeInfo(Type[] slotTypes) {
+		this.slotTypes = Objects.requireNonNull(slotTypes);
+		for (Type t : slotTypes) {
+			Objects.requireNonNull(t);
+		}
+	}
+
+	/**
+	 * Returns the join of the types of all values and variables sharing the slot
+	 * {@code idx}.
+	 *
+	 * @param idx  the slot index, must be non-negative and lower than {@link #numSlots()}
+	 * @return  the type of the slot {@code idx}
+	 *
+	 * @throws IndexOutOfBoundsException  if {@code idx} is out of bounds
+	 */
+	public Type typeOf(int idx) {
+		return slotTypes[idx];
+	}
+
+	public int numSlots() {
+		return slotTypes.length;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(slotTypes);
+	}
+
+}
@@ -28,6 +28,8 @@ import net.sandius.rembulan.compiler.ir.BinOp;
 import net.sandius.rembulan.compiler.ir.UnOp;
 import net.sandius.rembulan.runtime.Dispatch;
 
+import java.util.List;
+
 public class Typer {
 
 	private static Object literalValue(Type t) {
@@ -205,6 +207,19 @@ public class Typer {
 		return result != null ? objectToLiteralType(result) : null;
 	}
 
+	static LiteralType<?> emulateConcat(List<Type> types) {
+		ByteString result = ByteString.empty();
+		for (Type t : types) {
+			Object v = literalValue(t);
+			ByteString s = v != null ? Conversions.stringValueOf(v) : null;
+			if (s == null) {
+				return null;
+			}
+			result = result.concat(s);
+		}
+		return objectToLiteralType(result);
+	}
+
 
 	public static TypeInfo analyseTypes(IRFunc fn) {
 		TyperVisitor visitor = new TyperVisitor();
@@ -25,8 +25,10 @@ import net.sandius.rembulan.compiler.analysis.types.TypeSeq;
 import net.sandius.rembulan.compiler.ir.*;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
@@ -440,6 +442,33 @@ class TyperVisitor extends CodeVisitor {
 		assign(node.dest(), result);
 	}
 
+	@Override
+	public void visit(Concat node) {
+		List<Type> ts = new ArrayList<>();
+		boolean allStringable = true;
+		for (Val v : node.args()) {
+			Type t = typeOf(v);
+			ts.add(t);
+			allStringable &= stringable(t);
+		}
+
+		final Type result;
+
+		Type emulatedResult = Typer.emulateConcat(ts);
+		if (emulatedResult != null) {
+			result = emulatedResult;
+		}
+		else if (allStringable) {
+			result = LuaTypes.STRING;
+		}
+		else {
+			result = LuaTypes.ANY;
+			mayCallMetamethod();
+		}
+
+		assign(node.dest(), result);
+	}
+
 	@Override
 	public void visit(UnOp node) {
 		Type a = typeOf(node.arg());
@@ -485,6 +514,26 @@ class TyperVisitor extends CodeVisitor {
 		// no effect on vals
 	}
 
+	@Override
+	public void visit(NumLoopCount node) {
+		assign(node.dest(), LuaTypes.NUMBER_INTEGER);
+	}
+
+	@Override
+	public void visit(CursorInit node) {
+		assign(node.dest(), LuaTypes.ANY);
+	}
+
+	@Override
+	public void visit(CursorNext node) {
+		assign(node.dest(), LuaTypes.ANY);
+	}
+
+	@Override
+	public void visit(CursorValue node) {
+		assign(node.dest(), LuaTypes.ANY);
+	}
+
 	@Override
 	public void visit(VarLoad node) {
 		Type t = currentVarState().load(node.var());
@@ -591,4 +640,10 @@ class TyperVisitor extends CodeVisitor {
 		assign(node.dest(), result);
 	}
 
+	@Override
+	public void visit(CPUWithdraw node) {
+		// may pause, giving other coroutines a chance to modify escaping variables
+		impure();
+	}
+
 }
@@ -22,6 +22,8 @@ import net.sandius.rembulan.compiler.FunctionId;
 import net.sandius.rembulan.compiler.IRFunc;
 import net.sandius.rembulan.compiler.analysis.DependencyInfo;
 import net.sandius.rembulan.compiler.analysis.SlotAllocInfo;
+import net.sandius.rembulan.compiler.analysis.SlotTypeAnalyser;
+import net.sandius.rembulan.compiler.analysis.SlotTypeInfo;
 import net.sandius.rembulan.compiler.analysis.TypeInfo;
 import net.sandius.rembulan.compiler.gen.BytecodeEmitter;
 import net.sandius.rembulan.compiler.gen.ClassNameTranslator;
@@ -64,6 +66,7 @@ public class ASMBytecodeEmitter extends BytecodeEmitter {
 	public final IRFunc fn;
 	public final SlotAllocInfo slots;
 	public final TypeInfo types;
+	public final SlotTypeInfo slotTypes;
 	public final DependencyInfo deps;
 
 	public final CompilerSettings compilerSettings;
@@ -91,6 +94,7 @@ public class ASMBytecodeEmitter extends BytecodeEmitter {
 		this.fn = Objects.requireNonNull(fn);
 		this.slots = Objects.requireNonNull(slots);
 		this.types = Objects.requireNonNull(types);
+		this.slotTypes = SlotTypeAnalyser.analyseSlotTypes(fn, slots, types);
 		this.deps = Objects.requireNonNull(deps);
 
 		this.compilerSettings = Objects.requireNonNull(compilerSettings);
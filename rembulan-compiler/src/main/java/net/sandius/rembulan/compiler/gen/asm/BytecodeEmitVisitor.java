@@ -23,12 +23,16 @@ import net.sandius.rembulan.compiler.CompilerSettings;
 import net.sandius.rembulan.compiler.FunctionId;
 import net.sandius.rembulan.compiler.analysis.SlotAllocInfo;
 import net.sandius.rembulan.compiler.analysis.TypeInfo;
+import net.sandius.rembulan.compiler.analysis.types.LuaTypes;
 import net.sandius.rembulan.compiler.gen.ClassNameTranslator;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ASMUtils;
 import net.sandius.rembulan.compiler.gen.asm.helpers.BoxedPrimitivesMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ConversionMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.DispatchMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ExecutionContextMethods;
+import net.sandius.rembulan.compiler.gen.asm.helpers.IndexCacheMethods;
+import net.sandius.rembulan.compiler.gen.asm.helpers.LoopCursorMethods;
+import net.sandius.rembulan.compiler.gen.asm.helpers.OperatorMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ReturnBufferMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.TableMethods;
 import net.sandius.rembulan.compiler.gen.asm.helpers.VariableMethods;
@@ -71,6 +75,9 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	private final List<RunMethod.ConstFieldInstance> constFields;
 
+	// string constants loaded by this segment, for use as cached table keys
+	private final Map<AbstractVal, ByteString> stringConsts;
+
 	public BytecodeEmitVisitor(
 			ASMBytecodeEmitter context,
 			RunMethod runMethod,
@@ -97,6 +104,8 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 		this.instanceLevelClosures = Objects.requireNonNull(instanceLevelClosures);
 		this.constFields = Objects.requireNonNull(constFields);
+
+		this.stringConsts = new HashMap<>();
 	}
 
 	private boolean isSub() {
@@ -120,15 +129,111 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	}
 
 	protected int slot(AbstractVal v) {
-		return runMethod.slotOffset() + slots.slotOf(v);
+		return runMethod.registerLocalIndex(slots.slotOf(v));
 	}
 
 	protected int slot(Var v) {
-		return runMethod.slotOffset() + slots.slotOf(v);
+		return runMethod.registerLocalIndex(slots.slotOf(v));
 	}
 
 	protected int nextLocalVariableIndex() {
-		return runMethod.slotOffset() + slots.numSlots();
+		return runMethod.slotOffset() + runMethod.registerLocalsSize();
+	}
+
+	// loads the value of v to the stack as an object
+	private InsnList load(AbstractVal v) {
+		return runMethod.loadRegister(slots.slotOf(v));
+	}
+
+	private InsnList load(Var v) {
+		return runMethod.loadRegister(slots.slotOf(v));
+	}
+
+	// stores the object at the top of the stack to v
+	private InsnList store(AbstractVal v) {
+		return runMethod.storeRegister(slots.slotOf(v));
+	}
+
+	private InsnList store(Var v) {
+		return runMethod.storeRegister(slots.slotOf(v));
+	}
+
+	private InsnList move(int fromRegister, int toRegister) {
+		InsnList il = new InsnList();
+
+		Type from = runMethod.registerType(fromRegister);
+		Type to = runMethod.registerType(toRegister);
+
+		if (from.equals(to)) {
+			il.add(new VarInsnNode(from.getOpcode(ILOAD), runMethod.registerLocalIndex(fromRegister)));
+			il.add(new VarInsnNode(to.getOpcode(ISTORE), runMethod.registerLocalIndex(toRegister)));
+		}
+		else if (!runMethod.isUnboxedRegister(fromRegister) || !runMethod.isUnboxedRegister(toRegister)) {
+			il.add(runMethod.loadRegister(fromRegister));
+			il.add(runMethod.storeRegister(toRegister));
+		}
+		else {
+			throw new IllegalStateException("Illegal move from " + from + " to " + to);
+		}
+
+		return il;
+	}
+
+	// Type of v if v is statically known to be an integer or a float; null otherwise
+	private Type numericType(AbstractVal v) {
+		net.sandius.rembulan.compiler.analysis.types.Type t = types.typeOf(v);
+		if (t.isSubtypeOf(LuaTypes.NUMBER_INTEGER)) return Type.LONG_TYPE;
+		else if (t.isSubtypeOf(LuaTypes.NUMBER_FLOAT)) return Type.DOUBLE_TYPE;
+		else return null;
+	}
+
+	private boolean isNumber(AbstractVal v) {
+		return types.typeOf(v).isSubtypeOf(LuaTypes.NUMBER);
+	}
+
+	// loads the number v to the stack as a primitive of type t (long or double)
+	private InsnList loadUnboxed(AbstractVal v, Type t) {
+		InsnList il = new InsnList();
+		int reg = slots.slotOf(v);
+		Type rt = runMethod.registerType(reg);
+
+		if (rt.equals(t)) {
+			il.add(new VarInsnNode(t.getOpcode(ILOAD), slot(v)));
+		}
+		else if (rt.equals(Type.LONG_TYPE) && t.equals(Type.DOUBLE_TYPE)) {
+			il.add(new VarInsnNode(LLOAD, slot(v)));
+			il.add(new InsnNode(L2D));
+		}
+		else if (!runMethod.isUnboxedRegister(reg)) {
+			il.add(load(v));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(BoxedPrimitivesMethods.unbox(Number.class, t));
+		}
+		else {
+			throw new IllegalStateException("Cannot load " + v + " of type " + rt + " as " + t);
+		}
+
+		return il;
+	}
+
+	// stores the primitive of type t at the top of the stack to v
+	private InsnList storeUnboxed(AbstractVal v, Type t) {
+		InsnList il = new InsnList();
+		int reg = slots.slotOf(v);
+		Type rt = runMethod.registerType(reg);
+
+		if (rt.equals(t)) {
+			il.add(new VarInsnNode(t.getOpcode(ISTORE), slot(v)));
+		}
+		else if (!runMethod.isUnboxedRegister(reg)) {
+			il.add(BoxedPrimitivesMethods.box(t));
+			il.add(new VarInsnNode(ASTORE, slot(v)));
+		}
+		else {
+			throw new IllegalStateException("Cannot store " + t + " to " + v + " of type " + rt);
+		}
+
+		return il;
 	}
 
 	private LabelNode l(Object o) {
@@ -174,6 +279,51 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	}
 
+	// the maximum number of inline caches per class, limiting the size of its static initialiser
+	private static final int MAX_INDEX_CACHES = 1024;
+
+	private class IndexCacheFieldInstance extends RunMethod.ConstFieldInstance {
+
+		private final ByteString key;
+
+		// the cache is identified by a fresh object, and is never shared by multiple sites
+		IndexCacheFieldInstance(ByteString key, int idx) {
+			super(new Object(), "_ic_" + idx, context.thisClassType(), IndexCacheMethods.selfTpe());
+			this.key = Objects.requireNonNull(key);
+		}
+
+		@Override
+		public void doInstantiate(InsnList il) {
+			InsnList loadKey = new InsnList();
+			if (context.compilerSettings.byteStrings()) {
+				loadKey.add(newByteString(key));
+			}
+			else {
+				loadKey.add(new LdcInsnNode(key.toString()));
+			}
+			il.add(IndexCacheMethods.newInstance(loadKey));
+		}
+
+	}
+
+	// returns a new inline cache for a site reading the constant key, or null if there are
+	// too many caches already
+	private RunMethod.ConstFieldInstance newIndexCache(ByteString key) {
+		int n = 0;
+		for (RunMethod.ConstFieldInstance cfi : constFields) {
+			if (cfi instanceof IndexCacheFieldInstance) n += 1;
+		}
+
+		if (n < MAX_INDEX_CACHES) {
+			RunMethod.ConstFieldInstance cfi = new IndexCacheFieldInstance(key, constFields.size());
+			constFields.add(cfi);
+			return cfi;
+		}
+		else {
+			return null;
+		}
+	}
+
 	private static InsnList newByteString(ByteString value) {
 		InsnList il = new InsnList();
 		il.add(new LdcInsnNode(value.toRawString()));
@@ -340,14 +490,12 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	@Override
 	public void visit(PhiStore node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(move(slots.slotOf(node.src()), slots.slotOf(node.dest())));
 	}
 
 	@Override
 	public void visit(PhiLoad node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(move(slots.slotOf(node.src()), slots.slotOf(node.dest())));
 	}
 
 	@Override
@@ -355,91 +503,101 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		if (types.isReified(node.var())) {
 			il.add(new TypeInsnNode(NEW, Type.getInternalName(Variable.class)));
 			il.add(new InsnNode(DUP));
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
+			il.add(load(node.src()));
 			il.add(VariableMethods.constructor());
-			il.add(new VarInsnNode(ASTORE, slot(node.var())));
+			il.add(store(node.var()));
 		}
 		else {
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
-			il.add(new VarInsnNode(ASTORE, slot(node.var())));
+			il.add(move(slots.slotOf(node.src()), slots.slotOf(node.var())));
 		}
 	}
 
 	@Override
 	public void visit(VarStore node) {
 		if (types.isReified(node.var())) {
-			il.add(new VarInsnNode(ALOAD, slot(node.var())));
+			il.add(load(node.var()));
 			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Variable.class)));
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
+			il.add(load(node.src()));
 			il.add(VariableMethods.set());
 		}
 		else {
-			il.add(new VarInsnNode(ALOAD, slot(node.src())));
-			il.add(new VarInsnNode(ASTORE, slot(node.var())));
+			il.add(move(slots.slotOf(node.src()), slots.slotOf(node.var())));
 		}
 	}
 
 	@Override
 	public void visit(VarLoad node) {
 		if (types.isReified(node.var())) {
-			il.add(new VarInsnNode(ALOAD, slot(node.var())));
+			il.add(load(node.var()));
 			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Variable.class)));
 			il.add(VariableMethods.get());
+			il.add(store(node.dest()));
 		}
 		else {
-			il.add(new VarInsnNode(ALOAD, slot(node.var())));
+			il.add(move(slots.slotOf(node.var()), slots.slotOf(node.dest())));
 		}
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
 	}
 
 	@Override
 	public void visit(UpLoad node) {
 		il.add(loadUpvalueRef(node.upval()));
 		il.add(VariableMethods.get());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(UpStore node) {
 		il.add(loadUpvalueRef(node.upval()));
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
+		il.add(load(node.src()));
 		il.add(VariableMethods.set());
 	}
 
 	@Override
 	public void visit(LoadConst.Nil node) {
 		il.add(new InsnNode(ACONST_NULL));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(LoadConst.Bool node) {
 		il.add(BoxedPrimitivesMethods.loadBoxedBoolean(node.value()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(LoadConst.Int node) {
-		if (context.compilerSettings.constCaching()) {
-			il.add(loadCachedConst(node.value()));
+		if (runMethod.isUnboxedRegister(slots.slotOf(node.dest()))) {
+			il.add(ASMUtils.loadLong(node.value()));
+			il.add(storeUnboxed(node.dest(), Type.LONG_TYPE));
 		}
 		else {
-			il.add(ASMUtils.loadLong(node.value()));
-			il.add(BoxedPrimitivesMethods.box(Type.LONG_TYPE, Type.getType(Long.class)));
+			if (context.compilerSettings.constCaching()) {
+				il.add(loadCachedConst(node.value()));
+			}
+			else {
+				il.add(ASMUtils.loadLong(node.value()));
+				il.add(BoxedPrimitivesMethods.box(Type.LONG_TYPE, Type.getType(Long.class)));
+			}
+			il.add(store(node.dest()));
 		}
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
 	}
 
 	@Override
 	public void visit(LoadConst.Flt node) {
-		if (context.compilerSettings.constCaching()) {
-			il.add(loadCachedConst(node.value()));
+		if (runMethod.isUnboxedRegister(slots.slotOf(node.dest()))) {
+			il.add(ASMUtils.loadDouble(node.value()));
+			il.add(storeUnboxed(node.dest(), Type.DOUBLE_TYPE));
 		}
 		else {
-			il.add(ASMUtils.loadDouble(node.value()));
-			il.add(BoxedPrimitivesMethods.box(Type.DOUBLE_TYPE, Type.getType(Double.class)));
+			if (context.compilerSettings.constCaching()) {
+				il.add(loadCachedConst(node.value()));
+			}
+			else {
+				il.add(ASMUtils.loadDouble(node.value()));
+				il.add(BoxedPrimitivesMethods.box(Type.DOUBLE_TYPE, Type.getType(Double.class)));
+			}
+			il.add(store(node.dest()));
 		}
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
 	}
 
 	@Override
@@ -458,7 +616,9 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			il.add(new LdcInsnNode(node.value()));
 		}
 
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
+
+		stringConsts.put(node.dest(), node.value());
 	}
 
 	private static String dispatchMethodName(BinOp.Op op) {
@@ -496,65 +656,283 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		}
 	}
 
+	// the type in which op must be evaluated when both operands are numbers of
+	// the given types, or null if it must not be evaluated statically
+	private static Type staticOperationType(BinOp.Op op, Type l, Type r) {
+		switch (op) {
+			case ADD:
+			case SUB:
+			case MUL:
+			case MOD:
+			case IDIV:
+				return l.equals(Type.LONG_TYPE) && r.equals(Type.LONG_TYPE) ? Type.LONG_TYPE : Type.DOUBLE_TYPE;
+
+			case DIV:
+			case POW:
+				return Type.DOUBLE_TYPE;
+
+			case BAND:
+			case BOR:
+			case BXOR:
+			case SHL:
+			case SHR:
+				// floats must be converted to integers, which may fail
+				return l.equals(Type.LONG_TYPE) && r.equals(Type.LONG_TYPE) ? Type.LONG_TYPE : null;
+
+			default:
+				return null;
+		}
+	}
+
+	private static boolean isComparison(BinOp.Op op) {
+		switch (op) {
+			case EQ:
+			case NEQ:
+			case LT:
+			case LE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static String comparisonMethodName(BinOp.Op op) {
+		switch (op) {
+			case EQ:
+			case NEQ: return OP_EQ;
+			case LT:  return OP_LT;
+			case LE:  return OP_LE;
+			default:  throw new IllegalArgumentException("Illegal comparison: " + op);
+		}
+	}
+
+	private void negateIfNeq(BinOp.Op op) {
+		if (op == BinOp.Op.NEQ) {
+			il.add(new InsnNode(ICONST_1));
+			il.add(new InsnNode(IXOR));
+		}
+	}
+
+	// evaluates the operation without dispatch if both operands are statically known
+	// to be numbers; returns false if node must be dispatched dynamically
+	private boolean staticBinOp(BinOp node) {
+		Type lt = numericType(node.left());
+		Type rt = numericType(node.right());
+
+		if (lt != null && rt != null) {
+			if (isComparison(node.op())) {
+				il.add(loadUnboxed(node.left(), lt));
+				il.add(loadUnboxed(node.right(), rt));
+				il.add(OperatorMethods.rawBinaryOperator(comparisonMethodName(node.op()), Type.BOOLEAN_TYPE, lt, rt));
+				negateIfNeq(node.op());
+				il.add(BoxedPrimitivesMethods.box(Type.BOOLEAN_TYPE));
+				il.add(store(node.dest()));
+				return true;
+			}
+
+			Type ot = staticOperationType(node.op(), lt, rt);
+			if (ot != null) {
+				il.add(loadUnboxed(node.left(), ot));
+				il.add(loadUnboxed(node.right(), ot));
+				il.add(OperatorMethods.rawBinaryOperator(dispatchMethodName(node.op()), ot, ot));
+				il.add(storeUnboxed(node.dest(), ot));
+				return true;
+			}
+		}
+
+		if (isNumber(node.left()) && isNumber(node.right())) {
+			// numbers of unknown kinds: no metamethods involved, but dispatch on the kinds
+			if (isComparison(node.op())) {
+				il.add(load(node.left()));
+				il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+				il.add(load(node.right()));
+				il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+				il.add(DispatchMethods.numericComparison(comparisonMethodName(node.op())));
+				negateIfNeq(node.op());
+				il.add(BoxedPrimitivesMethods.box(Type.BOOLEAN_TYPE));
+				il.add(store(node.dest()));
+				return true;
+			}
+
+			switch (node.op()) {
+				case ADD:
+				case SUB:
+				case MUL:
+				case DIV:
+				case MOD:
+				case IDIV:
+				case POW:
+					il.add(load(node.left()));
+					il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+					il.add(load(node.right()));
+					il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+					il.add(DispatchMethods.numeric(dispatchMethodName(node.op()), 2));
+					il.add(store(node.dest()));
+					return true;
+
+				default:
+					return false;
+			}
+		}
+
+		return false;
+	}
+
 	@Override
 	public void visit(BinOp node) {
+		if (!staticBinOp(node)) {
+			ResumptionPoint rp = newResumptionPoint();
+			il.add(rp.save());
+
+			il.add(loadExecutionContext());
+			il.add(load(node.left()));
+			il.add(load(node.right()));
+			il.add(DispatchMethods.dynamic(dispatchMethodName(node.op()), 2));
+
+			il.add(rp.resume());
+			il.add(retrieve_0());
+			il.add(store(node.dest()));
+		}
+	}
+
+	@Override
+	public void visit(Concat node) {
 		ResumptionPoint rp = newResumptionPoint();
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.left())));
-		il.add(new VarInsnNode(ALOAD, slot(node.right())));
-		il.add(DispatchMethods.dynamic(dispatchMethodName(node.op()), 2));
+
+		// the operands are passed in an array
+		il.add(ASMUtils.loadInt(node.args().size()));
+		il.add(new TypeInsnNode(ANEWARRAY, Type.getInternalName(Object.class)));
+		int idx = 0;
+		for (Val v : node.args()) {
+			il.add(new InsnNode(DUP));
+			il.add(ASMUtils.loadInt(idx++));
+			il.add(load(v));
+			il.add(new InsnNode(AASTORE));
+		}
+
+		il.add(DispatchMethods.concat());
 
 		il.add(rp.resume());
 		il.add(retrieve_0());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
+	}
+
+	// evaluates the operation without dispatch if the argument is statically known
+	// to be a number; returns false if node must be dispatched dynamically
+	private boolean staticUnOp(UnOp node) {
+		Type t = numericType(node.arg());
+
+		switch (node.op()) {
+			case UNM:
+				if (t != null) {
+					il.add(loadUnboxed(node.arg(), t));
+					il.add(OperatorMethods.rawUnaryOperator(OP_UNM, t));
+					il.add(storeUnboxed(node.dest(), t));
+					return true;
+				}
+				else if (isNumber(node.arg())) {
+					il.add(load(node.arg()));
+					il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+					il.add(DispatchMethods.numeric(OP_UNM, 1));
+					il.add(store(node.dest()));
+					return true;
+				}
+				else {
+					return false;
+				}
+
+			case BNOT:
+				if (Type.LONG_TYPE.equals(t)) {
+					il.add(loadUnboxed(node.arg(), t));
+					il.add(OperatorMethods.rawUnaryOperator(OP_BNOT, t));
+					il.add(storeUnboxed(node.dest(), t));
+					return true;
+				}
+				else {
+					return false;
+				}
+
+			default:
+				return false;
+		}
 	}
 
 	@Override
 	public void visit(UnOp node) {
 		if (node.op() == UnOp.Op.NOT) {
-			il.add(new VarInsnNode(ALOAD, slot(node.arg())));
-			il.add(ConversionMethods.booleanValueOf());
-			il.add(new InsnNode(ICONST_1));
-			il.add(new InsnNode(IXOR));
-			il.add(BoxedPrimitivesMethods.box(Type.BOOLEAN_TYPE, Type.getType(Boolean.class)));
+			if (isNumber(node.arg())) {
+				// numbers are always true
+				il.add(BoxedPrimitivesMethods.loadBoxedBoolean(false));
+			}
+			else {
+				il.add(load(node.arg()));
+				il.add(ConversionMethods.booleanValueOf());
+				il.add(new InsnNode(ICONST_1));
+				il.add(new InsnNode(IXOR));
+				il.add(BoxedPrimitivesMethods.box(Type.BOOLEAN_TYPE, Type.getType(Boolean.class)));
+			}
+			il.add(store(node.dest()));
 		}
-		else {
+		else if (!staticUnOp(node)) {
 			ResumptionPoint rp = newResumptionPoint();
 			il.add(rp.save());
 
 			il.add(loadExecutionContext());
-			il.add(new VarInsnNode(ALOAD, slot(node.arg())));
+			il.add(load(node.arg()));
 			il.add(DispatchMethods.dynamic(dispatchMethodName(node.op()), 1));
 
 			il.add(rp.resume());
 			il.add(retrieve_0());
+			il.add(store(node.dest()));
 		}
-
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
 	}
 
 	@Override
 	public void visit(TabNew node) {
 		il.add(loadExecutionContext());
 		il.add(ExecutionContextMethods.newTable(node.array(), node.hash()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(TabGet node) {
+		ByteString key = stringConsts.get(node.key());
+		RunMethod.ConstFieldInstance cfi = key != null ? newIndexCache(key) : null;
+
+		LabelNode l_done = null;
+
+		if (cfi != null) {
+			// a constant key: try the inline cache for this site first
+			l_done = new LabelNode();
+
+			il.add(cfi.accessInsns());
+			il.add(load(node.obj()));
+			il.add(IndexCacheMethods.get());
+			il.add(new InsnNode(DUP));
+			il.add(new JumpInsnNode(IFNONNULL, l_done));
+			il.add(new InsnNode(POP));
+		}
+
 		ResumptionPoint rp = newResumptionPoint();
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
-		il.add(new VarInsnNode(ALOAD, slot(node.key())));
+		il.add(load(node.obj()));
+		il.add(load(node.key()));
 		il.add(DispatchMethods.index());
 
 		il.add(rp.resume());
 		il.add(retrieve_0());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+
+		if (l_done != null) {
+			il.add(l_done);
+			il.add(new FrameNode(F_SAME1, 0, null, 1, new Object[] { Type.getInternalName(Object.class) }));
+		}
+
+		il.add(store(node.dest()));
 	}
 
 	@Override
@@ -563,9 +941,9 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
-		il.add(new VarInsnNode(ALOAD, slot(node.key())));
-		il.add(new VarInsnNode(ALOAD, slot(node.value())));
+		il.add(load(node.obj()));
+		il.add(load(node.key()));
+		il.add(load(node.value()));
 		il.add(DispatchMethods.setindex());
 
 		il.add(rp.resume());
@@ -573,19 +951,19 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	@Override
 	public void visit(TabRawSet node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
+		il.add(load(node.obj()));
 		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
-		il.add(new VarInsnNode(ALOAD, slot(node.key())));
-		il.add(new VarInsnNode(ALOAD, slot(node.value())));
+		il.add(load(node.key()));
+		il.add(load(node.value()));
 		il.add(TableMethods.rawset());
 	}
 
 	@Override
 	public void visit(TabRawSetInt node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
+		il.add(load(node.obj()));
 		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
 		il.add(ASMUtils.loadLong(node.idx()));
-		il.add(new VarInsnNode(ALOAD, slot(node.value())));
+		il.add(load(node.value()));
 		il.add(TableMethods.rawset_int());
 	}
 
@@ -618,7 +996,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 		il.add(begin);
 
-		il.add(new VarInsnNode(ALOAD, slot(node.obj())));
+		il.add(load(node.obj()));
 		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Table.class)));
 		il.add(new VarInsnNode(ASTORE, lv_idx_tab));
 
@@ -675,6 +1053,58 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		il.add(new FrameNode(F_CHOP, 3, null, 0, null));
 	}
 
+	@Override
+	public void visit(NumLoopCount node) {
+		if (isInteger(node.init()) && isInteger(node.step())) {
+			Type limitType = isInteger(node.limit()) ? Type.LONG_TYPE : Type.getType(Number.class);
+			il.add(loadUnboxed(node.init(), Type.LONG_TYPE));
+			if (limitType.equals(Type.LONG_TYPE)) {
+				il.add(loadUnboxed(node.limit(), Type.LONG_TYPE));
+			}
+			else {
+				il.add(load(node.limit()));
+				il.add(new TypeInsnNode(CHECKCAST, limitType.getInternalName()));
+			}
+			il.add(loadUnboxed(node.step(), Type.LONG_TYPE));
+			il.add(DispatchMethods.loopCount(limitType));
+		}
+		else {
+			il.add(load(node.init()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(load(node.limit()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(load(node.step()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(DispatchMethods.loopCount());
+		}
+		il.add(storeUnboxed(node.dest(), Type.LONG_TYPE));
+	}
+
+	@Override
+	public void visit(CursorInit node) {
+		il.add(load(node.fn()));
+		il.add(load(node.state()));
+		il.add(load(node.control()));
+		il.add(DispatchMethods.loopCursor());
+		il.add(store(node.dest()));
+	}
+
+	@Override
+	public void visit(CursorNext node) {
+		il.add(load(node.cursor()));
+		il.add(new TypeInsnNode(CHECKCAST, LoopCursorMethods.selfTpe().getInternalName()));
+		il.add(LoopCursorMethods.next());
+		il.add(store(node.dest()));
+	}
+
+	@Override
+	public void visit(CursorValue node) {
+		il.add(load(node.cursor()));
+		il.add(new TypeInsnNode(CHECKCAST, LoopCursorMethods.selfTpe().getInternalName()));
+		il.add(LoopCursorMethods.value());
+		il.add(store(node.dest()));
+	}
+
 	@Override
 	public void visit(Vararg node) {
 		il.add(loadExecutionContext());
@@ -731,7 +1161,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				for (Val v : vl.addrs()) {
 					il.add(new VarInsnNode(ALOAD, lv_idx_args));
 					il.add(ASMUtils.loadInt(idx++));
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 					il.add(new InsnNode(AASTORE));
 				}
 
@@ -765,7 +1195,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 			if (k <= maxKind) {
 				// pass arguments on the JVM stack
 				for (Val v : vl.addrs()) {
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 				}
 				return k;
 			}
@@ -778,7 +1208,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				for (Val v : vl.addrs()) {
 					il.add(new InsnNode(DUP));
 					il.add(ASMUtils.loadInt(idx++));
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 					il.add(new InsnNode(AASTORE));
 				}
 
@@ -800,7 +1230,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	public void visit(TCall node) {
 		il.add(loadExecutionContext());
 		il.add(loadReturnBuffer());
-		il.add(new VarInsnNode(ALOAD, slot(node.target())));  // call target
+		il.add(load(node.target()));  // call target
 		int kind = loadVList(node.args(), ReturnBufferMethods.MAX_TAILCALL_KIND);  // call args
 		il.add(ReturnBufferMethods.tailCall(kind));
 		il.add(_return());
@@ -812,7 +1242,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		il.add(rp.save());
 
 		il.add(loadExecutionContext());
-		il.add(new VarInsnNode(ALOAD, slot(node.fn())));  // call target
+		il.add(load(node.fn()));  // call target
 		int kind = loadVList(node.args(), DispatchMethods.MAX_CALL_KIND);  // call args
 		il.add(DispatchMethods.call(kind));
 
@@ -824,7 +1254,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		il.add(loadExecutionContext());
 		il.add(loadReturnBuffer());
 		il.add(ReturnBufferMethods.get(node.idx()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
@@ -903,7 +1333,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 				else {
 					Var v = (Var) var;
 					assert (context.types.isReified(v));
-					il.add(new VarInsnNode(ALOAD, slot(v)));
+					il.add(load(v));
 					il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Variable.class)));
 				}
 			}
@@ -971,14 +1401,20 @@ class BytecodeEmitVisitor extends CodeVisitor {
 		}
 
 		il.add(cu.fetchInstanceInsns());
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		il.add(store(node.dest()));
 	}
 
 	@Override
 	public void visit(ToNumber node) {
-		il.add(new VarInsnNode(ALOAD, slot(node.src())));
-		il.add(ConversionMethods.toNumericalValue(node.desc()));
-		il.add(new VarInsnNode(ASTORE, slot(node.dest())));
+		if (isNumber(node.src())) {
+			// no conversion needed
+			il.add(move(slots.slotOf(node.src()), slots.slotOf(node.dest())));
+		}
+		else {
+			il.add(load(node.src()));
+			il.add(ConversionMethods.toNumericalValue(node.desc()));
+			il.add(store(node.dest()));
+		}
 	}
 
 	@Override
@@ -1005,7 +1441,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	@Override
 	public void visit(Branch.Condition.Nil cond) {
 		assert (destLabel != null);
-		il.add(new VarInsnNode(ALOAD, slot(cond.addr())));
+		il.add(load(cond.addr()));
 
 		if (!isSub() || resolver.isLocalLabel(destLabel)) {
 			// local jump
@@ -1024,7 +1460,7 @@ class BytecodeEmitVisitor extends CodeVisitor {
 	@Override
 	public void visit(Branch.Condition.Bool cond) {
 		assert (destLabel != null);
-		il.add(new VarInsnNode(ALOAD, slot(cond.addr())));
+		il.add(load(cond.addr()));
 		il.add(ConversionMethods.booleanValueOf());
 
 		if (!isSub() || resolver.isLocalLabel(destLabel)) {
@@ -1042,16 +1478,64 @@ class BytecodeEmitVisitor extends CodeVisitor {
 
 	}
 
+	// is v statically known to be an integer?
+	private boolean isInteger(AbstractVal v) {
+		return Type.LONG_TYPE.equals(numericType(v));
+	}
+
+	@Override
+	public void visit(Branch.Condition.IntLoop cond) {
+		assert (destLabel != null);
+
+		LabelNode l_nojump = new LabelNode();
+
+		if (!isInteger(cond.init())) {
+			il.add(load(cond.init()));
+			il.add(new TypeInsnNode(INSTANCEOF, Type.getInternalName(Long.class)));
+			il.add(new JumpInsnNode(IFEQ, l_nojump));
+		}
+		if (!isInteger(cond.step())) {
+			il.add(load(cond.step()));
+			il.add(new TypeInsnNode(INSTANCEOF, Type.getInternalName(Long.class)));
+			il.add(new JumpInsnNode(IFEQ, l_nojump));
+		}
+
+		if (!isSub() || resolver.isLocalLabel(destLabel)) {
+			// local jump
+			il.add(new JumpInsnNode(GOTO, l(destLabel)));
+		}
+		else {
+			// non-local jump
+			il.add(_nonLocalGoto(destLabel));
+		}
+
+		il.add(l_nojump);
+		il.add(new FrameNode(F_SAME, 0, null, 0, null));
+	}
+
 	@Override
 	public void visit(Branch.Condition.NumLoopEnd cond) {
 		assert (destLabel != null);
-		il.add(new VarInsnNode(ALOAD, slot(cond.var())));
-		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
-		il.add(new VarInsnNode(ALOAD, slot(cond.limit())));
-		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
-		il.add(new VarInsnNode(ALOAD, slot(cond.step())));
-		il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
-		il.add(DispatchMethods.continueLoop());
+
+		Type varType = numericType(cond.var());
+		Type limitType = numericType(cond.limit());
+
+		if (varType != null && limitType != null && numericType(cond.step()) != null) {
+			// all operands are known to be numbers: compare them as primitives
+			il.add(loadUnboxed(cond.var(), varType));
+			il.add(loadUnboxed(cond.limit(), limitType));
+			il.add(loadUnboxed(cond.step(), Type.DOUBLE_TYPE));
+			il.add(DispatchMethods.continueLoop(varType, limitType));
+		}
+		else {
+			il.add(load(cond.var()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(load(cond.limit()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(load(cond.step()));
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(DispatchMethods.continueLoop());
+		}
 
 		if (!isSub() || resolver.isLocalLabel(destLabel)) {
 			// local jump
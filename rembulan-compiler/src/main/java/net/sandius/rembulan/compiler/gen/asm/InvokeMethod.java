@@ -76,10 +76,11 @@ class InvokeMethod {
 
 			// we have (invokeKind - 1) standalone parameters, mapping them onto numSlots
 
-			for (int paramIdx : slotParamMap) {
+			for (int slotIdx = 0; slotIdx < slotParamMap.length; slotIdx++) {
+				int paramIdx = slotParamMap[slotIdx];
 				if (paramIdx < 0) {
 					// slot unused
-					il.add(new InsnNode(ACONST_NULL));
+					il.add(runMethod.loadRegisterDefault(slotIdx));
 				}
 				else {
 					// used by the parameter #paramIdx
@@ -230,10 +231,11 @@ class InvokeMethod {
 			if (context.isVararg()) {
 				il.add(new VarInsnNode(ALOAD, lv_varargs));
 			}
-			for (int paramIdx : slotParamMap) {
+			for (int slotIdx = 0; slotIdx < slotParamMap.length; slotIdx++) {
+				int paramIdx = slotParamMap[slotIdx];
 				if (paramIdx < 0) {
 					// slot not used by a parameter
-					il.add(new InsnNode(ACONST_NULL));
+					il.add(runMethod.loadRegisterDefault(slotIdx));
 				}
 				else {
 					// slot is parameter #paramIdx
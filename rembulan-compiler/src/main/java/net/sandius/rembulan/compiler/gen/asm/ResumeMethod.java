@@ -17,6 +17,7 @@
 package net.sandius.rembulan.compiler.gen.asm;
 
 import net.sandius.rembulan.compiler.gen.asm.helpers.ASMUtils;
+import net.sandius.rembulan.compiler.gen.asm.helpers.BoxedPrimitivesMethods;
 import net.sandius.rembulan.impl.DefaultSavedState;
 import net.sandius.rembulan.impl.NonsuspendableFunctionException;
 import net.sandius.rembulan.runtime.ExecutionContext;
@@ -45,6 +46,17 @@ class ResumeMethod {
 		this.runMethod = Objects.requireNonNull(runMethod);
 	}
 
+	private static MethodInsnNode registerInsn() {
+		return new MethodInsnNode(
+				INVOKEVIRTUAL,
+				Type.getInternalName(DefaultSavedState.class),
+				"register",
+				Type.getMethodDescriptor(
+						Type.getType(Object.class),
+						Type.INT_TYPE),
+				false);
+	}
+
 	public MethodNode methodNode() {
 		MethodNode node = new MethodNode(
 				ACC_PUBLIC,
@@ -88,35 +100,23 @@ class ResumeMethod {
 
 			// registers
 			if (context.isVararg() || runMethod.numOfRegisters() > 0) {
-				il.add(new VarInsnNode(ALOAD, 3));
-				il.add(new MethodInsnNode(
-						INVOKEVIRTUAL,
-						Type.getInternalName(DefaultSavedState.class),
-						"registers",
-						Type.getMethodDescriptor(
-								ASMUtils.arrayTypeFor(Object.class)),
-						false
-				));
-
 				// varargs stored as the 0th element
-				int numRegs = runMethod.numOfRegisters() + (context.isVararg() ? 1 : 0);
-
-				for (int i = 0; i < numRegs; i++) {
-
-					// Note: it might be more elegant to use a local variable
-					// to store the array instead of having to perform SWAPs
-
-					if (i + 1 < numRegs) {
-						il.add(new InsnNode(DUP));
-					}
-					il.add(ASMUtils.loadInt(i));
-					il.add(new InsnNode(AALOAD));
-					if (i == 0 && context.isVararg()) {
-						il.add(new TypeInsnNode(CHECKCAST, ASMUtils.arrayTypeFor(Object.class).getInternalName()));
-					}
+				int regOffset = 0;
+				if (context.isVararg()) {
+					il.add(new VarInsnNode(ALOAD, 3));
+					il.add(ASMUtils.loadInt(0));
+					il.add(registerInsn());
+					il.add(new TypeInsnNode(CHECKCAST, ASMUtils.arrayTypeFor(Object.class).getInternalName()));
+					regOffset = 1;
+				}
 
-					if (i + 1 < numRegs) {
-						il.add(new InsnNode(SWAP));
+				for (int i = 0; i < runMethod.numOfRegisters(); i++) {
+					il.add(new VarInsnNode(ALOAD, 3));
+					il.add(ASMUtils.loadInt(regOffset + i));
+					il.add(registerInsn());
+					if (runMethod.isUnboxedRegister(i)) {
+						il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+						il.add(BoxedPrimitivesMethods.unbox(Number.class, runMethod.registerType(i)));
 					}
 				}
 			}
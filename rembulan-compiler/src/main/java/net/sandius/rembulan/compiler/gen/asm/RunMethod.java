@@ -16,9 +16,11 @@
 
 package net.sandius.rembulan.compiler.gen.asm;
 
+import net.sandius.rembulan.compiler.analysis.types.LuaTypes;
 import net.sandius.rembulan.compiler.gen.CodeSegmenter;
 import net.sandius.rembulan.compiler.gen.SegmentedCode;
 import net.sandius.rembulan.compiler.gen.asm.helpers.ASMUtils;
+import net.sandius.rembulan.compiler.gen.asm.helpers.BoxedPrimitivesMethods;
 import net.sandius.rembulan.compiler.ir.BasicBlock;
 import net.sandius.rembulan.compiler.ir.Label;
 import net.sandius.rembulan.impl.DefaultSavedState;
@@ -49,6 +51,10 @@ class RunMethod {
 	private final List<MethodNode> methodNodes;
 	private final boolean resumable;
 
+	private final Type[] registerTypes;
+	private final int[] registerLocals;
+	private final int registerLocalsSize;
+
 	private final List<ClosureFieldInstance> closureFields;
 	private final List<ConstFieldInstance> constFields;
 
@@ -64,6 +70,18 @@ class RunMethod {
 	public RunMethod(ASMBytecodeEmitter context) {
 		this.context = Objects.requireNonNull(context);
 
+		// registers proven to hold numbers of a single kind are kept unboxed
+		int numRegs = context.slots.numSlots();
+		this.registerTypes = new Type[numRegs];
+		this.registerLocals = new int[numRegs];
+		int lv = slotOffset();
+		for (int i = 0; i < numRegs; i++) {
+			registerTypes[i] = registerTypeFor(context.slotTypes.typeOf(i));
+			registerLocals[i] = lv;
+			lv += registerTypes[i].getSize();
+		}
+		this.registerLocalsSize = lv - slotOffset();
+
 		final SegmentedCode segmentedCode = CodeSegmenter.segment(
 				context.fn.code(),
 				context.compilerSettings.nodeSizeLimit());
@@ -134,6 +152,65 @@ class RunMethod {
 		return context.isVararg() ? LV_VARARGS + 1 : LV_VARARGS;
 	}
 
+	private static Type registerTypeFor(net.sandius.rembulan.compiler.analysis.types.Type slotType) {
+		if (slotType.isSubtypeOf(LuaTypes.NUMBER_INTEGER)) {
+			return Type.LONG_TYPE;
+		}
+		else if (slotType.isSubtypeOf(LuaTypes.NUMBER_FLOAT)) {
+			return Type.DOUBLE_TYPE;
+		}
+		else {
+			return Type.getType(Object.class);
+		}
+	}
+
+	// JVM type of the register idx: long or double for registers that only ever hold
+	// integers or floats, respectively, and Object otherwise
+	public Type registerType(int idx) {
+		return registerTypes[idx];
+	}
+
+	public boolean isUnboxedRegister(int idx) {
+		return registerTypes[idx].getSort() != Type.OBJECT;
+	}
+
+	public int registerLocalIndex(int idx) {
+		return registerLocals[idx];
+	}
+
+	public int registerLocalsSize() {
+		return registerLocalsSize;
+	}
+
+	// loads the value of the register idx to the stack, boxing it if necessary
+	public InsnList loadRegister(int idx) {
+		InsnList il = new InsnList();
+		il.add(new VarInsnNode(registerType(idx).getOpcode(ILOAD), registerLocalIndex(idx)));
+		if (isUnboxedRegister(idx)) {
+			il.add(BoxedPrimitivesMethods.box(registerType(idx)));
+		}
+		return il;
+	}
+
+	// stores the object at the top of the stack to the register idx, unboxing it if necessary
+	public InsnList storeRegister(int idx) {
+		InsnList il = new InsnList();
+		if (isUnboxedRegister(idx)) {
+			il.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(Number.class)));
+			il.add(BoxedPrimitivesMethods.unbox(Number.class, registerType(idx)));
+		}
+		il.add(new VarInsnNode(registerType(idx).getOpcode(ISTORE), registerLocalIndex(idx)));
+		return il;
+	}
+
+	// pushes the initial value of the register idx (null or zero)
+	public AbstractInsnNode loadRegisterDefault(int idx) {
+		Type t = registerType(idx);
+		if (t.equals(Type.LONG_TYPE)) return ASMUtils.loadLong(0L);
+		else if (t.equals(Type.DOUBLE_TYPE)) return ASMUtils.loadDouble(0.0);
+		else return new InsnNode(ACONST_NULL);
+	}
+
 	public boolean isResumable() {
 		return resumable;
 	}
@@ -186,9 +263,6 @@ class RunMethod {
 
 		il.add(begin);
 
-		il.add(new TypeInsnNode(NEW, Type.getInternalName(DefaultSavedState.class)));
-		il.add(new InsnNode(DUP));
-
 		// resumption point
 		il.add(new VarInsnNode(ILOAD, 1));
 
@@ -207,10 +281,16 @@ class RunMethod {
 			}
 		}
 
-		il.add(ASMUtils.ctor(
-				Type.getType(DefaultSavedState.class),
-				Type.INT_TYPE,
-				ASMUtils.arrayTypeFor(Object.class)));
+		// the array is fresh: no need to copy it
+		il.add(new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(DefaultSavedState.class),
+				"wrap",
+				Type.getMethodDescriptor(
+						Type.getType(DefaultSavedState.class),
+						Type.INT_TYPE,
+						ASMUtils.arrayTypeFor(Object.class)),
+				false));
 
 		il.add(new InsnNode(ARETURN));
 
@@ -246,7 +326,7 @@ class RunMethod {
 			args.add(ASMUtils.arrayTypeFor(Object.class));
 		}
 		for (int i = 0; i < numOfRegisters(); i++) {
-			args.add(Type.getType(Object.class));
+			args.add(registerType(i));
 		}
 		return Type.getMethodType(returnType, args.toArray(new Type[0]));
 	}
@@ -307,7 +387,7 @@ class RunMethod {
 			il.add(new VarInsnNode(ALOAD, LV_VARARGS));
 		}
 		for (int i = 0; i < numOfRegisters(); i++) {
-			il.add(new VarInsnNode(ALOAD, slotOffset() + i));
+			il.add(loadRegister(i));
 		}
 		il.add(snapshotMethodInvokeInsn());
 
@@ -438,7 +518,7 @@ class RunMethod {
 		}
 
 		for (int i = 0; i < numOfRegisters(); i++) {
-			locals.add(new LocalVariableNode("s_" + i, Type.getDescriptor(Object.class), null, l_begin, l_end, slotOffset() + i));
+			locals.add(new LocalVariableNode("s_" + i, registerType(i).getDescriptor(), null, l_begin, l_end, registerLocalIndex(i)));
 		}
 
 		return locals;
@@ -543,7 +623,7 @@ class RunMethod {
 
 		InsnList il = node.instructions;
 
-		int lvOffset = slotOffset() + numOfRegisters();
+		int lvOffset = slotOffset() + registerLocalsSize();
 
 		int lv_rpp        = lvOffset + 0;
 		int lv_methodIdx  = lvOffset + 1;
@@ -628,7 +708,7 @@ class RunMethod {
 				il.add(new VarInsnNode(ALOAD, LV_VARARGS));
 			}
 			for (int j = 0; j < numOfRegisters(); j++) {
-				il.add(new VarInsnNode(ALOAD, slotOffset() + j));
+				il.add(new VarInsnNode(registerType(j).getOpcode(ILOAD), registerLocalIndex(j)));
 			}
 
 			il.add(new MethodInsnNode(INVOKESPECIAL,
@@ -667,28 +747,32 @@ class RunMethod {
 
 		// registers
 		if (context.isVararg() || numOfRegisters() > 0) {
-			il.add(new VarInsnNode(ALOAD, lv_savedState));
-			il.add(new MethodInsnNode(
-					INVOKEVIRTUAL,
-					Type.getInternalName(DefaultSavedState.class),
-					"registers",
-					Type.getMethodDescriptor(
-							ASMUtils.arrayTypeFor(Object.class)),
-					false
-			));
-
 			int numRegs = numOfRegisters() + (context.isVararg() ? 1 : 0);
 
 			for (int i = 0; i < numRegs; i++) {
-				if (i + 1 < numRegs) {
-					il.add(new InsnNode(DUP));
-				}
+				il.add(new VarInsnNode(ALOAD, lv_savedState));
 				il.add(ASMUtils.loadInt(i));
-				il.add(new InsnNode(AALOAD));
-				if (i == 0 && context.isVararg()) {
-					il.add(new TypeInsnNode(CHECKCAST, ASMUtils.arrayTypeFor(Object.class).getInternalName()));
+				il.add(new MethodInsnNode(
+						INVOKEVIRTUAL,
+						Type.getInternalName(DefaultSavedState.class),
+						"register",
+						Type.getMethodDescriptor(
+								Type.getType(Object.class),
+								Type.INT_TYPE),
+						false
+				));
+				if (context.isVararg()) {
+					if (i == 0) {
+						il.add(new TypeInsnNode(CHECKCAST, ASMUtils.arrayTypeFor(Object.class).getInternalName()));
+						il.add(new VarInsnNode(ASTORE, LV_VARARGS));
+					}
+					else {
+						il.add(storeRegister(i - 1));
+					}
+				}
+				else {
+					il.add(storeRegister(i));
 				}
-				il.add(new VarInsnNode(ASTORE, LV_VARARGS + i));
 			}
 		}
 
@@ -106,6 +106,21 @@ public class BoxedPrimitivesMethods {
 		return box(from, Type.getType(to));
 	}
 
+	public static MethodInsnNode box(Type from) {
+		if (from.equals(Type.LONG_TYPE)) {
+			return box(from, Long.class);
+		}
+		else if (from.equals(Type.DOUBLE_TYPE)) {
+			return box(from, Double.class);
+		}
+		else if (from.equals(Type.BOOLEAN_TYPE)) {
+			return box(from, Boolean.class);
+		}
+		else {
+			throw new UnsupportedOperationException("Unsupported primitive type: " + from);
+		}
+	}
+
 	public static AbstractInsnNode unbox(Class clazz, Type requiredType) {
 		if (requiredType.equals(Type.LONG_TYPE)) {
 			return BoxedPrimitivesMethods.longValue(clazz);
@@ -18,6 +18,7 @@ package net.sandius.rembulan.compiler.gen.asm.helpers;
 
 import net.sandius.rembulan.runtime.Dispatch;
 import net.sandius.rembulan.runtime.ExecutionContext;
+import net.sandius.rembulan.runtime.LoopCursor;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
@@ -78,6 +79,31 @@ public class DispatchMethods {
 				false);
 	}
 
+	public static AbstractInsnNode concat() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				OP_CONCAT,
+				Type.getMethodDescriptor(
+						Type.VOID_TYPE,
+						Type.getType(ExecutionContext.class),
+						ASMUtils.arrayTypeFor(Object.class)),
+				false);
+	}
+
+	public static AbstractInsnNode loopCursor() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				"loopCursor",
+				Type.getMethodDescriptor(
+						Type.getType(LoopCursor.class),
+						Type.getType(Object.class),
+						Type.getType(Object.class),
+						Type.getType(Object.class)),
+				false);
+	}
+
 	public static AbstractInsnNode numeric(String methodName, int numArgs) {
 		Type[] args = new Type[numArgs];
 		Arrays.fill(args, Type.getType(Number.class));
@@ -91,6 +117,18 @@ public class DispatchMethods {
 				false);
 	}
 
+	public static AbstractInsnNode numericComparison(String methodName) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				methodName,
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						Type.getType(Number.class),
+						Type.getType(Number.class)),
+				false);
+	}
+
 	public static AbstractInsnNode index() {
 		return dynamic(OP_INDEX, 2);
 	}
@@ -132,4 +170,45 @@ public class DispatchMethods {
 				false);
 	}
 
+	// var and limit are primitives of types varType and limitType, step is a double
+	public static AbstractInsnNode continueLoop(Type varType, Type limitType) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				"signed_le",
+				Type.getMethodDescriptor(
+						Type.BOOLEAN_TYPE,
+						varType,
+						limitType,
+						Type.DOUBLE_TYPE),
+				false);
+	}
+
+	public static AbstractInsnNode loopCount() {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				"loopCount",
+				Type.getMethodDescriptor(
+						Type.LONG_TYPE,
+						Type.getType(Number.class),
+						Type.getType(Number.class),
+						Type.getType(Number.class)),
+				false);
+	}
+
+	// init and step are longs, limit is either a long or a Number
+	public static AbstractInsnNode loopCount(Type limitType) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(Dispatch.class),
+				"loopCount",
+				Type.getMethodDescriptor(
+						Type.LONG_TYPE,
+						Type.LONG_TYPE,
+						limitType,
+						Type.LONG_TYPE),
+				false);
+	}
+
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler.gen.asm.helpers;
+
+import net.sandius.rembulan.runtime.IndexCache;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+
+import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.NEW;
+
+public class IndexCacheMethods {
+
+	private IndexCacheMethods() {
+		// not to be instantiated
+	}
+
+	public static Type selfTpe() {
+		return Type.getType(IndexCache.class);
+	}
+
+	// loadKey loads the key to the stack
+	public static InsnList newInstance(InsnList loadKey) {
+		InsnList il = new InsnList();
+		il.add(new TypeInsnNode(NEW, selfTpe().getInternalName()));
+		il.add(new InsnNode(DUP));
+		il.add(loadKey);
+		il.add(new MethodInsnNode(
+				INVOKESPECIAL,
+				selfTpe().getInternalName(),
+				"<init>",
+				Type.getMethodDescriptor(
+						Type.VOID_TYPE,
+						Type.getType(Object.class)),
+				false));
+		return il;
+	}
+
+	public static AbstractInsnNode get() {
+		return new MethodInsnNode(
+				INVOKEVIRTUAL,
+				selfTpe().getInternalName(),
+				"get",
+				Type.getMethodDescriptor(
+						Type.getType(Object.class),
+						Type.getType(Object.class)),
+				false);
+	}
+
+}
@@ -36,12 +36,27 @@ public class OperatorMethods {
 	}
 
 	public static AbstractInsnNode rawBinaryOperator(String methodName, Type returnType, Type argType) {
+		return rawBinaryOperator(methodName, returnType, argType, argType);
+	}
+
+	public static AbstractInsnNode rawBinaryOperator(String methodName, Type returnType, Type leftType, Type rightType) {
 		return new MethodInsnNode(
 				INVOKESTATIC,
 				Type.getInternalName(LuaMathOperators.class),
 				methodName,
 				Type.getMethodDescriptor(
 						returnType,
+						leftType,
+						rightType),
+				false);
+	}
+
+	public static AbstractInsnNode rawUnaryOperator(String methodName, Type argType) {
+		return new MethodInsnNode(
+				INVOKESTATIC,
+				Type.getInternalName(LuaMathOperators.class),
+				methodName,
+				Type.getMethodDescriptor(
 						argType,
 						argType),
 				false);
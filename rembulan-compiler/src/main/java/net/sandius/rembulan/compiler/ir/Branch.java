@@ -111,6 +111,31 @@ public class Branch extends BlockTermNode implements JmpNode {
 
 		}
 
+		public static class IntLoop extends Condition {
+
+			private final Val init;
+			private final Val step;
+
+			public IntLoop(Val init, Val step) {
+				this.init = Objects.requireNonNull(init);
+				this.step = Objects.requireNonNull(step);
+			}
+
+			public Val init() {
+				return init;
+			}
+
+			public Val step() {
+				return step;
+			}
+
+			@Override
+			public void accept(IRVisitor visitor) {
+				visitor.visit(this);
+			}
+
+		}
+
 		public static class NumLoopEnd extends Condition {
 
 			private final Val var;
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sandius.rembulan.compiler.ir;
+
+import java.util.Objects;
+
+public class CursorInit extends BodyNode {
+
+	private final Val dest;
+	private final Val fn;
+	private final Val state;
+	private final Val control;
+
+	public CursorInit(Val dest, Val fn, Val state, Val control) {
+		this.dest = Objects.requireNonNull(dest);
+		this.fn = Objects.requireNonNull(fn);
+		this.state = Objects.requireNonNull(state);
+		this.control = Objects.requireNonNull(control);
+	}
+
+	public Val dest() {
+		return dest;
+	}
+
+	public Val fn() {
+		return fn;
+	}
+
+	public Val state() {
+		return state;
+	}
+
+	public Val control() {
+		return control;
+	}
+
+	@Override
+	public void accept(IRVisitor visitor) {
+		visitor.visit(this);
+	}
+
+}
@@ -58,6 +58,10 @@ public abstract class IRVisitor {
 		if (v != null) v.visit(node);
 	}
 
+	public void visit(Concat node) {
+		if (v != null) v.visit(node);
+	}
+
 
 	public void visit(TabNew node) {
 		if (v != null) v.visit(node);
@@ -83,6 +87,22 @@ public abstract class IRVisitor {
 		if (v != null) v.visit(node);
 	}
 
+	public void visit(NumLoopCount node) {
+		if (v != null) v.visit(node);
+	}
+
+	public void visit(CursorInit node) {
+		if (v != null) v.visit(node);
+	}
+
+	public void visit(CursorNext node) {
+		if (v != null) v.visit(node);
+	}
+
+	public void visit(CursorValue node) {
+		if (v != null) v.visit(node);
+	}
+
 
 	public void visit(VarInit node) {
 		if (v != null) v.visit(node);
@@ -169,6 +189,10 @@ public abstract class IRVisitor {
 		if (v != null) v.visit(cond);
 	}
 
+	public void visit(Branch.Condition.IntLoop cond) {
+		if (v != null) v.visit(cond);
+	}
+
 	public void visit(Branch.Condition.NumLoopEnd cond) {
 		if (v != null) v.visit(cond);
 	}
@@ -83,6 +83,21 @@ class BranchInlinerVisitor extends CodeTransformerVisitor {
 		}
 	}
 
+	@Override
+	public void visit(Branch.Condition.IntLoop cond) {
+		Type it = types.typeOf(cond.init());
+		Type st = types.typeOf(cond.step());
+		if (it.isSubtypeOf(LuaTypes.NUMBER_INTEGER) && st.isSubtypeOf(LuaTypes.NUMBER_INTEGER)) {
+			inline = Boolean.TRUE;
+		}
+		else if (it.isSubtypeOf(LuaTypes.NUMBER_FLOAT) || st.isSubtypeOf(LuaTypes.NUMBER_FLOAT)) {
+			inline = Boolean.FALSE;
+		}
+		else {
+			inline = null;
+		}
+	}
+
 	@Override
 	public void visit(Branch.Condition.NumLoopEnd cond) {
 		inline = null;
@@ -141,6 +141,11 @@ class CPUAccountingVisitor extends CodeTransformerVisitor {
 			account.staticCost();
 		}
 
+		@Override
+		public void visit(Concat node) {
+			account.staticCost();
+		}
+
 		@Override
 		public void visit(TabNew node) {
 			account.staticCost();
@@ -171,6 +176,26 @@ class CPUAccountingVisitor extends CodeTransformerVisitor {
 			account.dynamicCost();
 		}
 
+		@Override
+		public void visit(NumLoopCount node) {
+			account.staticCost();
+		}
+
+		@Override
+		public void visit(CursorInit node) {
+			account.staticCost();
+		}
+
+		@Override
+		public void visit(CursorNext node) {
+			account.staticCost();
+		}
+
+		@Override
+		public void visit(CursorValue node) {
+			account.staticCost();
+		}
+
 		@Override
 		public void visit(Ret node) {
 			account.staticCost();
@@ -20,6 +20,7 @@ import net.sandius.rembulan.compiler.IRFunc;
 import net.sandius.rembulan.compiler.ir.BasicBlock;
 import net.sandius.rembulan.compiler.ir.BodyNode;
 import net.sandius.rembulan.compiler.ir.Code;
+import net.sandius.rembulan.compiler.ir.Jmp;
 import net.sandius.rembulan.compiler.ir.Label;
 import net.sandius.rembulan.compiler.ir.ToNext;
 
@@ -94,7 +95,9 @@ public abstract class CodeSimplifier {
 		Objects.requireNonNull(a);
 		Objects.requireNonNull(b);
 
-		if (a.end() instanceof ToNext) {
+		// a jump to the immediately following block is equivalent to falling through to it
+		if (a.end() instanceof ToNext
+				|| (a.end() instanceof Jmp && ((Jmp) a.end()).jmpDest().equals(b.label()))) {
 			List<BodyNode> body = new ArrayList<>();
 			body.addAll(a.body());
 			body.addAll(b.body());
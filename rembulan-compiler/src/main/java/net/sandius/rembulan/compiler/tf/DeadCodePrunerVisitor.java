@@ -23,6 +23,7 @@ import net.sandius.rembulan.compiler.ir.BodyNode;
 import net.sandius.rembulan.compiler.ir.IRNode;
 import net.sandius.rembulan.compiler.ir.LoadConst;
 import net.sandius.rembulan.compiler.ir.MultiGet;
+import net.sandius.rembulan.compiler.ir.NumLoopCount;
 import net.sandius.rembulan.compiler.ir.Var;
 import net.sandius.rembulan.compiler.ir.VarInit;
 import net.sandius.rembulan.compiler.ir.VarLoad;
@@ -117,6 +118,13 @@ public class DeadCodePrunerVisitor extends CodeTransformerVisitor {
 		}
 	}
 
+	@Override
+	public void visit(NumLoopCount node) {
+		if (!isLiveOut(node, node.dest())) {
+			skip(node);
+		}
+	}
+
 	@Override
 	public void visit(MultiGet node) {
 		if (!isLiveOut(node, node.dest())) {
@@ -57,6 +57,11 @@ public abstract class DefaultNodeActionVisitor extends IRVisitor {
 		action(node);
 	}
 
+	@Override
+	public void visit(Concat node) {
+		action(node);
+	}
+
 	@Override
 	public void visit(TabNew node) {
 		action(node);
@@ -87,6 +92,26 @@ public abstract class DefaultNodeActionVisitor extends IRVisitor {
 		action(node);
 	}
 
+	@Override
+	public void visit(NumLoopCount node) {
+		action(node);
+	}
+
+	@Override
+	public void visit(CursorInit node) {
+		action(node);
+	}
+
+	@Override
+	public void visit(CursorNext node) {
+		action(node);
+	}
+
+	@Override
+	public void visit(CursorValue node) {
+		action(node);
+	}
+
 	@Override
 	public void visit(VarInit node) {
 		action(node);
@@ -66,6 +66,11 @@ public class IRPrinterVisitor extends CodeVisitor {
 		ps.println("\t" + node.op().toString().toLowerCase() + " " + node.dest() + " " + node.arg());
 	}
 
+	@Override
+	public void visit(Concat node) {
+		ps.println("\tconcat " + node.dest() + " " + node.args());
+	}
+
 	@Override
 	public void visit(TabNew node) {
 		ps.println("\ttabnew " + node.dest() + " " + node.array() + " " + node.hash());
@@ -96,6 +101,26 @@ public class IRPrinterVisitor extends CodeVisitor {
 		ps.println("\ttabrawappendstack " + node.obj() + " " + node.src() + " " + node.firstIdx());
 	}
 
+	@Override
+	public void visit(NumLoopCount node) {
+		ps.println("\tloopcount " + node.dest() + " " + node.init() + " " + node.limit() + " " + node.step());
+	}
+
+	@Override
+	public void visit(CursorInit node) {
+		ps.println("\tcursorinit " + node.dest() + " " + node.fn() + " " + node.state() + " " + node.control());
+	}
+
+	@Override
+	public void visit(CursorNext node) {
+		ps.println("\tcursornext " + node.dest() + " " + node.cursor());
+	}
+
+	@Override
+	public void visit(CursorValue node) {
+		ps.println("\tcursorvalue " + node.dest() + " " + node.cursor());
+	}
+
 	@Override
 	public void visit(VarInit node) {
 		ps.println("\tvarinit " + node.var() + " " + node.src());
@@ -190,6 +215,11 @@ public class IRPrinterVisitor extends CodeVisitor {
 		ps.print(cond.expected() + " " + cond.addr());
 	}
 
+	@Override
+	public void visit(Branch.Condition.IntLoop cond) {
+		ps.print("intloop " + cond.init() + " " + cond.step());
+	}
+
 	@Override
 	public void visit(Branch.Condition.NumLoopEnd cond) {
 		ps.print("loopend " + cond.var() + " " + cond.limit() + " " + cond.step());
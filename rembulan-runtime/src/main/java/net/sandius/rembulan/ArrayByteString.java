@@ -29,22 +29,46 @@ import java.util.Objects;
 
 /**
  * A byte string backed by a byte array.
+ *
+ * <p>The byte string may be a view of a contiguous region of the array: substrings
+ * share the array of the string they were taken from rather than copying it. A substring
+ * that is much smaller than the array is copied instead, so that it does not keep
+ * a large array alive.</p>
  */
 class ArrayByteString extends ByteString {
 
 	static final ArrayByteString EMPTY_INSTANCE = new ArrayByteString(new byte[0]);
 
+	// substrings shorter than 1/2^SHARE_SHIFT of the backing array are copied
+	static final int SHARE_SHIFT = 3;
+
 	private final byte[] bytes;
+	private final int offset;
+	private final int length;
 	private int hashCode;
 
-	ArrayByteString(byte[] bytes) {
+	ArrayByteString(byte[] bytes, int offset, int length) {
 		this.bytes = Objects.requireNonNull(bytes);
+		this.offset = offset;
+		this.length = length;
+	}
+
+	ArrayByteString(byte[] bytes) {
+		this(bytes, 0, bytes.length);
 	}
 
 	@Override
 	protected boolean equals(ByteString that) {
 		if (this.length() != that.length()) return false;
 
+		if (that instanceof ArrayByteString) {
+			ArrayByteString other = (ArrayByteString) that;
+			for (int i = 0; i < length; i++) {
+				if (this.bytes[this.offset + i] != other.bytes[other.offset + i]) return false;
+			}
+			return true;
+		}
+
 		int len = this.length();
 		for (int i = 0; i < len; i++) {
 			if (this.byteAt(i) != that.byteAt(i)) return false;
@@ -57,9 +81,9 @@ class ArrayByteString extends ByteString {
 	public int hashCode() {
 		int hc = hashCode;
 		if (hc == 0) {
-			if (bytes.length > 0) {
-				for (byte b : bytes) {
-					hc = (hc * 31) + (b & 0xff);
+			if (length > 0) {
+				for (int i = offset; i < offset + length; i++) {
+					hc = (hc * 31) + (bytes[i] & 0xff);
 				}
 				hashCode = hc;
 			}
@@ -80,45 +104,48 @@ class ArrayByteString extends ByteString {
 
 	@Override
 	public String toRawString() {
-		char[] chars = new char[bytes.length];
+		char[] chars = new char[length];
 		for (int i = 0; i < chars.length; i++) {
-			chars[i] = (char) (bytes[i] & 0xff);
+			chars[i] = (char) (bytes[offset + i] & 0xff);
 		}
 		return String.valueOf(chars);
 	}
 
 	@Override
 	public int length() {
-		return bytes.length;
+		return length;
 	}
 
 	@Override
 	int maybeLength() {
-		return bytes.length;
+		return length;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return bytes.length == 0;
+		return length == 0;
 	}
 
 	@Override
 	public byte byteAt(int index) {
-		return bytes[index];
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		return bytes[offset + index];
 	}
 
 	@Override
 	public ByteIterator byteIterator() {
-		return new ArrayByteIterator(bytes);
+		return new ArrayByteIterator(bytes, offset, length);
 	}
 
 	@Override
 	public InputStream asInputStream() {
 		// no need to go via the iterator
-		return new ByteArrayInputStream(bytes);
+		return new ByteArrayInputStream(bytes, offset, length);
 	}
 
-	private static void checkSubstringBounds(int start, int end, int len) {
+	static void checkSubstringBounds(int start, int end, int len) {
 		if (start > end) throw new IndexOutOfBoundsException("start > end (" + start + " > " + end + ")");
 		else if (start < 0) throw new IndexOutOfBoundsException("start < 0 (" + start + " < 0)");
 		else if (end < 0) throw new IndexOutOfBoundsException("end < 0 (" + end + " < 0)");
@@ -127,18 +154,37 @@ class ArrayByteString extends ByteString {
 
 	@Override
 	public ByteString substring(int start, int end) {
-		checkSubstringBounds(start, end, bytes.length);
-		return new ArrayByteString(Arrays.copyOfRange(bytes, start, end));
+		checkSubstringBounds(start, end, length);
+		if (start == 0 && end == length) {
+			return this;
+		}
+		else if (start == end) {
+			return EMPTY_INSTANCE;
+		}
+		else if (end - start < bytes.length >>> SHARE_SHIFT) {
+			// don't retain the (much larger) array
+			return new ArrayByteString(Arrays.copyOfRange(bytes, offset + start, offset + end));
+		}
+		else {
+			// share the array
+			return new ArrayByteString(bytes, offset + start, end - start);
+		}
 	}
 
 	@Override
 	public byte[] getBytes() {
-		return Arrays.copyOf(bytes, bytes.length);
+		return Arrays.copyOfRange(bytes, offset, offset + length);
 	}
 
 	@Override
 	public void putTo(ByteBuffer buffer) {
-		buffer.put(bytes);
+		buffer.put(bytes, offset, length);
+	}
+
+	@Override
+	public ByteBuffer asReadOnlyByteBuffer() {
+		// the buffer is read-only: no need for a defensive copy
+		return ByteBuffer.wrap(bytes, offset, length).slice().asReadOnlyBuffer();
 	}
 
 	@Override
@@ -149,7 +195,7 @@ class ArrayByteString extends ByteString {
 
 	@Override
 	public boolean startsWith(byte b) {
-		return bytes.length > 0 && bytes[0] == b;
+		return length > 0 && bytes[offset] == b;
 	}
 
 }
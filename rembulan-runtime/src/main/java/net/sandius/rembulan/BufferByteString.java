@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+import net.sandius.rembulan.util.ByteIterator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A byte string backed by a {@link ByteBuffer}, such as a memory-mapped file.
+ *
+ * <p>The buffer is a read-only view: substrings share the buffer of the string they were
+ * taken from rather than copying it.</p>
+ *
+ * <p>Since the contents of the buffer may change, so may the contents of this byte string.
+ * Its hash code is cached, and therefore becomes stale when that happens: this is why
+ * tables and caches store a {@linkplain #detached() detached} copy instead. When the buffer
+ * is a mapped file that has been truncated, accessing its contents makes the JVM throw
+ * an {@link InternalError}; the accessors of this class translate it to
+ * a {@link LuaRuntimeException}.</p>
+ */
+class BufferByteString extends ByteString {
+
+	// size of the chunks copied when writing to output streams
+	private static final int WRITE_CHUNK_SIZE = 8192;
+
+	// read-only, position 0, limit equal to the length of this string
+	private final ByteBuffer buffer;
+	private int hashCode;
+
+	BufferByteString(ByteBuffer buffer) {
+		this.buffer = Objects.requireNonNull(buffer).slice().asReadOnlyBuffer();
+	}
+
+	// an internal error thrown by an access to the buffer signals that it is no longer accessible
+	private static LuaRuntimeException inaccessible(InternalError ex) {
+		return new LuaRuntimeException("contents of a mapped file are no longer accessible (was the file truncated?)");
+	}
+
+	@Override
+	protected boolean equals(ByteString that) {
+		if (this.length() != that.length()) return false;
+
+		try {
+			if (that instanceof BufferByteString) {
+				return this.buffer.equals(((BufferByteString) that).buffer);
+			}
+
+			int len = this.length();
+			for (int i = 0; i < len; i++) {
+				if (this.buffer.get(i) != that.byteAt(i)) return false;
+			}
+		}
+		catch (InternalError ex) {
+			throw inaccessible(ex);
+		}
+
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hc = hashCode;
+		if (hc == 0) {
+			int len = length();
+			try {
+				for (int i = 0; i < len; i++) {
+					hc = (hc * 31) + (buffer.get(i) & 0xff);
+				}
+			}
+			catch (InternalError ex) {
+				throw inaccessible(ex);
+			}
+			hashCode = hc;
+		}
+
+		return hc;
+	}
+
+	@Override
+	int maybeHashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public String toString() {
+		return decode();
+	}
+
+	@Override
+	public String toRawString() {
+		char[] chars = new char[length()];
+		try {
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = (char) (buffer.get(i) & 0xff);
+			}
+		}
+		catch (InternalError ex) {
+			throw inaccessible(ex);
+		}
+		return String.valueOf(chars);
+	}
+
+	@Override
+	public int length() {
+		return buffer.limit();
+	}
+
+	@Override
+	int maybeLength() {
+		return buffer.limit();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return buffer.limit() == 0;
+	}
+
+	@Override
+	public byte byteAt(int index) {
+		if (index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		try {
+			return buffer.get(index);
+		}
+		catch (InternalError ex) {
+			throw inaccessible(ex);
+		}
+	}
+
+	@Override
+	public ByteIterator byteIterator() {
+		return new ByteIterator() {
+
+			private int idx = 0;
+
+			@Override
+			public byte nextByte() {
+				if (idx < buffer.limit()) {
+					try {
+						return buffer.get(idx++);
+					}
+					catch (InternalError ex) {
+						throw inaccessible(ex);
+					}
+				}
+				else {
+					throw new NoSuchElementException();
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return idx < buffer.limit();
+			}
+
+			@Override
+			public Byte next() {
+				return Byte.valueOf(nextByte());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("read-only iterator");
+			}
+
+		};
+	}
+
+	@Override
+	public ByteString substring(int start, int end) {
+		ArrayByteString.checkSubstringBounds(start, end, length());
+		if (start == 0 && end == length()) {
+			return this;
+		}
+		else if (start == end) {
+			return ByteString.empty();
+		}
+		else {
+			// share the buffer
+			ByteBuffer view = buffer.duplicate();
+			view.position(start);
+			view.limit(end);
+			return new BufferByteString(view);
+		}
+	}
+
+	@Override
+	public byte[] getBytes() {
+		byte[] bytes = new byte[length()];
+		try {
+			buffer.duplicate().get(bytes);
+		}
+		catch (InternalError ex) {
+			throw inaccessible(ex);
+		}
+		return bytes;
+	}
+
+	@Override
+	public ByteString detached() {
+		return new ArrayByteString(getBytes());
+	}
+
+	@Override
+	public void putTo(ByteBuffer buffer) {
+		try {
+			buffer.put(this.buffer.duplicate());
+		}
+		catch (InternalError ex) {
+			throw inaccessible(ex);
+		}
+	}
+
+	@Override
+	public ByteBuffer asReadOnlyByteBuffer() {
+		return buffer.duplicate();
+	}
+
+	@Override
+	public void writeTo(OutputStream stream) throws IOException {
+		// copy in chunks rather than materialising the whole (possibly very long) string
+		ByteBuffer view = buffer.duplicate();
+		byte[] chunk = new byte[Math.min(view.remaining(), WRITE_CHUNK_SIZE)];
+		while (view.hasRemaining()) {
+			int n = Math.min(view.remaining(), chunk.length);
+			try {
+				view.get(chunk, 0, n);
+			}
+			catch (InternalError ex) {
+				throw inaccessible(ex);
+			}
+			stream.write(chunk, 0, n);
+		}
+	}
+
+	@Override
+	public boolean startsWith(byte b) {
+		try {
+			return length() > 0 && buffer.get(0) == b;
+		}
+		catch (InternalError ex) {
+			throw inaccessible(ex);
+		}
+	}
+
+}
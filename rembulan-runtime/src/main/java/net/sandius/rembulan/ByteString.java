@@ -165,7 +165,40 @@ public abstract class ByteString implements Comparable<ByteString> {
 			throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length);
 		}
 
-		return wrap(Arrays.copyOfRange(bytes, offset, length));
+		return wrap(Arrays.copyOfRange(bytes, offset, offset + length));
+	}
+
+	/**
+	 * Returns a byte string backed by the remaining bytes of the buffer {@code buffer},
+	 * without copying them. Substrings of the returned byte string share the buffer
+	 * as well.
+	 *
+	 * <p>The byte string reflects any subsequent modifications of the contents
+	 * of {@code buffer}: the caller must ensure that the contents remain unchanged for
+	 * the lifetime of the byte string. This method is intended for read-only buffers
+	 * such as memory-mapped files.</p>
+	 *
+	 * <p>Failing to do so breaks the immutability of the byte string. In particular,
+	 * its hash code is computed only once and cached, and will not match the hash code
+	 * of equal byte strings after the contents of {@code buffer} change. Lua tables and
+	 * the string pattern cache therefore use a {@linkplain #detached() detached} copy
+	 * of the byte string instead of the byte string itself.</p>
+	 *
+	 * <p>When {@code buffer} is a mapped file that is truncated while the byte string is
+	 * in use, accessing the missing bytes makes the JVM raise an {@link InternalError}.
+	 * The accessors of the byte string convert it to a {@link LuaRuntimeException}.
+	 * However, the JVM may report the fault asynchronously, i.e., some time after
+	 * the access, possibly outside of these accessors; and some JVMs are unable to recover
+	 * from faults in bulk copies at all. Mapped files must therefore not be truncated
+	 * while in use.</p>
+	 *
+	 * @param buffer  the buffer to use as the byte string, must not be {@code null}
+	 * @return  a byte string backed by the remaining bytes of {@code buffer}
+	 *
+	 * @throws NullPointerException  if {@code buffer} is {@code null}
+	 */
+	public static ByteString viewOf(ByteBuffer buffer) {
+		return buffer.hasRemaining() ? new BufferByteString(buffer) : empty();
 	}
 
 	/**
@@ -295,6 +328,24 @@ public abstract class ByteString implements Comparable<ByteString> {
 	 */
 	public abstract ByteString substring(int start, int end);
 
+	/**
+	 * Returns a byte string with the same contents as this byte string that does not
+	 * depend on any external storage.
+	 *
+	 * <p>Byte strings obtained using {@link #viewOf(ByteBuffer)} (and their substrings)
+	 * are backed by a buffer whose contents may change. For such byte strings, this method
+	 * returns a copy of their current contents. All other byte strings are immutable,
+	 * and this method returns the byte string itself.</p>
+	 *
+	 * <p>Byte strings that are retained beyond the operation at hand, and in particular
+	 * those used as keys in hash-based collections, should be detached first.</p>
+	 *
+	 * @return  an immutable byte string with the same contents as this byte string
+	 */
+	public ByteString detached() {
+		return this;
+	}
+
 	/**
 	 * Puts the contents of this byte string to the specified {@code buffer}.
 	 *
@@ -304,6 +355,21 @@ public abstract class ByteString implements Comparable<ByteString> {
 	 */
 	public abstract void putTo(ByteBuffer buffer);
 
+	/**
+	 * Returns a read-only buffer containing the bytes of this byte string, positioned
+	 * at zero and limited to {@link #length()}.
+	 *
+	 * <p>Unlike {@link #getBytes()}, this method does not need to copy the contents of
+	 * the byte string: the returned buffer may share storage with this byte string, as it
+	 * cannot be used to modify it. This makes it suitable for writing the byte string
+	 * to a channel.</p>
+	 *
+	 * @return  a read-only buffer with the contents of this byte string
+	 */
+	public ByteBuffer asReadOnlyByteBuffer() {
+		return ByteBuffer.wrap(getBytes()).asReadOnlyBuffer();
+	}
+
 	/**
 	 * Writes the contents of this byte string to the specified {@code stream}.
 	 *
@@ -422,6 +488,10 @@ public abstract class ByteString implements Comparable<ByteString> {
 	 * may (<i>but might not necessarily</i>) preserve unmappable and malformed characters
 	 * occurring in the two strings.</p>
 	 *
+	 * <p>The concatenation may be lazy: long results are represented as a tree of their
+	 * constituent byte strings, and are copied into a contiguous array only once their
+	 * contents are accessed.</p>
+	 *
 	 * @param other  the byte string to concatenate this byte string with, must not be {@code null}
 	 * @return  this byte string concatenated with {@code other}
 	 *
@@ -430,14 +500,7 @@ public abstract class ByteString implements Comparable<ByteString> {
 	public ByteString concat(ByteString other) {
 		if (other.isEmpty()) return this;
 		else if (this.isEmpty()) return other;
-
-		byte[] thisBytes = this.getBytes();
-		byte[] otherBytes = other.getBytes();
-
-		byte[] result = new byte[thisBytes.length + otherBytes.length];
-		System.arraycopy(thisBytes, 0, result, 0, thisBytes.length);
-		System.arraycopy(otherBytes, 0, result, thisBytes.length, otherBytes.length);
-		return ByteString.wrap(result);
+		else return RopeByteString.concat(this, other);
 	}
 
 	/**
@@ -18,6 +18,7 @@ package net.sandius.rembulan;
 
 import net.sandius.rembulan.util.Check;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -31,6 +32,9 @@ public class ByteStringBuilder {
 	private byte[] buffer;
 	private int length;
 
+	// true iff buffer is used by a byte string returned by toByteString()
+	private boolean shared;
+
 	private static final int DEFAULT_CAPACITY = 32;
 
 	// don't go any smaller than this
@@ -61,9 +65,15 @@ public class ByteStringBuilder {
 		return newBuf;
 	}
 
+	// ensures that the buffer can hold cap bytes and that it may be written to
 	private void ensureCapacity(int cap) {
 		if (cap > buffer.length) {
 			buffer = resize(buffer, idealCapacity(cap));
+			shared = false;
+		}
+		else if (shared) {
+			buffer = Arrays.copyOf(buffer, buffer.length);
+			shared = false;
 		}
 	}
 
@@ -73,15 +83,19 @@ public class ByteStringBuilder {
 	}
 
 	/**
-	 * Constructs a new empty {@code ByteStringBuilder} that can hold at least {@code capacity}
-	 * bytes.
+	 * Constructs a new empty {@code ByteStringBuilder} that can hold exactly {@code capacity}
+	 * bytes without having to grow its buffer.
+	 *
+	 * <p>If exactly {@code capacity} bytes are appended to the builder, the byte string
+	 * returned by {@link #toByteString()} will share the buffer with the builder
+	 * rather than copy it.</p>
 	 *
 	 * @param capacity  the initial required capacity, must not be negative
 	 *
 	 * @throws IllegalArgumentException  if {@code capacity} is negative
 	 */
 	public ByteStringBuilder(int capacity) {
-		this(new byte[idealCapacity(Check.nonNegative(capacity))], 0);
+		this(new byte[Check.nonNegative(capacity)], 0);
 	}
 
 	/**
@@ -159,6 +173,7 @@ public class ByteStringBuilder {
 		if (index < 0 || index > length) {
 			throw new IndexOutOfBoundsException(String.valueOf(index));
 		}
+		ensureCapacity(length);
 		buffer[index] = value;
 	}
 
@@ -227,7 +242,14 @@ public class ByteStringBuilder {
 	 * @throws NullPointerException  if {@code string} is {@code null}
 	 */
 	public ByteStringBuilder append(ByteString string) {
-		return append(string.getBytes());
+		int len = string.length();
+		if (len > 0) {
+			ensureCapacity(length + len);
+			// write directly into the buffer, avoiding the defensive copy made by getBytes()
+			string.putTo(ByteBuffer.wrap(buffer, length, len));
+			length += len;
+		}
+		return this;
 	}
 
 	/**
@@ -271,7 +293,14 @@ public class ByteStringBuilder {
 	 * @return  a byte string with this builder's contents
 	 */
 	public ByteString toByteString() {
-		return ByteString.copyOf(buffer, 0, length);
+		if (length > 0 && length == buffer.length) {
+			// the buffer is full: share it, copying it lazily if this builder is modified
+			shared = true;
+			return ByteString.wrap(buffer);
+		}
+		else {
+			return ByteString.copyOf(buffer, 0, length);
+		}
 	}
 
 	/**
@@ -280,15 +280,19 @@ public final class Conversions {
 	 *
 	 * <p>If {@code o} is a number, returns the number normalised (see {@link #normaliseKey(Number)}.
 	 * If {@code o} is a {@code java.lang.String}, returns {@code o} as a byte string using
-	 * {@link ByteString#of(String)}. Otherwise, returns {@code o}.</p>
+	 * {@link ByteString#of(String)}. If {@code o} is a byte string backed by a buffer
+	 * (see {@link ByteString#viewOf(java.nio.ByteBuffer)}), returns its
+	 * {@linkplain ByteString#detached() detached} copy. Otherwise, returns {@code o}.</p>
 	 *
 	 * @param o  object to normalise, may be {@code null}
 	 * @return  normalised number if {@code o} is a number, {@code o} as byte string if
-	 *          {@code o} is a {@code java.lang.String}, {@code o} otherwise
+	 *          {@code o} is a {@code java.lang.String}, {@code o} detached if {@code o}
+	 *          is a byte string backed by a buffer, {@code o} otherwise
 	 */
 	public static Object normaliseKey(Object o) {
 		if (o instanceof Number) return normaliseKey((Number) o);
 		else if (o instanceof String) return ByteString.of((String) o);
+		else if (o instanceof BufferByteString) return ((BufferByteString) o).detached();
 		else return o;
 	}
 
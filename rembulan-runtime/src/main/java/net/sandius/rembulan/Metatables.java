@@ -165,6 +165,36 @@ public final class Metatables {
 	 */
 	public static final ByteString MT_MODE = ByteString.constOf("__mode");
 
+	/**
+	 * The metatable keys whose values are cached by tables when used as metatables,
+	 * ordered by the expected frequency of their lookups. The index of a key in this array
+	 * is its index in the metamethod cache of the table.
+	 */
+	private static final ByteString[] CACHED_EVENTS = new ByteString[] {
+			MT_INDEX, MT_NEWINDEX, MT_CALL, MT_EQ, MT_LEN, MT_LT, MT_LE, MT_CONCAT,
+			MT_ADD, MT_SUB, MT_MUL, MT_DIV, MT_MOD, MT_POW, MT_UNM, MT_IDIV,
+			MT_BAND, MT_BOR, MT_BXOR, MT_BNOT, MT_SHL, MT_SHR, MT_MODE
+	};
+
+	static final int NUM_CACHED_EVENTS = CACHED_EVENTS.length;
+
+	// returns the index of event in the metamethod cache, or -1 if event is not cached;
+	// the keys are compared by reference, since the callers use the constants defined above
+	private static int cachedEventIndex(ByteString event) {
+		for (int i = 0; i < CACHED_EVENTS.length; i++) {
+			if (CACHED_EVENTS[i] == event) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// equivalent to mt.rawget(event), using the metamethod cache of mt if possible
+	private static Object rawgetEvent(Table mt, ByteString event) {
+		int idx = cachedEventIndex(event);
+		return idx >= 0 ? mt.rawgetCachedEvent(idx, event) : mt.rawget(event);
+	}
+
 	/**
 	 * Returns the entry with the key {@code event} of the metatable of the {@link LuaObject}
 	 * {@code o}. If {@code o} does not have a metatable or {@code event} does not exist in it as
@@ -189,7 +219,7 @@ public final class Metatables {
 
 		Table mt = o.getMetatable();
 		if (mt != null) {
-			return mt.rawget(event);
+			return rawgetEvent(mt, event);
 		}
 		else {
 			return null;
@@ -217,7 +247,7 @@ public final class Metatables {
 
 		Table mt = metatableProvider.getMetatable(o);
 		if (mt != null) {
-			return mt.rawget(event);
+			return rawgetEvent(mt, event);
 		}
 		else {
 			return null;
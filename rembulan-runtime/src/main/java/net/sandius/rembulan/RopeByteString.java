@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan;
+
+import net.sandius.rembulan.util.ByteIterator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A byte string representing the concatenation of two byte strings.
+ *
+ * <p>Concatenation is performed lazily: a rope is a binary tree whose leaves
+ * are flat byte strings. The contents of the rope are copied into a single array
+ * (<i>flattened</i>) the first time they are needed, i.e. on the first access
+ * to an individual byte, the hash code, or the contents as a whole. Once flattened,
+ * the rope delegates to the flat byte string and drops the references to its children.</p>
+ *
+ * <p>Concatenations whose result is shorter than {@link #FLAT_THRESHOLD} bytes are
+ * flat. Appending a short string to a rope (or prepending a short string to it)
+ * is done so that the depth of the resulting tree remains logarithmic in the number
+ * of its leaves, making the common idiom {@code s = s .. piece} linear rather than
+ * quadratic.</p>
+ */
+class RopeByteString extends ByteString {
+
+	/**
+	 * Concatenations resulting in byte strings of at most this length are not represented
+	 * as ropes.
+	 */
+	static final int FLAT_THRESHOLD = 256;
+
+	/**
+	 * Ropes deeper than this are flattened eagerly.
+	 */
+	static final int MAX_DEPTH = 64;
+
+	private final int length;
+	private final int depth;
+
+	// null once flattened; always written after flat
+	private volatile ByteString left;
+	private volatile ByteString right;
+
+	private volatile ArrayByteString flat;
+
+	private RopeByteString(ByteString left, ByteString right, int length) {
+		this.left = left;
+		this.right = right;
+		this.length = length;
+		this.depth = 1 + Math.max(depthOf(left), depthOf(right));
+		this.flat = null;
+	}
+
+	private static int depthOf(ByteString s) {
+		return s instanceof RopeByteString ? ((RopeByteString) s).depth : 0;
+	}
+
+	private static int lengthOf(ByteString a, ByteString b) {
+		int len = a.length() + b.length();
+		if (len < 0) {
+			throw new IllegalArgumentException("byte string length overflow");
+		}
+		return len;
+	}
+
+	private static ByteString flatConcat(ByteString a, ByteString b, int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer buf = ByteBuffer.wrap(bytes);
+		a.putTo(buf);
+		b.putTo(buf);
+		return new ArrayByteString(bytes);
+	}
+
+	/**
+	 * Returns the concatenation of the non-empty byte strings {@code a} and {@code b}.
+	 *
+	 * @param a  the first byte string, must not be {@code null}
+	 * @param b  the second byte string, must not be {@code null}
+	 * @return  the concatenation of {@code a} and {@code b}
+	 */
+	static ByteString concat(ByteString a, ByteString b) {
+		int len = lengthOf(a, b);
+
+		if (len <= FLAT_THRESHOLD) {
+			return flatConcat(a, b, len);
+		}
+
+		if (a instanceof RopeByteString) {
+			// (l . r) . b  ~>  l . (r . b) as long as the right side does not outgrow l
+			RopeByteString rope = (RopeByteString) a;
+			ByteString l = rope.left;
+			ByteString r = rope.right;
+			if (l != null && r != null && r.length() + b.length() <= l.length()) {
+				return rope(l, concat(r, b));
+			}
+		}
+
+		if (b instanceof RopeByteString) {
+			// a . (l . r)  ~>  (a . l) . r as long as the left side does not outgrow r
+			RopeByteString rope = (RopeByteString) b;
+			ByteString l = rope.left;
+			ByteString r = rope.right;
+			if (l != null && r != null && a.length() + l.length() <= r.length()) {
+				return rope(concat(a, l), r);
+			}
+		}
+
+		return rope(a, b);
+	}
+
+	private static ByteString rope(ByteString a, ByteString b) {
+		RopeByteString result = new RopeByteString(a, b, lengthOf(a, b));
+		return result.depth > MAX_DEPTH ? result.flatten() : result;
+	}
+
+	private ArrayByteString flatten() {
+		ArrayByteString f = flat;
+		if (f == null) {
+			synchronized (this) {
+				f = flat;
+				if (f == null) {
+					byte[] bytes = new byte[length];
+					ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+					// in-order traversal of the leaves, iteratively to avoid deep recursion
+					Deque<ByteString> stack = new ArrayDeque<>();
+					stack.push(this);
+					while (!stack.isEmpty()) {
+						ByteString s = stack.pop();
+						if (s instanceof RopeByteString) {
+							RopeByteString rope = (RopeByteString) s;
+							ByteString l = rope.left;
+							ByteString r = rope.right;
+							if (l != null && r != null) {
+								stack.push(r);
+								stack.push(l);
+							}
+							else {
+								// flattened concurrently
+								rope.flat.putTo(buf);
+							}
+						}
+						else {
+							s.putTo(buf);
+						}
+					}
+
+					f = new ArrayByteString(bytes);
+					flat = f;
+					left = null;
+					right = null;
+				}
+			}
+		}
+		return f;
+	}
+
+	@Override
+	boolean equals(ByteString that) {
+		return this.length() == that.length() && flatten().equals(that);
+	}
+
+	@Override
+	public int hashCode() {
+		return flatten().hashCode();
+	}
+
+	@Override
+	int maybeHashCode() {
+		ArrayByteString f = flat;
+		return f != null ? f.maybeHashCode() : 0;
+	}
+
+	@Override
+	public byte[] getBytes() {
+		return flatten().getBytes();
+	}
+
+	@Override
+	public byte byteAt(int index) {
+		return flatten().byteAt(index);
+	}
+
+	@Override
+	public ByteIterator byteIterator() {
+		return flatten().byteIterator();
+	}
+
+	@Override
+	public InputStream asInputStream() {
+		return flatten().asInputStream();
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	int maybeLength() {
+		return length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	@Override
+	public ByteString substring(int start, int end) {
+		return flatten().substring(start, end);
+	}
+
+	@Override
+	public void putTo(ByteBuffer buffer) {
+		flatten().putTo(buffer);
+	}
+
+	@Override
+	public void writeTo(OutputStream stream) throws IOException {
+		flatten().writeTo(stream);
+	}
+
+	@Override
+	public String toString() {
+		return flatten().toString();
+	}
+
+	@Override
+	public String toRawString() {
+		return flatten().toRawString();
+	}
+
+	@Override
+	public boolean startsWith(byte b) {
+		ArrayByteString f = flat;
+		if (f != null) {
+			return f.startsWith(b);
+		}
+		else {
+			ByteString l = left;
+			return l != null ? l.startsWith(b) : flatten().startsWith(b);
+		}
+	}
+
+}
@@ -36,6 +36,7 @@ class StringByteString extends ByteString {
 
 	private int byteHashCode;
 	private int byteLength;
+	private volatile byte[] bytes;
 
 	StringByteString(String s, Charset charset) {
 		this.string = Objects.requireNonNull(s);
@@ -137,8 +138,13 @@ class StringByteString extends ByteString {
 
 	// must not escape, may be an array from the cache!
 	private byte[] toBytes() {
-		// TODO: cache the result
-		return string.getBytes(charset);
+		byte[] result = bytes;
+		if (result == null) {
+			result = string.getBytes(charset);
+			bytes = result;
+			byteLength = result.length;
+		}
+		return result;
 	}
 
 	@Override
@@ -175,7 +181,8 @@ class StringByteString extends ByteString {
 	public ByteString substring(int start, int end) {
 		byte[] bytes = toBytes();
 		checkSubstringBounds(start, end, bytes.length);
-		return new ArrayByteString(Arrays.copyOfRange(bytes, start, end));
+		// the cached array never escapes, so it can be shared
+		return new ArrayByteString(bytes, start, end - start);
 	}
 
 	@Override
@@ -209,6 +216,12 @@ class StringByteString extends ByteString {
 		buffer.put(toBytes());
 	}
 
+	@Override
+	public ByteBuffer asReadOnlyByteBuffer() {
+		// the buffer is read-only: it's safe to use a possibly cached array
+		return ByteBuffer.wrap(toBytes()).asReadOnlyBuffer();
+	}
+
 	@Override
 	public void writeTo(OutputStream stream) throws IOException {
 		// OutputStream can be extended: pass a defensive copy
@@ -219,7 +232,8 @@ class StringByteString extends ByteString {
 	public ByteString concat(ByteString other) {
 		if (other instanceof StringByteString) {
 			StringByteString that = (StringByteString) other;
-			if (this.charset.equals(that.charset)) {
+			if (this.charset.equals(that.charset)
+					&& this.string.length() + that.string.length() <= RopeByteString.FLAT_THRESHOLD) {
 				// Caveat: preserves malformed characters and characters unmappable by charset
 				return ByteString.of(this.string.concat(that.string));
 			}
@@ -18,8 +18,11 @@ package net.sandius.rembulan;
 
 import net.sandius.rembulan.runtime.Dispatch;
 import net.sandius.rembulan.runtime.ExecutionContext;
+import net.sandius.rembulan.runtime.LoopCursor;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 
@@ -72,6 +75,46 @@ public abstract class Table extends LuaObject {
 		return rawget(Long.valueOf(idx));
 	}
 
+	/**
+	 * Returns an entry reflecting the raw association of {@code key} in this table, or
+	 * {@code null} if {@code key} has no value associated with it, or if this table does not
+	 * provide such an entry.
+	 *
+	 * <p>The value of the returned entry must be the value raw-associated with {@code key}
+	 * in this table for as long as {@code key} has a value associated with it. Once {@code key}
+	 * is removed from this table, the value of the entry must be {@code null}; it must stay
+	 * {@code null} even if {@code key} is associated with a value again later. The entry
+	 * allows clients such as the inline caches of compiled code to repeatedly read the value
+	 * of {@code key} without looking it up in the table.</p>
+	 *
+	 * <p>The default implementation returns {@code null}.</p>
+	 *
+	 * @param key  the key, may be {@code null}
+	 * @return  an entry reflecting the association of {@code key} in this table, or {@code null}
+	 *
+	 * @see #supportsEntries()
+	 */
+	public Map.Entry<Object, Object> rawentry(Object key) {
+		return null;
+	}
+
+	/**
+	 * Returns {@code true} if this table provides {@linkplain #rawentry(Object) entries},
+	 * and {@linkplain #updateStamp() updates its stamp} whenever a key that has no value
+	 * associated with it is given one. Only then does an unchanged {@linkplain #stamp() stamp}
+	 * of this table guarantee that a key absent from the table is still absent.
+	 *
+	 * <p>The default implementation returns {@code false}. Implementations that override
+	 * {@link #rawentry(Object)} and meet the requirements above should override this
+	 * method to return {@code true}.</p>
+	 *
+	 * @return  {@code true} if this table provides entries and updates its stamp
+	 *          whenever a key is added to it
+	 */
+	public boolean supportsEntries() {
+		return false;
+	}
+
 	/**
 	 * Sets the value associated with the key {@code key} to {@code value}. When {@code value}
 	 * is {@code null}, removes {@code key} from the table.
@@ -131,6 +174,10 @@ public abstract class Table extends LuaObject {
 	 * <p>Note that when this table is not a sequence, the return value of this method
 	 * is undefined.</p>
 	 *
+	 * <p>The default implementation searches for a border using a logarithmic number of
+	 * calls to {@link #rawget(long)}. Implementations that are able to keep track of the
+	 * length of the sequence are encouraged to override this method.</p>
+	 *
 	 * @return  the length of the sequence if this table is a sequence
 	 */
 	public long rawlen() {
@@ -213,6 +260,151 @@ public abstract class Table extends LuaObject {
 	 */
 	public abstract Object successorKeyOf(Object key);
 
+	/**
+	 * Returns a cursor visiting all keys in this table together with their values,
+	 * in the same order as {@link #initialKey()} and {@link #successorKeyOf(Object)}.
+	 *
+	 * <p>This is the cursor used by generic {@code for} loops iterating over this table
+	 * using {@code next}.</p>
+	 *
+	 * <p>The default implementation is based on {@code initialKey()},
+	 * {@code successorKeyOf(Object)} and {@link #rawget(Object)}. Implementations
+	 * may override it to traverse their internal structures directly.</p>
+	 *
+	 * @return  a cursor visiting all entries of this table
+	 */
+	public LoopCursor cursor() {
+		return new KeyCursor(this);
+	}
+
+	private static class KeyCursor extends LoopCursor {
+
+		private final Table table;
+		private Object key;
+		private Object value;
+
+		KeyCursor(Table table) {
+			this.table = table;
+			this.key = null;
+			this.value = null;
+		}
+
+		@Override
+		public Object next() {
+			Object k = key != null ? table.successorKeyOf(key) : table.initialKey();
+			if (k != null) {
+				key = k;
+				value = table.rawget(k);
+			}
+			return k;
+		}
+
+		@Override
+		public Object value() {
+			return value;
+		}
+
+	}
+
+	/**
+	 * The metamethods cached by this table when used as a metatable. If bit {@code i}
+	 * of {@code cachedEvents} is set, then {@code metamethods[i]} is the value of the {@code i}-th
+	 * cached event key (possibly {@code null}). Similarly to the {@code flags} of tables
+	 * in PUC-Lua, this makes repeated lookups of absent metamethods (e.g., of {@code __index}
+	 * in every failed table lookup) cheap.
+	 */
+	private int cachedEvents;
+	private Object[] metamethods;
+
+	/**
+	 * Returns the value raw-associated with the metatable key {@code event} in this table,
+	 * using and updating the metamethod cache. {@code idx} must be the index of {@code event}
+	 * in the metamethod cache.
+	 */
+	final Object rawgetCachedEvent(int idx, ByteString event) {
+		// not thread-safe!
+		int bit = 1 << idx;
+		if ((cachedEvents & bit) != 0) {
+			return metamethods[idx];
+		}
+		else {
+			Object value = rawget(event);
+			if (metamethods == null) {
+				metamethods = new Object[Metatables.NUM_CACHED_EVENTS];
+			}
+			metamethods[idx] = value;
+			cachedEvents |= bit;
+			return value;
+		}
+	}
+
+	/**
+	 * If {@code key} may be a metatable key, i.e., if it is a string starting with two
+	 * underscores, invalidates the metamethods cached by this table for use as a metatable
+	 * and {@linkplain #updateStamp() updates its stamp}. Otherwise, this method has no effect.
+	 *
+	 * <p>Whenever applicable, this method <b>must</b> be called by the implementations
+	 * of {@link #rawset(Object, Object)} in order to ensure that the updates of metatable
+	 * keys are seen by the lookups of metamethods in this table.</p>
+	 *
+	 * <p>It is safe not to call this method when {@code key} is known not to be a string
+	 * starting with two underscores.</p>
+	 *
+	 * @param key  the key, may be {@code null}
+	 */
+	protected void updateMetamethodCache(Object key) {
+		// not thread-safe!
+		if (key instanceof ByteString) {
+			ByteString s = (ByteString) key;
+			if (s.length() >= 2 && s.byteAt(0) == '_' && s.byteAt(1) == '_') {
+				cachedEvents = 0;
+				if (metamethods != null) {
+					// do not keep the replaced metamethods reachable
+					Arrays.fill(metamethods, null);
+				}
+				stamp += 1;
+			}
+		}
+	}
+
+	/**
+	 * The modification stamp of this table, see {@link #stamp()}.
+	 */
+	private int stamp;
+
+	/**
+	 * Returns the modification stamp of this table. The stamp changes whenever the metatable
+	 * of this table is set, and whenever a value associated with a string key starting with
+	 * two underscores is updated. In tables that {@linkplain #supportsEntries() support entries},
+	 * it also changes whenever a key that had no value associated with it is given one.
+	 *
+	 * <p>As long as the stamp of a table remains the same, the table's metatable
+	 * and metamethods are unchanged, and if the table supports entries, a key that had
+	 * no value in the table still has none.
+	 * Together with the entries themselves, this allows the caching of the results
+	 * of lookups that follow the {@code __index} metamethod through a chain of tables
+	 * (see {@link net.sandius.rembulan.runtime.IndexCache}).</p>
+	 *
+	 * @return  the modification stamp of this table
+	 */
+	public final int stamp() {
+		// not thread-safe!
+		return stamp;
+	}
+
+	/**
+	 * Updates the modification stamp of this table.
+	 *
+	 * <p>This method <b>must</b> be called by the implementations of
+	 * {@link #rawset(Object, Object)} and {@link #rawset(long, Object)} in tables that
+	 * {@linkplain #supportsEntries() support entries} whenever they associate a value
+	 * with a key that had none.</p>
+	 */
+	protected final void updateStamp() {
+		// not thread-safe!
+		stamp += 1;
+	}
+
 	/**
 	 * The metatable of this table, may be {@code null}.
 	 */
@@ -270,6 +462,7 @@ public abstract class Table extends LuaObject {
 		}
 
 		metatable = mt;
+		stamp += 1;
 		setMode(wk, wv);
 
 		return old;
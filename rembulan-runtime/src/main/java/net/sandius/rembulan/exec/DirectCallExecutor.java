@@ -21,6 +21,7 @@ import net.sandius.rembulan.StateContext;
 import net.sandius.rembulan.impl.ReturnBuffers;
 import net.sandius.rembulan.impl.SchedulingContexts;
 import net.sandius.rembulan.runtime.AsyncTask;
+import net.sandius.rembulan.runtime.Coroutine;
 import net.sandius.rembulan.runtime.ReturnBufferFactory;
 import net.sandius.rembulan.runtime.RuntimeCallInitialiser;
 import net.sandius.rembulan.runtime.SchedulingContext;
@@ -39,14 +40,20 @@ public class DirectCallExecutor {
 
 	private final SchedulingContextFactory schedulingContextFactory;
 	private final ReturnBufferFactory returnBufferFactory;
+	private final Coroutine.Mode coroutineMode;
 	private final boolean performJavaConversions;
 
-	DirectCallExecutor(SchedulingContextFactory schedulingContextFactory) {
+	DirectCallExecutor(SchedulingContextFactory schedulingContextFactory, Coroutine.Mode coroutineMode) {
 		this.schedulingContextFactory = Objects.requireNonNull(schedulingContextFactory);
 		this.returnBufferFactory = DEFAULT_RETURN_BUFFER_FACTORY;
+		this.coroutineMode = Objects.requireNonNull(coroutineMode);
 		this.performJavaConversions = true;
 	}
 
+	DirectCallExecutor(SchedulingContextFactory schedulingContextFactory) {
+		this(schedulingContextFactory, Coroutine.Mode.STACKLESS);
+	}
+
 	private static final ReturnBufferFactory DEFAULT_RETURN_BUFFER_FACTORY =
 			ReturnBuffers.defaultFactory();
 
@@ -76,6 +83,26 @@ public class DirectCallExecutor {
 		return new DirectCallExecutor(schedulingContextFactory);
 	}
 
+	/**
+	 * Returns a new direct call executor with the specified scheduling context factory used
+	 * to instantiate a new scheduling context on each resume, executing the coroutines
+	 * created by the calls initiated by {@link #call(StateContext, Object, Object...)}
+	 * in the mode {@code coroutineMode}.
+	 *
+	 * @param schedulingContextFactory  the scheduling context factory, must not be {@code null}
+	 * @param coroutineMode  the coroutine execution mode, must not be {@code null}
+	 * @return  a direct call executor that uses the specified scheduling context factory
+	 *          and coroutine mode
+	 *
+	 * @throws NullPointerException  if {@code schedulingContextFactory} or {@code coroutineMode}
+	 *                               is {@code null}
+	 */
+	public static DirectCallExecutor newExecutor(SchedulingContextFactory schedulingContextFactory,
+			Coroutine.Mode coroutineMode) {
+
+		return new DirectCallExecutor(schedulingContextFactory, coroutineMode);
+	}
+
 	/**
 	 * Returns a new direct call executor that uses that asks each continuation it resumes
 	 * to pause after it has registered {@code ticksLimit} ticks.
@@ -223,7 +250,8 @@ public class DirectCallExecutor {
 
 		CallInitialiser initialiser = RuntimeCallInitialiser.forState(
 				stateContext,
-				returnBufferFactory);
+				returnBufferFactory,
+				coroutineMode);
 
 		return resume(initialiser.newCall(
 				performJavaConversions ? Conversions.canonicalRepresentationOf(fn) : fn,
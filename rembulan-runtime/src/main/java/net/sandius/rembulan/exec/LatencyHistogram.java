@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.exec;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An immutable snapshot of a histogram of latencies measured in nanoseconds.
+ *
+ * <p>The latencies are counted in buckets of exponentially increasing width: the bucket
+ * with the index {@code i} counts the latencies {@code l} such that
+ * 2<sup>{@code i}-1</sup> &lt; {@code l} &le; 2<sup>{@code i}</sup>, with the bucket 0
+ * counting the latencies of at most 1 ns.</p>
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * The number of buckets in a histogram.
+	 */
+	public static final int BUCKETS = 64;
+
+	private final long[] counts;
+	private final long count;
+	private final long totalNanos;
+
+	private LatencyHistogram(long[] counts, long totalNanos) {
+		this.counts = counts;
+		long n = 0;
+		for (long c : counts) {
+			n += c;
+		}
+		this.count = n;
+		this.totalNanos = totalNanos;
+	}
+
+	static int bucketOf(long nanos) {
+		return nanos <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(nanos - 1);
+	}
+
+	/**
+	 * Returns the number of latencies in this histogram.
+	 *
+	 * @return  the number of latencies in this histogram
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of latencies in the bucket {@code index}.
+	 *
+	 * @param index  the bucket index, must be between 0 (inclusive)
+	 *               and {@link #BUCKETS} (exclusive)
+	 * @return  the number of latencies in the bucket {@code index}
+	 *
+	 * @throws IndexOutOfBoundsException  if {@code index} is out of bounds
+	 */
+	public long countInBucket(int index) {
+		return counts[index];
+	}
+
+	/**
+	 * Returns the upper bound (inclusive) of the latencies counted in the bucket
+	 * {@code index}, in nanoseconds.
+	 *
+	 * @param index  the bucket index, must be between 0 (inclusive)
+	 *               and {@link #BUCKETS} (exclusive)
+	 * @return  the upper bound of the bucket {@code index} in nanoseconds
+	 *
+	 * @throws IndexOutOfBoundsException  if {@code index} is out of bounds
+	 */
+	public static long bucketUpperBound(int index) {
+		if (index < 0 || index >= BUCKETS) {
+			throw new IndexOutOfBoundsException("Bucket index out of bounds: " + index);
+		}
+		return index == BUCKETS - 1 ? Long.MAX_VALUE : 1L << index;
+	}
+
+	/**
+	 * Returns the mean latency in nanoseconds, or {@code 0.0} if the histogram is empty.
+	 *
+	 * @return  the mean latency in nanoseconds
+	 */
+	public double mean() {
+		return count > 0 ? (double) totalNanos / count : 0.0;
+	}
+
+	/**
+	 * Returns an upper bound of the {@code q}-quantile of the latencies in nanoseconds,
+	 * i.e., the upper bound of the bucket containing the {@code q}-quantile,
+	 * or {@code 0} if the histogram is empty.
+	 *
+	 * @param q  the quantile, must be between {@code 0.0} and {@code 1.0} (inclusive)
+	 * @return  an upper bound of the {@code q}-quantile in nanoseconds
+	 *
+	 * @throws IllegalArgumentException  if {@code q} is not between {@code 0.0}
+	 *                                   and {@code 1.0}
+	 */
+	public long quantile(double q) {
+		if (!(q >= 0.0 && q <= 1.0)) {
+			throw new IllegalArgumentException("Quantile out of range: " + q);
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(q * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return bucketUpperBound(i);
+			}
+		}
+		throw new AssertionError();
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram{count=" + count
+				+ ", mean=" + String.format("%.1f", mean()) + " ns"
+				+ ", p50<=" + quantile(0.5) + " ns"
+				+ ", p99<=" + quantile(0.99) + " ns"
+				+ ", buckets=" + Arrays.toString(counts) + "}";
+	}
+
+	/**
+	 * A thread-safe recorder of latencies.
+	 */
+	static final class Recorder {
+
+		private final AtomicLongArray counts;
+		private final AtomicLong totalNanos;
+
+		Recorder() {
+			this.counts = new AtomicLongArray(BUCKETS);
+			this.totalNanos = new AtomicLong();
+		}
+
+		void record(long nanos) {
+			long l = Math.max(0, nanos);
+			counts.incrementAndGet(bucketOf(l));
+			totalNanos.addAndGet(l);
+		}
+
+		LatencyHistogram snapshot() {
+			long[] cs = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				cs[i] = counts.get(i);
+			}
+			return new LatencyHistogram(cs, totalNanos.get());
+		}
+
+	}
+
+}
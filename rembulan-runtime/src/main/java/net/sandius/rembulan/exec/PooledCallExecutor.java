@@ -0,0 +1,843 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.exec;
+
+import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.impl.ReturnBuffers;
+import net.sandius.rembulan.impl.SchedulingContexts;
+import net.sandius.rembulan.runtime.AsyncTask;
+import net.sandius.rembulan.runtime.RuntimeCallInitialiser;
+import net.sandius.rembulan.runtime.SchedulingContext;
+import net.sandius.rembulan.runtime.SchedulingContextFactory;
+import net.sandius.rembulan.util.Check;
+
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A call executor that executes Lua calls and the asynchronous tasks scheduled by these
+ * calls on a fixed-size pool of threads.
+ *
+ * <p>The calls are executed in <i>slices</i>: each resume of a call is given a scheduling
+ * context obtained from a {@link SchedulingContextFactory}, typically one that asks the call
+ * to pause after a fixed number of ticks (see
+ * {@link SchedulingContexts#countDownContextFactory(long)}). A paused call is put at the end
+ * of the queue of the thread that has run it, so that long-running calls do not starve
+ * the other calls. Every thread alternates between taking calls from its own queue
+ * and from the queue of newly submitted calls, and when both are empty, steals calls
+ * from the queues of the other threads.</p>
+ *
+ * <p>When a call requests to be resumed after an asynchronous task
+ * (see {@link net.sandius.rembulan.runtime.ExecutionContext#resumeAfter(AsyncTask)}),
+ * the task is executed in the pool thread that has run the call, and the call is re-scheduled
+ * once the task calls {@link AsyncTask.ContinueCallback#finished()}. Tasks that block should
+ * therefore perform the blocking work in another thread.</p>
+ *
+ * <p>The executor does not serialise calls that share a state context: such calls
+ * may run concurrently in different pool threads, and any state they share (e.g. tables)
+ * is then accessed without synchronisation. Calls that share state should either be
+ * submitted in a sequence (each once the previous one has completed), or to an executor
+ * with a single thread.</p>
+ *
+ * <p>The results of the calls are delivered using {@link CallFuture}s, which also provide
+ * the number of ticks and slices spent by each call. The statistics of the executor,
+ * including the queue depth and the histograms of scheduling and call latencies, are available
+ * using {@link #statistics()}.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public final class PooledCallExecutor {
+
+	private static final AtomicInteger executorCount = new AtomicInteger();
+
+	private final SchedulingContextFactory schedulingContextFactory;
+
+	private final Worker[] workers;
+	private final ConcurrentLinkedQueue<ScheduledCall> submissions;
+
+	// the number of calls in the queues
+	private final Semaphore ready;
+	private final CountDownLatch terminated;
+
+	private volatile boolean shutdown;
+
+	private final AtomicInteger liveCalls;
+
+	private final AtomicLong submittedCalls;
+	private final AtomicLong returnedCalls;
+	private final AtomicLong failedCalls;
+	private final AtomicLong cancelledCalls;
+	private final AtomicLong totalTicks;
+	private final AtomicLong totalSlices;
+
+	private final LatencyHistogram.Recorder sliceLatency;
+	private final LatencyHistogram.Recorder callLatency;
+
+	PooledCallExecutor(int parallelism, SchedulingContextFactory schedulingContextFactory) {
+		Check.positive(parallelism);
+		this.schedulingContextFactory = Objects.requireNonNull(schedulingContextFactory);
+
+		this.submissions = new ConcurrentLinkedQueue<>();
+		this.ready = new Semaphore(0);
+		this.terminated = new CountDownLatch(parallelism);
+
+		this.shutdown = false;
+		this.liveCalls = new AtomicInteger();
+		this.submittedCalls = new AtomicLong();
+		this.returnedCalls = new AtomicLong();
+		this.failedCalls = new AtomicLong();
+		this.cancelledCalls = new AtomicLong();
+		this.totalTicks = new AtomicLong();
+		this.totalSlices = new AtomicLong();
+		this.sliceLatency = new LatencyHistogram.Recorder();
+		this.callLatency = new LatencyHistogram.Recorder();
+
+		int id = executorCount.incrementAndGet();
+		this.workers = new Worker[parallelism];
+		for (int i = 0; i < parallelism; i++) {
+			workers[i] = new Worker(i, "rembulan-executor-" + id + "-worker-" + i);
+		}
+		for (Worker w : workers) {
+			w.start();
+		}
+	}
+
+	/**
+	 * Returns a new pooled call executor with {@code parallelism} threads that uses
+	 * the specified scheduling context factory to instantiate a new scheduling context
+	 * for every slice of a call.
+	 *
+	 * @param parallelism  the number of threads, must be positive
+	 * @param schedulingContextFactory  the scheduling context factory, must not be {@code null}
+	 * @return  a new pooled call executor
+	 *
+	 * @throws IllegalArgumentException  if {@code parallelism} is not positive
+	 * @throws NullPointerException  if {@code schedulingContextFactory} is {@code null}
+	 */
+	public static PooledCallExecutor newExecutor(int parallelism, SchedulingContextFactory schedulingContextFactory) {
+		return new PooledCallExecutor(parallelism, schedulingContextFactory);
+	}
+
+	/**
+	 * Returns a new pooled call executor with {@code parallelism} threads that pauses
+	 * every call after it has registered {@code ticksPerSlice} ticks.
+	 *
+	 * @param parallelism  the number of threads, must be positive
+	 * @param ticksPerSlice  the number of ticks per slice, must be positive
+	 * @return  a new pooled call executor
+	 *
+	 * @throws IllegalArgumentException  if {@code parallelism} or {@code ticksPerSlice}
+	 *                                   is not positive
+	 */
+	public static PooledCallExecutor newExecutor(int parallelism, long ticksPerSlice) {
+		Check.positive(ticksPerSlice);
+		return newExecutor(parallelism, SchedulingContexts.countDownContextFactory(ticksPerSlice));
+	}
+
+	/**
+	 * Returns a new pooled call executor with one thread per available processor that
+	 * pauses every call after it has registered {@code ticksPerSlice} ticks.
+	 *
+	 * @param ticksPerSlice  the number of ticks per slice, must be positive
+	 * @return  a new pooled call executor
+	 *
+	 * @throws IllegalArgumentException  if {@code ticksPerSlice} is not positive
+	 */
+	public static PooledCallExecutor newExecutor(long ticksPerSlice) {
+		return newExecutor(Runtime.getRuntime().availableProcessors(), ticksPerSlice);
+	}
+
+	/**
+	 * Returns the number of threads of this executor.
+	 *
+	 * @return  the number of threads of this executor
+	 */
+	public int parallelism() {
+		return workers.length;
+	}
+
+	/**
+	 * Schedules the call {@code fn(args...)} in the state context {@code stateContext}
+	 * for execution, returning a future for its result.
+	 *
+	 * <p>As in {@link DirectCallExecutor#call(StateContext, Object, Object...)},
+	 * the call target and arguments are converted to their canonical representations,
+	 * and the result values to their Java representations.</p>
+	 *
+	 * @param stateContext  state context of the call, must not be {@code null}
+	 * @param fn  the call target, may be {@code null}
+	 * @param args  call arguments, must not be {@code null}
+	 * @return  a future for the result of the call
+	 *
+	 * @throws NullPointerException  if {@code stateContext} or {@code args} is {@code null}
+	 * @throws RejectedExecutionException  if this executor has been shut down
+	 */
+	public CallFuture submit(StateContext stateContext, Object fn, Object... args) {
+		Continuation continuation = RuntimeCallInitialiser.forState(stateContext, ReturnBuffers.defaultFactory())
+				.newCall(Conversions.canonicalRepresentationOf(fn), Conversions.copyAsCanonicalValues(args));
+		return submit(continuation);
+	}
+
+	/**
+	 * Schedules {@code continuation} to be resumed, returning a future for the result
+	 * of the call.
+	 *
+	 * <p>The result values are converted to their Java representations using
+	 * {@link Conversions#toJavaValues(Object[])}.</p>
+	 *
+	 * @param continuation  the continuation to resume, must not be {@code null}
+	 * @return  a future for the result of the call
+	 *
+	 * @throws NullPointerException  if {@code continuation} is {@code null}
+	 * @throws RejectedExecutionException  if this executor has been shut down
+	 */
+	public CallFuture submit(Continuation continuation) {
+		ScheduledCall call = new ScheduledCall(Objects.requireNonNull(continuation));
+
+		liveCalls.incrementAndGet();
+		if (shutdown) {
+			// the workers may have been stopped by shutdown() if it has not seen this call
+			if (liveCalls.decrementAndGet() == 0) {
+				stopWorkers();
+			}
+			throw new RejectedExecutionException("Executor has been shut down");
+		}
+
+		submittedCalls.incrementAndGet();
+		schedule(call);
+		return call.future;
+	}
+
+	/**
+	 * Initiates an orderly shutdown of this executor: no new calls are accepted, while
+	 * the calls that have already been submitted are executed to completion. Once they have
+	 * all completed, the pool threads terminate.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		if (liveCalls.get() == 0) {
+			stopWorkers();
+		}
+	}
+
+	private void stopWorkers() {
+		for (Worker w : workers) {
+			w.interrupt();
+		}
+	}
+
+	/**
+	 * Returns {@code true} if this executor has been shut down.
+	 *
+	 * @return  {@code true} if this executor has been shut down
+	 */
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * Returns {@code true} if this executor has been shut down and all calls have completed.
+	 *
+	 * @return  {@code true} if this executor has terminated
+	 */
+	public boolean isTerminated() {
+		return terminated.getCount() == 0;
+	}
+
+	/**
+	 * Blocks until this executor has terminated after a shutdown request, or until
+	 * the timeout occurs, or until the current thread is interrupted, whichever happens first.
+	 *
+	 * @param timeout  the maximum time to wait
+	 * @param unit  the time unit of the {@code timeout} argument, must not be {@code null}
+	 * @return  {@code true} if this executor has terminated, {@code false} if the timeout
+	 *          elapsed before termination
+	 *
+	 * @throws InterruptedException  if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of this executor.
+	 *
+	 * @return  the statistics of this executor
+	 */
+	public Statistics statistics() {
+		return new Statistics(this);
+	}
+
+	// the workers are kept running as long as there are live calls
+	private void schedule(ScheduledCall call) {
+		call.enqueuedAt = System.nanoTime();
+
+		Thread t = Thread.currentThread();
+		if (t instanceof Worker && ((Worker) t).executor() == this) {
+			// re-scheduled by a worker: put the call at the end of its queue
+			((Worker) t).queue.offerLast(call);
+		}
+		else {
+			submissions.offer(call);
+		}
+		ready.release();
+	}
+
+	private class Worker extends Thread {
+
+		private final int index;
+		private final ConcurrentLinkedDeque<ScheduledCall> queue;
+		private int round;
+
+		Worker(int index, String name) {
+			super(name);
+			this.index = index;
+			this.queue = new ConcurrentLinkedDeque<>();
+			this.round = 0;
+			setDaemon(true);
+		}
+
+		PooledCallExecutor executor() {
+			return PooledCallExecutor.this;
+		}
+
+		private ScheduledCall steal() {
+			for (int i = 1; i < workers.length; i++) {
+				ScheduledCall call = workers[(index + i) % workers.length].queue.pollLast();
+				if (call != null) {
+					return call;
+				}
+			}
+			return null;
+		}
+
+		private ScheduledCall take() {
+			// a permit has been acquired, so there is a call in one of the queues
+			while (true) {
+				ScheduledCall call;
+				if ((round++ & 1) == 0) {
+					call = queue.pollFirst();
+					if (call == null) call = submissions.poll();
+				}
+				else {
+					call = submissions.poll();
+					if (call == null) call = queue.pollFirst();
+				}
+				if (call == null) call = steal();
+				if (call != null) {
+					return call;
+				}
+				Thread.yield();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					try {
+						ready.acquire();
+					}
+					catch (InterruptedException ex) {
+						if (shutdown && liveCalls.get() == 0) {
+							break;
+						}
+						else {
+							continue;
+						}
+					}
+
+					ScheduledCall call = take();
+					try {
+						call.run();
+					}
+					catch (Throwable ex) {
+						// keep the worker running whatever happens in the call
+						call.abort(ex);
+					}
+				}
+			}
+			finally {
+				terminated.countDown();
+			}
+		}
+
+	}
+
+	private static class TickCountingContext implements SchedulingContext {
+
+		private final SchedulingContext delegate;
+		private long ticks;
+
+		TickCountingContext(SchedulingContext delegate) {
+			this.delegate = Objects.requireNonNull(delegate);
+			this.ticks = 0L;
+		}
+
+		@Override
+		public void registerTicks(int ticks) {
+			this.ticks += Math.max(0, ticks);
+			delegate.registerTicks(ticks);
+		}
+
+		@Override
+		public boolean shouldPause() {
+			return delegate.shouldPause();
+		}
+
+	}
+
+	private class ScheduledCall implements CallEventHandler {
+
+		private final CallFuture future;
+		private final long submittedAt;
+
+		private Continuation continuation;
+		private long enqueuedAt;
+
+		// set by the event handler methods during a slice
+		private Object[] values;
+		private Throwable error;
+		private Continuation next;
+		private AsyncTask task;
+
+		ScheduledCall(Continuation continuation) {
+			this.future = new CallFuture();
+			this.submittedAt = System.nanoTime();
+			this.continuation = continuation;
+		}
+
+		void run() {
+			sliceLatency.record(System.nanoTime() - enqueuedAt);
+
+			if (future.isDone()) {
+				// cancelled
+				finished();
+				return;
+			}
+
+			TickCountingContext schedulingContext = new TickCountingContext(schedulingContextFactory.newInstance());
+
+			try {
+				continuation.resume(this, schedulingContext);
+			}
+			catch (Throwable ex) {
+				// e.g. an invalid continuation, or a StackOverflowError in the call
+				error = ex;
+			}
+
+			// account for the slice before the call is completed or re-scheduled
+			future.ticks += schedulingContext.ticks;
+			future.slices += 1;
+			totalTicks.addAndGet(schedulingContext.ticks);
+			totalSlices.incrementAndGet();
+
+			if (next != null && error == null) {
+				continuation = next;
+				AsyncTask t = task;
+				next = null;
+				task = null;
+				if (t == null) {
+					schedule(this);
+				}
+				else {
+					executeTask(t);
+				}
+			}
+			else {
+				Object[] vs = values;
+				Throwable e = error;
+				values = null;
+				error = null;
+				next = null;
+				task = null;
+				if (vs != null || e != null) {
+					complete(vs, e);
+				}
+				else {
+					complete(null, new IllegalStateException("Call did not signal any event"));
+				}
+			}
+		}
+
+		private void executeTask(AsyncTask t) {
+			final AtomicBoolean resumed = new AtomicBoolean(false);
+			AsyncTask.ContinueCallback callback = new AsyncTask.ContinueCallback() {
+				@Override
+				public void finished() {
+					if (resumed.compareAndSet(false, true)) {
+						schedule(ScheduledCall.this);
+					}
+				}
+			};
+
+			// a call cancelled while waiting for the task is dropped right away,
+			// rather than when (if ever) the task finishes
+			future.setCancellationHandler(new Runnable() {
+				@Override
+				public void run() {
+					if (resumed.compareAndSet(false, true)) {
+						finished();
+					}
+				}
+			});
+
+			if (resumed.get()) {
+				// already cancelled
+				return;
+			}
+
+			try {
+				t.execute(callback);
+			}
+			catch (Throwable ex) {
+				if (resumed.compareAndSet(false, true)) {
+					complete(null, ex);
+				}
+			}
+		}
+
+		private void complete(Object[] values, Throwable error) {
+			if (future.complete(values, error, false)) {
+				if (error == null) {
+					returnedCalls.incrementAndGet();
+				}
+				else {
+					failedCalls.incrementAndGet();
+				}
+			}
+			finished();
+		}
+
+		void abort(Throwable error) {
+			if (future.complete(null, error, false)) {
+				failedCalls.incrementAndGet();
+				finished();
+			}
+		}
+
+		private void finished() {
+			callLatency.record(System.nanoTime() - submittedAt);
+			if (future.isCancelled()) {
+				cancelledCalls.incrementAndGet();
+			}
+			if (liveCalls.decrementAndGet() == 0 && shutdown) {
+				stopWorkers();
+			}
+		}
+
+		@Override
+		public void returned(Object id, Object[] result) {
+			Conversions.toJavaValues(result);
+			values = Objects.requireNonNull(result);
+		}
+
+		@Override
+		public void failed(Object id, Throwable error) {
+			this.error = Objects.requireNonNull(error);
+		}
+
+		@Override
+		public void paused(Object id, Continuation cont) {
+			next = Objects.requireNonNull(cont);
+		}
+
+		@Override
+		public void async(Object id, Continuation cont, AsyncTask task) {
+			this.next = Objects.requireNonNull(cont);
+			this.task = Objects.requireNonNull(task);
+		}
+
+	}
+
+	/**
+	 * A future for the result of a call executed by a {@link PooledCallExecutor}.
+	 *
+	 * <p>If the call terminates with an error, {@link #get()} throws
+	 * an {@link ExecutionException} with the error as its cause. A call that has been
+	 * cancelled is not resumed again. A call cancelled while waiting for an asynchronous
+	 * task is dropped immediately: the task is not interrupted, but its completion
+	 * is ignored.</p>
+	 */
+	public static final class CallFuture implements Future<Object[]> {
+
+		private final CountDownLatch done;
+		private final AtomicBoolean completed;
+
+		private Object[] values;
+		private Throwable error;
+		private volatile boolean cancelled;
+
+		// run when the call is cancelled; may be null
+		private volatile Runnable cancellationHandler;
+
+		// written only by the thread executing the call
+		private volatile long ticks;
+		private volatile int slices;
+
+		CallFuture() {
+			this.done = new CountDownLatch(1);
+			this.completed = new AtomicBoolean(false);
+			this.cancelled = false;
+			this.ticks = 0L;
+			this.slices = 0;
+		}
+
+		boolean complete(Object[] values, Throwable error, boolean cancelled) {
+			if (completed.compareAndSet(false, true)) {
+				this.values = values;
+				this.error = error;
+				this.cancelled = cancelled;
+				done.countDown();
+				return true;
+			}
+			else {
+				return false;
+			}
+		}
+
+		/**
+		 * Returns the number of ticks the call has registered so far.
+		 *
+		 * @return  the number of ticks spent by the call
+		 */
+		public long ticks() {
+			return ticks;
+		}
+
+		/**
+		 * Returns the number of slices in which the call has been executed so far.
+		 *
+		 * @return  the number of slices of the call
+		 */
+		public int slices() {
+			return slices;
+		}
+
+		// the handler is run once the future has been cancelled, possibly more than once
+		void setCancellationHandler(Runnable handler) {
+			this.cancellationHandler = handler;
+			if (cancelled) {
+				handler.run();
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (complete(null, null, true)) {
+				Runnable handler = cancellationHandler;
+				if (handler != null) {
+					handler.run();
+				}
+				return true;
+			}
+			else {
+				return false;
+			}
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		private Object[] report() throws ExecutionException {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			else if (error != null) {
+				throw new ExecutionException(error);
+			}
+			else {
+				return values;
+			}
+		}
+
+		@Override
+		public Object[] get() throws InterruptedException, ExecutionException {
+			done.await();
+			return report();
+		}
+
+		@Override
+		public Object[] get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+
+			if (!done.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			return report();
+		}
+
+	}
+
+	/**
+	 * A snapshot of the statistics of a {@link PooledCallExecutor}.
+	 */
+	public static final class Statistics {
+
+		private final long submittedCalls;
+		private final long returnedCalls;
+		private final long failedCalls;
+		private final long cancelledCalls;
+		private final int liveCalls;
+		private final int queueDepth;
+		private final long totalTicks;
+		private final long totalSlices;
+		private final LatencyHistogram sliceLatency;
+		private final LatencyHistogram callLatency;
+
+		private Statistics(PooledCallExecutor executor) {
+			this.submittedCalls = executor.submittedCalls.get();
+			this.returnedCalls = executor.returnedCalls.get();
+			this.failedCalls = executor.failedCalls.get();
+			this.cancelledCalls = executor.cancelledCalls.get();
+			this.liveCalls = executor.liveCalls.get();
+			this.queueDepth = executor.ready.availablePermits();
+			this.totalTicks = executor.totalTicks.get();
+			this.totalSlices = executor.totalSlices.get();
+			this.sliceLatency = executor.sliceLatency.snapshot();
+			this.callLatency = executor.callLatency.snapshot();
+		}
+
+		/**
+		 * Returns the number of calls submitted to the executor.
+		 *
+		 * @return  the number of submitted calls
+		 */
+		public long submittedCalls() {
+			return submittedCalls;
+		}
+
+		/**
+		 * Returns the number of calls that have returned normally.
+		 *
+		 * @return  the number of calls that have returned
+		 */
+		public long returnedCalls() {
+			return returnedCalls;
+		}
+
+		/**
+		 * Returns the number of calls that have terminated with an error.
+		 *
+		 * @return  the number of calls that have failed
+		 */
+		public long failedCalls() {
+			return failedCalls;
+		}
+
+		/**
+		 * Returns the number of calls that have been cancelled and dropped by the executor.
+		 *
+		 * @return  the number of cancelled calls
+		 */
+		public long cancelledCalls() {
+			return cancelledCalls;
+		}
+
+		/**
+		 * Returns the number of calls that have been submitted, but have not completed yet,
+		 * including the calls waiting for asynchronous tasks.
+		 *
+		 * @return  the number of live calls
+		 */
+		public int liveCalls() {
+			return liveCalls;
+		}
+
+		/**
+		 * Returns the number of calls that are ready to be resumed and waiting for a thread.
+		 *
+		 * @return  the queue depth
+		 */
+		public int queueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * Returns the total number of ticks registered by all calls.
+		 *
+		 * @return  the total number of ticks
+		 */
+		public long totalTicks() {
+			return totalTicks;
+		}
+
+		/**
+		 * Returns the total number of slices executed.
+		 *
+		 * @return  the total number of slices
+		 */
+		public long totalSlices() {
+			return totalSlices;
+		}
+
+		/**
+		 * Returns the histogram of the times the calls spent in the queue before
+		 * a slice was started.
+		 *
+		 * @return  the histogram of scheduling latencies
+		 */
+		public LatencyHistogram sliceLatency() {
+			return sliceLatency;
+		}
+
+		/**
+		 * Returns the histogram of the times from the submission of a call to its completion.
+		 *
+		 * @return  the histogram of call latencies
+		 */
+		public LatencyHistogram callLatency() {
+			return callLatency;
+		}
+
+		@Override
+		public String toString() {
+			return "Statistics{submitted=" + submittedCalls
+					+ ", returned=" + returnedCalls
+					+ ", failed=" + failedCalls
+					+ ", cancelled=" + cancelledCalls
+					+ ", live=" + liveCalls
+					+ ", queued=" + queueDepth
+					+ ", ticks=" + totalTicks
+					+ ", slices=" + totalSlices
+					+ ", sliceLatency=" + sliceLatency
+					+ ", callLatency=" + callLatency + "}";
+		}
+
+	}
+
+}
@@ -49,8 +49,32 @@ public class DefaultSavedState {
 	 */
 	@SuppressWarnings("unused")
 	public DefaultSavedState(int resumptionPoint, Object[] registers) {
+		this(resumptionPoint, registers, true);
+	}
+
+	private DefaultSavedState(int resumptionPoint, Object[] registers, boolean copy) {
 		this.resumptionPoint = resumptionPoint;
-		this.registers = registers != null ? Arrays.copyOf(registers, registers.length) : null;
+		this.registers = copy && registers != null ? Arrays.copyOf(registers, registers.length) : registers;
+	}
+
+	/**
+	 * Returns a new instance of {@code DefaultSavedState} with the specified
+	 * {@code resumptionPoint} and {@code registers}, taking the ownership of the array
+	 * {@code registers}.
+	 *
+	 * <p>Unlike {@link #DefaultSavedState(int, Object[])}, this method does not copy
+	 * {@code registers}. In order to maintain the immutability of the saved state,
+	 * <b>the caller must not modify the array {@code registers} after the call of this
+	 * method</b>. This is used by compiled Lua functions, which construct a fresh register
+	 * array every time they are suspended.</p>
+	 *
+	 * @param resumptionPoint  the resumption point
+	 * @param registers  the registers, may be {@code null}
+	 * @return  a saved state with the given resumption point and registers
+	 */
+	@SuppressWarnings("unused")
+	public static DefaultSavedState wrap(int resumptionPoint, Object[] registers) {
+		return new DefaultSavedState(resumptionPoint, registers, false);
 	}
 
 	/**
@@ -76,4 +100,23 @@ public class DefaultSavedState {
 				: null;
 	}
 
+	/**
+	 * Returns the register at the index {@code idx} in the register state stored in this
+	 * saved state.
+	 *
+	 * <p>In contrast to {@link #registers()}, this method does not copy the register state.</p>
+	 *
+	 * @param idx  the index of the register
+	 * @return  the value of the register at the index {@code idx}
+	 *
+	 * @throws NullPointerException  if the register state array stored in this saved state
+	 *                               is {@code null}
+	 * @throws ArrayIndexOutOfBoundsException  if {@code idx} is negative or not smaller
+	 *                                         than the number of registers
+	 */
+	@SuppressWarnings("unused")
+	public Object register(int idx) {
+		return registers[idx];
+	}
+
 }
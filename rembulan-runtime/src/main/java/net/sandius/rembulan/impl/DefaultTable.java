@@ -19,23 +19,81 @@ package net.sandius.rembulan.impl;
 import net.sandius.rembulan.Conversions;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.TableFactory;
+import net.sandius.rembulan.runtime.LoopCursor;
+import net.sandius.rembulan.util.Check;
 import net.sandius.rembulan.util.TraversableHashMap;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
- * Default implementation of the Lua table storing all key-value pairs in a hashmap.
- * The table implementation does not support weak keys or values.
+ * Default implementation of the Lua table.
+ *
+ * <p>The table consists of two parts: the <i>array part</i>, storing the values associated
+ * with the integer keys 1 to <i>n</i> in a contiguous array (where <i>n</i> is the capacity
+ * of the array part), and the <i>hash part</i>, storing all the remaining key-value pairs
+ * in a hashmap. The array part grows as values are appended to the end of it, absorbing
+ * the integer keys from the hash part that fall within its new capacity.</p>
+ *
+ * <p>The table keeps track of a border (see {@link #rawlen()}) that is updated as
+ * integer keys are assigned, so that the length of a sequence is available in constant
+ * time in the common cases of appending to and removing from the end of the sequence.</p>
+ *
+ * <p>The table implementation does not support weak keys or values.</p>
  */
 public class DefaultTable extends Table {
 
-	private final TraversableHashMap<Object, Object> values;
+	private static final Object[] EMPTY_ARRAY = new Object[0];
+
+	private static final int MIN_ARRAY_CAPACITY = 4;
+
+	// the maximum array size some VMs are able to allocate
+	private static final int MAX_ARRAY_CAPACITY = Integer.MAX_VALUE - 8;
+
+	/*
+	 * Invariants:
+	 *   - the value associated with the integer key k, where 1 <= k <= array.length,
+	 *     is array[k - 1] (null if there is no such value);
+	 *   - the hash part contains no integer keys k such that 1 <= k <= array.length + 1.
+	 */
+
+	private Object[] array;
+	private final TraversableHashMap<Object, Object> hash;
+
+	// the last known border; may be invalidated by removals, in which case it is
+	// recomputed in rawlen()
+	private long border;
 
 	/**
 	 * Constructs a new empty table.
 	 */
 	public DefaultTable() {
-		this.values = new TraversableHashMap<>();
+		this(0, 0);
+	}
+
+	/**
+	 * Constructs a new empty table with the given initial capacities for its array
+	 * and hash parts.
+	 *
+	 * @param arrayCapacity  initial capacity of the array part, must not be negative
+	 * @param hashCapacity  initial capacity of the hash part, must not be negative
+	 *
+	 * @throws IllegalArgumentException  if {@code arrayCapacity} or {@code hashCapacity}
+	 *                                   is negative
+	 */
+	public DefaultTable(int arrayCapacity, int hashCapacity) {
+		Check.nonNegative(arrayCapacity);
+		Check.nonNegative(hashCapacity);
+
+		this.array = arrayCapacity > 0
+				? new Object[Math.min(arrayCapacity, MAX_ARRAY_CAPACITY)]
+				: EMPTY_ARRAY;
+		this.hash = new TraversableHashMap<>(hashCapacity);
+		this.border = 0L;
 	}
 
 	static class Factory implements TableFactory {
@@ -46,7 +104,7 @@ public class DefaultTable extends Table {
 
 		@Override
 		public Table newTable(int array, int hash) {
-			return new DefaultTable();
+			return new DefaultTable(Math.max(array, 0), Math.max(hash, 0));
 		}
 	}
 
@@ -61,10 +119,51 @@ public class DefaultTable extends Table {
 		return FACTORY_INSTANCE;
 	}
 
+	private boolean inArray(long idx) {
+		return idx > 0 && idx <= array.length;
+	}
+
 	@Override
 	public Object rawget(Object key) {
 		key = Conversions.normaliseKey(key);
-		return key != null ? values.get(key) : null;
+
+		if (key instanceof Long) {
+			return rawget(((Long) key).longValue());
+		}
+		else {
+			return key != null ? hash.get(key) : null;
+		}
+	}
+
+	/**
+	 * Returns an entry reflecting the raw association of {@code key} in this table, or
+	 * {@code null} if {@code key} has no value associated with it.
+	 *
+	 * <p>Entries are only provided for keys in the hash part that are not integers,
+	 * since integer keys may move to the array part.</p>
+	 *
+	 * @param key  the key, may be {@code null}
+	 * @return  an entry reflecting the association of {@code key} in this table, or {@code null}
+	 */
+	@Override
+	public boolean supportsEntries() {
+		return true;
+	}
+
+	@Override
+	public Map.Entry<Object, Object> rawentry(Object key) {
+		key = Conversions.normaliseKey(key);
+		return key != null && !(key instanceof Long) ? hash.getEntry(key) : null;
+	}
+
+	@Override
+	public Object rawget(long idx) {
+		if (inArray(idx)) {
+			return array[(int) (idx - 1)];
+		}
+		else {
+			return hash.isEmpty() ? null : hash.get(Long.valueOf(idx));
+		}
 	}
 
 	@Override
@@ -78,33 +177,244 @@ public class DefaultTable extends Table {
 			throw new IllegalArgumentException("table index is NaN");
 		}
 
+		if (key instanceof Long) {
+			rawset(((Long) key).longValue(), value);
+			return;
+		}
+
 		value = Conversions.canonicalRepresentationOf(value);
 
 		if (value == null) {
-			values.remove(key);
+			hash.remove(key);
 		}
-		else {
-			values.put(key, value);
+		else if (hash.put(key, value) == null) {
+			updateStamp();
 		}
 
+		updateMetamethodCache(key);
 		updateBasetableModes(key, value);
 	}
 
+	@Override
+	public void rawset(long idx, Object value) {
+		value = Conversions.canonicalRepresentationOf(value);
+
+		boolean added;
+		if (inArray(idx)) {
+			int i = (int) (idx - 1);
+			added = array[i] == null && value != null;
+			array[i] = value;
+		}
+		else if (value != null && idx == (long) array.length + 1 && array.length < MAX_ARRAY_CAPACITY) {
+			// appending to the array part: by the invariant, idx is not in the hash part
+			growArray();
+			array[(int) (idx - 1)] = value;
+			added = true;
+		}
+		else {
+			Long key = Long.valueOf(idx);
+			if (value == null) {
+				hash.remove(key);
+				added = false;
+			}
+			else {
+				added = hash.put(key, value) == null;
+			}
+		}
+
+		if (added) {
+			updateStamp();
+		}
+
+		updateBorder(idx, value);
+	}
+
+	private void updateBorder(long idx, Object value) {
+		if (value != null) {
+			if (idx == border + 1) {
+				// extending the sequence: skip over any values already following it
+				long b = idx;
+				while (b < Long.MAX_VALUE && rawget(b + 1) != null) {
+					b += 1;
+				}
+				border = b;
+			}
+		}
+		else if (idx == border && idx > 0) {
+			// shrinking the sequence: border - 1 is a border if there is a value at that index
+			border = idx - 1;
+		}
+	}
+
+	private boolean isBorder(long n) {
+		return (n == 0 || rawget(n) != null)
+				&& (n == Long.MAX_VALUE || rawget(n + 1) == null);
+	}
+
+	/**
+	 * If this table is a sequence, returns the length of this sequence.
+	 *
+	 * <p>This implementation returns the border maintained by the assignments to integer
+	 * keys in constant time, and only falls back to searching for a border when the
+	 * tracked border had been invalidated by removing values from the table.</p>
+	 *
+	 * @return  the length of the sequence if this table is a sequence
+	 */
+	@Override
+	public long rawlen() {
+		long n = border;
+		if (!isBorder(n)) {
+			n = super.rawlen();
+			border = n;
+		}
+		return n;
+	}
+
+	private static int nextCapacity(int capacity) {
+		long newCapacity = Math.max((long) capacity * 2, MIN_ARRAY_CAPACITY);
+		return (int) Math.min(newCapacity, MAX_ARRAY_CAPACITY);
+	}
+
+	private void growArray() {
+		int oldCapacity = array.length;
+		int newCapacity = nextCapacity(oldCapacity);
+
+		// keep growing while the key following the array part is in the hash part
+		while (!hash.isEmpty() && newCapacity < MAX_ARRAY_CAPACITY
+				&& hash.containsKey(Long.valueOf((long) newCapacity + 1))) {
+			newCapacity = nextCapacity(newCapacity);
+		}
+
+		Object[] newArray = Arrays.copyOf(array, newCapacity);
+		if (!hash.isEmpty()) {
+			migrateFromHash(newArray, oldCapacity, newCapacity);
+		}
+		array = newArray;
+	}
+
+	private void migrateFromHash(Object[] newArray, int from, int to) {
+		// move the values associated with keys in (from, to] from the hash part to newArray
+
+		if (hash.size() < to - from) {
+			// fewer entries than keys in range: scan the hash part
+			List<Long> keys = new ArrayList<>();
+			for (Object k : hash.keySet()) {
+				if (k instanceof Long) {
+					long l = ((Long) k).longValue();
+					if (l > from && l <= to) {
+						keys.add((Long) k);
+					}
+				}
+			}
+			for (Long k : keys) {
+				newArray[(int) (k.longValue() - 1)] = hash.remove(k);
+			}
+		}
+		else {
+			// probe the hash part for every key in range
+			for (int i = from + 1; i <= to; i++) {
+				Object v = hash.remove(Long.valueOf(i));
+				if (v != null) {
+					newArray[i - 1] = v;
+				}
+			}
+		}
+	}
+
+	private Object nextArrayKey(int fromIndex) {
+		for (int i = fromIndex; i < array.length; i++) {
+			if (array[i] != null) {
+				return Long.valueOf(i + 1);
+			}
+		}
+		return hash.getFirstKey();
+	}
+
 	@Override
 	public Object initialKey() {
-		return values.getFirstKey();
+		return nextArrayKey(0);
 	}
 
 	@Override
 	public Object successorKeyOf(Object key) {
+		key = Conversions.normaliseKey(key);
+
+		if (key instanceof Long) {
+			long idx = ((Long) key).longValue();
+			if (inArray(idx)) {
+				// values in the array part may be cleared during traversal
+				return nextArrayKey((int) idx);
+			}
+		}
+
 		try {
-			return values.getSuccessorOf(key);
+			return hash.getSuccessorOf(key);
 		}
 		catch (NoSuchElementException | NullPointerException ex) {
 			throw new IllegalArgumentException("invalid key to 'next'", ex);
 		}
 	}
 
+	/**
+	 * Returns a cursor visiting all entries of this table.
+	 *
+	 * <p>The cursor scans the array part by index, and then follows the links between
+	 * the entries of the hash part, without looking up the current key in every step.
+	 * Values may be removed from the table during the traversal.</p>
+	 *
+	 * @return  a cursor visiting all entries of this table
+	 */
+	@Override
+	public LoopCursor cursor() {
+		return new Cursor();
+	}
+
+	private class Cursor extends LoopCursor {
+
+		private int index;  // the index in the array part to continue the scan from
+		private Iterator<Map.Entry<Object, Object>> entries;  // null while in the array part
+		private Object value;
+
+		Cursor() {
+			this.index = 0;
+			this.entries = null;
+			this.value = null;
+		}
+
+		@Override
+		public Object next() {
+			if (entries == null) {
+				Object[] a = array;
+				for (int i = index; i < a.length; i++) {
+					Object v = a[i];
+					if (v != null) {
+						index = i + 1;
+						value = v;
+						return Long.valueOf(i + 1);
+					}
+				}
+				index = a.length;
+				entries = hash.entrySet().iterator();
+			}
+
+			if (entries.hasNext()) {
+				Map.Entry<Object, Object> e = entries.next();
+				value = e.getValue();
+				return e.getKey();
+			}
+			else {
+				value = null;
+				return null;
+			}
+		}
+
+		@Override
+		public Object value() {
+			return value;
+		}
+
+	}
+
 	@Override
 	protected void setMode(boolean weakKeys, boolean weakValues) {
 		// TODO
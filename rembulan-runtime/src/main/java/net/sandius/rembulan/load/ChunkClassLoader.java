@@ -18,16 +18,48 @@ package net.sandius.rembulan.load;
 
 import net.sandius.rembulan.util.ByteVector;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class loader for Lua chunks.
+ *
+ * <p>This class loader is parallel capable: distinct classes may be loaded
+ * by multiple threads concurrently.</p>
  */
 public class ChunkClassLoader extends ClassLoader {
 
+	static {
+		registerAsParallelCapable();
+	}
+
+	// references to all chunk class loaders that have not been garbage-collected yet;
+	// a reference must remain reachable until it is enqueued
+	private static final Set<LoaderReference> live =
+			Collections.newSetFromMap(new ConcurrentHashMap<LoaderReference, Boolean>());
+	private static final ReferenceQueue<ChunkClassLoader> collected = new ReferenceQueue<>();
+
+	private static final AtomicInteger liveLoaders = new AtomicInteger();
+	private static final AtomicLong liveClasses = new AtomicLong();
+
+	private static class LoaderReference extends WeakReference<ChunkClassLoader> {
+
+		// the classes defined by the loader, not modified once it has been collected
+		private final Set<String> loaded;
+
+		LoaderReference(ChunkClassLoader loader) {
+			super(loader, collected);
+			this.loaded = loader.loaded;
+		}
+
+	}
+
 	private final Map<String, ByteVector> installed;
 	private final Set<String> loaded;
 
@@ -39,8 +71,11 @@ public class ChunkClassLoader extends ClassLoader {
 	 */
 	public ChunkClassLoader(ClassLoader parent) {
 		super(parent);
-		this.installed = new HashMap<>();
-		this.loaded = new HashSet<>();
+		this.installed = new ConcurrentHashMap<>();
+		this.loaded = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		expungeCollected();
+		live.add(new LoaderReference(this));
+		liveLoaders.incrementAndGet();
 	}
 
 	/**
@@ -71,14 +106,14 @@ public class ChunkClassLoader extends ClassLoader {
 
 		synchronized (this) {
 			for (String name : classes.keySet()) {
-				if (installed.containsKey(name) || loaded.contains(name)) {
+				if (isInstalled(name)) {
 					// class already installed
 					throw new IllegalStateException("Class already installed: " + name);
 				}
-
-				installed.put(name, classes.get(name));
 			}
 
+			installed.putAll(classes);
+
 			String main = chunk.mainClassName();
 			assert (installed.containsKey(main));
 			return main;
@@ -95,22 +130,70 @@ public class ChunkClassLoader extends ClassLoader {
 	 * @throws NullPointerException  if {@code className} is {@code null}
 	 */
 	public boolean isInstalled(String className) {
-		synchronized (this) {
-			return installed.containsKey(className) || loaded.contains(className);
+		// check installed before loaded: findClass marks a class as loaded before
+		// removing it from installed, so a class missing from installed is already
+		// in loaded if it has ever been installed
+		return installed.containsKey(className) || loaded.contains(className);
+	}
+
+	/**
+	 * Returns the number of classes defined by this chunk class loader.
+	 *
+	 * @return  the number of classes defined by this class loader
+	 */
+	public int loadedClassCount() {
+		return loaded.size();
+	}
+
+	/**
+	 * Returns the number of chunk class loaders that have not been garbage-collected yet.
+	 *
+	 * <p>Note that class loaders that are no longer reachable are only excluded
+	 * from the count once they have been collected.</p>
+	 *
+	 * @return  the number of live chunk class loaders
+	 */
+	public static int liveLoaderCount() {
+		expungeCollected();
+		return liveLoaders.get();
+	}
+
+	/**
+	 * Returns the total number of classes defined by all chunk class loaders
+	 * that have not been garbage-collected yet.
+	 *
+	 * @return  the number of live chunk classes
+	 *
+	 * @see #liveLoaderCount()
+	 */
+	public static long liveClassCount() {
+		expungeCollected();
+		return liveClasses.get();
+	}
+
+	private static void expungeCollected() {
+		LoaderReference ref;
+		while ((ref = (LoaderReference) collected.poll()) != null) {
+			if (live.remove(ref)) {
+				liveLoaders.decrementAndGet();
+				liveClasses.addAndGet(-ref.loaded.size());
+			}
 		}
 	}
 
 	@Override
 	protected Class<?> findClass(String name) throws ClassNotFoundException {
-		synchronized (this) {
-			ByteVector bv = installed.remove(name);
-			if (bv != null) {
-				loaded.add(name);
-				return defineClass(name, bv);
-			}
-			else {
-				throw new ClassNotFoundException(name);
-			}
+		// loadClass holds the class loading lock for name, so there is
+		// at most one thread defining name at any time
+		ByteVector bv = installed.get(name);
+		if (bv != null) {
+			loaded.add(name);
+			liveClasses.incrementAndGet();
+			installed.remove(name);
+			return defineClass(name, bv);
+		}
+		else {
+			throw new ClassNotFoundException(name);
 		}
 	}
 
@@ -16,6 +16,7 @@
 
 package net.sandius.rembulan.runtime;
 
+import net.sandius.rembulan.Conversions;
 import net.sandius.rembulan.StateContext;
 import net.sandius.rembulan.exec.CallEventHandler;
 import net.sandius.rembulan.exec.Continuation;
@@ -25,7 +26,6 @@ import net.sandius.rembulan.impl.AbstractStateContext;
 import net.sandius.rembulan.util.Cons;
 
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
@@ -37,7 +37,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 class Call {
 
 	private final StateContext stateContext;
+	private final ReturnBufferFactory returnBufferFactory;
 	private final ReturnBuffer returnBuffer;
+	private final Coroutine.Mode coroutineMode;
 
 	private Cons<Coroutine> coroutineStack;
 
@@ -48,11 +50,15 @@ class Call {
 
 	private Call(
 			StateContext stateContext,
+			ReturnBufferFactory returnBufferFactory,
 			ReturnBuffer returnBuffer,
+			Coroutine.Mode coroutineMode,
 			Coroutine mainCoroutine) {
 
 		this.stateContext = Objects.requireNonNull(stateContext);
+		this.returnBufferFactory = Objects.requireNonNull(returnBufferFactory);
 		this.returnBuffer = Objects.requireNonNull(returnBuffer);
+		this.coroutineMode = Objects.requireNonNull(coroutineMode);
 
 		this.coroutineStack = new Cons<>(Objects.requireNonNull(mainCoroutine));
 
@@ -81,10 +87,37 @@ class Call {
 			Object fn,
 			Object... args) {
 
+		return init(stateContext, returnBufferFactory, Coroutine.Mode.STACKLESS, fn, args);
+	}
+
+	/**
+	 * Constructs a new {@code Call} object representing the call to the object {@code fn}
+	 * with the arguments stored in {@code args}, in the context of the Lua state {@code state},
+	 * executing the coroutines created during the call in the mode {@code coroutineMode}.
+	 *
+	 * <p>The call will be initialised in the {@link State#PAUSED paused state}.</p>
+	 *
+	 * @param stateContext  state context used by the call, must not be {@code null}
+	 * @param returnBufferFactory  return buffer factory used by the call, must not be {@code null}
+	 * @param coroutineMode  the coroutine execution mode, must not be {@code null}
+	 * @param fn  the call target, may be any value
+	 * @param args  the array of call arguments, must not be {@code null}
+	 * @return  a new {@code Call} object
+	 *
+	 * @throws NullPointerException  if {@code stateContext}, {@code returnBufferFactory},
+	 *                               {@code coroutineMode} or {@code args} is {@code null}
+	 */
+	public static Call init(
+			StateContext stateContext,
+			ReturnBufferFactory returnBufferFactory,
+			Coroutine.Mode coroutineMode,
+			Object fn,
+			Object... args) {
+
 		ReturnBuffer returnBuffer = returnBufferFactory.newInstance();
 		Coroutine c = new Coroutine(fn);
 		returnBuffer.setToContentsOf(args);
-		return new Call(stateContext, returnBuffer, c);
+		return new Call(stateContext, returnBufferFactory, returnBuffer, coroutineMode, c);
 	}
 
 	/**
@@ -246,14 +279,14 @@ class Call {
 		rr.fire(handler, this, cont);
 	}
 
-	private static class ControlPayload extends ControlThrowablePayload {
+	static class ControlPayload extends ControlThrowablePayload {
 
 		private final boolean preempted;
 		private final Coroutine target;
 		private final Object[] values;
 		private final AsyncTask task;
 
-		private ControlPayload(boolean preempted, Coroutine target, Object[] values, AsyncTask task) {
+		ControlPayload(boolean preempted, Coroutine target, Object[] values, AsyncTask task) {
 			if ((preempted && target == null && values == null && task == null)
 					|| (!preempted && values != null && task == null)
 					|| (!preempted && target == null && values == null && task != null)) {
@@ -280,7 +313,7 @@ class Call {
 
 	}
 
-	private static final ControlPayload PAUSED_PAYLOAD = new ControlPayload(true, null, null, null);
+	static final ControlPayload PAUSED_PAYLOAD = new ControlPayload(true, null, null, null);
 
 	private static final class ResumeResult {
 
@@ -330,13 +363,52 @@ class Call {
 
 	private static final ResumeResult PAUSE_RESULT = new ResumeResult(true, null, null, null);
 
-	class Resumer extends AbstractStateContext implements ExecutionContext, ControlThrowablePayload.Visitor {
+	// saves the frames captured by ct on callStack in the order in which they are to be resumed
+	static void saveFrames(FrameStack callStack, ResolvedControlThrowable ct) {
+		FrameStack frames = ct.frames();
+		if (frames == callStack) {
+			// the frames have been pushed on the call stack, innermost first
+			callStack.reverseFrom(ct.base());
+		}
+		else {
+			callStack.pushReversed(frames, ct.base());
+		}
+	}
+
+	// returns true if the frame has been run, false if the error is to be propagated further
+	static boolean resumeFrame(ExecutionContext context, Resumable resumable, Object savedState, Throwable error)
+			throws ResolvedControlThrowable {
+
+		if (error == null) {
+			// no errors
+			resumable.resume(context, savedState);
+			Dispatch.evaluateTailCalls(context);
+			return true;
+		}
+		else {
+			// there is an error to be handled
+			if (resumable instanceof ProtectedResumable) {
+				// top is protected, can handle the error
+				ProtectedResumable pr = (ProtectedResumable) resumable;
+				pr.resumeError(context, savedState, Conversions.toErrorObject(error));
+				Dispatch.evaluateTailCalls(context);
+				return true;
+			}
+			else {
+				// top is not protected, continue unwinding the stack
+				return false;
+			}
+		}
+	}
+
+	class Resumer extends AbstractStateContext
+			implements ExecutionContext, ControlThrowablePayload.Visitor, CoroutineThread.Host {
 
 		private final SchedulingContext schedulingContext;
 
 		private ResumeResult result;
 		private Throwable error;
-		private Cons<ResumeInfo> callStack;
+		private FrameStack callStack;
 
 		Resumer(SchedulingContext schedulingContext) {
 			super(stateContext);
@@ -357,7 +429,10 @@ class Call {
 
 		@Override
 		public Coroutine newCoroutine(LuaFunction function) {
-			return new Coroutine(Objects.requireNonNull(function));
+			Objects.requireNonNull(function);
+			return coroutineMode == Coroutine.Mode.THREADED
+					? new Coroutine(stateContext, returnBufferFactory, function)
+					: new Coroutine(function);
 		}
 
 		@Override
@@ -373,20 +448,30 @@ class Call {
 		@Override
 		public void resume(Coroutine coroutine, Object[] args) throws UnresolvedControlThrowable {
 			Objects.requireNonNull(coroutine);
+			if (coroutine.thread != null) {
+				CoroutineThread.resume(this, getCurrentCoroutine(), coroutine, Objects.requireNonNull(args),
+						returnBuffer, callStack);
+				return;
+			}
 			throw new UnresolvedControlThrowable(new ControlPayload(
-					false, Objects.requireNonNull(coroutine), Objects.requireNonNull(args), null));
+					false, Objects.requireNonNull(coroutine), Objects.requireNonNull(args), null), callStack);
 		}
 
 		@Override
 		public void yield(Object[] args) throws UnresolvedControlThrowable {
 			throw new UnresolvedControlThrowable(new ControlPayload(
-					false, null, Objects.requireNonNull(args), null));
+					false, null, Objects.requireNonNull(args), null), callStack);
 		}
 
 		@Override
 		public void resumeAfter(AsyncTask task) throws UnresolvedControlThrowable {
 			throw new UnresolvedControlThrowable(new ControlPayload(
-					false, null, null, Objects.requireNonNull(task)));
+					false, null, null, Objects.requireNonNull(task)), callStack);
+		}
+
+		@Override
+		public void continueThread(Coroutine coroutine) throws UnresolvedControlThrowable {
+			CoroutineThread.resume(this, getCurrentCoroutine(), coroutine, null, returnBuffer, callStack);
 		}
 
 		@Override
@@ -394,6 +479,10 @@ class Call {
 			schedulingContext.registerTicks(ticks);
 		}
 
+		boolean shouldPause() {
+			return schedulingContext.shouldPause();
+		}
+
 		@Override
 		public void pauseIfRequested() throws UnresolvedControlThrowable {
 			if (schedulingContext.shouldPause()) {
@@ -403,7 +492,7 @@ class Call {
 
 		@Override
 		public void pause() throws UnresolvedControlThrowable {
-			throw new UnresolvedControlThrowable(PAUSED_PAYLOAD);
+			throw new UnresolvedControlThrowable(PAUSED_PAYLOAD, callStack);
 		}
 
 		@Override
@@ -497,25 +586,19 @@ class Call {
 			result = new ResumeResult(false, null, null, task);
 		}
 
-		private void saveFrames(ResolvedControlThrowable ct) {
-			Iterator<ResumeInfo> it = ct.frames();
-			while (it.hasNext()) {
-				callStack = new Cons<>(it.next(), callStack);
-			}
-		}
-
 		private void continueCurrentCoroutine() {
-			while (callStack != null) {
-				ResumeInfo top = callStack.car;
-				callStack = callStack.cdr;
+			while (!callStack.isEmpty()) {
+				Resumable resumable = callStack.topResumable();
+				Object savedState = callStack.topState();
+				callStack.pop();
 
 				try {
-					if (top.resume(this, error)) {
+					if (resumeFrame(this, resumable, savedState, error)) {
 						error = null;  // top was run
 					}
 				}
 				catch (ResolvedControlThrowable ct) {
-					saveFrames(ct);
+					saveFrames(callStack, ct);
 					ct.payload().accept(this);
 					return;
 				}
@@ -525,8 +608,6 @@ class Call {
 				}
 			}
 
-			assert (callStack == null);
-
 			coroutineReturn();
 		}
 
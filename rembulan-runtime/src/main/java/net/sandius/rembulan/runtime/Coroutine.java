@@ -17,7 +17,7 @@
 package net.sandius.rembulan.runtime;
 
 import net.sandius.rembulan.Ordering;
-import net.sandius.rembulan.util.Cons;
+import net.sandius.rembulan.StateContext;
 
 import java.util.Objects;
 
@@ -42,12 +42,62 @@ import java.util.Objects;
 public final class Coroutine {
 
 	// paused call stack: up-to-date only iff coroutine is not running
-	private Cons<ResumeInfo> callStack;
+	private FrameStack callStack;
 	private Status status;
 
+	// the thread running this coroutine, null if the coroutine is stackless
+	final CoroutineThread thread;
+
 	Coroutine(Object body) {
-		this.callStack = new Cons<>(new ResumeInfo(BootstrapResumable.INSTANCE, body));
+		this.callStack = new FrameStack();
+		this.callStack.push(BootstrapResumable.INSTANCE, body);
+		this.status = Status.SUSPENDED;
+		this.thread = null;
+	}
+
+	Coroutine(StateContext stateContext, ReturnBufferFactory returnBufferFactory, Object body) {
+		this.callStack = null;
 		this.status = Status.SUSPENDED;
+		this.thread = new CoroutineThread(this, stateContext, returnBufferFactory, body);
+	}
+
+	/**
+	 * The way in which coroutines are executed.
+	 */
+	public enum Mode {
+
+		/**
+		 * Coroutines are executed on the thread of the call that resumes them. Switching
+		 * to and from a coroutine is implemented by unwinding the Java call stack using
+		 * control throwables and rebuilding it by {@linkplain Resumable resuming} the suspended
+		 * call frames, i.e., its cost is proportional to the number of frames entered
+		 * since the coroutine has last been resumed. (The suspended frames are resumed one
+		 * at a time as the frames they have called return.)
+		 *
+		 * <p>This is the default mode.</p>
+		 */
+		STACKLESS,
+
+		/**
+		 * Every coroutine is executed on a thread of its own: on a virtual thread when
+		 * running on a JVM that supports them, and on a daemon platform thread otherwise.
+		 * Resuming a coroutine and yielding from it hands the control over to that thread
+		 * and back without unwinding the Java call stack, so that the cost of a coroutine
+		 * switch does not depend on the depth of the Lua call stack. Note however that
+		 * a switch between a platform thread and a virtual thread involves the scheduler
+		 * of the operating system: the switches are cheapest when the call itself is
+		 * executed on a virtual thread.
+		 *
+		 * <p>In this mode, {@link ExecutionContext#resume(Coroutine, Object[])} and
+		 * {@link ExecutionContext#yield(Object[])} return normally once the control has been
+		 * passed back to the caller. A coroutine that is not run to completion keeps
+		 * its (parked) thread until it becomes unreachable and is garbage-collected;
+		 * the thread then terminates without executing any further Lua code. Coroutines
+		 * that are reachable from their own stack (e.g., when their body references
+		 * the coroutine in an upvalue) keep their thread until the virtual machine exits.</p>
+		 */
+		THREADED
+
 	}
 
 	/**
@@ -80,7 +130,7 @@ public final class Coroutine {
 		return status;
 	}
 
-	private static class BootstrapResumable implements Resumable {
+	static class BootstrapResumable implements Resumable {
 
 		static final BootstrapResumable INSTANCE = new BootstrapResumable();
 
@@ -97,7 +147,7 @@ public final class Coroutine {
 	}
 
 	// (RUNNING, SUSPENDED) -> (NORMAL, RUNNING)
-	static Cons<ResumeInfo> _resume(final Coroutine a, final Coroutine b, Cons<ResumeInfo> cs) {
+	static FrameStack _resume(final Coroutine a, final Coroutine b, FrameStack cs) {
 		Objects.requireNonNull(a);
 		Objects.requireNonNull(b);
 		Objects.requireNonNull(cs);
@@ -106,7 +156,7 @@ public final class Coroutine {
 			if (a.status == Status.RUNNING) {
 				synchronized (b) {
 					if (b.status == Status.SUSPENDED) {
-						Cons<ResumeInfo> result = b.callStack;
+						FrameStack result = b.callStack;
 						a.callStack = cs;
 						b.callStack = null;
 						a.status = Status.NORMAL;
@@ -130,16 +180,16 @@ public final class Coroutine {
 	}
 
 	// (NORMAL, RUNNING) -> (RUNNING, SUSPENDED)
-	static Cons<ResumeInfo> _yield(final Coroutine a, final Coroutine b, Cons<ResumeInfo> cs) {
+	static FrameStack _yield(final Coroutine a, final Coroutine b, FrameStack cs) {
 		synchronized (a) {
 			if (a.status == Status.NORMAL) {
 				synchronized (b) {
 					if (b.status == Status.RUNNING) {
-						Cons<ResumeInfo> result = a.callStack;
+						FrameStack result = a.callStack;
 						a.callStack = null;
 						b.callStack = cs;
 						a.status = Status.RUNNING;
-						b.status = b.callStack != null ? Status.SUSPENDED : Status.DEAD;
+						b.status = cs != null && !cs.isEmpty() ? Status.SUSPENDED : Status.DEAD;
 						return result;
 					}
 					else {
@@ -154,19 +204,60 @@ public final class Coroutine {
 	}
 
 	// (NORMAL, RUNNING) -> (RUNNING, DEAD)
-	static Cons<ResumeInfo> _return(Coroutine a, Coroutine b) {
+	static FrameStack _return(Coroutine a, Coroutine b) {
 		return _yield(a, b, null);
 	}
 
-	synchronized Cons<ResumeInfo> unpause() {
+	// (RUNNING, SUSPENDED) -> (NORMAL, RUNNING), b running on its own thread
+	static void _resumeThread(final Coroutine a, final Coroutine b) {
+		Objects.requireNonNull(a);
+		Objects.requireNonNull(b);
+
+		synchronized (a) {
+			if (a.status == Status.RUNNING) {
+				synchronized (b) {
+					if (b.status == Status.SUSPENDED) {
+						a.status = Status.NORMAL;
+						b.status = Status.RUNNING;
+					}
+					else {
+						if (b.status == Status.DEAD) {
+							throw Errors.resumeDeadCoroutine();
+						}
+						else {
+							throw Errors.resumeNonSuspendedCoroutine();
+						}
+					}
+				}
+			}
+			else {
+				throw new IllegalStateException("resuming coroutine not in running state");
+			}
+		}
+	}
+
+	// (NORMAL, RUNNING) -> (RUNNING, SUSPENDED) or (RUNNING, DEAD), b running on its own thread
+	static void _yieldThread(final Coroutine a, final Coroutine b, boolean finished) {
+		synchronized (a) {
+			synchronized (b) {
+				a.status = Status.RUNNING;
+				b.status = finished ? Status.DEAD : Status.SUSPENDED;
+			}
+		}
+	}
+
+	synchronized FrameStack unpause() {
 		// TODO: check status?
-		status = Status.RUNNING;
-		Cons<ResumeInfo> result = callStack;
+		if (status != Status.NORMAL) {
+			// not waiting for a threaded coroutine it has resumed
+			status = Status.RUNNING;
+		}
+		FrameStack result = callStack;
 		callStack = null;
 		return result;
 	}
 
-	synchronized void pause(Cons<ResumeInfo> callStack) {
+	synchronized void pause(FrameStack callStack) {
 		// TODO: check status?
 		this.callStack = callStack;
 	}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime;
+
+import net.sandius.rembulan.LuaRuntimeException;
+import net.sandius.rembulan.StateContext;
+import net.sandius.rembulan.impl.AbstractStateContext;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The thread executing a coroutine in the {@linkplain Coroutine.Mode#THREADED threaded mode}.
+ *
+ * <p>At any given time, either the coroutine thread or the thread that has resumed
+ * the coroutine (its <i>owner</i>) is running, while the other one is parked. The control
+ * is handed over between the two using {@link LockSupport}, without acquiring any monitors,
+ * so that a virtual thread waiting for its turn does not pin its carrier thread.</p>
+ *
+ * <p>The coroutine body is executed in an execution context of its own, in which
+ * resuming a coroutine and yielding from it return normally. Pausing the call and
+ * asynchronous tasks are still implemented by control throwables: the frames on the stack
+ * of the coroutine thread are captured in its call stack, and the request is forwarded to
+ * the owner, which in turn captures its own frames together with a frame that hands
+ * the control back to the coroutine thread once the call is continued.</p>
+ *
+ * <p>The coroutine thread references the coroutine weakly. A coroutine that is suspended
+ * and no longer reachable can never be resumed again, so once it has been collected,
+ * its thread is woken up by a reaper thread and terminates by unwinding its stack
+ * (without executing any further Lua code). Note that this is not possible when
+ * the coroutine is reachable from its own stack, e.g. from a local variable or
+ * an upvalue of a function being executed by the coroutine.</p>
+ */
+final class CoroutineThread implements Runnable {
+
+	/**
+	 * An execution context able to resume a threaded coroutine after the call has been
+	 * paused while the coroutine was running.
+	 */
+	interface Host {
+
+		void continueThread(Coroutine coroutine) throws UnresolvedControlThrowable;
+
+	}
+
+	private static final ThreadFactory THREAD_FACTORY = threadFactory();
+
+	private static final int EVENT_YIELD = 0;
+	private static final int EVENT_RETURN = 1;
+	private static final int EVENT_ERROR = 2;
+	private static final int EVENT_PAUSE = 3;
+
+	private final Reaper coroutine;
+	private final StateContext stateContext;
+	private final ReturnBufferFactory returnBufferFactory;
+	private final Context context;
+
+	// frames of the coroutine suspended by a pause or an asynchronous task
+	private final FrameStack callStack;
+
+	// true iff the control is with the coroutine thread; written last when handing over
+	private volatile boolean running;
+
+	// true iff the coroutine has been collected, and the thread should terminate
+	private volatile boolean abandoned;
+
+	// written once by the owner, read by the reaper when abandoning the coroutine
+	private volatile Thread thread;
+
+	// accessed only by the thread that has the control
+	private Thread owner;
+	private Call.Resumer root;
+	private int event;
+	private Object[] values;
+	private Throwable error;
+	private ControlThrowablePayload payload;
+
+	CoroutineThread(Coroutine coroutine, StateContext stateContext,
+			ReturnBufferFactory returnBufferFactory, Object body) {
+
+		this.coroutine = new Reaper(Objects.requireNonNull(coroutine), this);
+		this.stateContext = Objects.requireNonNull(stateContext);
+		this.returnBufferFactory = Objects.requireNonNull(returnBufferFactory);
+		this.context = new Context();
+		this.callStack = new FrameStack();
+		this.callStack.push(Coroutine.BootstrapResumable.INSTANCE, body);
+		this.running = false;
+		this.thread = null;
+	}
+
+	private static ThreadFactory threadFactory() {
+		try {
+			// Thread.ofVirtual().factory(), looked up reflectively as it is not available
+			// on older virtual machines
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		}
+		catch (ReflectiveOperationException | RuntimeException ex) {
+			return new PlatformThreadFactory();
+		}
+	}
+
+	private static class PlatformThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "rembulan-coroutine-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+
+	}
+
+	/**
+	 * A weak reference to the coroutine that abandons the coroutine thread once
+	 * the coroutine has been collected.
+	 */
+	private static class Reaper extends WeakReference<Coroutine> {
+
+		private static final ReferenceQueue<Coroutine> QUEUE = new ReferenceQueue<>();
+
+		static {
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							((Reaper) QUEUE.remove()).target.abandon();
+						}
+					}
+					catch (InterruptedException ex) {
+						// terminate
+					}
+				}
+			}, "rembulan-coroutine-reaper");
+			t.setDaemon(true);
+			t.start();
+		}
+
+		private final CoroutineThread target;
+
+		Reaper(Coroutine coroutine, CoroutineThread target) {
+			super(coroutine, QUEUE);
+			this.target = target;
+		}
+
+	}
+
+	/**
+	 * Thrown in an abandoned coroutine thread in order to unwind its stack.
+	 */
+	private static class Abandoned extends Error {
+
+		Abandoned() {
+			super(null, null, false, false);
+		}
+
+	}
+
+	private static class ContinueResumable implements Resumable {
+
+		static final ContinueResumable INSTANCE = new ContinueResumable();
+
+		@Override
+		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+			try {
+				((Host) context).continueThread((Coroutine) suspendedState);
+			}
+			catch (UnresolvedControlThrowable ct) {
+				throw ct.resolve();
+			}
+		}
+
+	}
+
+	/**
+	 * Resumes the threaded coroutine {@code target} from the coroutine {@code caller},
+	 * passing the arguments {@code args} to it, or continues it after the call has been paused
+	 * if {@code args} is {@code null}. This method is called by the owner, and returns
+	 * once {@code target} has yielded or returned, storing the values in {@code returnBuffer}.
+	 *
+	 * <p>If {@code target} pauses, the pause is forwarded to the frames of the owner
+	 * by throwing a control throwable capturing them in {@code callStack}.</p>
+	 */
+	static void resume(
+			Call.Resumer root,
+			Coroutine caller,
+			Coroutine target,
+			Object[] args,
+			ReturnBuffer returnBuffer,
+			FrameStack callStack)
+			throws UnresolvedControlThrowable {
+
+		CoroutineThread t = target.thread;
+		if (args != null) {
+			Coroutine._resumeThread(caller, target);
+		}
+
+		t.handOver(root, args);
+
+		switch (t.event) {
+			case EVENT_YIELD:
+			case EVENT_RETURN:
+				Coroutine._yieldThread(caller, target, t.event == EVENT_RETURN);
+				returnBuffer.setToContentsOf(t.values);
+				t.values = null;
+				return;
+
+			case EVENT_ERROR:
+				Coroutine._yieldThread(caller, target, true);
+				Throwable error = t.error;
+				t.error = null;
+				if (error instanceof RuntimeException) throw (RuntimeException) error;
+				else if (error instanceof Error) throw (Error) error;
+				else throw new LuaRuntimeException(error);
+
+			case EVENT_PAUSE:
+				UnresolvedControlThrowable ct = new UnresolvedControlThrowable(t.payload, callStack);
+				t.payload = null;
+				ct.resolve(ContinueResumable.INSTANCE, target);
+				throw ct;
+
+			default:
+				throw new AssertionError();
+		}
+	}
+
+	// called by the owner: passes the control to the coroutine thread and waits for it
+	private void handOver(Call.Resumer root, Object[] args) {
+		this.owner = Thread.currentThread();
+		this.root = root;
+		this.values = args;
+
+		Thread t = thread;
+		if (t == null) {
+			t = THREAD_FACTORY.newThread(this);
+			thread = t;
+			running = true;
+			t.start();
+		}
+		else {
+			running = true;
+			LockSupport.unpark(t);
+		}
+
+		await(false);
+	}
+
+	// called by the coroutine thread: passes the control back to the owner
+	private void handBack(int event) {
+		this.event = event;
+		Thread o = owner;
+		// do not keep the call reachable while suspended
+		owner = null;
+		root = null;
+		running = false;
+		LockSupport.unpark(o);
+	}
+
+	// called by the reaper once the coroutine has been collected
+	private void abandon() {
+		abandoned = true;
+		Thread t = thread;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+	}
+
+	private void await(boolean expected) {
+		boolean interrupted = false;
+		while (running != expected) {
+			if (abandoned) {
+				// only the coroutine thread may be waiting for an abandoned coroutine
+				throw new Abandoned();
+			}
+			LockSupport.park(this);
+			if (Thread.interrupted()) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		Throwable error = null;
+
+		try {
+			context.returnBuffer.setToContentsOf(values);
+			values = null;
+
+			while (!callStack.isEmpty()) {
+				Resumable resumable = callStack.topResumable();
+				Object savedState = callStack.topState();
+				callStack.pop();
+
+				try {
+					if (Call.resumeFrame(context, resumable, savedState, error)) {
+						error = null;  // top was run
+					}
+				}
+				catch (ResolvedControlThrowable ct) {
+					// a pause or an asynchronous task: forward it to the owner
+					Call.saveFrames(callStack, ct);
+					payload = ct.payload();
+					handBack(EVENT_PAUSE);
+					await(true);
+				}
+				catch (Exception ex) {
+					// unhandled exception: will try finding a handler in the next iteration
+					error = ex;
+				}
+			}
+		}
+		catch (Abandoned ex) {
+			return;
+		}
+		catch (Throwable ex) {
+			error = ex;
+		}
+
+		if (error == null) {
+			values = context.returnBuffer.getAsArray();
+			handBack(EVENT_RETURN);
+		}
+		else {
+			this.error = error;
+			handBack(EVENT_ERROR);
+		}
+	}
+
+	class Context extends AbstractStateContext implements ExecutionContext, Host {
+
+		private final ReturnBuffer returnBuffer;
+
+		Context() {
+			super(stateContext);
+			this.returnBuffer = returnBufferFactory.newInstance();
+		}
+
+		@Override
+		public ReturnBuffer getReturnBuffer() {
+			return returnBuffer;
+		}
+
+		@Override
+		public Coroutine getCurrentCoroutine() {
+			// non-null, since the coroutine is running
+			return coroutine.get();
+		}
+
+		@Override
+		public boolean isInMainCoroutine() {
+			// in agreement with Call.Resumer, which answers true in non-main coroutines
+			return true;
+		}
+
+		@Override
+		public Coroutine.Status getCoroutineStatus(Coroutine coroutine) {
+			return coroutine.getStatus();
+		}
+
+		@Override
+		public Coroutine newCoroutine(LuaFunction function) {
+			return new Coroutine(stateContext, returnBufferFactory, Objects.requireNonNull(function));
+		}
+
+		@Override
+		public void resume(Coroutine target, Object[] args) throws UnresolvedControlThrowable {
+			Objects.requireNonNull(target);
+			Objects.requireNonNull(args);
+			if (target.thread == null) {
+				switch (target.getStatus()) {
+					case SUSPENDED: throw Errors.resumeStacklessCoroutineFromThread();
+					case DEAD: throw Errors.resumeDeadCoroutine();
+					default: throw Errors.resumeNonSuspendedCoroutine();
+				}
+			}
+			CoroutineThread.resume(root, coroutine.get(), target, args, returnBuffer, callStack);
+		}
+
+		@Override
+		public void continueThread(Coroutine target) throws UnresolvedControlThrowable {
+			CoroutineThread.resume(root, coroutine.get(), target, null, returnBuffer, callStack);
+		}
+
+		@Override
+		public void yield(Object[] args) {
+			values = Objects.requireNonNull(args);
+			handBack(EVENT_YIELD);
+			await(true);
+
+			returnBuffer.setToContentsOf(values);
+			values = null;
+		}
+
+		@Override
+		public void resumeAfter(AsyncTask task) throws UnresolvedControlThrowable {
+			throw new UnresolvedControlThrowable(new Call.ControlPayload(
+					false, null, null, Objects.requireNonNull(task)), callStack);
+		}
+
+		@Override
+		public void registerTicks(int ticks) {
+			root.registerTicks(ticks);
+		}
+
+		@Override
+		public void pauseIfRequested() throws UnresolvedControlThrowable {
+			if (root.shouldPause()) {
+				pause();
+			}
+		}
+
+		@Override
+		public void pause() throws UnresolvedControlThrowable {
+			throw new UnresolvedControlThrowable(Call.PAUSED_PAYLOAD, callStack);
+		}
+
+	}
+
+}
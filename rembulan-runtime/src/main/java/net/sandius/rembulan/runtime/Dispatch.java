@@ -18,7 +18,9 @@ package net.sandius.rembulan.runtime;
 
 import net.sandius.rembulan.Arithmetic;
 import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.ByteStringBuilder;
 import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.LuaRuntimeException;
 import net.sandius.rembulan.LuaMathOperators;
 import net.sandius.rembulan.MetatableProvider;
 import net.sandius.rembulan.Metatables;
@@ -1097,6 +1099,153 @@ public final class Dispatch {
 		}
 	}
 
+	// concatenations with an operand longer than this are evaluated pairwise, so that
+	// the long operand may be shared rather than copied (see ByteString.concat)
+	private static final int CONCAT_SHARING_THRESHOLD = 1024;
+
+	private static boolean isStringable(Object o) {
+		return o instanceof ByteString || o instanceof String || o instanceof Number;
+	}
+
+	/**
+	 * Evaluates the Lua expression {@code args[0] .. args[1] .. ... .. args[n - 1]}
+	 * (where {@code n} is the length of {@code args}), including the handling of metamethods,
+	 * and stores the result to the return buffer associated with {@code context}.
+	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
+	 * changes are expected to be resolved by the caller of this method.
+	 *
+	 * <p>If all operands have string values, their concatenation is built in a single buffer
+	 * sized up front. Otherwise, the operands are concatenated pairwise from right to left,
+	 * as in the equivalent chain of binary concatenations {@code a .. (b .. (c .. ...))},
+	 * with consecutive string values concatenated at once. The {@code __concat} metamethod
+	 * is only consulted for pairs involving a value that does not have a string value.</p>
+	 *
+	 * <p>The contents of {@code args} may be modified by this method.</p>
+	 *
+	 * @param context  execution context, must not be {@code null}
+	 * @param args  the operands, must not be {@code null}, and must contain at least
+	 *              two elements (which may be any value)
+	 *
+	 * @throws UnresolvedControlThrowable  if the evaluation called a metamethod and the metamethod
+	 *                           initiates a non-local control change
+	 * @throws NullPointerException  if {@code context} or {@code args} is {@code null}
+	 * @throws IllegalOperationAttemptException  if a pair of operands cannot be concatenated:
+	 *                                           one of them does not have a string value
+	 *                                           and neither has the {@code __concat} metamethod
+	 */
+	@SuppressWarnings("unused")
+	public static void concat(ExecutionContext context, Object[] args) throws UnresolvedControlThrowable {
+		for (Object o : args) {
+			if (!isStringable(o)) {
+				// at least one metamethod call is needed
+				concatPairwise(context, args, args.length);
+				return;
+			}
+		}
+
+		context.getReturnBuffer().setTo(concatStrings(args, 0, args.length));
+	}
+
+	// concatenates args[from] .. ... .. args[to - 1], all of which must have string values
+	private static ByteString concatStrings(Object[] args, int from, int to) {
+		int length = 0;
+		int maxLength = 0;
+		for (int i = from; i < to; i++) {
+			ByteString s = Conversions.stringValueOf(args[i]);
+			args[i] = s;
+			length += s.length();
+			maxLength = Math.max(maxLength, s.length());
+		}
+
+		if (length < 0) {
+			throw new IllegalArgumentException("string length overflow");
+		}
+
+		if (maxLength > CONCAT_SHARING_THRESHOLD) {
+			ByteString result = (ByteString) args[to - 1];
+			for (int i = to - 2; i >= from; i--) {
+				result = ((ByteString) args[i]).concat(result);
+			}
+			return result;
+		}
+		else {
+			ByteStringBuilder builder = new ByteStringBuilder(length);
+			for (int i = from; i < to; i++) {
+				builder.append((ByteString) args[i]);
+			}
+			return builder.toByteString();
+		}
+	}
+
+	// evaluates stack[0] .. ... .. stack[top - 1] as in the Lua reference implementation:
+	// repeatedly reduces the two topmost elements, concatenating all consecutive string values
+	// at once, or calling the __concat metamethod
+	private static void concatPairwise(ExecutionContext context, Object[] stack, int top)
+			throws UnresolvedControlThrowable {
+
+		while (top > 1) {
+			Object a = stack[top - 2];
+			Object b = stack[top - 1];
+
+			if (isStringable(a) && isStringable(b)) {
+				int from = top - 2;
+				while (from > 0 && isStringable(stack[from - 1])) {
+					from -= 1;
+				}
+				stack[from] = concatStrings(stack, from, top);
+				top = from + 1;
+			}
+			else {
+				Object handler = Metatables.binaryHandlerFor(context, Metatables.MT_CONCAT, a, b);
+				if (handler == null) {
+					throw Errors.illegalConcatenationAttempt(a, b);
+				}
+
+				try {
+					call(context, handler, a, b);
+				}
+				catch (UnresolvedControlThrowable ct) {
+					// suspended in the metamethod call
+					throw ct.resolve(CONCAT_RESUMABLE, new ConcatState(stack, top - 1)).unresolve();
+				}
+
+				top -= 1;
+				stack[top - 1] = context.getReturnBuffer().get0();
+			}
+		}
+
+		context.getReturnBuffer().setTo(stack[0]);
+	}
+
+	private static class ConcatState {
+
+		final Object[] stack;
+		final int top;
+
+		ConcatState(Object[] stack, int top) {
+			this.stack = stack;
+			this.top = top;
+		}
+
+	}
+
+	private static final Resumable CONCAT_RESUMABLE = new Resumable() {
+
+		@Override
+		public void resume(ExecutionContext context, Object suspendedState) throws ResolvedControlThrowable {
+			ConcatState state = (ConcatState) suspendedState;
+			state.stack[state.top - 1] = context.getReturnBuffer().get0();
+			try {
+				concatPairwise(context, state.stack, state.top);
+			}
+			catch (UnresolvedControlThrowable ct) {
+				// the call frame has already been registered by concatPairwise
+				throw ct.resolve();
+			}
+		}
+
+	};
+
 	private static final CmpResultResumable CMP_RESULT_RESUMABLE_TRUE = new CmpResultResumable(true);
 	private static final CmpResultResumable CMP_RESULT_RESUMABLE_FALSE = new CmpResultResumable(false);
 
@@ -1366,6 +1515,10 @@ public final class Dispatch {
 		return Ordering.STRING.le(ByteString.of(a), ByteString.of(b));
 	}
 
+	// the maximum number of non-function __index or __newindex values followed
+	// in a single access, as in PUC-Lua
+	private static final int MAX_METAMETHOD_CHAIN_LENGTH = 2000;
+
 	/**
 	 * Evaluates the Lua expression {@code table[key]} (in non-assignment context) including
 	 * the handling of metamethods, and stores the result to the return buffer associated with
@@ -1382,46 +1535,57 @@ public final class Dispatch {
 	 * @throws NullPointerException  if {@code context} is {@code null}
 	 * @throws IllegalOperationAttemptException  if {@code table} is not a table and does
 	 *                                           not have the {@code __index} metamethod
+	 * @throws LuaRuntimeException  if the chain of {@code __index} tables is too long,
+	 *                              e.g. because it contains a loop
 	 */
 	@SuppressWarnings("unused")
 	public static void index(ExecutionContext context, Object table, Object key) throws UnresolvedControlThrowable {
-		if (table instanceof Table) {
-			Table t = (Table) table;
-			Object value = t.rawget(key);
+		Object t = table;
 
-			if (value != null) {
-				context.getReturnBuffer().setTo(value);
-				return;
+		// follow the chain of __index values, as long as they are not functions
+		for (int i = 0; i < MAX_METAMETHOD_CHAIN_LENGTH; i++) {
+			if (t instanceof Table) {
+				Object value = ((Table) t).rawget(key);
+
+				if (value != null) {
+					context.getReturnBuffer().setTo(value);
+					return;
+				}
+				// else fall through and check the __index a metamethod
 			}
-			// else fall through and check the __index a metamethod
-		}
 
-		Object handler = Metatables.getMetamethod(context, Metatables.MT_INDEX, table);
+			Object handler = Metatables.getMetamethod(context, Metatables.MT_INDEX, t);
 
-		if (handler == null && table instanceof Table) {
-			// key not found and no index metamethod, returning nil
-			context.getReturnBuffer().setTo(null);
-			return;
-		}
-		if (handler instanceof LuaFunction) {
-			// call the handler
-			LuaFunction fn = (LuaFunction) handler;
+			if (handler == null) {
+				if (t instanceof Table) {
+					// key not found and no index metamethod, returning nil
+					context.getReturnBuffer().setTo(null);
+					return;
+				}
+				else {
+					throw Errors.illegalIndexAttempt(t, key);
+				}
+			}
+			else if (handler instanceof LuaFunction) {
+				// call the handler
+				LuaFunction fn = (LuaFunction) handler;
 
-			try {
-				fn.invoke(context, table, key);
-				evaluateTailCalls(context);
+				try {
+					fn.invoke(context, t, key);
+					evaluateTailCalls(context);
+				}
+				catch (ResolvedControlThrowable ct) {
+					throw ct.unresolve();
+				}
+				return;
 			}
-			catch (ResolvedControlThrowable ct) {
-				throw ct.unresolve();
+			else {
+				// repeat the access on the handler
+				t = handler;
 			}
 		}
-		else if (handler instanceof Table) {
-			// TODO: protect against infinite loops
-			index(context, handler, key);
-		}
-		else {
-			throw Errors.illegalIndexAttempt(table, key);
-		}
+
+		throw Errors.metamethodChainTooLong(Metatables.MT_INDEX);
 	}
 
 	/**
@@ -1492,46 +1656,56 @@ public final class Dispatch {
 	 * @throws NullPointerException  if {@code context} is {@code null}
 	 * @throws IllegalOperationAttemptException  if {@code table} is not a table and does
 	 *                                           not have the {@code __newindex} metamethod
+	 * @throws LuaRuntimeException  if the chain of {@code __newindex} tables is too long,
+	 *                              e.g. because it contains a loop
 	 */
 	@SuppressWarnings("unused")
 	public static void setindex(ExecutionContext context, Object table, Object key, Object value) throws UnresolvedControlThrowable {
-		if (table instanceof Table) {
-			Table t = (Table) table;
-			Object r = t.rawget(key);
+		Object t = table;
 
-			if (r != null) {
-				t.rawset(key, value);
-				return;
-			}
-		}
+		// follow the chain of __newindex values, as long as they are not functions
+		for (int i = 0; i < MAX_METAMETHOD_CHAIN_LENGTH; i++) {
+			if (t instanceof Table) {
+				Table tbl = (Table) t;
+				Object r = tbl.rawget(key);
 
-		Object handler = Metatables.getMetamethod(context, Metatables.MT_NEWINDEX, table);
+				if (r != null) {
+					tbl.rawset(key, value);
+					return;
+				}
+			}
 
-		if (handler == null && table instanceof Table) {
-			Table t = (Table) table;
-			t.rawset(key, value);
-			return;
-		}
+			Object handler = Metatables.getMetamethod(context, Metatables.MT_NEWINDEX, t);
 
-		if (handler instanceof LuaFunction) {
-			// call the handler
-			LuaFunction fn = (LuaFunction) handler;
+			if (handler == null) {
+				if (t instanceof Table) {
+					((Table) t).rawset(key, value);
+					return;
+				}
+				else {
+					throw Errors.illegalIndexAttempt(t, key);
+				}
+			}
+			else if (handler instanceof LuaFunction) {
+				// call the handler
+				LuaFunction fn = (LuaFunction) handler;
 
-			try {
-				fn.invoke(context, table, key, value);
-				evaluateTailCalls(context);
+				try {
+					fn.invoke(context, t, key, value);
+					evaluateTailCalls(context);
+				}
+				catch (ResolvedControlThrowable ct) {
+					throw ct.unresolve();
+				}
+				return;
 			}
-			catch (ResolvedControlThrowable ct) {
-				throw ct.unresolve();
+			else {
+				// repeat the assignment on the handler
+				t = handler;
 			}
 		}
-		else if (handler instanceof Table) {
-			// TODO: protect against infinite loops
-			setindex(context, handler, key, value);
-		}
-		else {
-			throw Errors.illegalIndexAttempt(table, key);
-		}
+
+		throw Errors.metamethodChainTooLong(Metatables.MT_NEWINDEX);
 	}
 
 	/**
@@ -1584,6 +1758,26 @@ public final class Dispatch {
 		setindex(context, (Object) Objects.requireNonNull(table), Long.valueOf(key), value);
 	}
 
+	/**
+	 * Returns a cursor for the generic {@code for} loop with the iterator function
+	 * {@code fn}, the invariant state {@code state} and the initial value {@code control}
+	 * of its control variable, or {@code null} if the loop must call {@code fn}
+	 * in every iteration.
+	 *
+	 * <p>A cursor is only provided by iterator functions implementing {@link LoopIterator}.</p>
+	 *
+	 * @param fn  the iterator function, may be any value
+	 * @param state  the invariant state, may be any value
+	 * @param control  the initial value of the control variable, may be any value
+	 * @return  a cursor for the loop, or {@code null} if there is none
+	 */
+	@SuppressWarnings("unused")
+	public static LoopCursor loopCursor(Object fn, Object state, Object control) {
+		return fn instanceof LoopIterator
+				? ((LoopIterator) fn).cursor(state, control)
+				: null;
+	}
+
 	private static final Long ZERO = Long.valueOf(0L);
 
 	/**
@@ -1607,4 +1801,193 @@ public final class Dispatch {
 		return !eq(ZERO, sign) && (lt(ZERO, sign) ? le(a, b) : le(b, a));
 	}
 
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" if {@code sign > 0}, or "{@code >=}" otherwise. Returns {@code false}
+	 * when {@code sign} is zero.
+	 *
+	 * <p>This is a primitive-typed variant of {@link #signed_le(Number, Number, Number)}
+	 * for integer operands.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand
+	 * @param sign  the sign
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(long a, long b, double sign) {
+		return sign > 0 ? a <= b : sign != 0 && a >= b;
+	}
+
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" if {@code sign > 0}, or "{@code >=}" otherwise. Returns {@code false}
+	 * when {@code sign} is zero.
+	 *
+	 * <p>This is a primitive-typed variant of {@link #signed_le(Number, Number, Number)}
+	 * for an integer and a float operand.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand
+	 * @param sign  the sign
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(long a, double b, double sign) {
+		return sign > 0 ? LuaMathOperators.le(a, b) : sign != 0 && LuaMathOperators.le(b, a);
+	}
+
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" if {@code sign > 0}, or "{@code >=}" otherwise. Returns {@code false}
+	 * when {@code sign} is zero.
+	 *
+	 * <p>This is a primitive-typed variant of {@link #signed_le(Number, Number, Number)}
+	 * for a float and an integer operand.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand
+	 * @param sign  the sign
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(double a, long b, double sign) {
+		return sign > 0 ? LuaMathOperators.le(a, b) : sign != 0 && LuaMathOperators.le(b, a);
+	}
+
+	/**
+	 * Returns {@code true} iff {@code a} <i>op</i> {@code b}, where <i>op</i> is
+	 * "{@code <=}" if {@code sign > 0}, or "{@code >=}" otherwise. Returns {@code false}
+	 * when {@code sign} is zero.
+	 *
+	 * <p>This is a primitive-typed variant of {@link #signed_le(Number, Number, Number)}
+	 * for float operands.</p>
+	 *
+	 * @param a  the first operand
+	 * @param b  the second operand
+	 * @param sign  the sign
+	 * @return  {@code true} iff {@code a} is below {@code b} depending on the sign
+	 *          of {@code sign}
+	 */
+	@SuppressWarnings("unused")
+	public static boolean signed_le(double a, double b, double sign) {
+		return sign > 0 ? a <= b : sign != 0 && a >= b;
+	}
+
+	/**
+	 * Returns the number of iterations of the numeric for loop with the initial value
+	 * {@code init}, the limit {@code limit} and the step {@code step}, provided that
+	 * it is an integer loop, i.e., that both {@code init} and {@code step} are integers.
+	 * Returns {@code 0} if the loop is not an integer loop.
+	 *
+	 * @param init  the initial value, must not be {@code null}
+	 * @param limit  the limit, must not be {@code null}
+	 * @param step  the step, must not be {@code null}
+	 * @return  the number of iterations of the integer loop, at most {@link Long#MAX_VALUE}
+	 *
+	 * @throws NullPointerException  if {@code init}, {@code limit} or {@code step}
+	 *                               is {@code null}
+	 *
+	 * @see #loopCount(long, long, long)
+	 */
+	@SuppressWarnings("unused")
+	public static long loopCount(Number init, Number limit, Number step) {
+		return init instanceof Long && step instanceof Long
+				? loopCount(init.longValue(), limit, step.longValue())
+				: 0L;
+	}
+
+	/**
+	 * Returns the number of iterations of the numeric for loop with the integer initial
+	 * value {@code init}, the limit {@code limit} and the integer step {@code step}.
+	 *
+	 * <p>When {@code limit} is a float, it is first rounded towards the initial value
+	 * (down for a positive step, up for a negative step) and clipped to the integer range,
+	 * so that the loop runs through the same values as when it compares its variable
+	 * with {@code limit} in every iteration.</p>
+	 *
+	 * @param init  the initial value
+	 * @param limit  the limit, must not be {@code null}
+	 * @param step  the step
+	 * @return  the number of iterations of the loop, at most {@link Long#MAX_VALUE}
+	 *
+	 * @throws NullPointerException  if {@code limit} is {@code null}
+	 *
+	 * @see #loopCount(long, long, long)
+	 */
+	public static long loopCount(long init, Number limit, long step) {
+		if (limit instanceof Long) {
+			return loopCount(init, limit.longValue(), step);
+		}
+
+		double l = limit.doubleValue();
+
+		if (step > 0) {
+			double f = Math.floor(l);
+			if (f >= MAX_LONG_AS_DOUBLE) return loopCount(init, Long.MAX_VALUE, step);
+			else if (f >= MIN_LONG_AS_DOUBLE) return loopCount(init, (long) f, step);
+			else return 0L;  // limit is below the integer range, or NaN
+		}
+		else if (step < 0) {
+			double c = Math.ceil(l);
+			if (c < MIN_LONG_AS_DOUBLE) return loopCount(init, Long.MIN_VALUE, step);
+			else if (c < MAX_LONG_AS_DOUBLE) return loopCount(init, (long) c, step);
+			else return 0L;  // limit is above the integer range, or NaN
+		}
+		else {
+			return 0L;
+		}
+	}
+
+	/**
+	 * Returns the number of iterations of the numeric for loop with the initial value
+	 * {@code init}, the limit {@code limit} and the step {@code step}, all of them integers.
+	 *
+	 * <p>The count is computed without overflow: a loop whose variable would wrap around
+	 * past {@link Long#MAX_VALUE} or {@link Long#MIN_VALUE} ends at the last value
+	 * within the limit. The count of a loop with more than {@link Long#MAX_VALUE} iterations
+	 * is clamped to {@code Long.MAX_VALUE}. A loop with a zero step does not run.</p>
+	 *
+	 * @param init  the initial value
+	 * @param limit  the limit
+	 * @param step  the step
+	 * @return  the number of iterations of the loop, at most {@link Long#MAX_VALUE}
+	 */
+	public static long loopCount(long init, long limit, long step) {
+		if (step > 0) {
+			return init <= limit ? stepsWithin(limit - init, step) : 0L;
+		}
+		else if (step < 0) {
+			return init >= limit ? stepsWithin(init - limit, -step) : 0L;
+		}
+		else {
+			return 0L;
+		}
+	}
+
+	private static final double MAX_LONG_AS_DOUBLE = (double) Long.MAX_VALUE;
+	private static final double MIN_LONG_AS_DOUBLE = (double) Long.MIN_VALUE;
+
+	// the number of multiples of step in [0, distance], where both are treated as unsigned;
+	// clamped to Long.MAX_VALUE
+	private static long stepsWithin(long distance, long step) {
+		final long q;
+		if (step < 0) {
+			// step >= 2^63
+			q = distance + Long.MIN_VALUE >= step + Long.MIN_VALUE ? 1L : 0L;
+		}
+		else if (distance >= 0) {
+			q = distance / step;
+		}
+		else {
+			long r = ((distance >>> 1) / step) << 1;
+			long rem = distance - r * step;
+			q = rem + Long.MIN_VALUE >= step + Long.MIN_VALUE ? r + 1 : r;
+		}
+		return q >= 0 && q < Long.MAX_VALUE ? q + 1 : Long.MAX_VALUE;
+	}
+
 }
@@ -18,6 +18,7 @@ package net.sandius.rembulan.runtime;
 
 import net.sandius.rembulan.ByteString;
 import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.LuaRuntimeException;
 import net.sandius.rembulan.NoIntegerRepresentationException;
 import net.sandius.rembulan.PlainValueTypeNamer;
 import net.sandius.rembulan.Table;
@@ -107,6 +108,10 @@ final class Errors {
 				attemptTemplateMessage("concatenate", typeName.toString()));
 	}
 
+	static LuaRuntimeException metamethodChainTooLong(ByteString event) {
+		return new LuaRuntimeException("'" + event + "' chain too long; possible loop");
+	}
+
 	static IllegalCoroutineStateException illegalYieldAttempt() {
 		return new IllegalCoroutineStateException("attempt to yield from outside a coroutine");
 	}
@@ -119,4 +124,8 @@ final class Errors {
 		return new IllegalCoroutineStateException("cannot resume non-suspended coroutine");
 	}
 
+	static IllegalCoroutineStateException resumeStacklessCoroutineFromThread() {
+		return new IllegalCoroutineStateException("cannot resume stackless coroutine from a threaded coroutine");
+	}
+
 }
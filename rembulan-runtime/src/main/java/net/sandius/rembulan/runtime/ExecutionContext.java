@@ -105,6 +105,13 @@ public interface ExecutionContext extends StateContext {
 	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
 	 * changes are expected to be resolved by the caller of this method.
 	 *
+	 * <p>When {@code coroutine} runs on a thread of its own (see
+	 * {@link Coroutine.Mode#THREADED}), this method may instead return normally once
+	 * {@code coroutine} has yielded or returned, with its values stored in the return buffer
+	 * (see {@link #getReturnBuffer()}). If {@code coroutine} terminates with an error,
+	 * the error is then thrown by this method. Callers must therefore handle both cases
+	 * in the same way as a return from the corresponding resume.</p>
+	 *
 	 * <p>The reference to the array {@code args} is not retained by the execution context;
 	 * {@code args} may therefore be freely re-used by the caller.</p>
 	 *
@@ -124,6 +131,11 @@ public interface ExecutionContext extends StateContext {
 	 * <b>This method throws an {@link UnresolvedControlThrowable}</b>: non-local control
 	 * changes are expected to be resolved by the caller of this method.
 	 *
+	 * <p>When the current coroutine runs on a thread of its own (see
+	 * {@link Coroutine.Mode#THREADED}), this method instead returns normally once
+	 * the current coroutine has been resumed again, with the resume arguments stored
+	 * in the return buffer (see {@link #getReturnBuffer()}).</p>
+	 *
 	 * <p>The reference to the array {@code args} is not retained by the execution context;
 	 * {@code args} may therefore be freely re-used by the caller.</p>
 	 *
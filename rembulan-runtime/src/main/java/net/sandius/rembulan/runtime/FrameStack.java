@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A mutable stack of suspended call frames of a coroutine. Each frame consists of
+ * a {@link Resumable} and its suspended state.
+ *
+ * <p>The frames of a coroutine being suspended are pushed on its stack directly by
+ * the control throwables as they are being {@linkplain UnresolvedControlThrowable#resolve(Resumable, Object)
+ * resolved}, i.e. from the innermost frame to the outermost one. Once the control throwable
+ * has been caught by the scheduler, these frames are put in the order in which they are
+ * to be resumed using {@link #reverseFrom(int)}. Suspending and resuming a coroutine
+ * therefore does not allocate any memory per frame, except for the suspended states
+ * themselves.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+final class FrameStack {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private Resumable[] resumables;
+	private Object[] states;
+	private int size;
+
+	FrameStack() {
+		this.resumables = new Resumable[INITIAL_CAPACITY];
+		this.states = new Object[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void push(Resumable resumable, Object state) {
+		Objects.requireNonNull(resumable);
+		if (size == resumables.length) {
+			int capacity = size * 2;
+			resumables = Arrays.copyOf(resumables, capacity);
+			states = Arrays.copyOf(states, capacity);
+		}
+		resumables[size] = resumable;
+		states[size] = state;
+		size += 1;
+	}
+
+	Resumable topResumable() {
+		return resumables[size - 1];
+	}
+
+	Object topState() {
+		return states[size - 1];
+	}
+
+	void pop() {
+		size -= 1;
+		resumables[size] = null;
+		states[size] = null;
+	}
+
+	/**
+	 * Reverses the order of the frames at the positions {@code from} and above, so that
+	 * the frame that was pushed first becomes the top of the stack.
+	 */
+	void reverseFrom(int from) {
+		for (int i = from, j = size - 1; i < j; i++, j--) {
+			Resumable r = resumables[i];
+			resumables[i] = resumables[j];
+			resumables[j] = r;
+
+			Object s = states[i];
+			states[i] = states[j];
+			states[j] = s;
+		}
+	}
+
+	/**
+	 * Moves the frames at the positions {@code from} and above in {@code that} to the top
+	 * of this stack in reverse order, removing them from {@code that}.
+	 */
+	void pushReversed(FrameStack that, int from) {
+		for (int i = that.size - 1; i >= from; i--) {
+			push(that.resumables[i], that.states[i]);
+		}
+		while (that.size > from) {
+			that.pop();
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime;
+
+import net.sandius.rembulan.Conversions;
+import net.sandius.rembulan.Metatables;
+import net.sandius.rembulan.Table;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An inline cache for a single site in the compiled code reading a constant key
+ * from a table, such as an access to a global variable through {@code _ENV},
+ * to a function in a library table (e.g. {@code math.floor}), or to a method
+ * (e.g. {@code obj:method()}).
+ *
+ * <p>The cache remembers the last table it has been used with together with the
+ * {@linkplain Table#rawentry(Object) entry} for the key in that table. As long as the site
+ * keeps reading the same table and the key remains in it, its value is read from the entry
+ * without any hash lookups. The cache is invalidated by the removal of the key from the table,
+ * and is refilled from the table on the next read.</p>
+ *
+ * <p>When the key is absent from the table, the cache follows the chain of {@code __index}
+ * tables starting in the table's metatable, and remembers the metatable together with
+ * the entry in the table at the end of the chain that has the key. Subsequent reads
+ * from tables with the same metatable (e.g. instances of the same class) that do not have
+ * the key themselves read the value from that entry. The {@linkplain Table#stamp() stamps}
+ * of the metatables and tables along the chain are checked on every such read, so the cost
+ * of a hit is independent of the length of the chain. Chains through {@code __index} tables
+ * that do not {@linkplain Table#supportsEntries() support entries} are not cached.</p>
+ *
+ * <p>The cache only provides the values it can obtain by raw accesses. A miss does not
+ * mean that the value is {@code nil}: the caller is expected to fall back to
+ * {@link Dispatch#index(ExecutionContext, Object, Object)}, which handles the absent keys
+ * and the {@code __index} metamethods.</p>
+ *
+ * <p>A site reading many different tables or tables with many different metatables
+ * stops refilling its cache after a small number of them, so as not to slow down
+ * the lookups that fall back to {@code Dispatch}.</p>
+ *
+ * <p>Caches are typically stored in static fields of compiled classes, which may outlive
+ * the Lua states that use them (e.g. when the classes are shared or cached). The cache
+ * therefore refers to the tables and entries it remembers only weakly: it does not keep
+ * a table (such as the global environment of a state) or the values in it reachable.
+ * Entries are reachable from their tables for as long as their keys are present,
+ * so this does not cause any misses while the cached tables are in use.</p>
+ */
+public final class IndexCache {
+
+	// the maximum number of times the cache is refilled with a different table or metatable
+	private static final int MAX_REFILLS = 8;
+
+	// the maximum length of a chain of __index tables followed by the cache
+	private static final int MAX_CHAIN_LENGTH = 16;
+
+	private final Object key;
+
+	// may be read and written concurrently: immutable, replaced as a whole
+	private Slot slot;
+	private Chain chain;
+	private int refills;
+
+	private static final class Slot {
+
+		final WeakReference<Table> table;
+		final WeakReference<Map.Entry<Object, Object>> entry;
+
+		Slot(Table table, Map.Entry<Object, Object> entry) {
+			this.table = new WeakReference<>(table);
+			this.entry = new WeakReference<>(entry);
+		}
+
+		// returns the value of the entry if t is the cached table, or null
+		Object valueIn(Object t) {
+			if (table.get() == t) {
+				Map.Entry<Object, Object> e = entry.get();
+				if (e != null) {
+					return e.getValue();
+				}
+			}
+			return null;
+		}
+
+	}
+
+	private static final class Chain {
+
+		final WeakReference<Table> metatable;
+
+		// the metatables and the tables along the chain, excluding the table
+		// at its end, and their stamps at the time of the lookup
+		final WeakReference<?>[] tables;
+		final int[] stamps;
+
+		final WeakReference<Map.Entry<Object, Object>> entry;
+
+		Chain(Table metatable, Table[] tables, int[] stamps, int n, Map.Entry<Object, Object> entry) {
+			this.metatable = new WeakReference<>(metatable);
+			this.tables = new WeakReference<?>[n];
+			this.stamps = new int[n];
+			for (int i = 0; i < n; i++) {
+				this.tables[i] = new WeakReference<>(tables[i]);
+				this.stamps[i] = stamps[i];
+			}
+			this.entry = new WeakReference<>(entry);
+		}
+
+		// returns the value of the entry at the end of the chain if the chain is still valid
+		// for tables with the metatable mt, or null
+		Object valueFor(Table mt) {
+			if (mt == null || metatable.get() != mt) {
+				return null;
+			}
+			for (int i = 0; i < tables.length; i++) {
+				Table t = (Table) tables[i].get();
+				if (t == null || t.stamp() != stamps[i]) {
+					return null;
+				}
+			}
+			Map.Entry<Object, Object> e = entry.get();
+			return e != null ? e.getValue() : null;
+		}
+
+		boolean isFor(Table mt) {
+			return metatable.get() == mt;
+		}
+
+	}
+
+	/**
+	 * Constructs a new empty cache for the key {@code key}.
+	 *
+	 * @param key  the key, must not be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code key} is {@code null}
+	 */
+	public IndexCache(Object key) {
+		this.key = Conversions.normaliseKey(Objects.requireNonNull(key));
+		this.slot = null;
+		this.chain = null;
+		this.refills = 0;
+	}
+
+	/**
+	 * Returns the key of this cache.
+	 *
+	 * @return  the key of this cache
+	 */
+	public Object key() {
+		return key;
+	}
+
+	/**
+	 * Returns the value associated with the key of this cache in {@code table} either raw,
+	 * or through a chain of {@code __index} tables, or {@code null} if {@code table}
+	 * is not a table, the key has no value associated with it, or the lookup has not been cached.
+	 *
+	 * @param table  the table, may be any value
+	 * @return  the value associated with the key in {@code table}, or {@code null} on a miss
+	 */
+	public Object get(Object table) {
+		if (!(table instanceof Table)) {
+			return null;
+		}
+
+		Slot s = slot;
+		if (s != null) {
+			Object value = s.valueIn(table);
+			if (value != null) {
+				return value;
+			}
+		}
+
+		Table t = (Table) table;
+		Chain c = chain;
+		if (c != null) {
+			Object inherited = c.valueFor(t.getMetatable());
+			if (inherited != null) {
+				// the value is inherited, unless t has one of its own
+				Object value = t.rawget(key);
+				return value != null ? value : inherited;
+			}
+		}
+
+		return refill(t, s, c);
+	}
+
+	private boolean mayRefill() {
+		if (refills < MAX_REFILLS) {
+			refills += 1;
+			return true;
+		}
+		else {
+			// this site reads too many different tables
+			return false;
+		}
+	}
+
+	private Object refill(Table table, Slot s, Chain c) {
+		Map.Entry<Object, Object> entry = table.rawentry(key);
+		if (entry != null) {
+			if ((s != null && s.table.get() == table) || mayRefill()) {
+				slot = new Slot(table, entry);
+			}
+			return entry.getValue();
+		}
+
+		Table mt = table.getMetatable();
+		if (mt == null || table.rawget(key) != null) {
+			return null;
+		}
+
+		if ((c != null && c.isFor(mt)) || mayRefill()) {
+			Chain nc = resolve(table, mt);
+			if (nc != null) {
+				chain = nc;
+				return nc.valueFor(mt);
+			}
+		}
+
+		return null;
+	}
+
+	private Chain resolve(Table table, Table metatable) {
+		Table[] tables = new Table[2 * MAX_CHAIN_LENGTH];
+		int[] stamps = new int[2 * MAX_CHAIN_LENGTH];
+		int n = 0;
+
+		Table t = table;
+		Table mt = metatable;
+		for (int i = 0; i < MAX_CHAIN_LENGTH; i++) {
+			tables[n] = mt;
+			stamps[n] = mt.stamp();
+			n += 1;
+
+			Object handler = Metatables.getMetamethod(Metatables.MT_INDEX, t);
+			if (!(handler instanceof Table)) {
+				return null;
+			}
+
+			t = (Table) handler;
+			if (!t.supportsEntries()) {
+				// the stamp of t may not change when the key is added to it
+				return null;
+			}
+
+			Map.Entry<Object, Object> entry = t.rawentry(key);
+			if (entry != null) {
+				return new Chain(metatable, tables, stamps, n, entry);
+			}
+
+			mt = t.getMetatable();
+			if (mt == null || t.rawget(key) != null) {
+				return null;
+			}
+
+			tables[n] = t;
+			stamps[n] = t.stamp();
+			n += 1;
+		}
+
+		return null;
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime;
+
+import net.sandius.rembulan.Metatables;
+import net.sandius.rembulan.Table;
+
+import java.util.Objects;
+
+/**
+ * A cursor used by generic {@code for} loops in place of calling the iterator function
+ * of the loop in every iteration.
+ *
+ * <p>Cursors are provided by iterator functions implementing {@link LoopIterator}.
+ * In every iteration, the loop calls {@link #next()} to advance the cursor; if the result
+ * is {@code null}, the loop ends. Otherwise, the loop variables are assigned the returned
+ * key and the {@link #value() value} associated with it. When the value is {@code null},
+ * the cursor is unable to provide the entry (for instance because retrieving it would
+ * involve a metamethod call): the loop then discards the cursor, and carries on calling
+ * the iterator function with the key preceding the one returned by {@code next()}.</p>
+ */
+public abstract class LoopCursor {
+
+	/**
+	 * Advances the cursor to the next entry, returning its key.
+	 *
+	 * @return  the key of the next entry, or {@code null} if there are no more entries
+	 */
+	public abstract Object next();
+
+	/**
+	 * Returns the value associated with the key returned by the last call to {@link #next()}.
+	 *
+	 * <p>If this method returns {@code null}, the cursor is unable to provide the entry,
+	 * and the traversal must be continued by the iterator function.</p>
+	 *
+	 * @return  the value of the current entry, or {@code null} if the cursor is unable
+	 *          to provide it
+	 */
+	public abstract Object value();
+
+	/**
+	 * Returns a cursor traversing the values associated with the integer keys following
+	 * {@code index} in {@code table}, up to the first absent value, in the manner of
+	 * the iterator function returned by {@code ipairs}.
+	 *
+	 * <p>The cursor reads the values using raw accesses. Once it encounters an absent value,
+	 * the cursor ends the traversal if {@code table} has no {@code __index} metamethod;
+	 * otherwise, it defers to the iterator function.</p>
+	 *
+	 * @param table  the table to traverse, must not be {@code null}
+	 * @param index  the integer key preceding the first key of the traversal
+	 * @return  a cursor traversing the sequence in {@code table} following {@code index}
+	 *
+	 * @throws NullPointerException  if {@code table} is {@code null}
+	 */
+	public static LoopCursor sequence(Table table, long index) {
+		return new SequenceCursor(table, index);
+	}
+
+	private static class SequenceCursor extends LoopCursor {
+
+		private final Table table;
+		private long index;
+		private Object value;
+
+		SequenceCursor(Table table, long index) {
+			this.table = Objects.requireNonNull(table);
+			this.index = index;
+			this.value = null;
+		}
+
+		@Override
+		public Object next() {
+			long idx = index + 1;
+			Object v = table.rawget(idx);
+			if (v == null) {
+				Table mt = table.getMetatable();
+				if (mt == null || mt.rawget(Metatables.MT_INDEX) == null) {
+					return null;
+				}
+			}
+			index = idx;
+			value = v;
+			return Long.valueOf(idx);
+		}
+
+		@Override
+		public Object value() {
+			return value;
+		}
+
+	}
+
+}
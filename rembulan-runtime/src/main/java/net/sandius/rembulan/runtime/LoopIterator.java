@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime;
+
+/**
+ * An iterator function of generic {@code for} loops that is able to provide
+ * a {@link LoopCursor} for the loop to use in its stead.
+ *
+ * <p>Implementations are expected to be {@link LuaFunction}s. A loop of the form</p>
+ * <pre>
+ *     for k, v in f, s, c do ... end
+ * </pre>
+ * <p>where {@code f} implements this interface may call {@code f.cursor(s, c)} once,
+ * before its first iteration. If the result is non-{@code null}, the loop advances
+ * the cursor instead of calling {@code f}. The traversal performed by the cursor must
+ * therefore be indistinguishable from the traversal obtained by calling {@code f}.</p>
+ */
+public interface LoopIterator {
+
+	/**
+	 * Returns a cursor for the generic {@code for} loop with this function as its
+	 * iterator function, the invariant state {@code state} and the initial value
+	 * {@code control} of its control variable, or {@code null} if the loop should
+	 * call this function instead.
+	 *
+	 * @param state  the invariant state of the loop, may be any value
+	 * @param control  the initial value of the control variable, may be any value
+	 * @return  a cursor for the loop, or {@code null}
+	 */
+	LoopCursor cursor(Object state, Object control);
+
+}
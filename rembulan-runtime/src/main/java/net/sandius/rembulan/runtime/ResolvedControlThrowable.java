@@ -16,9 +16,6 @@
 
 package net.sandius.rembulan.runtime;
 
-import net.sandius.rembulan.util.Cons;
-
-import java.util.Iterator;
 import java.util.Objects;
 
 /**
@@ -37,31 +34,36 @@ import java.util.Objects;
  * Doing so would prevent both the non-local control change (i.e., the suspend) and the
  * construction of the remainder of the Lua call stack.</p>
  *
- * <p>Instances of this class are immutable and do not contain Java stack traces for performance
- * reasons.</p>
+ * <p>Instances of this class do not contain Java stack traces for performance reasons.
+ * Every {@code ResolvedControlThrowable} is paired with the {@link UnresolvedControlThrowable}
+ * it was resolved from, and the Lua call stack is recorded in the frame stack of the suspended
+ * coroutine directly; therefore, no memory is allocated when the throwable is repeatedly
+ * resolved and unresolved while unravelling the call stack.</p>
  */
 public final class ResolvedControlThrowable extends Throwable {
 
-	private final ControlThrowablePayload payload;
-	private final Cons<ResumeInfo> resumeStack;
+	private final UnresolvedControlThrowable unresolved;
 
-	ResolvedControlThrowable(ControlThrowablePayload payload, Cons<ResumeInfo> resumeStack) {
+	ResolvedControlThrowable(UnresolvedControlThrowable unresolved) {
 		super(null, null, true, false);
-		this.payload = Objects.requireNonNull(payload);
-		this.resumeStack = resumeStack;
+		this.unresolved = Objects.requireNonNull(unresolved);
 	}
 
 	ControlThrowablePayload payload() {
-		return payload;
+		return unresolved.payload();
+	}
+
+	// the frame stack containing the resolved frames, innermost first from base() upwards
+	FrameStack frames() {
+		return unresolved.frames();
 	}
 
-	// LIFO iterator
-	Iterator<ResumeInfo> frames() {
-		return Cons.newIterator(resumeStack);
+	int base() {
+		return unresolved.base();
 	}
 
 	UnresolvedControlThrowable unresolve() {
-		return new UnresolvedControlThrowable(payload, resumeStack);
+		return unresolved;
 	}
 
 }
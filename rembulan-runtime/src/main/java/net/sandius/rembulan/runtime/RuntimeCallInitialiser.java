@@ -33,10 +33,34 @@ public class RuntimeCallInitialiser implements CallInitialiser {
 
 	private final StateContext stateContext;
 	private final ReturnBufferFactory returnBufferFactory;
+	private final Coroutine.Mode coroutineMode;
+
+	RuntimeCallInitialiser(StateContext stateContext, ReturnBufferFactory returnBufferFactory,
+			Coroutine.Mode coroutineMode) {
 
-	RuntimeCallInitialiser(StateContext stateContext, ReturnBufferFactory returnBufferFactory) {
 		this.stateContext = Objects.requireNonNull(stateContext);
 		this.returnBufferFactory = Objects.requireNonNull(returnBufferFactory);
+		this.coroutineMode = Objects.requireNonNull(coroutineMode);
+	}
+
+	/**
+	 * Returns a new call initialiser for calls executed in the specified state
+	 * context {@code stateContext} that use return buffers initialised by the specified
+	 * factory {@code returnBufferFactory}, and execute coroutines in the mode
+	 * {@code coroutineMode}.
+	 *
+	 * @param stateContext  the state context, must not be {@code null}
+	 * @param returnBufferFactory  the return buffer factory, must not be {@code null}
+	 * @param coroutineMode  the coroutine execution mode, must not be {@code null}
+	 * @return  a new call initialiser for {@code stateContext}
+	 *
+	 * @throws NullPointerException  if {@code stateContext}, {@code returnBufferFactory}
+	 *                               or {@code coroutineMode} is {@code null}
+	 */
+	public static RuntimeCallInitialiser forState(StateContext stateContext, ReturnBufferFactory returnBufferFactory,
+			Coroutine.Mode coroutineMode) {
+
+		return new RuntimeCallInitialiser(stateContext, returnBufferFactory, coroutineMode);
 	}
 
 	/**
@@ -52,7 +76,7 @@ public class RuntimeCallInitialiser implements CallInitialiser {
 	 *                               is {@code null}
 	 */
 	public static RuntimeCallInitialiser forState(StateContext stateContext, ReturnBufferFactory returnBufferFactory) {
-		return new RuntimeCallInitialiser(stateContext, returnBufferFactory);
+		return forState(stateContext, returnBufferFactory, Coroutine.Mode.STACKLESS);
 	}
 
 	/**
@@ -71,7 +95,7 @@ public class RuntimeCallInitialiser implements CallInitialiser {
 
 	@Override
 	public Continuation newCall(Object fn, Object... args) {
-		return Call.init(stateContext, returnBufferFactory, fn, args).getCurrentContinuation();
+		return Call.init(stateContext, returnBufferFactory, coroutineMode, fn, args).getCurrentContinuation();
 	}
 
 }
@@ -16,8 +16,6 @@
 
 package net.sandius.rembulan.runtime;
 
-import net.sandius.rembulan.util.Cons;
-
 import java.util.Objects;
 
 /**
@@ -40,22 +38,39 @@ import java.util.Objects;
  * both the non-local control change (i.e., the suspend) and the construction of the Lua call
  * stack.</p>
  *
- * <p>Instances of this class are immutable and do not contain Java stack traces for performance
- * reasons.</p>
+ * <p>Instances of this class do not contain Java stack traces for performance reasons.
+ * The frames attached by {@link #resolve(Resumable, Object)} are pushed directly on the frame
+ * stack of the coroutine being suspended, and the resolved control throwable is allocated
+ * together with this one: resolving this throwable does not allocate any memory.</p>
  */
 public final class UnresolvedControlThrowable extends Throwable {
 
 	private final ControlThrowablePayload payload;
-	private final Cons<ResumeInfo> resumeStack;
 
-	UnresolvedControlThrowable(ControlThrowablePayload payload, Cons<ResumeInfo> resumeStack) {
+	// frames are pushed to frames from the position base upwards
+	private final FrameStack frames;
+	private final int base;
+
+	private final ResolvedControlThrowable resolved;
+
+	UnresolvedControlThrowable(ControlThrowablePayload payload, FrameStack frames) {
 		super(null, null, true, false);
 		this.payload = Objects.requireNonNull(payload);
-		this.resumeStack = resumeStack;
+		this.frames = Objects.requireNonNull(frames);
+		this.base = frames.size();
+		this.resolved = new ResolvedControlThrowable(this);
+	}
+
+	ControlThrowablePayload payload() {
+		return payload;
+	}
+
+	FrameStack frames() {
+		return frames;
 	}
 
-	UnresolvedControlThrowable(ControlThrowablePayload payload) {
-		this(payload, null);
+	int base() {
+		return base;
 	}
 
 	/**
@@ -75,12 +90,12 @@ public final class UnresolvedControlThrowable extends Throwable {
 	 * @throws NullPointerException  if {@code resumable} is {@code null}
 	 */
 	public ResolvedControlThrowable resolve(Resumable resumable, Object suspendedState) {
-		return new ResolvedControlThrowable(payload,
-				new Cons<>(new ResumeInfo(resumable, suspendedState), resumeStack));
+		frames.push(resumable, suspendedState);
+		return resolved;
 	}
 
 	ResolvedControlThrowable resolve() {
-		return new ResolvedControlThrowable(payload, resumeStack);
+		return resolved;
 	}
 
 }
@@ -35,14 +35,31 @@ import java.util.Set;
  * In order to access the first and last keys in the traversal orders, use {@link #getFirstKey()}
  * and {@link #getLastKey()}.</p>
  *
+ * <p>The iterators over the views of this map tolerate the removal of entries
+ * from the map during iteration: removed entries are skipped, and the traversal
+ * proceeds with the entries that follow them. Advancing an iterator does not involve
+ * any hash lookups.</p>
+ *
+ * <p>The successor of a key may also be queried after the key has been removed
+ * from the map, for as long as no new key is added to the map. This allows a traversal
+ * using {@link #getSuccessorOf(Object)} to remove the keys it visits, as with Lua's
+ * {@code next} function.</p>
+ *
+ * <p>The entries of this map are stable: the entry for a key obtained using
+ * {@link #getEntry(Object)} reflects the updates of the value associated with the key
+ * for as long as the key remains in the map.</p>
+ *
  * @param <K>  key type
  * @param <V>  value type
  */
 public class TraversableHashMap<K, V> implements Map<K, V> {
 
 	private final HashMap<K, Entry<K, V>> entries;
-	private K firstKey;
-	private K lastKey;
+	private Entry<K, V> first;
+	private Entry<K, V> last;
+
+	// entries removed since a new key was last added, for getSuccessorOf; lazily created
+	private HashMap<K, Entry<K, V>> removedEntries;
 
 	private final Set<K> keySet;
 	private final Collection<V> values;
@@ -52,53 +69,95 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	 * Constructs a new empty map.
 	 */
 	public TraversableHashMap() {
-		this.entries = new HashMap<>();
-		this.firstKey = null;
-		this.lastKey = null;
+		this(new HashMap<K, Entry<K, V>>());
+	}
+
+	/**
+	 * Constructs a new empty map with the specified initial capacity.
+	 *
+	 * @param initialCapacity  the initial capacity
+	 *
+	 * @throws IllegalArgumentException  if {@code initialCapacity} is negative
+	 */
+	public TraversableHashMap(int initialCapacity) {
+		this(new HashMap<K, Entry<K, V>>(initialCapacity));
+	}
+
+	private TraversableHashMap(HashMap<K, Entry<K, V>> entries) {
+		this.entries = entries;
+		this.first = null;
+		this.last = null;
 
 		this.keySet = new KeySet();
 		this.values = new Values();
 		this.entrySet = new EntrySet();
 	}
 
-	static class Entry<K, V> {
+	static class Entry<K, V> implements Map.Entry<K, V> {
 
-		private V value;  // must not be null
-		private K prevKey;  // may be null
-		private K nextKey;  // may be null
+		private final K key;
+		private V value;  // null iff the entry has been removed from the map
+		private Entry<K, V> prev;  // may be null
+		private Entry<K, V> next;  // may be null
+
+		// set when the entry is removed from the map; a removed entry keeps its link
+		// to the next entry, so that iterators positioned at it may proceed
+		private boolean removed;
 
-		public Entry(V value, K prevKey, K nextKey) {
+		public Entry(K key, V value, Entry<K, V> prev, Entry<K, V> next) {
+			this.key = Objects.requireNonNull(key);
 			this.value = Objects.requireNonNull(value);
-			this.prevKey = prevKey;
-			this.nextKey = nextKey;
+			this.prev = prev;
+			this.next = next;
+			this.removed = false;
 		}
 
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
 		public V getValue() {
 			return value;
 		}
 
+		@Override
 		public V setValue(V newValue) {
+			if (removed) {
+				throw new IllegalStateException("entry has been removed");
+			}
 			V oldValue = value;
 			this.value = Objects.requireNonNull(newValue);
 			return oldValue;
 		}
 
-		public K getPreviousKey() {
-			return prevKey;
-		}
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> that = (Map.Entry<?, ?>) o;
+			Object thatKey = that.getKey();
+			Object thatValue = that.getValue();
 
-		public void setPreviousKey(K key) {
-			this.prevKey = key;
+			return !(thatKey == null || thatValue == null)
+					&& (key.equals(thatKey) && thatValue.equals(value));
 		}
 
-		public K getNextKey() {
-			return nextKey;
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ (value != null ? value.hashCode() : 0);
 		}
 
-		public void setNextKey(K key) {
-			this.nextKey = key;
-		}
+	}
 
+	// returns the first entry starting at e that has not been removed from the map
+	private static <K, V> Entry<K, V> live(Entry<K, V> e) {
+		while (e != null && e.removed) {
+			e = e.next;
+		}
+		return e;
 	}
 
 	@Override
@@ -135,6 +194,21 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 		return e != null ? e.getValue() : null;
 	}
 
+	/**
+	 * Returns the entry for the key {@code key}, or {@code null} if this map does not
+	 * contain {@code key}.
+	 *
+	 * <p>The returned entry reflects the updates of the value associated with {@code key}
+	 * in this map. Once {@code key} is removed from the map, the value of the entry
+	 * is {@code null}; should {@code key} be added to the map again, it gets a new entry.</p>
+	 *
+	 * @param key  the key, may be {@code null}
+	 * @return  the entry for {@code key}, or {@code null} if there is no such entry
+	 */
+	public Map.Entry<K, V> getEntry(Object key) {
+		return entries.get(key);
+	}
+
 	@Override
 	public V put(K key, V value) {
 		Objects.requireNonNull(key, "key is null");
@@ -143,18 +217,22 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 		Entry<K, V> e = entries.get(key);
 
 		if (e == null) {
+			// removed keys may no longer be used to query successors
+			removedEntries = null;
+
 			// insert key at the end
-			entries.put(key, new Entry<>(value, lastKey, null));
+			e = new Entry<>(key, value, last, null);
+			entries.put(key, e);
 
 			// update the last entry
-			if (lastKey != null) {
-				entries.get(lastKey).setNextKey(key);
+			if (last != null) {
+				last.next = e;
 			}
-			lastKey = key;
+			last = e;
 
 			// was this the first key?
-			if (firstKey == null) {
-				firstKey = key;
+			if (first == null) {
+				first = e;
 			}
 
 			return null;
@@ -174,26 +252,37 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 
 		if (e != null) {
 
-			K prevKey = e.getPreviousKey();
-			K nextKey = e.getNextKey();
+			Entry<K, V> prev = e.prev;
+			Entry<K, V> next = e.next;
 
-			if (prevKey != null) {
-				entries.get(prevKey).setNextKey(nextKey);
+			if (prev != null) {
+				prev.next = next;
 			}
 			else {
 				// this was the first entry
-				firstKey = nextKey;
+				first = next;
 			}
 
-			if (nextKey != null) {
-				entries.get(nextKey).setPreviousKey(prevKey);
+			if (next != null) {
+				next.prev = prev;
 			}
 			else {
 				// this was the last entry
-				lastKey = prevKey;
+				last = prev;
 			}
 
-			return e.getValue();
+			// keep e.next for the iterators positioned at e
+			V oldValue = e.value;
+			e.prev = null;
+			e.value = null;
+			e.removed = true;
+
+			if (removedEntries == null) {
+				removedEntries = new HashMap<>();
+			}
+			removedEntries.put(e.getKey(), e);
+
+			return oldValue;
 		}
 		else {
 			return null;
@@ -209,9 +298,14 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 
 	@Override
 	public void clear() {
+		for (Entry<K, V> e = first; e != null; e = e.next) {
+			e.value = null;
+			e.removed = true;
+		}
 		entries.clear();
-		firstKey = null;
-		lastKey = null;
+		removedEntries = null;
+		first = null;
+		last = null;
 	}
 
 	/**
@@ -220,7 +314,7 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	 * @return  the first key, or {@code null} if the map is empty
 	 */
 	public K getFirstKey() {
-		return firstKey;
+		return first != null ? first.getKey() : null;
 	}
 
 	/**
@@ -229,26 +323,36 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	 * @return  the last key, or {@code null} if the map is empty
 	 */
 	public K getLastKey() {
-		return lastKey;
+		return last != null ? last.getKey() : null;
 	}
 
 	/**
 	 * Returns the key following {@code key} in the traversal order, or {@code null} if
 	 * {@code key} is the last key in the traversal order.
 	 *
+	 * <p>{@code key} may have been removed from the map, provided that no new key has
+	 * been added to the map since. In that case, the result is the first key that followed
+	 * {@code key} and is still in the map.</p>
+	 *
 	 * @param key  the key to find the successor of, must not be {@code null}
 	 * @return  the key following {@code key}, or {@code null} if {@code key} is the last key
 	 *
 	 * @throws NullPointerException  if {@code key} is {@code null}
-	 * @throws NoSuchElementException  if the map does not associate any value to {@code key}
+	 * @throws NoSuchElementException  if the map does not associate any value to {@code key},
+	 *                                 and {@code key} has not been removed from the map
+	 *                                 since a new key was last added
 	 */
 	public K getSuccessorOf(K key) {
 		Objects.requireNonNull(key);
 		Entry<K, V> e = entries.get(key);
+		if (e == null && removedEntries != null) {
+			e = removedEntries.get(key);
+		}
 		if (e == null) {
 			throw new NoSuchElementException(key.toString());
 		}
-		return e.getNextKey();
+		Entry<K, V> next = live(e.next);
+		return next != null ? next.getKey() : null;
 	}
 
 	/**
@@ -267,46 +371,46 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 		if (e == null) {
 			throw new NoSuchElementException(key.toString());
 		}
-		return e.getPreviousKey();
+		return e.prev != null ? e.prev.getKey() : null;
 	}
 
 	private abstract class AbstractEntryIterator<T> implements Iterator<T> {
 
-		private K key;
-		private boolean nextCalled;
+		private Entry<K, V> next;  // may have been removed from the map in the meantime
+		private Entry<K, V> current;
 
 		AbstractEntryIterator() {
-			this.key = firstKey;
-			this.nextCalled = false;
+			this.next = first;
+			this.current = null;
 		}
 
 		@Override
 		public boolean hasNext() {
-			return key != null;
+			next = live(next);
+			return next != null;
 		}
 
-		protected abstract T get(K k, Entry<K, V> v);
+		protected abstract T get(Entry<K, V> e);
 
 		@Override
 		public T next() {
-			K k = key;
-			Entry<K, V> e = entries.get(k);
+			Entry<K, V> e = live(next);
 			if (e == null) {
-				throw new NoSuchElementException(Objects.toString(key));
+				throw new NoSuchElementException();
 			}
 
-			nextCalled = true;
-			key = e.getNextKey();
-			return get(k, e);
+			current = e;
+			next = e.next;
+			return get(e);
 		}
 
 		@Override
 		public void remove() {
-			Entry<K, V> e = entries.remove(key);
-			if (!nextCalled) {
+			if (current == null) {
 				throw new IllegalStateException();
 			}
-			nextCalled = false;
+			TraversableHashMap.this.remove(current.getKey());
+			current = null;
 		}
 
 	}
@@ -314,8 +418,8 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	private class KeyIterator extends AbstractEntryIterator<K> {
 
 		@Override
-		protected K get(K k, Entry<K, V> v) {
-			return k;
+		protected K get(Entry<K, V> e) {
+			return e.getKey();
 		}
 
 	}
@@ -346,8 +450,8 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 	private class ValueIterator extends AbstractEntryIterator<V> {
 
 		@Override
-		protected V get(K k, Entry<K, V> v) {
-			return v.getValue();
+		protected V get(Entry<K, V> e) {
+			return e.getValue();
 		}
 
 	}
@@ -376,55 +480,11 @@ public class TraversableHashMap<K, V> implements Map<K, V> {
 		return values;
 	}
 
-	private static class MapEntryAdapter<K, V> implements Map.Entry<K, V> {
-
-		private final K key;
-		private final Entry<K, V> entry;
-
-		MapEntryAdapter(K key, Entry<K, V> entry) {
-			this.key = Objects.requireNonNull(key);
-			this.entry = Objects.requireNonNull(entry);
-		}
-
-		@Override
-		public K getKey() {
-			return key;
-		}
-
-		@Override
-		public V getValue() {
-			return entry.getValue();
-		}
-
-		@Override
-		public V setValue(V value) {
-			return entry.setValue(value);
-		}
-
-		@Override
-		public boolean equals(Object o) {
-			if (!(o instanceof Map.Entry)) {
-				return false;
-			}
-			Map.Entry<?, ?> that = (Map.Entry<?, ?>) o;
-			Object thatKey = that.getKey();
-			Object thatValue = that.getValue();
-
-			return !(thatKey == null || thatValue == null)
-					&& (key.equals(thatKey) && entry.getValue().equals(thatValue));
-		}
-
-		@Override
-		public int hashCode() {
-			return Objects.hashCode(key) ^ Objects.hashCode(entry.getValue());
-		}
-	}
-
 	private class MapEntryIterator extends AbstractEntryIterator<Map.Entry<K, V>> {
 
 		@Override
-		protected Map.Entry<K, V> get(K k, Entry<K, V> v) {
-			return new MapEntryAdapter<>(k, v);
+		protected Map.Entry<K, V> get(Entry<K, V> e) {
+			return e;
 		}
 
 	}
@@ -98,6 +98,20 @@ abstract class Constants {
 	 */
 	public static final String ENV_VERBOSE = "REMBULAN_VERBOSE";
 
+	/**
+	 * Name of the environment variable used to enable the on-disk cache of compiled chunks.
+	 *
+	 * <p>When the variable is defined, its value is used as the cache directory,
+	 * and compiled chunks are looked up in this directory before compiling them.
+	 * Otherwise, every chunk is compiled on every load.</p>
+	 */
+	public static final String ENV_CHUNK_CACHE = "REMBULAN_CHUNK_CACHE";
+
+	/**
+	 * Maximum total size of the on-disk cache of compiled chunks, in bytes.
+	 */
+	public static final long CHUNK_CACHE_MAX_SIZE = 64L * 1024 * 1024;
+
 	/**
 	 * File name used for chunks read from the standard input.
 	 */
@@ -24,12 +24,15 @@ import net.sandius.rembulan.Table;
 import net.sandius.rembulan.Variable;
 import net.sandius.rembulan.compiler.CompilerChunkLoader;
 import net.sandius.rembulan.compiler.CompilerSettings;
+import net.sandius.rembulan.compiler.FileChunkCache;
+import net.sandius.rembulan.compiler.LuaCompiler;
 import net.sandius.rembulan.env.RuntimeEnvironment;
 import net.sandius.rembulan.env.RuntimeEnvironments;
 import net.sandius.rembulan.exec.CallException;
 import net.sandius.rembulan.exec.CallPausedException;
 import net.sandius.rembulan.exec.DirectCallExecutor;
 import net.sandius.rembulan.impl.StateContexts;
+import net.sandius.rembulan.lib.IoLib;
 import net.sandius.rembulan.lib.StandardLibrary;
 import net.sandius.rembulan.load.LoaderException;
 import net.sandius.rembulan.runtime.LuaFunction;
@@ -41,6 +44,7 @@ import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -97,7 +101,7 @@ public class RembulanConsole {
 		Utils.logClassPath(moduleClassLoader, "Module classpath");
 
 		this.state = StateContexts.newDefaultInstance();
-		this.loader = CompilerChunkLoader.of(compilerSettings, "rembulan_repl_");
+		this.loader = newChunkLoader(compilerSettings);
 		RuntimeEnvironment runtimeEnv = RuntimeEnvironments.system(in, out, err);
 		this.env = StandardLibrary.in(runtimeEnv)
 				.withLoader(loader)
@@ -115,6 +119,30 @@ public class RembulanConsole {
 
 	}
 
+	private CompilerChunkLoader newChunkLoader(CompilerSettings compilerSettings) {
+		String cacheDir = System.getenv(Constants.ENV_CHUNK_CACHE);
+		if (cacheDir != null && !cacheDir.isEmpty()) {
+			try {
+				FileChunkCache cache = FileChunkCache.of(Paths.get(cacheDir), Constants.CHUNK_CACHE_MAX_SIZE);
+				return CompilerChunkLoader.of(
+						RembulanConsole.class.getClassLoader(),
+						new LuaCompiler(compilerSettings),
+						"rembulan_repl_",
+						cache);
+			}
+			catch (IOException ex) {
+				// not fatal: continue without the cache
+				if (!javaTraceback) {
+					err.println("unable to open chunk cache '" + cacheDir + "': " + ex.getMessage());
+				}
+				else {
+					ex.printStackTrace(err);
+				}
+			}
+		}
+		return CompilerChunkLoader.of(compilerSettings, "rembulan_repl_");
+	}
+
 	private static URLClassLoader newModuleClassLoader() {
 		String cp = System.getenv(Constants.ENV_MODULE_CLASSPATH);
 		if (cp != null) {
@@ -432,6 +460,15 @@ public class RembulanConsole {
 			rc = 1;
 		}
 
+		// write out the buffered output of files that have not been closed
+		try {
+			IoLib.flushOpenFiles();
+		}
+		catch (IOException ex) {
+			System.err.println("error flushing files: " + ex.getMessage());
+			rc = 1;
+		}
+
 		System.exit(rc);
 	}
 
@@ -24,6 +24,15 @@ import net.sandius.rembulan.runtime.ResolvedControlThrowable;
 /**
  * An abstract function that takes an arbitrary number of arguments passed wrapped
  * in an {@link ArgumentIterator} object.
+ *
+ * <p>Calls with a fixed number of arguments are packed into an array and wrapped
+ * in an iterator. Frequently-called functions may avoid this by overriding
+ * the fixed-arity {@code invoke} methods (e.g.
+ * {@link #invoke(ExecutionContext, Object, Object)}) for the argument types they
+ * expect. Such overrides must behave exactly like
+ * {@link #invoke(ExecutionContext, ArgumentIterator)}, and should delegate to
+ * the overridden method for all other arguments, so that argument conversions
+ * and error reporting remain the same.</p>
  */
 public abstract class AbstractLibFunction extends AbstractFunctionAnyArg {
 
@@ -50,6 +50,8 @@ import net.sandius.rembulan.load.LoaderException;
 import net.sandius.rembulan.runtime.Dispatch;
 import net.sandius.rembulan.runtime.ExecutionContext;
 import net.sandius.rembulan.runtime.IllegalOperationAttemptException;
+import net.sandius.rembulan.runtime.LoopCursor;
+import net.sandius.rembulan.runtime.LoopIterator;
 import net.sandius.rembulan.runtime.LuaFunction;
 import net.sandius.rembulan.runtime.ProtectedResumable;
 import net.sandius.rembulan.runtime.ResolvedControlThrowable;
@@ -946,6 +948,11 @@ public final class BasicLib {
 			return "type";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			context.getReturnBuffer().setTo(PlainValueTypeNamer.INSTANCE.typeNameOf(arg1));
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			ByteString typeName = PlainValueTypeNamer.INSTANCE.typeNameOf(args.nextAny());
@@ -954,18 +961,48 @@ public final class BasicLib {
 
 	}
 
-	static class Next extends AbstractLibFunction {
+	static class Next extends AbstractLibFunction implements LoopIterator {
 
 		@Override
 		protected String name() {
 			return "next";
 		}
 
+		@Override
+		public LoopCursor cursor(Object state, Object control) {
+			return state instanceof Table && control == null
+					? ((Table) state).cursor()
+					: null;
+		}
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table) {
+				next(context, (Table) arg1, null);
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table) {
+				next(context, (Table) arg1, arg2);
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Table table = args.nextTable();
 			Object index = args.nextOptionalAny(null);
+			next(context, table, index);
+		}
 
+		private static void next(ExecutionContext context, Table table, Object index) {
 			final Object nxt;
 
 			if (index != null) {
@@ -987,7 +1024,7 @@ public final class BasicLib {
 
 	}
 
-	static class INext extends AbstractLibFunction {
+	static class INext extends AbstractLibFunction implements LoopIterator {
 
 		public static final INext INSTANCE = new INext();
 
@@ -996,13 +1033,33 @@ public final class BasicLib {
 			return "inext";
 		}
 
+		@Override
+		public LoopCursor cursor(Object state, Object control) {
+			return state instanceof Table && control instanceof Long
+					? LoopCursor.sequence((Table) state, ((Long) control).longValue())
+					: null;
+		}
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table && arg2 instanceof Long) {
+				next(context, (Table) arg1, ((Long) arg2).longValue());
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args)
 				throws ResolvedControlThrowable {
 
 			Table table = args.nextTable();
 			long index = args.nextInteger();
+			next(context, table, index);
+		}
 
+		private void next(ExecutionContext context, Table table, long index) throws ResolvedControlThrowable {
 			index += 1;
 
 			try {
@@ -1041,6 +1098,16 @@ public final class BasicLib {
 			return "pairs";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table && Metatables.getMetamethod(context, MT_PAIRS, arg1) == null) {
+				context.getReturnBuffer().setTo(NEXT, arg1, null);
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Table t = args.nextTable();
@@ -1078,6 +1145,16 @@ public final class BasicLib {
 			return "ipairs";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table) {
+				context.getReturnBuffer().setTo(INext.INSTANCE, arg1, 0L);
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Table t = args.nextTable();
@@ -1143,6 +1220,11 @@ public final class BasicLib {
 			return "tonumber";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			context.getReturnBuffer().setTo(Conversions.numericalValueOf(arg1));
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			if (args.size() < 2) {
@@ -1177,9 +1259,17 @@ public final class BasicLib {
 			return "getmetatable";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			getmetatable(context, arg1);
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
-			Object arg = args.nextAny();
+			getmetatable(context, args.nextAny());
+		}
+
+		private static void getmetatable(ExecutionContext context, Object arg) {
 			Object meta = Metatables.getMetamethod(context, MT_METATABLE, arg);
 
 			Object result = meta != null
@@ -1207,11 +1297,24 @@ public final class BasicLib {
 			throw new BadArgumentException(2, name(), "nil or table expected");
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table && (arg2 == null || arg2 instanceof Table)) {
+				setmetatable(context, (Table) arg1, (Table) arg2);
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Table t = args.nextTable();
 			Table mt = nilOrTable(args);
+			setmetatable(context, t, mt);
+		}
 
+		private static void setmetatable(ExecutionContext context, Table t, Table mt) {
 			if (Metatables.getMetamethod(context, MT_METATABLE, t) != null) {
 				throw new IllegalOperationAttemptException("cannot change a protected metatable");
 			}
@@ -1436,6 +1539,11 @@ public final class BasicLib {
 			return "rawequal";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			context.getReturnBuffer().setTo(Ordering.isRawEqual(arg1, arg2));
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Object a = args.nextAny();
@@ -1452,6 +1560,16 @@ public final class BasicLib {
 			return "rawget";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table) {
+				context.getReturnBuffer().setTo(((Table) arg1).rawget(arg2));
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Table table = args.nextTable();
@@ -1468,6 +1586,18 @@ public final class BasicLib {
 			return "rawset";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2, Object arg3) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table) {
+				Table table = (Table) arg1;
+				table.rawset(arg2, arg3);
+				context.getReturnBuffer().setTo(table);
+			}
+			else {
+				super.invoke(context, arg1, arg2, arg3);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Table table = args.nextTable();
@@ -1488,11 +1618,18 @@ public final class BasicLib {
 		}
 
 		@Override
-		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
-			final long result;
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			rawlen(context, arg1);
+		}
 
+		@Override
+		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			// no need to distinguish missing value vs nil
-			Object arg1 = args.nextOptionalAny(null);
+			rawlen(context, args.nextOptionalAny(null));
+		}
+
+		private void rawlen(ExecutionContext context, Object arg1) {
+			final long result;
 
 			if (arg1 instanceof Table) {
 				Table table = (Table) arg1;
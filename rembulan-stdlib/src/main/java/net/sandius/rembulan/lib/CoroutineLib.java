@@ -43,6 +43,7 @@
 
 package net.sandius.rembulan.lib;
 
+import net.sandius.rembulan.Conversions;
 import net.sandius.rembulan.StateContext;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.runtime.AbstractFunctionAnyArg;
@@ -305,6 +306,14 @@ public final class CoroutineLib {
 			catch (UnresolvedControlThrowable ct) {
 				throw ct.resolve(this, null);
 			}
+			catch (RuntimeException ex) {
+				// a threaded coroutine terminated with an error
+				resumeError(context, null, Conversions.toErrorObject(ex));
+				return;
+			}
+
+			// a threaded coroutine yielded or returned
+			resume(context, null);
 		}
 
 		@Override
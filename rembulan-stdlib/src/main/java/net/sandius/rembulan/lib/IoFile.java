@@ -16,17 +16,19 @@ package net.sandius.rembulan.lib;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 import net.sandius.rembulan.ByteString;
 import net.sandius.rembulan.Conversions;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.impl.DefaultUserdata;
 import net.sandius.rembulan.impl.NonsuspendableFunctionException;
-import net.sandius.rembulan.runtime.AbstractFunctionAnyArg;
+import net.sandius.rembulan.runtime.AbstractFunction0;
 import net.sandius.rembulan.runtime.ExecutionContext;
-import net.sandius.rembulan.runtime.LuaFunction;
 import net.sandius.rembulan.runtime.ResolvedControlThrowable;
+import net.sandius.rembulan.runtime.ReturnBuffer;
 
 /**
  * A file handle used by the {@link IoLib I/O library}.
@@ -85,66 +87,79 @@ public abstract class IoFile extends DefaultUserdata {
 
   public abstract ByteString readChunk(long len) throws IOException;
 
+  public abstract void setBuffering(BufferingMode mode, int size) throws IOException;
+
   public enum Whence {
     BEGINNING, CURRENT_POSITION, END
   }
+
+  public enum BufferingMode {
+    NO, FULL, LINE
+  }
+
   public enum Format {
     AS_NUMBER, WHOLE_FILE, NEXT_LINE, NEXT_LINE_WITH_EOL, NUMBER_OF_CHARACTERS;
 
     public static Format get(Object specifier) {
-      if (ByteString.of("*n").equals(specifier)) {
-        return Format.AS_NUMBER;
-      }
-      if (ByteString.of("*a").equals(specifier)) {
-        return Format.WHOLE_FILE;
-      }
-      if (ByteString.of("*l").equals(specifier)) {
-        return Format.NEXT_LINE;
-      }
-      if (ByteString.of("*L").equals(specifier)) {
-        return Format.NEXT_LINE_WITH_EOL;
-      }
       if (specifier instanceof Number) {
         return Format.NUMBER_OF_CHARACTERS;
       }
+      ByteString s = specifier instanceof String
+          ? ByteString.of((String) specifier)
+          : specifier instanceof ByteString ? (ByteString) specifier : null;
+      if (s != null) {
+        // as in Lua 5.3, the leading '*' is optional and only the first character counts
+        int i = s.length() > 0 && s.byteAt(0) == '*' ? 1 : 0;
+        if (i < s.length()) {
+          switch (s.byteAt(i)) {
+            case 'n':
+              return Format.AS_NUMBER;
+            case 'a':
+              return Format.WHOLE_FILE;
+            case 'l':
+              return Format.NEXT_LINE;
+            case 'L':
+              return Format.NEXT_LINE_WITH_EOL;
+            default:
+              break;
+          }
+        }
+      }
       throw new IllegalArgumentException("Unknown format specifier: '" + specifier + "'");
     }
   }
 
   public abstract long seek(Whence whence, long position) throws IOException;
 
-  ///
-
-  static class DelegatingFunction extends AbstractFunctionAnyArg {
-
-    private LuaFunction function;
-    private Object[] args;
-
-    public DelegatingFunction(Object delegate, LuaFunction function, ArgumentIterator arguments) {
-      this.function = function;
-      int argCount = arguments.remaining();
-      if (argCount == 0) {
-        this.args = new Object[] {delegate};
-      } else {
-        this.args = new Object[argCount + 1];
-        for (int i = 0; i < argCount; ++i) {
-          this.args[i + 1] = arguments.next();
-        }
-        this.args[0] = delegate;
-      }
+  // reads a single value in the given format, returning null on failure; length is only
+  // used by NUMBER_OF_CHARACTERS
+  Object read(Format format, long length) throws IOException {
+    switch (format) {
+      case NEXT_LINE:
+        return readLine(false);
+      case NEXT_LINE_WITH_EOL:
+        return readLine(true);
+      case AS_NUMBER:
+        return readNumber();
+      case WHOLE_FILE:
+        return readRestOfFile();
+      case NUMBER_OF_CHARACTERS:
+        return readChunk(length);
+      default:
+        throw new UnsupportedOperationException("Unsupported format: " + format);
     }
+  }
 
-    @Override
-    public void invoke(ExecutionContext context, Object[] args) throws ResolvedControlThrowable {
-      function.invoke(context, this.args);
+  // returns the length of the format specifier for NUMBER_OF_CHARACTERS, or 0 otherwise
+  static long formatLength(Format format, Object specifier) {
+    if (format != Format.NUMBER_OF_CHARACTERS) {
+      return 0L;
     }
-
-    @Override
-    public void resume(ExecutionContext context, Object suspendedState)
-        throws ResolvedControlThrowable {
-      throw new NonsuspendableFunctionException(this.getClass());
+    Long len = Conversions.integerValueOf(specifier);
+    if (len == null) {
+      throw new IllegalArgumentException("number has no integer representation");
     }
-
+    return len;
   }
 
   ///
@@ -201,6 +216,93 @@ public abstract class IoFile extends DefaultUserdata {
 
   static class Lines extends AbstractLibFunction {
 
+    /**
+     * The iterator returned by {@code file:lines} and {@code io.lines}. Each call reads
+     * a value for each of the formats, through the read-ahead buffer of the file.
+     */
+    static class IteratorFunction extends AbstractFunction0 {
+
+      private final IoFile file;
+      private final Format[] formats;
+      private final long[] lengths;
+      private final boolean closeAtEof;
+
+      // scratch space for the results of multiple formats, cleared after every call
+      private final Object[] values;
+
+      IteratorFunction(IoFile file, Format[] formats, long[] lengths, boolean closeAtEof) {
+        this.file = Objects.requireNonNull(file);
+        this.formats = Objects.requireNonNull(formats);
+        this.lengths = Objects.requireNonNull(lengths);
+        this.closeAtEof = closeAtEof;
+        this.values = formats.length > 1 ? new Object[formats.length] : null;
+      }
+
+      /**
+       * Returns a new iterator over the file {@code file}, reading the formats specified
+       * by the remaining arguments in {@code args}, or {@code "l"} if there are none.
+       * Unlike in PUC-Lua, invalid formats are reported here rather than by the first call
+       * of the iterator.
+       */
+      static IteratorFunction of(IoFile file, ArgumentIterator args, boolean closeAtEof) {
+        int n = Math.max(1, args.remaining());
+        Format[] formats = new Format[n];
+        long[] lengths = new long[n];
+        try {
+          for (int i = 0; i < n; i++) {
+            Object specifier = args.nextOptionalAny(Read.DEFAULT_SPEC);
+            formats[i] = Format.get(specifier);
+            lengths[i] = formatLength(formats[i], specifier);
+          }
+        } catch (IllegalArgumentException ex) {
+          throw IoLib.newLuaRuntimeException(ex);
+        }
+        return new IteratorFunction(file, formats, lengths, closeAtEof);
+      }
+
+      @Override
+      public void invoke(ExecutionContext context) throws ResolvedControlThrowable {
+        ReturnBuffer rbuf = context.getReturnBuffer();
+        try {
+          file.checkClosed();
+
+          Object first = file.read(formats[0], lengths[0]);
+          if (first == null) {
+            // end of file: return no values to end the loop
+            if (closeAtEof) {
+              file.close();
+            }
+            rbuf.setTo();
+          } else if (values == null) {
+            rbuf.setTo(first);
+          } else {
+            // as in file:read, reading stops at the first failure, which yields nil
+            int n = 1;
+            values[0] = first;
+            while (n < formats.length) {
+              Object v = file.read(formats[n], lengths[n]);
+              values[n++] = v;
+              if (v == null) {
+                break;
+              }
+            }
+            // the buffer copies the values
+            rbuf.setToContentsOf(n == values.length ? values : Arrays.copyOf(values, n));
+            Arrays.fill(values, null);
+          }
+        } catch (Exception ex) {
+          throw IoLib.newLuaRuntimeException(ex);
+        }
+      }
+
+      @Override
+      public void resume(ExecutionContext context, Object suspendedState)
+          throws ResolvedControlThrowable {
+        throw new NonsuspendableFunctionException(this.getClass());
+      }
+
+    }
+
     @Override
     protected String name() {
       return "lines";
@@ -214,16 +316,15 @@ public abstract class IoFile extends DefaultUserdata {
         f.checkClosed();
       } catch (Exception ex) {
         throw IoLib.newLuaRuntimeException(ex);
-      } 
-      DelegatingFunction nextLineFunc = new DelegatingFunction(f, new Read(), args);
-      context.getReturnBuffer().setTo(nextLineFunc);
+      }
+      context.getReturnBuffer().setTo(IteratorFunction.of(f, args, false));
     }
 
   }
 
   static class Read extends AbstractLibFunction {
 
-    private static final ByteString DEFAULT_SPEC = ByteString.of("*l");
+    static final ByteString DEFAULT_SPEC = ByteString.of("*l");
 
     @Override
     protected String name() {
@@ -239,29 +340,7 @@ public abstract class IoFile extends DefaultUserdata {
         do {
           Object formatSpecfifier = args.nextOptionalAny(DEFAULT_SPEC);
           Format format = Format.get(formatSpecfifier);
-          switch (format) {
-            case NEXT_LINE:
-              result.add(f.readLine(false));
-              break;
-            case NEXT_LINE_WITH_EOL:
-              result.add(f.readLine(true));
-              break;
-            case AS_NUMBER:
-              Number number = f.readNumber();
-              result.add(number);
-              break;
-            case WHOLE_FILE:
-              ByteString text = f.readRestOfFile();
-              result.add(text);
-              break;
-            case NUMBER_OF_CHARACTERS:
-              Long len = Conversions.integerValueOf(formatSpecfifier);
-              ByteString chunk = f.readChunk(len);
-              result.add(chunk);
-              break;
-            default:
-              throw new UnsupportedOperationException("Unsupported format: " + format);
-          }
+          result.add(f.read(format, formatLength(format, formatSpecfifier)));
         } while (args.hasNext());
       } catch (Exception ex) {
         throw IoLib.newLuaRuntimeException(ex);
@@ -334,10 +413,48 @@ public abstract class IoFile extends DefaultUserdata {
       return "setvbuf";
     }
 
+    private static BufferingMode stringToMode(String s) {
+      switch (s) {
+        case "no":
+          return BufferingMode.NO;
+        case "full":
+          return BufferingMode.FULL;
+        case "line":
+          return BufferingMode.LINE;
+        default:
+          return null;
+      }
+    }
+
     @Override
     protected void invoke(ExecutionContext context, ArgumentIterator args)
         throws ResolvedControlThrowable {
-      throw new UnsupportedOperationException(); // TODO
+      IoFile file = args.nextUserdata(typeName(), IoFile.class);
+
+      String s = args.nextString().toString();
+      BufferingMode mode = stringToMode(s);
+      if (mode == null) {
+        throw new BadArgumentException(1, name(), "invalid option '" + s + "'");
+      }
+
+      // a non-positive size keeps the current buffer size
+      long size = args.nextOptionalInteger(0L);
+      if (size > IoLib.MAX_BUFFER_SIZE) {
+        // the buffer is allocated on the heap: fail like setvbuf does rather than exhaust it
+        context.getReturnBuffer().setTo(null, "buffer size too large");
+        return;
+      }
+
+      try {
+        file.setBuffering(mode, (int) Math.max(0L, size));
+      } catch (ClosedFileException ex) {
+        throw IoLib.newLuaRuntimeException(ex);
+      } catch (Exception ex) {
+        IoLib.setErrorMessage(context.getReturnBuffer(), ex);
+        return;
+      }
+
+      context.getReturnBuffer().setTo(true);
     }
 
   }
@@ -349,11 +466,8 @@ public abstract class IoFile extends DefaultUserdata {
       return "write";
     }
 
-    @Override
-    protected void invoke(ExecutionContext context, ArgumentIterator args)
-        throws ResolvedControlThrowable {
-      final IoFile f = args.nextUserdata(typeName(), IoFile.class);
-
+    // writes the remaining arguments to f, setting the results of file:write and io.write
+    static void write(ExecutionContext context, IoFile f, ArgumentIterator args) {
       while (args.hasNext()) {
         final ByteString s = args.nextString();
         try {
@@ -370,6 +484,13 @@ public abstract class IoFile extends DefaultUserdata {
       context.getReturnBuffer().setTo(f);
     }
 
+    @Override
+    protected void invoke(ExecutionContext context, ArgumentIterator args)
+        throws ResolvedControlThrowable {
+      final IoFile f = args.nextUserdata(typeName(), IoFile.class);
+      write(context, f, args);
+    }
+
   }
 
   static class ToString extends AbstractLibFunction {
@@ -48,7 +48,11 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import net.sandius.rembulan.ByteString;
 import net.sandius.rembulan.LuaRuntimeException;
@@ -97,6 +101,17 @@ import net.sandius.rembulan.runtime.UnresolvedControlThrowable;
  */
 public final class IoLib {
 
+  /**
+   * The default size of file buffers in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The maximum size of file buffers in bytes that may be requested using
+   * {@code file:setvbuf}.
+   */
+  public static final int MAX_BUFFER_SIZE = 64 * 1024 * 1024;
+
   static final LuaFunction TYPE = new Type();
 
   static final LuaFunction FILE_CLOSE = new IoFile.Close();
@@ -406,6 +421,83 @@ public final class IoLib {
     return new LuaRuntimeException(message);
   }
 
+  /**
+   * Flushes all files opened for writing by the I/O library (in any Lua state) that have not
+   * been closed yet.
+   *
+   * <p>
+   * Files are written through buffers, and buffered output reaches the file only when the file
+   * is flushed or closed. This method should therefore be called before the host application
+   * exits, as C Lua does on exit. It is also invoked from a JVM shutdown hook, but hosts should not
+   * rely on that. The method must not be called while Lua code writing to these files is running.
+   * </p>
+   *
+   * <p>
+   * All files are flushed even if flushing some of them fails; in that case the first exception
+   * is rethrown, with the remaining ones attached as suppressed exceptions.
+   * </p>
+   *
+   * @throws IOException if an I/O error occurs while flushing any of the files
+   */
+  public static void flushOpenFiles() throws IOException {
+    IOException failure = null;
+    for (IoFile f : OutputFiles.snapshot()) {
+      try {
+        if (!f.isClosed()) {
+          f.flush();
+        }
+      } catch (ClosedFileException ex) {
+        // closed concurrently, nothing to flush
+      } catch (IOException ex) {
+        if (failure == null) {
+          failure = ex;
+        } else {
+          failure.addSuppressed(ex);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  // the files opened for writing by the library; files that are no longer referenced are
+  // flushed by their finalizer, so they are only held weakly
+  private static final class OutputFiles {
+
+    private static final Set<IoFile> FILES =
+        Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<IoFile, Boolean>()));
+
+    static {
+      try {
+        Runtime.getRuntime().addShutdownHook(new Thread("rembulan-io-flush") {
+          @Override
+          public void run() {
+            try {
+              flushOpenFiles();
+            } catch (IOException ex) {
+              // nothing else can be done at this point
+            }
+          }
+        });
+      } catch (IllegalStateException | SecurityException ex) {
+        // already shutting down or not permitted: hosts must call flushOpenFiles() themselves
+      }
+    }
+
+    static <T extends IoFile> T add(T file) {
+      FILES.add(file);
+      return file;
+    }
+
+    static List<IoFile> snapshot() {
+      synchronized (FILES) {
+        return new ArrayList<>(FILES);
+      }
+    }
+
+  }
+
   private final LuaFunction _close;
   private final LuaFunction _flush;
   private final LuaFunction _input;
@@ -420,6 +512,8 @@ public final class IoLib {
   private final Table fileMetatable;
 
   private final FileSystem fileSystem;
+  private final int bufferSize;
+  private final boolean mapReads;
 
   private final IoFile stdIn;
   private final IoFile stdOut;
@@ -428,8 +522,8 @@ public final class IoLib {
   private IoFile defaultInput;
   private IoFile defaultOutput;
 
-  private IoLib(TableFactory tableFactory, FileSystem fileSystem, InputStream in, OutputStream out,
-      OutputStream err) {
+  private IoLib(TableFactory tableFactory, FileSystem fileSystem, int bufferSize,
+      boolean mapReads, InputStream in, OutputStream out, OutputStream err) {
 
     Objects.requireNonNull(tableFactory);
 
@@ -450,6 +544,8 @@ public final class IoLib {
     mt.rawset("write", file_write());
 
     this.fileSystem = fileSystem;
+    this.bufferSize = bufferSize;
+    this.mapReads = mapReads;
 
     stdIn = in != null ? new InputStreamIoFile(in, mt, null) : null;
     stdOut = out != null ? new OutputStreamIoFile(out, mt, null) : null;
@@ -487,8 +583,69 @@ public final class IoLib {
    */
   public static void installInto(StateContext context, Table env,
       RuntimeEnvironment runtimeEnvironment) {
+    installInto(context, env, runtimeEnvironment, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Installs the I/O library to the global environment {@code env} in the state context
+   * {@code context}. The I/O functions will use the runtime environment {@code runtimeEnvironment},
+   * and files opened by the library will be buffered using buffers of {@code bufferSize} bytes.
+   *
+   * <p>
+   * If {@code env.package.loaded} is a table, adds the library table to it with the key
+   * {@code "io"}, using raw access.
+   * </p>
+   *
+   * @param context the state context, must not be {@code null}
+   * @param env the global environment, must not be {@code null}
+   * @param runtimeEnvironment the runtime environment, may be {@code null}
+   * @param bufferSize the size of file buffers in bytes, must be positive
+   *
+   * @throws NullPointerException if {@code context} or {@code env} is {@code null}
+   * @throws IllegalArgumentException if {@code bufferSize} is not positive
+   */
+  public static void installInto(StateContext context, Table env,
+      RuntimeEnvironment runtimeEnvironment, int bufferSize) {
+    installInto(context, env, runtimeEnvironment, bufferSize, false);
+  }
+
+  /**
+   * Installs the I/O library to the global environment {@code env} in the state context
+   * {@code context}. The I/O functions will use the runtime environment {@code runtimeEnvironment},
+   * and files opened by the library will be buffered using buffers of {@code bufferSize} bytes.
+   *
+   * <p>
+   * If {@code mapReads} is {@code true}, reads of the rest of a file ({@code file:read("a")}) and
+   * reads of chunks longer than {@code bufferSize} are served by mapping the file into memory
+   * rather than by copying its contents to the heap. The strings returned by such reads are backed
+   * by the mapped file, and so are their substrings. Note that the contents of these strings
+   * change when the file is modified, and that their hash codes are computed once and not
+   * updated when that happens; such strings are copied when used as table keys or as patterns.
+   * The file must not be truncated while these strings are in use
+   * (see {@link net.sandius.rembulan.ByteString#viewOf}).
+   * </p>
+   *
+   * <p>
+   * If {@code env.package.loaded} is a table, adds the library table to it with the key
+   * {@code "io"}, using raw access.
+   * </p>
+   *
+   * @param context the state context, must not be {@code null}
+   * @param env the global environment, must not be {@code null}
+   * @param runtimeEnvironment the runtime environment, may be {@code null}
+   * @param bufferSize the size of file buffers in bytes, must be positive
+   * @param mapReads flag indicating whether to map long reads from files into memory
+   *
+   * @throws NullPointerException if {@code context} or {@code env} is {@code null}
+   * @throws IllegalArgumentException if {@code bufferSize} is not positive
+   */
+  public static void installInto(StateContext context, Table env,
+      RuntimeEnvironment runtimeEnvironment, int bufferSize, boolean mapReads) {
     Objects.requireNonNull(context);
     Objects.requireNonNull(env);
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("buffer size must be positive: " + bufferSize);
+    }
 
     Table t = context.newTable();
 
@@ -497,7 +654,7 @@ public final class IoLib {
     OutputStream out = runtimeEnvironment != null ? runtimeEnvironment.standardOutput() : null;
     OutputStream err = runtimeEnvironment != null ? runtimeEnvironment.standardError() : null;
 
-    IoLib l = new IoLib(context, fileSystem, in, out, err);
+    IoLib l = new IoLib(context, fileSystem, bufferSize, mapReads, in, out, err);
 
     t.rawset("close", l._close);
     t.rawset("flush", l._flush);
@@ -550,21 +707,24 @@ public final class IoLib {
   private InputStreamIoFile2 openFileForRead(Path path) throws IOException {
     SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ);
     InputStream in = Channels.newInputStream(channel);
-    return new InputStreamIoFile2(in, channel, this.fileMetatable, null);
+    return new InputStreamIoFile2(in, channel, bufferSize, mapReads, this.fileMetatable,
+        null);
   }
 
   private IoFile openFileForWrite(Path path) throws IOException {
     SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.WRITE,
         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
     OutputStream out = Channels.newOutputStream(channel);
-    return new OutputStreamIoFile2(out, channel, this.fileMetatable, null);
+    return OutputFiles.add(
+        new OutputStreamIoFile2(out, channel, bufferSize, this.fileMetatable, null));
   }
 
   private IoFile openFileForAppend(Path path) throws IOException {
     SeekableByteChannel channel =
         Files.newByteChannel(path, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
     OutputStream out = Channels.newOutputStream(channel);
-    return new OutputStreamIoFile2(out, channel, this.fileMetatable, null);
+    return OutputFiles.add(
+        new OutputStreamIoFile2(out, channel, bufferSize, this.fileMetatable, null));
   }
 
   private IoFile setDefaultInputFile(IoFile f) {
@@ -707,11 +867,48 @@ public final class IoLib {
    * 
    * @see http://www.lua.org/manual/5.3/manual.html#6.8
    */
-  static class Lines extends UnimplementedFunction {
-    // TODO
+  static class Lines extends AbstractLibFunction {
+
+    private final IoLib lib;
+
     public Lines(IoLib lib) {
-      super("io.lines");
+      this.lib = Objects.requireNonNull(lib);
+    }
+
+    @Override
+    protected String name() {
+      return "lines";
+    }
+
+    @Override
+    protected void invoke(ExecutionContext context, ArgumentIterator args)
+        throws ResolvedControlThrowable {
+      final IoFile f;
+      final boolean closeAtEof;
+      if (args.hasNext() && args.peek() != null) {
+        ByteString filename = args.nextString();
+        try {
+          f = lib.openFile(filename, Open.Mode.READ);
+        } catch (Exception ex) {
+          throw newLuaRuntimeException(ex);
+        }
+        closeAtEof = true;
+      } else {
+        if (args.hasNext()) {
+          args.skip();
+        }
+        f = lib.getDefaultInputFile();
+        try {
+          f.checkClosed();
+        } catch (Exception ex) {
+          throw newLuaRuntimeException(ex);
+        }
+        closeAtEof = false;
+      }
+
+      context.getReturnBuffer().setTo(IoFile.Lines.IteratorFunction.of(f, args, closeAtEof));
     }
+
   }
 
   static class Open extends AbstractLibFunction {
@@ -930,25 +1127,7 @@ public final class IoLib {
     @Override
     protected void invoke(ExecutionContext context, ArgumentIterator args)
         throws ResolvedControlThrowable {
-      IoFile file = lib.getDefaultOutputFile();
-
-      ArrayList<Object> callArgs = new ArrayList<>();
-      callArgs.add(file);
-      callArgs.addAll(Arrays.asList(args.copyAll()));
-
-      try {
-        Dispatch.call(context, file_write(), callArgs.toArray());
-      } catch (UnresolvedControlThrowable ct) {
-        throw ct.resolve(this, null);
-      }
-
-      resume(context, file);
-    }
-
-    @Override
-    public void resume(ExecutionContext context, Object suspendedState)
-        throws ResolvedControlThrowable {
-      // results are already on the stack, this is a no-op
+      IoFile.Write.write(context, lib.getDefaultOutputFile(), args);
     }
 
   }
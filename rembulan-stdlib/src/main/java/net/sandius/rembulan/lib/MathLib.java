@@ -689,6 +689,19 @@ public final class MathLib {
 			return op((double) x);
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof Long) {
+				context.getReturnBuffer().setTo(op(((Long) arg1).longValue()));
+			}
+			else if (arg1 instanceof Double) {
+				context.getReturnBuffer().setTo(op(((Double) arg1).doubleValue()));
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Number x = args.nextNumber();
@@ -852,11 +865,25 @@ public final class MathLib {
 			return "fmod";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if ((arg1 instanceof Long || arg1 instanceof Double)
+					&& (arg2 instanceof Long || arg2 instanceof Double)) {
+				context.getReturnBuffer().setTo(fmod((Number) arg1, (Number) arg2));
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Number x = args.nextNumber();
 			Number y = args.nextNumber();
+			context.getReturnBuffer().setTo(fmod(x, y));
+		}
 
+		private Number fmod(Number x, Number y) {
 			final Number result;
 
 			if (x instanceof Float || x instanceof Double
@@ -876,7 +903,7 @@ public final class MathLib {
 				}
 			}
 
-			context.getReturnBuffer().setTo(result);
+			return result;
 		}
 
 	}
@@ -888,6 +915,16 @@ public final class MathLib {
 			return "log";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof Long || arg1 instanceof Double) {
+				context.getReturnBuffer().setTo(Math.log(((Number) arg1).doubleValue()));
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Number x = args.nextNumber();
@@ -961,6 +998,20 @@ public final class MathLib {
 			context.getReturnBuffer().setTo(best);
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if ((arg1 instanceof Long || arg1 instanceof Double)
+					&& (arg2 instanceof Long || arg2 instanceof Double)) {
+				Number a = (Number) arg1;
+				Number b = (Number) arg2;
+				boolean replace = isMax ? Dispatch.lt(a, b) : Dispatch.lt(b, a);
+				context.getReturnBuffer().setTo(replace ? b : a);
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Object initial = args.nextAny();
@@ -1213,6 +1264,11 @@ public final class MathLib {
 			return "tointeger";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			context.getReturnBuffer().setTo(Conversions.integerValueOf(arg1));
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Object x = args.nextAny();
@@ -1228,17 +1284,22 @@ public final class MathLib {
 			return "type";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			context.getReturnBuffer().setTo(typeOf(arg1));
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
-			Object x = args.nextAny();
+			context.getReturnBuffer().setTo(typeOf(args.nextAny()));
+		}
 
-			String result = x instanceof Number
+		private static String typeOf(Object x) {
+			return x instanceof Number
 					? (x instanceof Float || x instanceof Double
 							? "float"
 							: "integer")
 					: null;
-
-			context.getReturnBuffer().setTo(result);
 		}
 
 	}
@@ -1250,11 +1311,25 @@ public final class MathLib {
 			return "ult";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if (arg1 instanceof Long && arg2 instanceof Long) {
+				context.getReturnBuffer().setTo(ult((Long) arg1, (Long) arg2));
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			long x = args.nextInteger();
 			long y = args.nextInteger();
-			context.getReturnBuffer().setTo((x - y) < 0);
+			context.getReturnBuffer().setTo(ult(x, y));
+		}
+
+		private static boolean ult(long x, long y) {
+			return (x - y) < 0;
 		}
 
 	}
@@ -20,6 +20,7 @@ import net.sandius.rembulan.StateContext;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.env.RuntimeEnvironment;
 import net.sandius.rembulan.load.ChunkLoader;
+import net.sandius.rembulan.util.Check;
 
 import java.util.Objects;
 
@@ -37,19 +38,26 @@ public class StandardLibrary {
 	private final ChunkLoader chunkLoader;
 	private final ClassLoader moduleLoader;
 	private final boolean withDebug;
+	private final StringPatternCache patternCache;
+	private final int ioBufferSize;
+	private final boolean ioMapReads;
 
 	private StandardLibrary(RuntimeEnvironment environment,
 							ChunkLoader chunkLoader, ClassLoader moduleLoader,
-							boolean withDebug) {
+							boolean withDebug, StringPatternCache patternCache,
+							int ioBufferSize, boolean ioMapReads) {
 
 		this.environment = Objects.requireNonNull(environment);
 		this.chunkLoader = chunkLoader;
 		this.moduleLoader = moduleLoader;
 		this.withDebug = withDebug;
+		this.patternCache = patternCache;
+		this.ioBufferSize = Check.positive(ioBufferSize);
+		this.ioMapReads = ioMapReads;
 	}
 
 	private StandardLibrary(RuntimeEnvironment environment) {
-		this(environment, null, null, false);
+		this(environment, null, null, false, null, IoLib.DEFAULT_BUFFER_SIZE, false);
 	}
 
 	/**
@@ -81,7 +89,7 @@ public class StandardLibrary {
 	 */
 	public StandardLibrary withLoader(ChunkLoader chunkLoader) {
 		return this.chunkLoader != chunkLoader
-				? new StandardLibrary(environment, chunkLoader, moduleLoader, withDebug)
+				? new StandardLibrary(environment, chunkLoader, moduleLoader, withDebug, patternCache, ioBufferSize, ioMapReads)
 				: this;
 	}
 
@@ -95,7 +103,7 @@ public class StandardLibrary {
 	 */
 	public StandardLibrary withModuleLoader(ClassLoader moduleLoader) {
 		return this.moduleLoader != moduleLoader
-				? new StandardLibrary(environment, chunkLoader, moduleLoader, withDebug)
+				? new StandardLibrary(environment, chunkLoader, moduleLoader, withDebug, patternCache, ioBufferSize, ioMapReads)
 				: this;
 	}
 
@@ -109,7 +117,64 @@ public class StandardLibrary {
 	 */
 	public StandardLibrary withDebug(boolean hasDebug) {
 		return this.withDebug != hasDebug
-				? new StandardLibrary(environment, chunkLoader, moduleLoader, hasDebug)
+				? new StandardLibrary(environment, chunkLoader, moduleLoader, hasDebug, patternCache, ioBufferSize, ioMapReads)
+				: this;
+	}
+
+	/**
+	 * Returns a configuration that differs from this configuration in that
+	 * the string library caches compiled patterns in {@code patternCache}.
+	 * If {@code patternCache} is {@code null} (the default), every installation
+	 * of the string library gets a cache of its own. Passing the same cache to several
+	 * installations (e.g. the {@linkplain StringPatternCache#shared() shared pattern cache})
+	 * shares the compiled patterns between them, at the cost of contention on the cache
+	 * when they run concurrently.
+	 *
+	 * @param patternCache  the pattern cache, may be {@code null}
+	 * @return  a configuration that uses {@code patternCache} as its string pattern cache
+	 */
+	public StandardLibrary withPatternCache(StringPatternCache patternCache) {
+		return this.patternCache != patternCache
+				? new StandardLibrary(environment, chunkLoader, moduleLoader, withDebug, patternCache, ioBufferSize, ioMapReads)
+				: this;
+	}
+
+	/**
+	 * Returns a configuration that differs from this configuration in that
+	 * files opened by the I/O library are buffered using buffers of {@code bufferSize}
+	 * bytes. The default buffer size is {@link IoLib#DEFAULT_BUFFER_SIZE}.
+	 *
+	 * @param bufferSize  the size of file buffers in bytes, must be positive
+	 * @return  a configuration that uses file buffers of {@code bufferSize} bytes
+	 *
+	 * @throws IllegalArgumentException  if {@code bufferSize} is not positive
+	 */
+	public StandardLibrary withIoBufferSize(int bufferSize) {
+		return this.ioBufferSize != bufferSize
+				? new StandardLibrary(environment, chunkLoader, moduleLoader, withDebug, patternCache, bufferSize, ioMapReads)
+				: this;
+	}
+
+	/**
+	 * Returns a configuration that differs from this configuration in that reads of the rest
+	 * of a file and of chunks longer than the file buffer in the I/O library are served
+	 * by mapping the file into memory iff {@code mapReads} is {@code true}. By default,
+	 * reads are not mapped.
+	 *
+	 * <p>Mapping avoids copying the contents of large files to the heap: the strings returned
+	 * by mapped reads (and their substrings) are backed by the mapped file. Note that
+	 * the contents of these strings change when the file is modified, and that their hash
+	 * codes are computed once and not updated when that happens; such strings are copied
+	 * when used as table keys or as patterns. The file must not be truncated
+	 * while these strings are in use (see {@link net.sandius.rembulan.ByteString#viewOf}).</p>
+	 *
+	 * @param mapReads  boolean flag indicating whether to map long reads into memory
+	 * @return  a configuration that maps long reads into memory iff {@code mapReads}
+	 *          is {@code true}
+	 */
+	public StandardLibrary withIoMappedReads(boolean mapReads) {
+		return this.ioMapReads != mapReads
+				? new StandardLibrary(environment, chunkLoader, moduleLoader, withDebug, patternCache, ioBufferSize, mapReads)
 				: this;
 	}
 
@@ -131,10 +196,10 @@ public class StandardLibrary {
 		BasicLib.installInto(state, env, environment, chunkLoader);
 		ModuleLib.installInto(state, env, environment, chunkLoader, moduleLoader);
 		CoroutineLib.installInto(state, env);
-		StringLib.installInto(state, env);
+		StringLib.installInto(state, env, patternCache);
 		MathLib.installInto(state, env);
 		TableLib.installInto(state, env);
-		IoLib.installInto(state, env, environment);
+		IoLib.installInto(state, env, environment, ioBufferSize, ioMapReads);
 		OsLib.installInto(state, env, environment);
 		Utf8Lib.installInto(state, env);
 		if (withDebug) {
@@ -88,13 +88,13 @@ public final class StringLib {
 	static final LuaFunction BYTE = new Byte();
 	static final LuaFunction CHAR = new Char();
 	static final LuaFunction DUMP = new Dump();
-	static final LuaFunction FIND = new Find();
+	static final LuaFunction FIND = new Find(StringPatternCache.shared());
 	static final LuaFunction FORMAT = new Format();
-	static final LuaFunction GMATCH = new GMatch();
-	static final LuaFunction GSUB = new GSub();
+	static final LuaFunction GMATCH = new GMatch(StringPatternCache.shared());
+	static final LuaFunction GSUB = new GSub(StringPatternCache.shared());
 	static final LuaFunction LEN = new Len();
 	static final LuaFunction LOWER = new Lower();
-	static final LuaFunction MATCH = new Match();
+	static final LuaFunction MATCH = new Match(StringPatternCache.shared());
 	static final LuaFunction PACK = new Pack();
 	static final LuaFunction PACKSIZE = new PackSize();
 	static final LuaFunction REP = new Rep();
@@ -657,21 +657,63 @@ public final class StringLib {
 	 * @throws NullPointerException  if {@code context} or {@code env} is {@code null}
 	 */
 	public static void installInto(StateContext context, Table env) {
+		installInto(context, env, null);
+	}
+
+	/**
+	 * Installs the string library to the global environment {@code env} in the state
+	 * context {@code context}, using {@code patternCache} to cache compiled patterns
+	 * in {@code string.find}, {@code string.gmatch}, {@code string.gsub}
+	 * and {@code string.match}. If {@code patternCache} is {@code null}, a new cache
+	 * with the {@linkplain StringPatternCache#DEFAULT_CAPACITY default capacity} is
+	 * created for this installation, so that distinct Lua states do not compete for
+	 * the same cache. To share compiled patterns between states, pass
+	 * a cache (such as the {@linkplain StringPatternCache#shared() shared pattern cache})
+	 * explicitly.
+	 *
+	 * <p>If {@code env.package.loaded} is a table, adds the library table
+	 * to it with the key {@code "string"}, using raw access.</p>
+	 *
+	 * @param context  the state context, must not be {@code null}
+	 * @param env  the global environment, must not be {@code null}
+	 * @param patternCache  the pattern cache, may be {@code null}
+	 *
+	 * @throws NullPointerException  if {@code context} or {@code env} is {@code null}
+	 */
+	public static void installInto(StateContext context, Table env, StringPatternCache patternCache) {
 		Objects.requireNonNull(context);
 		Objects.requireNonNull(env);
 
+		if (patternCache == null) {
+			patternCache = StringPatternCache.of(StringPatternCache.DEFAULT_CAPACITY);
+		}
+
+		final LuaFunction find, gmatch, gsub, match;
+		if (patternCache == StringPatternCache.shared()) {
+			find = find();
+			gmatch = gmatch();
+			gsub = gsub();
+			match = match();
+		}
+		else {
+			find = new Find(patternCache);
+			gmatch = new GMatch(patternCache);
+			gsub = new GSub(patternCache);
+			match = new Match(patternCache);
+		}
+
 		Table t = context.newTable();
 
 		t.rawset("byte", byteFn());
 		t.rawset("char", charFn());
 		t.rawset("dump", dump());
-		t.rawset("find", find());
+		t.rawset("find", find);
 		t.rawset("format", format());
-		t.rawset("gmatch", gmatch());
-		t.rawset("gsub", gsub());
+		t.rawset("gmatch", gmatch);
+		t.rawset("gsub", gsub);
 		t.rawset("len", len());
 		t.rawset("lower", lower());
-		t.rawset("match", match());
+		t.rawset("match", match);
 		t.rawset("pack", pack());
 		t.rawset("packsize", packsize());
 		t.rawset("rep", rep());
@@ -698,6 +740,29 @@ public final class StringLib {
 		return Math.max(0, Math.min(len, j));
 	}
 
+	// returns the index of the first occurrence of needle in s at or after fromIndex, or -1
+	private static int indexOf(ByteString s, ByteString needle, int fromIndex) {
+		int len = s.length();
+		int n = needle.length();
+		if (n == 0) {
+			return fromIndex <= len ? fromIndex : -1;
+		}
+
+		byte first = needle.byteAt(0);
+		for (int i = Math.max(0, fromIndex); i <= len - n; i++) {
+			if (s.byteAt(i) == first) {
+				int j = 1;
+				while (j < n && s.byteAt(i + j) == needle.byteAt(j)) {
+					j++;
+				}
+				if (j == n) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
 	private static byte toLower(byte b) {
 		int c = b & 0xff;
 		// FIXME: dealing with ASCII only
@@ -747,23 +812,73 @@ public final class StringLib {
 			return "byte";
 		}
 
+		private static boolean isInt(Object o) {
+			if (o instanceof Long) {
+				long l = ((Long) o).longValue();
+				return l == (long) (int) l;
+			}
+			else {
+				return false;
+			}
+		}
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof ByteString) {
+				bytes(context, (ByteString) arg1, 1, 1);
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if (arg1 instanceof ByteString && isInt(arg2)) {
+				int i = ((Long) arg2).intValue();
+				bytes(context, (ByteString) arg1, i, i);
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2, Object arg3) throws ResolvedControlThrowable {
+			if (arg1 instanceof ByteString && isInt(arg2) && isInt(arg3)) {
+				bytes(context, (ByteString) arg1, ((Long) arg2).intValue(), ((Long) arg3).intValue());
+			}
+			else {
+				super.invoke(context, arg1, arg2, arg3);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			ByteString s = args.nextString();
 			int i = args.nextOptionalInt(1);
 			int j = args.nextOptionalInt(i);
+			bytes(context, s, i, j);
+		}
 
+		private static void bytes(ExecutionContext context, ByteString s, int i, int j) {
 			int len = s.length();
 
 			i = lowerBound(i, len);
 			j = upperBound(j, len);
 
-			List<Object> buf = new ArrayList<>();
-			for (int idx = i; idx <= j; idx++) {
-				int c = s.byteAt(idx - 1) & 0xff;
-				buf.add(Long.valueOf(c));
+			if (i == j) {
+				// a single byte: no need for an intermediate list
+				context.getReturnBuffer().setTo(Long.valueOf(s.byteAt(i - 1) & 0xff));
+			}
+			else {
+				List<Object> buf = new ArrayList<>();
+				for (int idx = i; idx <= j; idx++) {
+					int c = s.byteAt(idx - 1) & 0xff;
+					buf.add(Long.valueOf(c));
+				}
+				context.getReturnBuffer().setToContentsOf(buf);
 			}
-			context.getReturnBuffer().setToContentsOf(buf);
 		}
 
 	}
@@ -808,6 +923,12 @@ public final class StringLib {
 
 	static class Find extends AbstractLibFunction {
 
+		private final StringPatternCache patternCache;
+
+		Find(StringPatternCache patternCache) {
+			this.patternCache = Objects.requireNonNull(patternCache);
+		}
+
 		@Override
 		protected String name() {
 			return "find";
@@ -815,8 +936,8 @@ public final class StringLib {
 
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
-			String s = args.nextString().toString();  // FIXME
-			String pattern = args.nextString().toString();  // FIXME
+			ByteString s = args.nextString();
+			ByteString pattern = args.nextString();
 			int init = args.nextOptionalInt(1);
 			boolean plain = args.nextOptionalBoolean(false);
 
@@ -824,7 +945,7 @@ public final class StringLib {
 
 			if (plain) {
 				// find a substring
-				int at = s.indexOf(pattern, init - 1);
+				int at = indexOf(s, pattern, init - 1);
 				if (at >= 0) {
 					context.getReturnBuffer().setTo(
 							(long) (at + 1),
@@ -836,7 +957,7 @@ public final class StringLib {
 			}
 			else {
 				// find a pattern
-				StringPattern pat = StringPattern.fromString(pattern);
+				StringPattern pat = patternCache.get(pattern);
 
 				StringPattern.Match m = pat.match(s, init - 1);
 
@@ -1365,11 +1486,11 @@ public final class StringLib {
 
 		static class IteratorFunction extends AbstractFunction0 {
 
-			public final String string;
+			public final ByteString string;
 			public final StringPattern pattern;
 			private final AtomicInteger index;
 
-			public IteratorFunction(String string, StringPattern pattern) {
+			public IteratorFunction(ByteString string, StringPattern pattern) {
 				this.string = Objects.requireNonNull(string);
 				this.pattern = Objects.requireNonNull(pattern);
 				this.index = new AtomicInteger(0);
@@ -1418,6 +1539,12 @@ public final class StringLib {
 			}
 		}
 
+		private final StringPatternCache patternCache;
+
+		GMatch(StringPatternCache patternCache) {
+			this.patternCache = Objects.requireNonNull(patternCache);
+		}
+
 		@Override
 		protected String name() {
 			return "gmatch";
@@ -1425,10 +1552,10 @@ public final class StringLib {
 
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
-			String s = args.nextString().toString();  // FIXME
-			String pattern = args.nextString().toString();  // FIXME
+			ByteString s = args.nextString();
+			ByteString pattern = args.nextString();
 
-			StringPattern pat = StringPattern.fromString(pattern, true);
+			StringPattern pat = patternCache.get(pattern, true);
 
 			LuaFunction f = new IteratorFunction(s, pat);
 
@@ -1441,6 +1568,12 @@ public final class StringLib {
 
 		private static final String ARG3_ERROR_MESSAGE = "string/function/table expected";
 
+		private final StringPatternCache patternCache;
+
+		GSub(StringPatternCache patternCache) {
+			this.patternCache = Objects.requireNonNull(patternCache);
+		}
+
 		@Override
 		protected String name() {
 			return "gsub";
@@ -1448,8 +1581,8 @@ public final class StringLib {
 
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
-			String s = args.nextString().toString();  // FIXME
-			String pattern = args.nextString().toString();  // FIXME
+			ByteString s = args.nextString();
+			ByteString pattern = args.nextString();
 
 			final Object repl;
 			if (!args.hasNext()) {
@@ -1461,7 +1594,7 @@ public final class StringLib {
 				// a string?
 				ByteString replStr = Conversions.stringValueOf(o);
 				if (replStr != null) {
-					repl = replStr.toString();
+					repl = replStr;
 				}
 				else if (o instanceof Table || o instanceof LuaFunction) {
 					repl = o;
@@ -1473,25 +1606,25 @@ public final class StringLib {
 
 			int n = args.nextOptionalInt(Integer.MAX_VALUE);
 
-			StringPattern pat = StringPattern.fromString(pattern);
+			StringPattern pat = patternCache.get(pattern);
 
-			run(context, s, 0, new StringBuilder(), pat, 0, n, repl);
+			run(context, s, 0, new ByteStringBuilder(), pat, 0, n, repl);
 		}
 
 		private static class State {
 
-			public final String str;
+			public final ByteString str;
 			public final StringPattern pat;
 			public final int count;
 			public final int num;
 
 			public final Object repl;
 
-			public final StringBuilder bld;
-			public final String fullMatch;
+			public final ByteStringBuilder bld;
+			public final ByteString fullMatch;
 			public final int idx;
 
-			private State(String str, StringPattern pat, int count, int num, Object repl, StringBuilder bld, String fullMatch, int idx) {
+			private State(ByteString str, StringPattern pat, int count, int num, Object repl, ByteStringBuilder bld, ByteString fullMatch, int idx) {
 				this.str = str;
 				this.pat = pat;
 				this.count = count;
@@ -1504,7 +1637,7 @@ public final class StringLib {
 
 		}
 
-		private void run(ExecutionContext context, String str, int idx, StringBuilder bld, StringPattern pat, int count, int num, Object repl)
+		private void run(ExecutionContext context, ByteString str, int idx, ByteStringBuilder bld, StringPattern pat, int count, int num, Object repl)
 				throws ResolvedControlThrowable {
 
 			while (count < num) {
@@ -1529,9 +1662,8 @@ public final class StringLib {
 				// avoid looping indefinitely for empty matches
 				idx = m.endIndex() != idx ? m.endIndex() : m.endIndex() + 1;
 
-				if (repl instanceof String) {
-					String r = stringReplace((String) repl, m.fullMatch(), captures);
-					bld.append(r);
+				if (repl instanceof ByteString) {
+					stringReplace(bld, (ByteString) repl, m.fullMatch(), captures);
 				}
 				else {
 					// NOTE: throws and handles ControlThrowables
@@ -1546,21 +1678,20 @@ public final class StringLib {
 				bld.append(str.substring(idx, str.length()));
 			}
 
-			context.getReturnBuffer().setTo(bld.toString(), (long) count);
+			context.getReturnBuffer().setTo(bld.toByteString(), (long) count);
 		}
 
-		private static String stringReplace(String s, String fullMatch, List<Object> captures) {
-			StringBuilder bld = new StringBuilder();
-
-			for (int i = 0; i < s.length(); i++) {
-				char c = s.charAt(i);
+		private static void stringReplace(ByteStringBuilder bld, ByteString s, ByteString fullMatch, List<Object> captures) {
+			int len = s.length();
+			for (int i = 0; i < len; i++) {
+				byte c = s.byteAt(i);
 
-				if (c == '%' && i + 1 < s.length()) {
-					char d = s.charAt(i + 1);
+				if (c == '%' && i + 1 < len) {
+					byte d = s.byteAt(i + 1);
 					i += 1;  // skip the escape
 
 					if (d >= '0' && d <= '9') {
-						int idx = (int) d - (int) '0';
+						int idx = d - (int) '0';
 						if (idx == 0) {
 							bld.append(fullMatch);
 						}
@@ -1585,20 +1716,18 @@ public final class StringLib {
 					bld.append(c);
 				}
 			}
-
-			return bld.toString();
 		}
 
 		private void nonStringReplace(
 				ExecutionContext context,
-				String str,
+				ByteString str,
 				StringPattern pat,
 				int idx,
 				int count,
 				int num,
-				StringBuilder bld,
+				ByteStringBuilder bld,
 				Object repl,
-				String fullMatch,
+				ByteString fullMatch,
 				List<Object> captures)
 				throws ResolvedControlThrowable {
 
@@ -1623,7 +1752,7 @@ public final class StringLib {
 			resumeReplace(context, bld, fullMatch);
 		}
 
-		private static void resumeReplace(ExecutionContext context, StringBuilder bld, String fullMatch) {
+		private static void resumeReplace(ExecutionContext context, ByteStringBuilder bld, ByteString fullMatch) {
 			Object value = context.getReturnBuffer().get0();
 			ByteString sv = Conversions.stringValueOf(value);
 			if (sv != null) {
@@ -1658,6 +1787,16 @@ public final class StringLib {
 			return "len";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof ByteString) {
+				context.getReturnBuffer().setTo((long) ((ByteString) arg1).length());
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			ByteString s = args.nextString();
@@ -1673,6 +1812,16 @@ public final class StringLib {
 			return "lower";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof ByteString) {
+				context.getReturnBuffer().setTo(toLowerCase((ByteString) arg1));
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			ByteString s = args.nextString();
@@ -1683,6 +1832,12 @@ public final class StringLib {
 
 	static class Match extends AbstractLibFunction {
 
+		private final StringPatternCache patternCache;
+
+		Match(StringPatternCache patternCache) {
+			this.patternCache = Objects.requireNonNull(patternCache);
+		}
+
 		@Override
 		protected String name() {
 			return "match";
@@ -1690,13 +1845,13 @@ public final class StringLib {
 
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
-			String s = args.nextString().toString();  // FIXME
-			String pattern = args.nextString().toString();  // FIXME
+			ByteString s = args.nextString();
+			ByteString pattern = args.nextString();
 			int init = args.nextOptionalInt(1);
 
 			init = lowerBound(init, s.length());
 
-			StringPattern pat = StringPattern.fromString(pattern);
+			StringPattern pat = patternCache.get(pattern);
 
 			StringPattern.Match m = pat.match(s, init - 1);
 			if (m != null) {
@@ -1804,12 +1959,35 @@ public final class StringLib {
 			return "sub";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if (arg1 instanceof ByteString && arg2 instanceof Long) {
+				sub(context, (ByteString) arg1, (int) ((Long) arg2).longValue(), -1);
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2, Object arg3) throws ResolvedControlThrowable {
+			if (arg1 instanceof ByteString && arg2 instanceof Long && arg3 instanceof Long) {
+				sub(context, (ByteString) arg1, (int) ((Long) arg2).longValue(), (int) ((Long) arg3).longValue());
+			}
+			else {
+				super.invoke(context, arg1, arg2, arg3);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			ByteString s = args.nextString();
 			int i = (int) args.nextInteger();
 			int j = (int) args.nextOptionalInteger(-1);
+			sub(context, s, i, j);
+		}
 
+		private static void sub(ExecutionContext context, ByteString s, int i, int j) {
 			int len = s.length();
 			i = lowerBound(i, len) - 1;
 			j = upperBound(j, len);
@@ -1838,6 +2016,16 @@ public final class StringLib {
 			return "upper";
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof ByteString) {
+				context.getReturnBuffer().setTo(toUpperCase((ByteString) arg1));
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			ByteString s = args.nextString();
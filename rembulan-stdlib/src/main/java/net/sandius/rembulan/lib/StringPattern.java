@@ -43,6 +43,7 @@
 
 package net.sandius.rembulan.lib;
 
+import net.sandius.rembulan.ByteString;
 import net.sandius.rembulan.util.Check;
 
 import java.util.ArrayList;
@@ -179,7 +180,6 @@ public class StringPattern {
 	}
 
 	private static final String MAGIC_CHARS = "^$()%.[]*+-?";
-	private static final String PUNCTUATION_CHARS = ".,;:?!";
 
 	private static boolean isMagic(char c) {
 		return MAGIC_CHARS.indexOf(c) != -1;
@@ -187,19 +187,19 @@ public class StringPattern {
 
 	public static class Match {
 
-		private final String originalString;
+		private final ByteString originalString;
 		private final int beginIndex;
 		private final int endIndex;
 		private final List<Object> captures;
 
-		protected Match(String originalString, int beginIndex, int endIndex, List<Object> captures) {
+		protected Match(ByteString originalString, int beginIndex, int endIndex, List<Object> captures) {
 			this.originalString = Objects.requireNonNull(originalString);
 			this.beginIndex = beginIndex;
 			this.endIndex = endIndex;
 			this.captures = Objects.requireNonNull(captures);
 		}
 
-		public String originalString() {
+		public ByteString originalString() {
 			return originalString;
 		}
 
@@ -211,7 +211,7 @@ public class StringPattern {
 			return endIndex;
 		}
 
-		public String fullMatch() {
+		public ByteString fullMatch() {
 			return originalString.substring(beginIndex, endIndex);
 		}
 
@@ -221,8 +221,9 @@ public class StringPattern {
 
 	}
 
-	// returns null to signal no-match
-	public Match match(String s, int fromIndex) {
+	// returns null to signal no-match; captures are substrings of s (of type ByteString)
+	// or positions (of type Long)
+	public Match match(ByteString s, int fromIndex) {
 		// iterate one character beyond the last one: empty matches succeed at EOS
 		while (fromIndex >= 0 && fromIndex <= s.length()) {
 			MatchState ms = new MatchState(items, s, fromIndex);
@@ -345,6 +346,18 @@ public class StringPattern {
 
 	static class CC_spec extends CC {
 
+		private static boolean isLetter(int c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+		}
+
+		private static boolean isDigit(int c) {
+			return c >= '0' && c <= '9';
+		}
+
+		private static boolean isGraphic(int c) {
+			return c > 0x20 && c < 0x7f;
+		}
+
 		enum ClassDesc {
 
 			ALL("."),  // .
@@ -394,30 +407,29 @@ public class StringPattern {
 					return true;
 				}
 				else {
-					char ch = (char) c;
+					// character classes follow the C locale: bytes above 0x7f belong
+					// to none of them
 					switch (desc) {
 						case LETTERS:
-							return complement != Character.isLetter(ch);
+							return complement != isLetter(c);
 						case LOWERCASE_LETTERS:
-							return complement != (Character.isLetter(ch) && Character.isLowerCase(ch));
+							return complement != (c >= 'a' && c <= 'z');
 						case UPPERCASE_LETTERS:
-							return complement != (Character.isLetter(ch) && Character.isUpperCase(ch));
+							return complement != (c >= 'A' && c <= 'Z');
 						case DECIMAL_DIGITS:
-							return complement != (ch >= '0' && ch <= '9');
+							return complement != isDigit(c);
 						case HEXADECIMAL_DIGITS:
-							return complement != ((ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'f') || (ch >= 'A' && ch <= 'F'));
-						case ALPHANUMERIC: {
-							char lc = Character.toLowerCase(ch);
-							return complement != ((lc >= '0' && lc <= '9') || (lc >= 'a' && lc <= 'z'));
-						}
+							return complement != (isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'));
+						case ALPHANUMERIC:
+							return complement != (isLetter(c) || isDigit(c));
 						case SPACE:
-							return complement != Character.isWhitespace(ch);
+							return complement != (c == ' ' || (c >= '\t' && c <= '\r'));
 						case CONTROL_CHARS:
-							return complement != Character.isISOControl(ch);
+							return complement != (c < 0x20 || c == 0x7f);
 						case PUNCTUATION:
-							return complement != (PUNCTUATION_CHARS.indexOf(ch) != -1);
+							return complement != (isGraphic(c) && !isLetter(c) && !isDigit(c));
 						case PRINTABLE_EXCEPT_SPACE:
-							return complement != (!Character.isISOControl(ch) && ch != ' ');
+							return complement != isGraphic(c);
 
 						default: throw new IllegalStateException();
 					}
@@ -476,12 +488,12 @@ public class StringPattern {
 	class MatchState {
 		private final int piIdx;
 		private final List<PI> pis;
-		private final String str;
+		private final ByteString str;
 		private final int strIdx;
 		private final int[] capBegin;
 		private final Object[] cap;
 
-		MatchState(int piIdx, List<PI> pis, String str, int strIdx, int[] capBegin, Object[] cap) {
+		MatchState(int piIdx, List<PI> pis, ByteString str, int strIdx, int[] capBegin, Object[] cap) {
 			this.piIdx = piIdx;
 			this.pis = pis;
 			this.str = str;
@@ -490,7 +502,7 @@ public class StringPattern {
 			this.cap = cap;
 		}
 
-		MatchState(List<PI> pis, String str, int strIdx) {
+		MatchState(List<PI> pis, ByteString str, int strIdx) {
 			this(0, pis, str, strIdx, new int[numCaptures], new Object[numCaptures]);
 		}
 
@@ -528,7 +540,7 @@ public class StringPattern {
 		}
 
 		public int peek(int pos) {
-			return pos >= 0 && pos < str.length() ? str.charAt(pos) : -1;
+			return pos >= 0 && pos < str.length() ? str.byteAt(pos) & 0xff : -1;
 		}
 
 		public int peek() {
@@ -576,7 +588,7 @@ public class StringPattern {
 
 		@Override
 		public int match(MatchState ms) {
-			if (ms.strIdx == ms.str.length() - 1) {
+			if (ms.strIdx == ms.str.length()) {
 				return ms.next(ms.strIdx);
 			}
 			else {
@@ -726,8 +738,8 @@ public class StringPattern {
 		public int match(MatchState ms) {
 			Object o = ms.cap[index-1];
 
-			if (o instanceof String) {
-				String cs = (String) o;
+			if (o instanceof ByteString) {
+				ByteString cs = (ByteString) o;
 				int offset = ms.strIdx;
 				for (int i = 0; i < cs.length(); i++) {
 					if (offset + i >= ms.str.length()) {
@@ -735,7 +747,7 @@ public class StringPattern {
 						return NO_MATCH;
 					}
 
-					if (ms.str.charAt(offset + i) != cs.charAt(i)) {
+					if (ms.str.byteAt(offset + i) != cs.byteAt(i)) {
 						// non-matching character
 						return NO_MATCH;
 					}
@@ -772,13 +784,13 @@ public class StringPattern {
 		public int match(MatchState ms) {
 			int idx = ms.strIdx;
 
-			if (idx >= ms.str.length() || ms.str.charAt(idx) != first) {
+			if (ms.peek(idx) != first) {
 				return NO_MATCH;
 			}
 
 			int balance = 0;
 			while (idx < ms.str.length()) {
-				char c = ms.str.charAt(idx);
+				int c = ms.peek(idx);
 				if (c == first) {
 					balance += 1;
 				}
@@ -823,8 +835,8 @@ public class StringPattern {
 		@Override
 		public int match(MatchState ms) {
 			if (ms.strIdx > 0 && ms.strIdx < ms.str.length()) {
-				char c = ms.str.charAt(ms.strIdx - 1);
-				char d = ms.str.charAt(ms.strIdx);
+				char c = (char) ms.peek(ms.strIdx - 1);
+				char d = (char) ms.peek(ms.strIdx);
 
 				if (!cs.matches(c) && cs.matches(d)) {
 					return ms.next(ms.strIdx);
@@ -903,8 +915,8 @@ public class StringPattern {
 		@Override
 		public int match(MatchState ms) {
 			int endIdx = Math.min(ms.str.length(), ms.strIdx);
-			String s = ms.str.substring(ms.capBegin[index - 1], endIdx);
-			ms.cap[index - 1] = s;
+			// shares the contents of the subject string where possible
+			ms.cap[index - 1] = ms.str.substring(ms.capBegin[index - 1], endIdx);
 			return ms.next(ms.strIdx);
 		}
 
@@ -1224,8 +1236,17 @@ public class StringPattern {
 
 	}
 
+	public static StringPattern fromByteString(ByteString pattern, boolean ignoreCaret) {
+		// patterns operate on bytes: parse the pattern with each byte mapped to a char
+		return new PatternBuilder(pattern.toRawString(), ignoreCaret).parse();
+	}
+
+	public static StringPattern fromByteString(ByteString pattern) {
+		return fromByteString(pattern, false);
+	}
+
 	public static StringPattern fromString(String pattern, boolean ignoreCaret) {
-		return new PatternBuilder(pattern, ignoreCaret).parse();
+		return fromByteString(ByteString.of(pattern), ignoreCaret);
 	}
 
 	public static StringPattern fromString(String pattern) {
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.util.Check;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache of compiled string patterns.
+ *
+ * <p>Patterns are keyed by their bytes (and by whether a leading caret is treated
+ * as an anchor, since {@code string.gmatch} ignores it). When the number of cached
+ * patterns exceeds the capacity of the cache, the least recently used entry is evicted.
+ * A cache with capacity {@code 0} never retains any patterns.</p>
+ *
+ * <p>Patterns that fail to parse are not cached.</p>
+ *
+ * <p>The cache maintains hit and miss counters, accessible via {@link #hitCount()}
+ * and {@link #missCount()}.</p>
+ */
+public final class StringPatternCache {
+
+	/**
+	 * The default capacity of a pattern cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final StringPatternCache SHARED = new StringPatternCache(DEFAULT_CAPACITY);
+
+	private final int capacity;
+	private final LinkedHashMap<Key, StringPattern> patterns;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	private StringPatternCache(final int capacity) {
+		this.capacity = Check.nonNegative(capacity);
+		this.patterns = new LinkedHashMap<Key, StringPattern>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, StringPattern> eldest) {
+				return size() > capacity;
+			}
+		};
+		this.hits = new AtomicLong(0L);
+		this.misses = new AtomicLong(0L);
+	}
+
+	/**
+	 * Returns a new pattern cache with the given capacity.
+	 *
+	 * @param capacity  the maximum number of patterns retained by the cache,
+	 *                  must not be negative
+	 * @return  a new pattern cache with the capacity {@code capacity}
+	 *
+	 * @throws IllegalArgumentException  if {@code capacity} is negative
+	 */
+	public static StringPatternCache of(int capacity) {
+		return new StringPatternCache(capacity);
+	}
+
+	/**
+	 * Returns the JVM-wide shared pattern cache. This is the cache used by the functions
+	 * returned by the static accessors of {@link StringLib} (e.g. {@link StringLib#find()}),
+	 * and by the string library installations that have been explicitly configured
+	 * to use it. The capacity of the shared cache is {@link #DEFAULT_CAPACITY}.
+	 *
+	 * <p>Since all users of the shared cache synchronise on it, a cache of its own
+	 * (see {@link #of(int)}) is preferable for Lua states running concurrently.</p>
+	 *
+	 * @return  the shared pattern cache
+	 */
+	public static StringPatternCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the capacity of this cache.
+	 *
+	 * @return  the maximum number of patterns retained by this cache
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of patterns currently retained by this cache.
+	 *
+	 * @return  the number of cached patterns
+	 */
+	public int size() {
+		synchronized (patterns) {
+			return patterns.size();
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that were satisfied by a cached pattern.
+	 *
+	 * @return  the number of cache hits
+	 */
+	public long hitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that required the pattern to be parsed.
+	 *
+	 * @return  the number of cache misses
+	 */
+	public long missCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Removes all patterns from this cache. The hit and miss counters are not reset.
+	 */
+	public void clear() {
+		synchronized (patterns) {
+			patterns.clear();
+		}
+	}
+
+	/**
+	 * Returns the compiled pattern {@code pattern}, parsing it if it is not
+	 * present in the cache.
+	 *
+	 * @param pattern  the pattern, must not be {@code null}
+	 * @param ignoreCaret  if {@code true}, a leading {@code '^'} is not treated as an anchor
+	 * @return  the compiled pattern
+	 *
+	 * @throws NullPointerException  if {@code pattern} is {@code null}
+	 * @throws IllegalArgumentException  if {@code pattern} is not a valid pattern
+	 */
+	public StringPattern get(ByteString pattern, boolean ignoreCaret) {
+		// the key must not change once in the cache
+		pattern = pattern.detached();
+		Key key = new Key(pattern, ignoreCaret);
+
+		StringPattern result;
+		synchronized (patterns) {
+			result = patterns.get(key);
+		}
+
+		if (result != null) {
+			hits.incrementAndGet();
+			return result;
+		}
+
+		misses.incrementAndGet();
+
+		// parse outside the lock; concurrent misses on the same key may parse twice
+		result = StringPattern.fromByteString(pattern, ignoreCaret);
+
+		if (capacity > 0) {
+			synchronized (patterns) {
+				patterns.put(key, result);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the compiled pattern {@code pattern} with a leading {@code '^'} treated
+	 * as an anchor, parsing it if it is not present in the cache.
+	 *
+	 * @param pattern  the pattern, must not be {@code null}
+	 * @return  the compiled pattern
+	 *
+	 * @throws NullPointerException  if {@code pattern} is {@code null}
+	 * @throws IllegalArgumentException  if {@code pattern} is not a valid pattern
+	 */
+	public StringPattern get(ByteString pattern) {
+		return get(pattern, false);
+	}
+
+	private static final class Key {
+
+		private final ByteString pattern;
+		private final boolean ignoreCaret;
+
+		Key(ByteString pattern, boolean ignoreCaret) {
+			this.pattern = Objects.requireNonNull(pattern);
+			this.ignoreCaret = ignoreCaret;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Key that = (Key) o;
+			return this.ignoreCaret == that.ignoreCaret && this.pattern.equals(that.pattern);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * pattern.hashCode() + (ignoreCaret ? 1 : 0);
+		}
+
+	}
+
+}
@@ -548,6 +548,32 @@ public final class TableLib {
 			t.rawset(pos, value);
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table && !TableUtil.hasLenMetamethod((Table) arg1)) {
+				Table t = (Table) arg1;
+				long len = t.rawlen();
+				start_loop(context, t, len + 1, len, arg2);
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2, Object arg3) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table && arg2 instanceof Long && !TableUtil.hasLenMetamethod((Table) arg1)) {
+				Table t = (Table) arg1;
+				long len = t.rawlen();
+				long pos = ((Long) arg2).longValue();
+				checkValidPos(pos, len);
+				start_loop(context, t, pos, len, arg3);
+			}
+			else {
+				super.invoke(context, arg1, arg2, arg3);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Table t = args.nextTable();
@@ -943,6 +969,32 @@ public final class TableLib {
 			return result;
 		}
 
+		@Override
+		public void invoke(ExecutionContext context, Object arg1) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table && !TableUtil.hasLenMetamethod((Table) arg1)) {
+				Table t = (Table) arg1;
+				long len = t.rawlen();
+				start_loop(context, t, len, len);
+			}
+			else {
+				super.invoke(context, arg1);
+			}
+		}
+
+		@Override
+		public void invoke(ExecutionContext context, Object arg1, Object arg2) throws ResolvedControlThrowable {
+			if (arg1 instanceof Table && arg2 instanceof Long && !TableUtil.hasLenMetamethod((Table) arg1)) {
+				Table t = (Table) arg1;
+				long len = t.rawlen();
+				long pos = ((Long) arg2).longValue();
+				checkValidPos(pos, len);
+				start_loop(context, t, pos, len);
+			}
+			else {
+				super.invoke(context, arg1, arg2);
+			}
+		}
+
 		@Override
 		protected void invoke(ExecutionContext context, ArgumentIterator args) throws ResolvedControlThrowable {
 			Table t = args.nextTable();
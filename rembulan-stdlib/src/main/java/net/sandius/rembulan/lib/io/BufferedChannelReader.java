@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.ByteStringBuilder;
+import net.sandius.rembulan.Conversions;
+
+/**
+ * A buffered reader of a seekable byte channel, implementing the read formats
+ * of {@code file:read}.
+ *
+ * <p>The reader fills its buffer by reading blocks of the buffer size from the channel,
+ * and tokenises the input directly in the buffer. The channel is only repositioned
+ * when the reader is {@linkplain #position(long) positioned} outside of the buffered
+ * region of the channel.</p>
+ *
+ * <p>Optionally, reads of the rest of the file and of chunks longer than the buffer
+ * may be served by {@linkplain FileChannel#map mapping} the corresponding region of the file
+ * into memory, without copying it to the heap. The resulting byte strings are backed by
+ * the mapped buffer, and remain valid after the channel has been closed. Note that
+ * their contents change if the file is modified.</p>
+ *
+ * <p>The reader assumes that it is the only user of the channel: the channel is always
+ * positioned at the end of the buffered region.</p>
+ */
+public class BufferedChannelReader {
+
+  private static final byte LINE_FEED = (byte) '\n';
+
+  // the largest array size that is safe to allocate on common virtual machines
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private final SeekableByteChannel channel;
+  private final FileChannel mappedChannel;  // null if reads are not mapped
+  private final byte[] buffer;
+  private final ByteBuffer byteBuffer;
+
+  // buffer[pos .. limit) are the buffered bytes that have not been read yet
+  private int pos;
+  private int limit;
+
+  /**
+   * Constructs a new reader of the channel {@code channel} with a buffer of
+   * {@code bufferSize} bytes. The reader starts reading at the current position
+   * of {@code channel}.
+   *
+   * <p>If {@code mapReads} is {@code true} and {@code channel} is a {@link FileChannel},
+   * reads of the rest of the file and of chunks longer than the buffer are served
+   * by mapping the file into memory.</p>
+   *
+   * @param channel  the channel to read from, must not be {@code null}
+   * @param bufferSize  the size of the buffer in bytes, must be positive
+   * @param mapReads  flag indicating whether to map long reads into memory
+   *
+   * @throws NullPointerException  if {@code channel} is {@code null}
+   * @throws IllegalArgumentException  if {@code bufferSize} is not positive
+   */
+  public BufferedChannelReader(SeekableByteChannel channel, int bufferSize, boolean mapReads) {
+    this.channel = Objects.requireNonNull(channel);
+    this.mappedChannel = mapReads && channel instanceof FileChannel ? (FileChannel) channel : null;
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("buffer size must be positive: " + bufferSize);
+    }
+    this.buffer = new byte[bufferSize];
+    this.byteBuffer = ByteBuffer.wrap(buffer);
+    this.pos = 0;
+    this.limit = 0;
+  }
+
+  /**
+   * Constructs a new reader of the channel {@code channel} with a buffer of
+   * {@code bufferSize} bytes that does not map reads into memory. The reader starts reading
+   * at the current position of {@code channel}.
+   *
+   * @param channel  the channel to read from, must not be {@code null}
+   * @param bufferSize  the size of the buffer in bytes, must be positive
+   *
+   * @throws NullPointerException  if {@code channel} is {@code null}
+   * @throws IllegalArgumentException  if {@code bufferSize} is not positive
+   */
+  public BufferedChannelReader(SeekableByteChannel channel, int bufferSize) {
+    this(channel, bufferSize, false);
+  }
+
+  /**
+   * Returns the size of the buffer in bytes.
+   *
+   * @return the size of the buffer
+   */
+  public int bufferSize() {
+    return buffer.length;
+  }
+
+  // refills the buffer once all its bytes have been read; returns false on end of file
+  private boolean fill() throws IOException {
+    assert (pos == limit);
+    byteBuffer.clear();
+    int n = channel.read(byteBuffer);
+    pos = 0;
+    limit = Math.max(n, 0);
+    return n > 0;
+  }
+
+  // returns an upper bound of the number of bytes remaining, used for sizing results
+  private int remainingHint(long max) throws IOException {
+    long inChannel = Math.max(0L, channel.size() - channel.position());
+    return (int) Math.min(Math.min(max, inChannel + (limit - pos)), MAX_ARRAY_SIZE);
+  }
+
+  // maps at most max bytes starting at the current position into memory; returns null
+  // if the region is not longer than the buffer, as it is cheaper to copy it
+  private ByteString readMapped(long max) throws IOException {
+    long start = position();
+    long len = Math.min(max, mappedChannel.size() - start);
+    if (len <= buffer.length) {
+      return null;
+    }
+    if (len > Integer.MAX_VALUE) {
+      throw new IOException("cannot read " + len + " bytes into a string");
+    }
+
+    MappedByteBuffer mapped = mappedChannel.map(FileChannel.MapMode.READ_ONLY, start, len);
+    position(start + len);
+    return ByteString.viewOf(mapped);
+  }
+
+  /**
+   * Returns the position of the reader in the channel.
+   *
+   * @return the current position
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  public long position() throws IOException {
+    return channel.position() - (limit - pos);
+  }
+
+  /**
+   * Sets the position of the reader in the channel to {@code newPosition}. The channel
+   * is repositioned only if {@code newPosition} is outside the buffered region.
+   *
+   * @param newPosition  the new position
+   *
+   * @throws IllegalArgumentException  if {@code newPosition} is negative
+   * @throws IOException  if an I/O error occurs
+   */
+  public void position(long newPosition) throws IOException {
+    long end = channel.position();
+    long start = end - limit;
+    if (newPosition >= start && newPosition <= end) {
+      pos = (int) (newPosition - start);
+    } else {
+      channel.position(newPosition);
+      pos = 0;
+      limit = 0;
+    }
+  }
+
+  /**
+   * Returns the size of the underlying channel.
+   *
+   * @return the size of the channel in bytes
+   *
+   * @throws IOException  if an I/O error occurs
+   */
+  public long size() throws IOException {
+    return channel.size();
+  }
+
+  /**
+   * Reads the next line, returning {@code null} at the end of file. The line feed
+   * character terminating the line is included in the result iff {@code keepEol}
+   * is {@code true}.
+   *
+   * @param keepEol  flag indicating whether to keep the end of line character
+   * @return the next line, or {@code null} at the end of file
+   *
+   * @throws IOException  if an I/O error occurs
+   */
+  public ByteString readLine(boolean keepEol) throws IOException {
+    ByteStringBuilder builder = null;
+
+    while (pos < limit || fill()) {
+      int start = pos;
+      int i = start;
+      while (i < limit && buffer[i] != LINE_FEED) {
+        i++;
+      }
+
+      if (i < limit) {
+        // found the end of line
+        pos = i + 1;
+        int end = keepEol ? i + 1 : i;
+        return builder == null
+            ? ByteString.copyOf(buffer, start, end - start)
+            : builder.append(buffer, start, end - start).toByteString();
+      } else {
+        // the line continues past the buffer
+        if (builder == null) {
+          builder = new ByteStringBuilder(2 * (limit - start));
+        }
+        builder.append(buffer, start, limit - start);
+        pos = limit;
+      }
+    }
+
+    // end of file
+    return builder != null ? builder.toByteString() : null;
+  }
+
+  /**
+   * Reads a numeral, returning its numerical value, or {@code null} if no numeral could
+   * be read. Leading whitespace is skipped, and the numeral may start with a sign
+   * ({@code '+'} or {@code '-'}); reading stops at the first character that
+   * cannot extend the numeral, which is left unread.
+   *
+   * @return the number read, or {@code null} if no number could be read
+   *
+   * @throws IOException  if an I/O error occurs
+   */
+  public Number readNumber() throws IOException {
+    ByteStringBuilder numeral = new ByteStringBuilder();
+    boolean consumed = false;
+    boolean hasDigit = false;
+    boolean hasDot = false;
+    boolean hasE = false;
+    boolean isSignedExp = false;
+    byte last = 0;
+
+    while (pos < limit || fill()) {
+      byte b = buffer[pos];
+      if (Character.isWhitespace(b)) {
+        if (numeral.length() > 0) {
+          break;
+        }
+        // skip leading whitespace
+      } else if (Character.isDigit(b)) {
+        hasDigit = true;
+        numeral.append(b);
+      } else if ('.' == b && !hasDot) {
+        hasDot = true;
+        numeral.append(b);
+      } else if (('e' == b || 'E' == b) && !hasE && hasDigit) {
+        hasE = true;
+        numeral.append(b);
+      } else if (('-' == b || '+' == b) && numeral.length() == 0) {
+        // optional leading sign
+        numeral.append(b);
+      } else if (('-' == b || '+' == b) && (last == 'e' || last == 'E') && !isSignedExp) {
+        isSignedExp = true;
+        numeral.append(b);
+      } else {
+        break;
+      }
+      pos++;
+      consumed = true;
+      last = b;
+    }
+
+    return consumed ? Conversions.numericalValueOf(numeral.toByteString()) : null;
+  }
+
+  /**
+   * Reads the rest of the file. Returns an empty string at the end of file.
+   *
+   * @return the rest of the file
+   *
+   * @throws IOException  if an I/O error occurs
+   */
+  public ByteString readRest() throws IOException {
+    if (mappedChannel != null) {
+      ByteString mapped = readMapped(Long.MAX_VALUE);
+      if (mapped != null) {
+        return mapped;
+      }
+    }
+
+    ByteStringBuilder builder = new ByteStringBuilder(remainingHint(Long.MAX_VALUE));
+    do {
+      builder.append(buffer, pos, limit - pos);
+      pos = limit;
+    } while (fill());
+    return builder.toByteString();
+  }
+
+  /**
+   * Reads at most {@code len} bytes, returning {@code null} at the end of file.
+   * If {@code len} is zero, returns an empty string unless at the end of file.
+   * Negative values of {@code len} are interpreted as unsigned, following Lua.
+   *
+   * @param len  the maximum number of bytes to read
+   * @return the bytes read, or {@code null} at the end of file
+   *
+   * @throws IOException  if an I/O error occurs
+   */
+  public ByteString readChunk(long len) throws IOException {
+    if (pos == limit && !fill()) {
+      return null;
+    }
+
+    long max = len < 0 ? Long.MAX_VALUE : len;
+
+    if (max <= limit - pos) {
+      // entirely in the buffer
+      int n = (int) max;
+      ByteString result = ByteString.copyOf(buffer, pos, n);
+      pos += n;
+      return result;
+    }
+
+    if (mappedChannel != null) {
+      ByteString mapped = readMapped(max);
+      if (mapped != null) {
+        return mapped;
+      }
+    }
+
+    ByteStringBuilder builder = new ByteStringBuilder(remainingHint(max));
+    do {
+      int n = (int) Math.min(max - builder.length(), limit - pos);
+      builder.append(buffer, pos, n);
+      pos += n;
+    } while (builder.length() < max && fill());
+    return builder.toByteString();
+  }
+
+}
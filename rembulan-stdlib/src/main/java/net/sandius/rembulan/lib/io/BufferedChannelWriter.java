@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.lib.IoFile;
+
+/**
+ * A buffered writer to a seekable byte channel, implementing the buffering modes
+ * of {@code file:setvbuf}.
+ *
+ * <p>Byte strings are put into the buffer directly. The buffer is written to the channel
+ * when it fills up, when the writer is {@linkplain #flush() flushed}, and in line-buffered
+ * mode whenever a line feed character is written. Byte strings that do not fit into
+ * the buffer are written together with the buffered bytes in a single gathering write,
+ * without being copied into the buffer. In unbuffered mode, every byte string is
+ * written to the channel immediately.</p>
+ *
+ * <p>The writer assumes that it is the only user of the channel: the channel is always
+ * positioned at the start of the buffered bytes.</p>
+ */
+public class BufferedChannelWriter {
+
+  private static final byte LINE_FEED = (byte) '\n';
+
+  private final SeekableByteChannel channel;
+  private final ByteBuffer[] gather;
+
+  private IoFile.BufferingMode mode;
+  private ByteBuffer buffer;
+
+  /**
+   * Constructs a new fully-buffered writer to the channel {@code channel} with a buffer
+   * of {@code bufferSize} bytes. The writer starts writing at the current position
+   * of {@code channel}.
+   *
+   * @param channel  the channel to write to, must not be {@code null}
+   * @param bufferSize  the size of the buffer in bytes, must be positive
+   *
+   * @throws NullPointerException  if {@code channel} is {@code null}
+   * @throws IllegalArgumentException  if {@code bufferSize} is not positive
+   */
+  public BufferedChannelWriter(SeekableByteChannel channel, int bufferSize) {
+    this.channel = Objects.requireNonNull(channel);
+    this.buffer = allocate(bufferSize);
+    this.gather = new ByteBuffer[2];
+    this.mode = IoFile.BufferingMode.FULL;
+  }
+
+  private static ByteBuffer allocate(int bufferSize) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("buffer size must be positive: " + bufferSize);
+    }
+    return ByteBuffer.allocate(bufferSize);
+  }
+
+  /**
+   * Returns the buffering mode of this writer.
+   *
+   * @return the buffering mode
+   */
+  public IoFile.BufferingMode mode() {
+    return mode;
+  }
+
+  /**
+   * Returns the size of the buffer in bytes.
+   *
+   * @return the size of the buffer
+   */
+  public int bufferSize() {
+    return buffer.capacity();
+  }
+
+  /**
+   * Sets the buffering mode to {@code mode}, flushing the buffered bytes. If {@code size}
+   * is positive and differs from the current buffer size, the buffer is replaced by
+   * a buffer of {@code size} bytes.
+   *
+   * @param mode  the new buffering mode, must not be {@code null}
+   * @param size  the new buffer size in bytes, or a non-positive value to keep
+   *              the current size
+   *
+   * @throws NullPointerException  if {@code mode} is {@code null}
+   * @throws IOException  if an I/O error occurs
+   */
+  public void setMode(IoFile.BufferingMode mode, int size) throws IOException {
+    Objects.requireNonNull(mode);
+    flush();
+    this.mode = mode;
+    if (size > 0 && size != buffer.capacity()) {
+      buffer = allocate(size);
+    }
+  }
+
+  /**
+   * Writes the byte string {@code s}, subject to the buffering mode.
+   *
+   * @param s  the byte string to write, must not be {@code null}
+   *
+   * @throws NullPointerException  if {@code s} is {@code null}
+   * @throws IOException  if an I/O error occurs
+   */
+  public void write(ByteString s) throws IOException {
+    int len = s.length();
+
+    if (mode != IoFile.BufferingMode.NO && len < buffer.capacity()) {
+      if (len > buffer.remaining()) {
+        flush();
+      }
+      int start = buffer.position();
+      s.putTo(buffer);
+      if (mode == IoFile.BufferingMode.LINE && containsLineFeed(start, buffer.position())) {
+        flush();
+      }
+    } else {
+      // write the buffered bytes followed by s, without copying s
+      gather[0] = buffer;
+      gather[1] = s.asReadOnlyByteBuffer();
+      buffer.flip();
+      try {
+        writeFully(gather);
+      } finally {
+        // keep the bytes that could not be written in the buffer
+        buffer.compact();
+        gather[1] = null;
+      }
+    }
+  }
+
+  private boolean containsLineFeed(int from, int to) {
+    byte[] bytes = buffer.array();
+    int offset = buffer.arrayOffset();
+    for (int i = from; i < to; i++) {
+      if (bytes[offset + i] == LINE_FEED) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // writes both buffers of the pair in order
+  private void writeFully(ByteBuffer[] buffers) throws IOException {
+    if (channel instanceof GatheringByteChannel) {
+      GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+      while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+        gatheringChannel.write(buffers);
+      }
+    } else {
+      for (ByteBuffer b : buffers) {
+        while (b.hasRemaining()) {
+          channel.write(b);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered bytes to the channel.
+   *
+   * @throws IOException  if an I/O error occurs
+   */
+  public void flush() throws IOException {
+    if (buffer.position() > 0) {
+      buffer.flip();
+      try {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      } finally {
+        buffer.compact();
+      }
+    }
+  }
+
+  /**
+   * Returns the position of the writer in the channel, including the buffered bytes.
+   *
+   * @return the current position
+   *
+   * @throws IOException  if an I/O error occurs
+   */
+  public long position() throws IOException {
+    return channel.position() + buffer.position();
+  }
+
+  /**
+   * Flushes the buffered bytes and sets the position of the channel to {@code newPosition}.
+   *
+   * @param newPosition  the new position
+   *
+   * @throws IllegalArgumentException  if {@code newPosition} is negative
+   * @throws IOException  if an I/O error occurs
+   */
+  public void position(long newPosition) throws IOException {
+    flush();
+    channel.position(newPosition);
+  }
+
+  /**
+   * Returns the size of the channel, including the buffered bytes.
+   *
+   * @return the size of the channel in bytes
+   *
+   * @throws IOException  if an I/O error occurs
+   */
+  public long size() throws IOException {
+    return Math.max(channel.size(), position());
+  }
+
+}
@@ -51,6 +51,11 @@ public class InputStreamIoFile extends IoFile {
     throw new UnsupportedOperationException("Bad file descriptor");
   }
 
+  @Override
+  public void setBuffering(BufferingMode mode, int size) throws IOException {
+    // output buffering does not apply to the standard input
+  }
+
   @Override
   public long seek(IoFile.Whence whence, long offset) throws IOException {
     switch (whence) {
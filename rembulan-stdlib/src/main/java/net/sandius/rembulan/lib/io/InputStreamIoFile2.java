@@ -15,33 +15,31 @@ package net.sandius.rembulan.lib.io;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.util.Objects;
 
 import net.sandius.rembulan.ByteString;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.lib.IoFile;
+import net.sandius.rembulan.lib.IoLib;
 
 public class InputStreamIoFile2 extends IoFile {
 
-  private final ByteBuffer byteBuffer = ByteBuffer.wrap(new byte[16]);
-
-  private final NumberTokenizer numberTokenizer = new NumberTokenizer(byteBuffer);
-  private final LineTokenizer lineTokenizer = new LineTokenizer(byteBuffer);
-  private final LineTokenizer lineWithEoLTokenizer = new LineTokenizer(byteBuffer, true);
-
-  private final RestOfFileTokenizer restOfFileTokenizer = new RestOfFileTokenizer(byteBuffer);
-  private final ChunkTokenizer chunkTokenizer = new ChunkTokenizer(byteBuffer);
-
   private final InputStream in;
   private final SeekableByteChannel channel;
+  private final BufferedChannelReader reader;
 
   public InputStreamIoFile2(InputStream in, SeekableByteChannel channel, Table metatable,
       Object userValue) {
+    this(in, channel, IoLib.DEFAULT_BUFFER_SIZE, false, metatable, userValue);
+  }
+
+  public InputStreamIoFile2(InputStream in, SeekableByteChannel channel, int bufferSize,
+      boolean mapReads, Table metatable, Object userValue) {
     super(metatable, userValue);
     this.in = Objects.requireNonNull(in);
     this.channel = Objects.requireNonNull(channel);
+    this.reader = new BufferedChannelReader(channel, bufferSize, mapReads);
   }
 
   @Override
@@ -65,54 +63,55 @@ public class InputStreamIoFile2 extends IoFile {
     throw new UnsupportedOperationException("Bad file descriptor");
   }
 
+  @Override
+  public void setBuffering(BufferingMode mode, int size) throws IOException {
+    // output buffering does not apply to files opened for reading
+    checkClosed();
+  }
+
   @Override
   public long seek(IoFile.Whence whence, long offset) throws IOException {
     checkClosed();
-    long current = channel.position();
+    final long base;
     switch (whence) {
       case BEGINNING:
-        channel.position(offset);
+        base = 0L;
         break;
       case END:
-        long size = channel.size();
-        channel.position(size + offset);
+        base = reader.size();
         break;
       case CURRENT_POSITION:
-        channel.position(current + offset);
+        base = reader.position();
         break;
       default:
         throw new IllegalArgumentException("Illegal whence: " + whence);
     }
-    return channel.position();
+    reader.position(base + offset);
+    return base + offset;
   }
 
   @Override
   public ByteString readLine(boolean returnEol) throws IOException {
     checkClosed();
-    if (returnEol) {
-      return lineWithEoLTokenizer.nextToken(channel);
-    } else {
-      return lineTokenizer.nextToken(channel);
-    }
+    return reader.readLine(returnEol);
   }
 
   @Override
   public Number readNumber() throws IOException {
     checkClosed();
-    return numberTokenizer.nextToken(channel);
+    return reader.readNumber();
   }
 
   @Override
   public ByteString readRestOfFile() throws IOException {
     checkClosed();
-    return restOfFileTokenizer.nextToken(channel);
+    return reader.readRest();
   }
 
   @Override
   public ByteString readChunk(long len) throws IOException {
     checkClosed();
-    chunkTokenizer.setLength(len);
-    return chunkTokenizer.nextToken(channel);
+    return reader.readChunk(len);
   }
 
 }
@@ -51,6 +51,11 @@ public class OutputStreamIoFile extends IoFile {
     s.writeTo(out);
   }
 
+  @Override
+  public void setBuffering(BufferingMode mode, int size) throws IOException {
+    // the stream is written through: its buffering is up to the underlying stream
+  }
+
   @Override
   public long seek(IoFile.Whence whence, long offset) throws IOException {
     switch (whence) {
@@ -17,21 +17,30 @@ package net.sandius.rembulan.lib.io;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
 
 import net.sandius.rembulan.ByteString;
 import net.sandius.rembulan.Table;
 import net.sandius.rembulan.lib.IoFile;
+import net.sandius.rembulan.lib.IoLib;
 
 public class OutputStreamIoFile2 extends IoFile {
 
   private final OutputStream out;
   private final SeekableByteChannel channel;
+  private final BufferedChannelWriter writer;
 
   public OutputStreamIoFile2(OutputStream out, SeekableByteChannel channel, Table metatable,
       Object userValue) {
+    this(out, channel, IoLib.DEFAULT_BUFFER_SIZE, metatable, userValue);
+  }
+
+  public OutputStreamIoFile2(OutputStream out, SeekableByteChannel channel, int bufferSize,
+      Table metatable, Object userValue) {
     super(metatable, userValue);
-    this.out = out;
-    this.channel = channel;
+    this.out = Objects.requireNonNull(out);
+    this.channel = Objects.requireNonNull(channel);
+    this.writer = new BufferedChannelWriter(channel, bufferSize);
   }
 
   @Override
@@ -41,41 +50,53 @@ public class OutputStreamIoFile2 extends IoFile {
 
   @Override
   public void close() throws IOException {
-    out.close();
-    channel.close();
+    try {
+      if (channel.isOpen()) {
+        writer.flush();
+      }
+    } finally {
+      out.close();
+      channel.close();
+    }
   }
 
   @Override
   public void flush() throws IOException {
     checkClosed();
-    out.flush();
+    writer.flush();
   }
 
   @Override
   public void write(ByteString s) throws IOException {
     checkClosed();
-    s.writeTo(out);
+    writer.write(s);
+  }
+
+  @Override
+  public void setBuffering(BufferingMode mode, int size) throws IOException {
+    checkClosed();
+    writer.setMode(mode, size);
   }
 
   @Override
   public long seek(IoFile.Whence whence, long offset) throws IOException {
     checkClosed();
-    long current = channel.position();
+    final long base;
     switch (whence) {
       case BEGINNING:
-        channel.position(offset);
+        base = 0L;
         break;
       case END:
-        long size = channel.size();
-        channel.position(size + offset);
+        base = writer.size();
         break;
       case CURRENT_POSITION:
-        channel.position(current + offset);
+        base = writer.position();
         break;
       default:
         throw new IllegalArgumentException("Illegal whence: " + whence);
     }
-    return channel.position();
+    writer.position(base + offset);
+    return writer.position();
   }
 
   @Override
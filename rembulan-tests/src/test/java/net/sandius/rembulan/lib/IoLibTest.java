@@ -177,6 +177,32 @@ public class IoLibTest extends TestBase {
     assertThat(actual[0]).isEqualTo("one\ntwo\nthree");
   }
 
+  @Test
+  public void test_Io_lines__Read_multiple_formats_per_line() throws Exception {
+    // Given:
+    Path path = createTempFile("1 a\n2 b\n3");
+    String program = loadResource("prog26.lua");
+
+    // When:
+    Object[] actual = run(program, path.toString());
+
+    // Then:
+    assertThat(actual[0]).isEqualTo("1: a,2: b,3:nil");
+  }
+
+  @Test
+  public void test_Io_lines__Read_default_input_without_closing_it() throws Exception {
+    // Given:
+    Path path = createTempFile("ab\ncd");
+    String program = loadResource("prog27.lua");
+
+    // When:
+    Object[] actual = run(program, path.toString());
+
+    // Then:
+    assertThat(actual).containsExactly(4L, "file", false);
+  }
+
   @Test
   public void test_File_read_next_line__Read_file_with_three_lines() throws Exception {
     // Given:
@@ -205,6 +231,39 @@ public class IoLibTest extends TestBase {
     assertThat(actual[0]).isEqualTo("one\ntwo\nthree");
   }
 
+  @Test
+  public void test_File_read_next_line__Read_file_with_lines_longer_than_the_buffer()
+      throws Exception {
+    // Given:
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 3 * IoLib.DEFAULT_BUFFER_SIZE; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+    String content = sb + "\n" + sb + "\n" + "end";
+    Path path = createTempFile(content);
+    String program = loadResource("prog4.lua");
+
+    // When:
+    Object[] actual = run(program, path.toString());
+
+    // Then:
+    assertThat(actual[0]).isEqualTo(content);
+  }
+
+  @Test
+  public void test_File_read__Formats_without_asterisk() throws Exception {
+    // Given:
+    String content = "1 2 skip\nhello\nworld";
+    Path path = createTempFile(content);
+    String program = loadResource("prog25.lua");
+
+    // When:
+    Object[] actual = run(program, path.toString());
+
+    // Then:
+    assertThat(actual).isEqualTo(new Object[] {3L, " skip", "hello\nworld", ""});
+  }
+
   @Test
   public void test_File_read_next_numer__Read_file_with_one_digit() throws Exception {
     // Given:
@@ -1185,4 +1244,47 @@ public class IoLibTest extends TestBase {
     assertThat(actual).isEqualTo(newContent);
   }
 
+  @Test
+  public void test_File_setvbuf__Buffering_modes() throws Exception {
+    // Given:
+    Path path = createTempFile("");
+    String program = loadResource("prog28.lua");
+
+    // When:
+    Object[] actual = run(program, path.toString());
+
+    // Then:
+    assertThat(actual).containsExactly(0L, 5L, 7L, 7L);
+  }
+
+  @Test
+  public void test_File_write__Without_close_is_flushed_by_flushOpenFiles() throws Exception {
+    // Given:
+    Path path = createTempFile("");
+    String program = loadResource("prog29.lua");
+
+    // When:
+    Object[] actual = run(program, path.toString());
+    String beforeFlush = readFile(path);
+    IoLib.flushOpenFiles();
+
+    // Then:
+    assertThat(actual[0]).isInstanceOf(IoFile.class);
+    assertThat(beforeFlush).isEqualTo("");
+    assertThat(readFile(path)).isEqualTo("hello\n");
+  }
+
+  @Test
+  public void test_File_setvbuf__Rejects_too_large_buffer() throws Exception {
+    // Given:
+    Path path = createTempFile("");
+    String program = loadResource("prog30.lua");
+
+    // When:
+    Object[] actual = run(program, path.toString());
+
+    // Then:
+    assertThat(actual).containsExactly(null, "buffer size too large", true);
+  }
+
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib.io;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Test;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.testenv.TestBase;
+
+public class BufferedChannelReaderTest extends TestBase {
+
+  private SeekableByteChannel channel;
+
+  private BufferedChannelReader reader(String content, int bufferSize, boolean mapReads)
+      throws IOException {
+    Path path = createTempFile(content);
+    channel = Files.newByteChannel(path, StandardOpenOption.READ);
+    return new BufferedChannelReader(channel, bufferSize, mapReads);
+  }
+
+  private BufferedChannelReader reader(String content, int bufferSize) throws IOException {
+    return reader(content, bufferSize, false);
+  }
+
+  @After
+  public void closeChannel() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_constructor__Rejects_non_positive_buffer_size() throws Exception {
+    reader("", 0);
+  }
+
+  @Test
+  public void test_readLine__Lines_spanning_the_buffer() throws Exception {
+    // Given:
+    BufferedChannelReader reader = reader("hello\nworld, this is a long line\n\nend", 4);
+
+    // When/Then:
+    assertThat(reader.readLine(false)).isEqualTo(ByteString.of("hello"));
+    assertThat(reader.readLine(true)).isEqualTo(ByteString.of("world, this is a long line\n"));
+    assertThat(reader.readLine(false)).isEqualTo(ByteString.empty());
+    assertThat(reader.readLine(false)).isEqualTo(ByteString.of("end"));
+    assertThat(reader.readLine(false)).isNull();
+  }
+
+  @Test
+  public void test_readNumber__Numbers_spanning_the_buffer() throws Exception {
+    // Given:
+    BufferedChannelReader reader = reader("  12345.5e-1\n-42 x", 3);
+
+    // When/Then:
+    assertThat(reader.readNumber()).isEqualTo(1234.55);
+    assertThat(reader.readNumber()).isEqualTo(-42L);
+    assertThat(reader.readNumber()).isNull();
+    assertThat(reader.readLine(false)).isEqualTo(ByteString.of("x"));
+  }
+
+  @Test
+  public void test_readNumber__Leading_sign() throws Exception {
+    // Given:
+    BufferedChannelReader reader = reader("+5 -7 +2.5e+1 .-1", 4);
+
+    // When/Then:
+    assertThat(reader.readNumber()).isEqualTo(5L);
+    assertThat(reader.readNumber()).isEqualTo(-7L);
+    assertThat(reader.readNumber()).isEqualTo(25.0);
+    assertThat(reader.readNumber()).isNull();
+    assertThat(reader.readLine(false)).isEqualTo(ByteString.of("-1"));
+  }
+
+  @Test
+  public void test_readChunk__Chunks_spanning_the_buffer() throws Exception {
+    // Given:
+    BufferedChannelReader reader = reader("123456789a", 4);
+
+    // When/Then:
+    assertThat(reader.readChunk(0)).isEqualTo(ByteString.empty());
+    assertThat(reader.readChunk(3)).isEqualTo(ByteString.of("123"));
+    assertThat(reader.readChunk(6)).isEqualTo(ByteString.of("456789"));
+    assertThat(reader.readChunk(6)).isEqualTo(ByteString.of("a"));
+    assertThat(reader.readChunk(1)).isNull();
+    assertThat(reader.readChunk(0)).isNull();
+  }
+
+  @Test
+  public void test_readRest__After_partial_read() throws Exception {
+    // Given:
+    BufferedChannelReader reader = reader("one\ntwo\nthree", 4);
+
+    // When/Then:
+    assertThat(reader.readLine(false)).isEqualTo(ByteString.of("one"));
+    assertThat(reader.readRest()).isEqualTo(ByteString.of("two\nthree"));
+    assertThat(reader.readRest()).isEqualTo(ByteString.empty());
+  }
+
+  @Test
+  public void test_position__Within_and_outside_the_buffer() throws Exception {
+    // Given:
+    BufferedChannelReader reader = reader("0123456789abcdef", 8);
+
+    // When/Then:
+    assertThat(reader.readChunk(2)).isEqualTo(ByteString.of("01"));
+    assertThat(reader.position()).isEqualTo(2L);
+
+    reader.position(5);
+    assertThat(reader.readChunk(2)).isEqualTo(ByteString.of("56"));
+
+    reader.position(12);
+    assertThat(reader.position()).isEqualTo(12L);
+    assertThat(reader.readRest()).isEqualTo(ByteString.of("cdef"));
+
+    reader.position(0);
+    assertThat(reader.readLine(false)).isEqualTo(ByteString.of("0123456789abcdef"));
+    assertThat(reader.position()).isEqualTo(16L);
+  }
+
+  @Test
+  public void test_mapped_reads__Long_reads_are_mapped() throws Exception {
+    // Given:
+    BufferedChannelReader reader = reader("one\ntwo\nthree and more", 4, true);
+
+    // When/Then:
+    assertThat(reader.readLine(false)).isEqualTo(ByteString.of("one"));
+    assertThat(reader.readChunk(2)).isEqualTo(ByteString.of("tw"));
+    ByteString chunk = reader.readChunk(8);
+    assertThat(chunk).isEqualTo(ByteString.of("o\nthree "));
+    assertThat(reader.position()).isEqualTo(14L);
+
+    ByteString rest = reader.readRest();
+    channel.close();
+    assertThat(rest).isEqualTo(ByteString.of("and more"));
+    assertThat(rest.substring(4, 8)).isEqualTo(ByteString.of("more"));
+    assertThat(rest.getClass().getSimpleName()).isEqualTo("BufferByteString");
+    assertThat(chunk.getClass()).isEqualTo(rest.getClass());
+  }
+
+}
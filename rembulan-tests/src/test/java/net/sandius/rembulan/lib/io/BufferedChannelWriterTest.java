@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib.io;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Test;
+
+import net.sandius.rembulan.ByteString;
+import net.sandius.rembulan.lib.IoFile;
+import net.sandius.rembulan.testenv.TestBase;
+
+public class BufferedChannelWriterTest extends TestBase {
+
+  private Path path;
+  private SeekableByteChannel channel;
+
+  private BufferedChannelWriter writer(int bufferSize) throws IOException {
+    path = createTempFile("");
+    channel = Files.newByteChannel(path, StandardOpenOption.WRITE);
+    return new BufferedChannelWriter(channel, bufferSize);
+  }
+
+  @After
+  public void closeChannel() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_constructor__Rejects_non_positive_buffer_size() throws Exception {
+    writer(0);
+  }
+
+  @Test
+  public void test_write__Full_buffering() throws Exception {
+    // Given:
+    BufferedChannelWriter writer = writer(4);
+
+    // When/Then:
+    writer.write(ByteString.of("ab"));
+    writer.write(ByteString.of("c\n"));
+    assertThat(readFile(path)).isEqualTo("");
+    writer.write(ByteString.of("d"));
+    assertThat(readFile(path)).isEqualTo("abc\n");
+    writer.flush();
+    assertThat(readFile(path)).isEqualTo("abc\nd");
+  }
+
+  @Test
+  public void test_write__Strings_longer_than_the_buffer_are_written_with_the_buffer()
+      throws Exception {
+    // Given:
+    BufferedChannelWriter writer = writer(4);
+
+    // When:
+    writer.write(ByteString.of("ab"));
+    writer.write(ByteString.of("123456789"));
+
+    // Then:
+    assertThat(readFile(path)).isEqualTo("ab123456789");
+    assertThat(writer.position()).isEqualTo(11L);
+  }
+
+  @Test
+  public void test_write__Line_buffering() throws Exception {
+    // Given:
+    BufferedChannelWriter writer = writer(16);
+    writer.setMode(IoFile.BufferingMode.LINE, 0);
+
+    // When/Then:
+    writer.write(ByteString.of("ab"));
+    assertThat(readFile(path)).isEqualTo("");
+    writer.write(ByteString.of("c\nd"));
+    assertThat(readFile(path)).isEqualTo("abc\nd");
+  }
+
+  @Test
+  public void test_write__No_buffering() throws Exception {
+    // Given:
+    BufferedChannelWriter writer = writer(16);
+    writer.write(ByteString.of("ab"));
+
+    // When:
+    writer.setMode(IoFile.BufferingMode.NO, 0);
+    writer.write(ByteString.of("c"));
+
+    // Then:
+    assertThat(readFile(path)).isEqualTo("abc");
+  }
+
+  @Test
+  public void test_setMode__Changes_the_buffer_size() throws Exception {
+    // Given:
+    BufferedChannelWriter writer = writer(16);
+
+    // When:
+    writer.setMode(IoFile.BufferingMode.FULL, 2);
+    writer.write(ByteString.of("ab"));
+
+    // Then:
+    assertThat(writer.bufferSize()).isEqualTo(2);
+    assertThat(readFile(path)).isEqualTo("ab");
+  }
+
+  @Test
+  public void test_position__Includes_the_buffered_bytes() throws Exception {
+    // Given:
+    BufferedChannelWriter writer = writer(16);
+    writer.write(ByteString.of("hello"));
+
+    // When:
+    long position = writer.position();
+    writer.position(1L);
+    writer.write(ByteString.of("E"));
+    writer.flush();
+
+    // Then:
+    assertThat(position).isEqualTo(5L);
+    assertThat(writer.position()).isEqualTo(2L);
+    assertThat(readFile(path)).isEqualTo("hEllo");
+  }
+
+}
@@ -0,0 +1,10 @@
+local filename = ...
+local file = io.open(filename, 'r')
+
+local n1, n2 = file:read("n", "n")
+local line = file:read("l")
+local rest = file:read("a")
+local eof = file:read("a")
+io.close(file)
+
+return n1 + n2, line, rest, eof
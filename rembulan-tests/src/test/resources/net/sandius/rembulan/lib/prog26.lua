@@ -0,0 +1,8 @@
+local filename = ...
+
+local result = {}
+for n, line in io.lines(filename, "n", "l") do
+  result[#result + 1] = n .. ":" .. tostring(line)
+end
+
+return table.concat(result, ",")
@@ -0,0 +1,12 @@
+local filename = ...
+
+local input = io.input(filename)
+local count = 0
+for line in io.lines() do
+  count = count + #line
+end
+local inputState = io.type(input)
+
+local ok = pcall(io.lines, filename .. ".missing")
+
+return count, inputState, ok
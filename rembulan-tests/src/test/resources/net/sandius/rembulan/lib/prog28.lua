@@ -0,0 +1,26 @@
+local filename = ...
+
+local function size()
+  local f = io.open(filename, 'r')
+  local n = f:seek("end")
+  f:close()
+  return n
+end
+
+local file = io.open(filename, 'w')
+
+file:setvbuf("full", 1024)
+file:write("a", "b", "\n")
+local fullSize = size()
+
+file:setvbuf("line")
+file:write("c\n", "d")
+local lineSize = size()
+
+file:setvbuf("no")
+file:write("e")
+local noSize = size()
+
+file:close()
+
+return fullSize, lineSize, noSize, size()
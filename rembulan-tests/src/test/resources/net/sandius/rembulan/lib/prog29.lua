@@ -0,0 +1,6 @@
+local file = io.open(..., 'w')
+
+file:write("hello", "\n")
+
+-- not closed: keep the handle alive
+return file
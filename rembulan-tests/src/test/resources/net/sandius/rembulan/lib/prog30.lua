@@ -0,0 +1,8 @@
+local file = io.open(..., 'w')
+
+local ok, msg = file:setvbuf("full", 2^31)
+local okSmall = file:setvbuf("full", 1024)
+
+file:close()
+
+return ok, msg, okSmall
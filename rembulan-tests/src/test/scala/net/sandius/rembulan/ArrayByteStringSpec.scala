@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan
+
+import java.lang.ref.WeakReference
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class ArrayByteStringSpec extends FunSpec with MustMatchers {
+
+  private def awaitCollected(ref: WeakReference[_]): Unit = {
+    var i = 0
+    while (ref.get() != null && i < 200) {
+      System.gc()
+      Thread.sleep(10)
+      i += 1
+    }
+  }
+
+  // returns the substring [start, end) of a string of length n, and a weak reference to its array
+  private def substringOf(n: Int, start: Int, end: Int): (ByteString, WeakReference[Array[Byte]]) = {
+    val bytes = Array.tabulate[Byte](n)(i => (i % 127).toByte)
+    val sub = new ArrayByteString(bytes).substring(start, end)
+    (sub, new WeakReference(bytes))
+  }
+
+  describe ("a substring of an array byte string") {
+
+    it ("has the contents of the corresponding region") {
+      val s = new ArrayByteString("hello world".getBytes("ISO-8859-1"))
+      s.substring(6, 11) mustBe ByteString.of("world")
+      s.substring(0, 11) must be theSameInstanceAs s
+      s.substring(3, 3) mustBe ByteString.empty()
+      s.substring(2, 10).substring(1, 7) mustBe ByteString.of("lo wor")
+      s.substring(10, 11) mustBe ByteString.of("d")
+    }
+
+    it ("shares the array when it is not much smaller than the string") {
+      val (sub, ref) = substringOf(1 << 20, 1000, (1 << 19) + 1000)
+      System.gc()
+      ref.get() must not be null
+      sub.length mustBe (1 << 19)
+      sub.byteAt(0) mustBe (1000 % 127).toByte
+    }
+
+    it ("does not keep a much larger array alive") {
+      val (sub, ref) = substringOf(1 << 20, 1000, 1010)
+      awaitCollected(ref)
+      ref.get() mustBe null
+      sub.length mustBe 10
+      sub.getBytes mustBe Array.tabulate[Byte](10)(i => ((1000 + i) % 127).toByte)
+    }
+
+  }
+
+}
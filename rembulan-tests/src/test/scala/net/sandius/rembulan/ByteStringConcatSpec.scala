@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class ByteStringConcatSpec extends FunSpec with MustMatchers {
+
+  private def piece(i: Int, size: Int): ByteString = {
+    ByteString.fromRaw(("" + (i % 10)) * size)
+  }
+
+  private def expected(n: Int, size: Int, prepend: Boolean = false): String = {
+    val pieces = (0 until n) map { i => ("" + (i % 10)) * size }
+    (if (prepend) pieces.reverse else pieces).mkString
+  }
+
+  describe ("concat") {
+
+    for (size <- Seq(1, 7, 100, 1000)) {
+
+      it ("is equal to the flat string when appending pieces of size " + size) {
+        val n = 2000
+        var s = ByteString.empty()
+        for (i <- 0 until n) {
+          s = s.concat(piece(i, size))
+        }
+
+        val flat = ByteString.fromRaw(expected(n, size))
+        s.length() mustBe flat.length()
+        s mustEqual flat
+        flat mustEqual s
+        s.hashCode() mustBe flat.hashCode()
+        s.compareTo(flat) mustBe 0
+        s.toRawString() mustEqual flat.toRawString()
+      }
+
+      it ("is equal to the flat string when prepending pieces of size " + size) {
+        val n = 2000
+        var s = ByteString.empty()
+        for (i <- 0 until n) {
+          s = piece(i, size).concat(s)
+        }
+
+        s mustEqual ByteString.fromRaw(expected(n, size, prepend = true))
+      }
+
+    }
+
+    it ("gives access to individual bytes and substrings") {
+      val n = 500
+      var s = ByteString.empty()
+      for (i <- 0 until n) {
+        s = s.concat(piece(i, 3))
+      }
+      val raw = expected(n, 3)
+
+      s.byteAt(0) mustBe raw.charAt(0).toByte
+      s.byteAt(raw.length - 1) mustBe raw.charAt(raw.length - 1).toByte
+      s.substring(100, 400).toRawString() mustEqual raw.substring(100, 400)
+      s.startsWith('0'.toByte) mustBe true
+    }
+
+    it ("preserves the contents of both operands when concatenating ropes") {
+      var a = ByteString.empty()
+      var b = ByteString.empty()
+      for (i <- 0 until 300) {
+        a = a.concat(piece(i, 5))
+        b = piece(i, 5).concat(b)
+      }
+
+      val ab = a.concat(b)
+      ab.toRawString() mustEqual (expected(300, 5) + expected(300, 5, prepend = true))
+      a.toRawString() mustEqual expected(300, 5)
+    }
+
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan
+
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class ByteStringViewSpec extends FunSpec with MustMatchers {
+
+  private def view(s: String): ByteString = {
+    val bytes = ("xx" + s + "yy").getBytes("ISO-8859-1")
+    val buf = ByteBuffer.wrap(bytes)
+    buf.position(2)
+    buf.limit(bytes.length - 2)
+    ByteString.viewOf(buf)
+  }
+
+  describe ("a byte string view of a buffer") {
+
+    it ("contains the remaining bytes of the buffer") {
+      val s = view("helloÿ")
+      s.length() mustBe 6
+      s.byteAt(0) mustBe 'h'.toByte
+      s.byteAt(5) mustBe 0xff.toByte
+      s.getBytes().toSeq mustEqual "helloÿ".getBytes("ISO-8859-1").toSeq
+      s.toRawString() mustEqual "helloÿ"
+      s.startsWith('h'.toByte) mustBe true
+      intercept[IndexOutOfBoundsException] {
+        s.byteAt(6)
+      }
+    }
+
+    it ("is equal to other byte strings with the same contents") {
+      val s = view("hello world")
+      val t = ByteString.fromRaw("hello world")
+      s mustEqual t
+      t mustEqual s
+      s mustEqual view("hello world")
+      s.hashCode() mustBe t.hashCode()
+      s.compareTo(t) mustBe 0
+      s must not equal view("hello worle")
+    }
+
+    it ("shares the buffer with its substrings") {
+      val s = view("0123456789")
+      val sub = s.substring(2, 7)
+      sub mustEqual ByteString.fromRaw("23456")
+      sub.substring(1, 3) mustEqual ByteString.fromRaw("34")
+      sub.substring(2, 2) mustBe theSameInstanceAs (ByteString.empty())
+      s.substring(0, 10) mustBe theSameInstanceAs (s)
+    }
+
+    it ("can be written to streams and buffers") {
+      val raw = "abcdefghij" * 2000
+      val s = view(raw)
+
+      val out = new ByteArrayOutputStream()
+      s.writeTo(out)
+      new String(out.toByteArray, "ISO-8859-1") mustEqual raw
+
+      val buf = ByteBuffer.allocate(raw.length + 1)
+      s.putTo(buf)
+      buf.position() mustBe raw.length
+
+      s.concat(ByteString.fromRaw("!")).toRawString() mustEqual (raw + "!")
+    }
+
+    it ("is empty for an empty buffer") {
+      ByteString.viewOf(ByteBuffer.allocate(0)) mustBe theSameInstanceAs (ByteString.empty())
+    }
+
+    it ("can be detached from the buffer") {
+      val bytes = "hello".getBytes("ISO-8859-1")
+      val s = ByteString.viewOf(ByteBuffer.wrap(bytes))
+      val d = s.detached()
+      bytes(0) = 'j'.toByte
+      s mustEqual ByteString.fromRaw("jello")
+      d mustEqual ByteString.fromRaw("hello")
+      d.detached() mustBe theSameInstanceAs (d)
+    }
+
+    it ("is detached when used as a table key") {
+      val bytes = "hello".getBytes("ISO-8859-1")
+      val s = ByteString.viewOf(ByteBuffer.wrap(bytes))
+      val t = new net.sandius.rembulan.impl.DefaultTable()
+      t.rawset(s, "world")
+      bytes(0) = 'j'.toByte
+      t.rawget(ByteString.fromRaw("hello")) mustEqual ByteString.of("world")
+      t.rawget(ByteString.fromRaw("jello")) mustBe null
+      t.initialKey() mustBe an [ArrayByteString]
+    }
+
+  }
+
+  describe ("a read-only buffer of a byte string") {
+
+    def contents(buf: ByteBuffer): String = {
+      val bytes = new Array[Byte](buf.remaining())
+      buf.duplicate().get(bytes)
+      new String(bytes, "ISO-8859-1")
+    }
+
+    it ("contains the bytes of the string") {
+      val strings = Seq(
+        ByteString.fromRaw("xhello worldx").substring(1, 12),
+        ByteString.of("hello world"),
+        view("hello world"),
+        ByteString.fromRaw("hello ").concat(ByteString.fromRaw("world")))
+
+      for (s <- strings) {
+        val buf = s.asReadOnlyByteBuffer()
+        buf.isReadOnly mustBe true
+        buf.position() mustBe 0
+        contents(buf) mustEqual "hello world"
+        intercept[java.nio.ReadOnlyBufferException] {
+          buf.put(0, 'x'.toByte)
+        }
+      }
+    }
+
+  }
+
+}
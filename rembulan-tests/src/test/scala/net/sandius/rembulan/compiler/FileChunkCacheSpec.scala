@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler
+
+import java.nio.file.attribute.FileTime
+import java.nio.file.{Files, Path}
+import java.util.Collections
+
+import net.sandius.rembulan.util.ByteVector
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+@RunWith(classOf[JUnitRunner])
+class FileChunkCacheSpec extends FunSpec with MustMatchers {
+
+  private def withDirectory[A](body: Path => A): A = {
+    val dir = Files.createTempDirectory("rembulan-chunk-cache")
+    try {
+      body(dir)
+    }
+    finally {
+      for (p <- Files.list(dir).iterator().asScala) {
+        Files.deleteIfExists(p)
+      }
+      Files.deleteIfExists(dir)
+    }
+  }
+
+  private def module(name: String, size: Int): CompiledModule = {
+    val bytes = Array.tabulate[Byte](size)(i => (i % 127).toByte)
+    new CompiledModule(Collections.singletonMap(name, ByteVector.wrap(bytes)), name)
+  }
+
+  private def files(dir: Path): Set[String] = {
+    Files.list(dir).iterator().asScala.map(_.getFileName.toString).toSet
+  }
+
+  describe ("a file chunk cache") {
+
+    it ("returns the stored module") {
+      withDirectory { dir =>
+        val cache = FileChunkCache.of(dir, 1 << 20)
+        cache.put("ab12", module("a", 100))
+
+        val m = cache.get("ab12")
+        m must not be null
+        m.mainClassName() mustBe "a"
+        m.classMap().get("a").size() mustBe 100
+        cache.hitCount() mustBe 1
+        cache.missCount() mustBe 0
+      }
+    }
+
+    it ("writes entries atomically, leaving no temporary files behind") {
+      withDirectory { dir =>
+        val cache = FileChunkCache.of(dir, 1 << 20)
+        cache.put("ab12", module("a", 100))
+        cache.put("ab12", module("b", 200))
+
+        files(dir) mustBe Set("ab12.chunk")
+        val m = cache.get("ab12")
+        m.mainClassName() mustBe "b"
+        m.classMap().get("b").size() mustBe 200
+      }
+    }
+
+    it ("treats a corrupted entry as missing and removes it") {
+      withDirectory { dir =>
+        val cache = FileChunkCache.of(dir, 1 << 20)
+        cache.put("ab12", module("a", 100))
+
+        // truncate the entry
+        val path = dir.resolve("ab12.chunk")
+        val bytes = Files.readAllBytes(path)
+        Files.write(path, java.util.Arrays.copyOf(bytes, bytes.length / 2))
+
+        cache.get("ab12") mustBe null
+        cache.missCount() mustBe 1
+        Files.exists(path) mustBe false
+      }
+    }
+
+    it ("treats an entry with trailing bytes as missing") {
+      withDirectory { dir =>
+        val cache = FileChunkCache.of(dir, 1 << 20)
+        cache.put("ab12", module("a", 100))
+
+        val path = dir.resolve("ab12.chunk")
+        Files.write(path, Array[Byte](0), java.nio.file.StandardOpenOption.APPEND)
+
+        cache.get("ab12") mustBe null
+      }
+    }
+
+    it ("evicts the least recently used entries when the maximum size is exceeded") {
+      withDirectory { dir =>
+        val cache = FileChunkCache.of(dir, 2500)
+        cache.put("aa", module("a", 1000))
+        Files.setLastModifiedTime(dir.resolve("aa.chunk"), FileTime.fromMillis(1000000L))
+        cache.put("bb", module("b", 1000))
+        Files.setLastModifiedTime(dir.resolve("bb.chunk"), FileTime.fromMillis(2000000L))
+
+        // a hit makes "aa" the most recently used entry
+        cache.get("aa") must not be null
+
+        cache.put("cc", module("c", 1000))
+
+        files(dir) mustBe Set("aa.chunk", "cc.chunk")
+        cache.get("bb") mustBe null
+      }
+    }
+
+    it ("rejects keys that are not lowercase hexadecimal strings") {
+      withDirectory { dir =>
+        val cache = FileChunkCache.of(dir, 1 << 20)
+        intercept[IllegalArgumentException] {
+          cache.get("../x")
+        }
+      }
+    }
+
+  }
+
+  describe ("the output key of compiler settings") {
+
+    it ("does not depend on the parallel compilation mode") {
+      val settings = CompilerSettings.defaultSettings()
+      settings.withParallelCompilation(true).outputKey() mustBe settings.withParallelCompilation(false).outputKey()
+    }
+
+    it ("depends on every setting that affects the output") {
+      val settings = CompilerSettings.defaultSettings()
+      val variants = Seq(
+        settings.withConstFolding(!settings.constFolding()),
+        settings.withConstCaching(!settings.constCaching()),
+        settings.withByteStrings(!settings.byteStrings()),
+        settings.withNodeSizeLimit(settings.nodeSizeLimit() + 1),
+        settings.withCPUAccountingMode(
+          if (settings.cpuAccountingMode() == CompilerSettings.CPUAccountingMode.NO_CPU_ACCOUNTING)
+            CompilerSettings.CPUAccountingMode.IN_EVERY_BASIC_BLOCK
+          else CompilerSettings.CPUAccountingMode.NO_CPU_ACCOUNTING))
+
+      for (v <- variants) {
+        v.outputKey() must not be settings.outputKey()
+      }
+    }
+
+  }
+
+  describe ("the compiler fingerprint") {
+
+    it ("is derived from the compiler class files") {
+      CompilerFingerprint.value() must not startWith "codegen-"
+    }
+
+  }
+
+}
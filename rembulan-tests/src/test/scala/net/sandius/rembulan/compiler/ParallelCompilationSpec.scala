@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+@RunWith(classOf[JUnitRunner])
+class ParallelCompilationSpec extends FunSpec with MustMatchers {
+
+  // a chunk with many (nested) functions, so that there is something to parallelise
+  private val program: String = {
+    val fns = for (i <- 1 to 24) yield {
+      s"""local function f$i(n, ...)
+         |  local acc = $i
+         |  local function inner(x)
+         |    if x % 2 == 0 then return x // 2 else return x * 3 + 1 end
+         |  end
+         |  for k = 1, n do
+         |    acc = acc + inner(k) * ${i}.5
+         |  end
+         |  local t = {...}
+         |  return function(y) return acc + #t + y end
+         |end
+         |results[$i] = f$i($i, "a", "b")($i)
+         |""".stripMargin
+    }
+    "local results = {}\n" + fns.mkString + "return results\n"
+  }
+
+  private def compile(parallel: Boolean): CompiledModule = {
+    val settings = CompilerSettings.defaultSettings().withParallelCompilation(parallel)
+    new LuaCompiler(settings).compile(program, "parallel.lua", "parallel_spec")
+  }
+
+  describe ("parallel compilation") {
+
+    it ("is enabled by the settings") {
+      CompilerSettings.defaultSettings().withParallelCompilation(true).parallelCompilation() mustBe true
+      CompilerSettings.defaultSettings().parallelCompilation() mustBe false
+    }
+
+    it ("produces the same classes as sequential compilation") {
+      val sequential = compile(false)
+
+      sequential.classMap.size must be > 48
+
+      for (run <- 1 to 5) {
+        val parallel = compile(true)
+
+        parallel.mainClassName mustBe sequential.mainClassName
+        parallel.classMap.keySet.asScala mustBe sequential.classMap.keySet.asScala
+
+        for ((name, bytes) <- sequential.classMap.asScala) {
+          withClue ("class " + name + " in run " + run + ": ") {
+            parallel.classMap.get(name) mustBe bytes
+          }
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.compiler
+
+import net.sandius.rembulan.Variable
+import net.sandius.rembulan.exec.{CallPausedException, Continuation, DirectCallExecutor}
+import net.sandius.rembulan.impl.{DefaultTable, StateContexts}
+import org.junit.runner.RunWith
+import org.objectweb.asm.tree.{ClassNode, MethodNode}
+import org.objectweb.asm.{ClassReader, Type}
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+@RunWith(classOf[JUnitRunner])
+class UnboxedRegistersSpec extends FunSpec with MustMatchers {
+
+  // the register types of the run method of the main function of program
+  private def registerTypes(program: String): Seq[Type] = {
+    val chunk = new LuaCompiler().compile(program, "test", "unboxed_registers_spec")
+    val cn = new ClassNode()
+    new ClassReader(chunk.classMap().get(chunk.mainClassName()).copyToNewArray()).accept(cn, 0)
+    val run = cn.methods.asScala.map(_.asInstanceOf[MethodNode]).find(_.name == "run").get
+    // skip the execution context and the resumption point
+    Type.getArgumentTypes(run.desc).toSeq.drop(2)
+  }
+
+  // executes program, pausing it as often as possible so that registers are saved and restored
+  private def execute(program: String): Seq[AnyRef] = {
+    val state = StateContexts.newDefaultInstance()
+    val fn = CompilerChunkLoader.of("unboxed_registers_spec").loadTextChunk(
+        new Variable(new DefaultTable()), "test", program)
+    val executor = DirectCallExecutor.newExecutorWithTickLimit(1)
+
+    var result: Array[AnyRef] = null
+    var continuation: Continuation = null
+    try {
+      result = executor.call(state, fn)
+    }
+    catch {
+      case ex: CallPausedException => continuation = ex.getContinuation
+    }
+    while (result == null) {
+      try {
+        result = executor.resume(continuation)
+      }
+      catch {
+        case ex: CallPausedException => continuation = ex.getContinuation
+      }
+    }
+    result.toSeq
+  }
+
+  describe ("the run method") {
+
+    val Obj = Type.getType(classOf[Object])
+
+    it ("passes integer registers unboxed") {
+      val program = "local n = 0; for i = 1, 10 do n = n + i end; return n"
+      registerTypes(program) must contain only (Type.LONG_TYPE)
+      execute(program) mustEqual Seq(55L)
+    }
+
+    it ("passes float registers unboxed") {
+      val program = "local x = 0.5; for i = 1, 3 do x = x * 2.0 end; return x"
+      registerTypes(program) must (contain (Type.DOUBLE_TYPE) and not contain (Obj))
+      execute(program) mustEqual Seq(4.0)
+    }
+
+    it ("passes registers boxed when their type changes between loop iterations") {
+      // x is an integer in odd iterations and a float in even ones
+      val program =
+        """local x = 1
+          |for i = 1, 4 do
+          |  if i % 2 == 0 then x = x + 0.5 else x = x + 1 end
+          |end
+          |return x
+          |""".stripMargin
+      registerTypes(program) must contain (Obj)
+      execute(program) mustEqual Seq(4.0)
+    }
+
+    it ("passes registers boxed when they hold values of different kinds") {
+      val program =
+        """local x, s = 0, ""
+          |for i = 1, 3 do
+          |  if i == 2 then x = "a" .. i else x = i * 2 end
+          |  s = s .. x
+          |end
+          |return s, x
+          |""".stripMargin
+      execute(program) mustEqual Seq("2a26", 6L)
+    }
+
+  }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.exec
+
+import java.util.concurrent.{CancellationException, ExecutionException, TimeUnit}
+
+import net.sandius.rembulan.compiler.CompilerChunkLoader
+import net.sandius.rembulan.impl.StateContexts
+import net.sandius.rembulan.runtime.{AbstractFunction0, AbstractFunction1, AsyncTask, ExecutionContext, LuaFunction, UnresolvedControlThrowable}
+import net.sandius.rembulan.{LuaRuntimeException, Variable}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class PooledCallExecutorSpec extends FunSpec with MustMatchers {
+
+  private val loader = CompilerChunkLoader.of("pooled_")
+
+  private def chunk(program: String): LuaFunction = {
+    loader.loadTextChunk(new Variable(null), "test", program)
+  }
+
+  // sleeps on a thread of its own, then returns its argument
+  private object Sleep extends AbstractFunction1 {
+
+    override def invoke(context: ExecutionContext, arg: AnyRef): Unit = {
+      try {
+        context.resumeAfter(new AsyncTask {
+          override def execute(callback: AsyncTask.ContinueCallback): Unit = {
+            new Thread(new Runnable {
+              override def run(): Unit = {
+                Thread.sleep(10)
+                callback.finished()
+              }
+            }).start()
+          }
+        })
+      }
+      catch {
+        case ct: UnresolvedControlThrowable => throw ct.resolve(this, arg)
+      }
+    }
+
+    override def resume(context: ExecutionContext, suspendedState: AnyRef): Unit = {
+      context.getReturnBuffer.setTo(suspendedState)
+    }
+
+  }
+
+  // waits for a task that never finishes
+  private object Never extends AbstractFunction0 {
+
+    override def invoke(context: ExecutionContext): Unit = {
+      try {
+        context.resumeAfter(new AsyncTask {
+          override def execute(callback: AsyncTask.ContinueCallback): Unit = {
+            // never calls callback.finished()
+          }
+        })
+      }
+      catch {
+        case ct: UnresolvedControlThrowable => throw ct.resolve(this, null)
+      }
+    }
+
+    override def resume(context: ExecutionContext, suspendedState: AnyRef): Unit = {
+      context.getReturnBuffer.setTo()
+    }
+
+  }
+
+  private def withExecutor[A](parallelism: Int, ticksPerSlice: Long)(body: PooledCallExecutor => A): A = {
+    val executor = PooledCallExecutor.newExecutor(parallelism, ticksPerSlice)
+    try {
+      body(executor)
+    }
+    finally {
+      executor.shutdown()
+      executor.awaitTermination(10, TimeUnit.SECONDS) mustBe true
+    }
+  }
+
+  describe ("a pooled call executor") {
+
+    it ("returns the results of the calls") {
+      withExecutor(2, 1000) { executor =>
+        val fn = chunk("local a, b = ...; return a + b, a .. b")
+        val futures = for (i <- 1 to 100) yield executor.submit(StateContexts.newDefaultInstance(), fn, Long.box(i), Long.box(1))
+        for ((f, i) <- futures.zipWithIndex) {
+          f.get(10, TimeUnit.SECONDS).toSeq mustBe Seq(i + 2L, (i + 1) + "1")
+        }
+      }
+    }
+
+    it ("executes long calls in multiple slices") {
+      withExecutor(1, 100) { executor =>
+        val f = executor.submit(StateContexts.newDefaultInstance(), chunk("local n = 0; for i = 1, 10000 do n = n + i end; return n"))
+        f.get(10, TimeUnit.SECONDS).toSeq mustBe Seq(50005000L)
+        f.ticks() must be > 0L
+        f.slices() must be > 1
+        executor.statistics().totalSlices() mustBe f.slices()
+      }
+    }
+
+    it ("runs a short call submitted after a non-terminating call") {
+      withExecutor(1, 100) { executor =>
+        val loop = executor.submit(StateContexts.newDefaultInstance(), chunk("while true do end"))
+        val short = executor.submit(StateContexts.newDefaultInstance(), chunk("return 42"))
+        short.get(10, TimeUnit.SECONDS).toSeq mustBe Seq(42L)
+        loop.isDone mustBe false
+
+        loop.cancel(true) mustBe true
+        loop.isCancelled mustBe true
+        intercept[CancellationException] {
+          loop.get()
+        }
+      }
+    }
+
+    it ("resumes calls once their asynchronous tasks have finished") {
+      withExecutor(2, 1000) { executor =>
+        val fn = chunk("local sleep, x = ...; return sleep(x) + sleep(x)")
+        val futures = for (i <- 1 to 20) yield executor.submit(StateContexts.newDefaultInstance(), fn, Sleep, Long.box(i))
+        for ((f, i) <- futures.zipWithIndex) {
+          f.get(10, TimeUnit.SECONDS).toSeq mustBe Seq(2L * (i + 1))
+        }
+      }
+    }
+
+    it ("drops a cancelled call waiting for an asynchronous task that never finishes") {
+      val executor = PooledCallExecutor.newExecutor(1, 1000)
+      val f = executor.submit(StateContexts.newDefaultInstance(), Never)
+
+      // wait for the call to reach the task
+      var i = 0
+      while (executor.statistics().totalSlices() == 0 && i < 1000) {
+        Thread.sleep(10)
+        i += 1
+      }
+      executor.statistics().totalSlices() mustBe 1
+      f.isDone mustBe false
+
+      f.cancel(false) mustBe true
+      executor.statistics().liveCalls() mustBe 0
+      executor.statistics().cancelledCalls() mustBe 1
+
+      executor.shutdown()
+      executor.awaitTermination(10, TimeUnit.SECONDS) mustBe true
+      intercept[CancellationException] {
+        f.get()
+      }
+    }
+
+    it ("reports errors in an ExecutionException") {
+      withExecutor(1, 1000) { executor =>
+        val f = executor.submit(StateContexts.newDefaultInstance(), chunk("local t = ...; return t.x"), null)
+        val ex = intercept[ExecutionException] {
+          f.get(10, TimeUnit.SECONDS)
+        }
+        ex.getCause mustBe a [LuaRuntimeException]
+        ex.getCause.getMessage must include ("attempt to index a nil value")
+      }
+    }
+
+    it ("reports a stack overflow in an ExecutionException and keeps running") {
+      val executor = PooledCallExecutor.newExecutor(1, 100000)
+      val overflow = executor.submit(StateContexts.newDefaultInstance(),
+          chunk("local function f(n) return 1 + f(n + 1) end return f(0)"))
+      val ex = intercept[ExecutionException] {
+        overflow.get(10, TimeUnit.SECONDS)
+      }
+      ex.getCause mustBe a [StackOverflowError]
+
+      val next = executor.submit(StateContexts.newDefaultInstance(), chunk("return 1"))
+      next.get(10, TimeUnit.SECONDS).toSeq mustBe Seq(1L)
+
+      executor.shutdown()
+      executor.awaitTermination(10, TimeUnit.SECONDS) mustBe true
+      executor.statistics().liveCalls() mustBe 0
+      executor.statistics().failedCalls() mustBe 1
+      executor.statistics().returnedCalls() mustBe 1
+    }
+
+    it ("keeps statistics of the calls") {
+      withExecutor(2, 1000) { executor =>
+        val ok = chunk("return 1")
+        val bad = chunk("local t = ...; return t.x")
+        val futures = (for (i <- 1 to 10) yield executor.submit(StateContexts.newDefaultInstance(), ok)) ++
+            (for (i <- 1 to 5) yield executor.submit(StateContexts.newDefaultInstance(), bad))
+        for (f <- futures) {
+          try f.get(10, TimeUnit.SECONDS) catch { case _: ExecutionException => }
+        }
+
+        // the counters are updated just after the future is completed
+        executor.shutdown()
+        executor.awaitTermination(10, TimeUnit.SECONDS) mustBe true
+
+        val stats = executor.statistics()
+        stats.submittedCalls() mustBe 15
+        stats.returnedCalls() mustBe 10
+        stats.failedCalls() mustBe 5
+        stats.cancelledCalls() mustBe 0
+        stats.liveCalls() mustBe 0
+        stats.queueDepth() mustBe 0
+        stats.callLatency().count() mustBe 15
+        stats.sliceLatency().count() mustBe stats.totalSlices()
+      }
+    }
+
+    it ("rejects calls after it has been shut down") {
+      val executor = PooledCallExecutor.newExecutor(1, 1000)
+      executor.shutdown()
+      executor.isShutdown mustBe true
+      intercept[java.util.concurrent.RejectedExecutionException] {
+        executor.submit(StateContexts.newDefaultInstance(), chunk("return"))
+      }
+      executor.awaitTermination(10, TimeUnit.SECONDS) mustBe true
+      executor.isTerminated mustBe true
+    }
+
+  }
+
+}
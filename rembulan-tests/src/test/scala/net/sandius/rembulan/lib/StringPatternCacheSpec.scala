@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.lib
+
+import net.sandius.rembulan.ByteString
+import net.sandius.rembulan.exec.DirectCallExecutor
+import net.sandius.rembulan.impl.StateContexts
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class StringPatternCacheSpec extends FunSpec with MustMatchers {
+
+  describe ("constructor") {
+
+    it ("throws an IllegalArgumentException when instantiated with a negative capacity") {
+      intercept[IllegalArgumentException] {
+        StringPatternCache.of(-1)
+      }
+    }
+
+  }
+
+  describe ("get") {
+
+    it ("returns the same pattern for the same pattern bytes") {
+      val cache = StringPatternCache.of(4)
+      val p1 = cache.get(ByteString.of("%d+"))
+      val p2 = cache.get(ByteString.of("%d+"))
+      p1 must be theSameInstanceAs p2
+      cache.missCount() mustBe 1
+      cache.hitCount() mustBe 1
+    }
+
+    it ("distinguishes patterns that ignore the leading caret") {
+      val cache = StringPatternCache.of(4)
+      val p1 = cache.get(ByteString.of("^a"), false)
+      val p2 = cache.get(ByteString.of("^a"), true)
+      p1 must not be theSameInstanceAs (p2)
+      cache.size() mustBe 2
+    }
+
+    it ("evicts the least recently used pattern") {
+      val cache = StringPatternCache.of(2)
+      val a = cache.get(ByteString.of("a"))
+      cache.get(ByteString.of("b"))
+      cache.get(ByteString.of("a"))
+      cache.get(ByteString.of("c"))
+      cache.size() mustBe 2
+      cache.get(ByteString.of("a")) must be theSameInstanceAs a
+      cache.missCount() mustBe 3
+      cache.hitCount() mustBe 2
+    }
+
+    it ("does not retain patterns when the capacity is zero") {
+      val cache = StringPatternCache.of(0)
+      cache.get(ByteString.of("a"))
+      cache.get(ByteString.of("a"))
+      cache.size() mustBe 0
+      cache.missCount() mustBe 2
+    }
+
+    it ("does not cache invalid patterns") {
+      val cache = StringPatternCache.of(4)
+      intercept[IllegalArgumentException] {
+        cache.get(ByteString.of("%"))
+      }
+      cache.size() mustBe 0
+    }
+
+    it ("is not affected by changes to the contents of a buffer-backed pattern") {
+      val cache = StringPatternCache.of(4)
+      val bytes = "%d+".getBytes("ISO-8859-1")
+      val p = cache.get(ByteString.viewOf(java.nio.ByteBuffer.wrap(bytes)))
+      bytes(1) = 'a'.toByte
+      cache.get(ByteString.of("%d+")) must be theSameInstanceAs p
+      cache.hitCount() mustBe 1
+    }
+
+  }
+
+  describe ("the string library") {
+
+    def findIn(cache: StringPatternCache): (AnyRef, () => Unit) = {
+      val state = StateContexts.newDefaultInstance()
+      val env = state.newTable()
+      StringLib.installInto(state, env, cache)
+      val find = env.rawget("string").asInstanceOf[net.sandius.rembulan.Table].rawget("find")
+      val executor = DirectCallExecutor.newExecutor()
+      (find, () => executor.call(state, find, "abc", "b+c"))
+    }
+
+    it ("gets a pattern cache of its own by default") {
+      val (find1, call1) = findIn(null)
+      val (find2, _) = findIn(null)
+      find1 must not be theSameInstanceAs (find2)
+      find1 must not be theSameInstanceAs (StringLib.find())
+
+      val shared = StringPatternCache.shared()
+      val hits = shared.hitCount()
+      val misses = shared.missCount()
+      call1()
+      call1()
+      shared.hitCount() mustBe hits
+      shared.missCount() mustBe misses
+    }
+
+    it ("uses the pattern cache it has been given") {
+      val cache = StringPatternCache.of(4)
+      val (_, call) = findIn(cache)
+      call()
+      call()
+      cache.missCount() mustBe 1
+      cache.hitCount() mustBe 1
+    }
+
+    it ("shares the static functions when given the shared cache") {
+      val (find, _) = findIn(StringPatternCache.shared())
+      find must be theSameInstanceAs (StringLib.find())
+    }
+
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.load
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{CountDownLatch, Executors, TimeUnit}
+
+import net.sandius.rembulan.Variable
+import net.sandius.rembulan.compiler.{CompilerChunkLoader, LuaCompiler}
+import net.sandius.rembulan.exec.DirectCallExecutor
+import net.sandius.rembulan.impl.{DefaultTable, StateContexts}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+@RunWith(classOf[JUnitRunner])
+class ChunkClassLoaderSpec extends FunSpec with MustMatchers {
+
+  private val chunk: CompiledChunk = {
+    val program = (1 to 32).map(i => "local function f" + i + "() return " + i + " end").mkString("\n")
+    new LuaCompiler().compile(program, "test", "chunkclassloader_spec")
+  }
+
+  describe ("isInstalled") {
+
+    it ("is true for the classes of an installed chunk") {
+      val loader = new ChunkClassLoader()
+      loader.install(chunk)
+      for (name <- chunk.classMap().keySet().asScala) {
+        loader.isInstalled(name) mustBe true
+      }
+    }
+
+    it ("remains true while the installed classes are being loaded concurrently") {
+      val names = chunk.classMap().keySet().asScala.toIndexedSeq
+      val pool = Executors.newFixedThreadPool(4)
+      val misses = new AtomicInteger()
+
+      try {
+        for (round <- 1 to 200) {
+          val loader = new ChunkClassLoader()
+          loader.install(chunk)
+
+          val start = new CountDownLatch(1)
+          val loading = new CountDownLatch(2)
+
+          // two threads load the classes while two threads query them
+          for (t <- 0 until 2) {
+            pool.execute(new Runnable {
+              override def run(): Unit = {
+                start.await()
+                for (i <- names.indices if i % 2 == t) {
+                  loader.loadClass(names(i))
+                }
+                loading.countDown()
+              }
+            })
+          }
+          for (t <- 0 until 2) {
+            pool.execute(new Runnable {
+              override def run(): Unit = {
+                start.await()
+                while (loading.getCount > 0) {
+                  for (name <- names if !loader.isInstalled(name)) {
+                    misses.incrementAndGet()
+                  }
+                }
+              }
+            })
+          }
+
+          start.countDown()
+          loading.await(10, TimeUnit.SECONDS) mustBe true
+          loader.loadedClassCount() mustBe names.size
+        }
+      }
+      finally {
+        pool.shutdown()
+        pool.awaitTermination(10, TimeUnit.SECONDS)
+      }
+
+      misses.get() mustBe 0
+    }
+
+  }
+
+  describe ("the live counts") {
+
+    def gcUntil(cond: => Boolean): Unit = {
+      var i = 0
+      while (!cond && i < 200) {
+        System.gc()
+        Thread.sleep(10)
+        i += 1
+      }
+    }
+
+    it ("drop once chunks loaded in isolation are unreachable") {
+      val n = 2000
+
+      gcUntil(false)
+      val loaders = ChunkClassLoader.liveLoaderCount()
+      val classes = ChunkClassLoader.liveClassCount()
+
+      var chunkLoader = CompilerChunkLoader.isolated(getClass.getClassLoader, new LuaCompiler(), "isolation_spec")
+      var fns = for (i <- 0 until n) yield {
+        chunkLoader.loadTextChunk(new Variable(new DefaultTable()), "chunk" + i, "return " + i)
+      }
+
+      // every chunk has been defined by a class loader of its own
+      fns.map(_.getClass.getClassLoader).distinct.size mustBe n
+      val executor = DirectCallExecutor.newExecutor()
+      val state = StateContexts.newDefaultInstance()
+      for (i <- Seq(0, 1, n - 1)) {
+        executor.call(state, fns(i)).toSeq mustEqual Seq(i.toLong)
+      }
+      ChunkClassLoader.liveLoaderCount() must be >= n
+      ChunkClassLoader.liveClassCount() must be >= n.toLong
+
+      fns = null
+      chunkLoader = null
+      gcUntil(ChunkClassLoader.liveLoaderCount() <= loaders)
+
+      ChunkClassLoader.liveLoaderCount() must be <= loaders
+      ChunkClassLoader.liveClassCount() must be <= classes
+    }
+
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+import net.sandius.rembulan.compiler.CompilerChunkLoader
+import net.sandius.rembulan.env.RuntimeEnvironments
+import net.sandius.rembulan.exec.DirectCallExecutor
+import net.sandius.rembulan.impl.{NonsuspendableFunctionException, SchedulingContexts, StateContexts}
+import net.sandius.rembulan.lib.StandardLibrary
+import net.sandius.rembulan.Variable
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+import scala.collection.JavaConverters._
+
+@RunWith(classOf[JUnitRunner])
+class CoroutineThreadSpec extends FunSpec with MustMatchers {
+
+  // records the threads it is called from
+  private class Record extends AbstractFunction0 {
+    val threads = new CopyOnWriteArrayList[Thread]()
+    override def invoke(context: ExecutionContext): Unit = {
+      threads.add(Thread.currentThread())
+      context.getReturnBuffer.setTo()
+    }
+    override def resume(context: ExecutionContext, suspendedState: AnyRef): Unit = {
+      throw new NonsuspendableFunctionException(classOf[Record])
+    }
+  }
+
+  private def run(program: String, args: AnyRef*): Array[AnyRef] = {
+    val state = StateContexts.newDefaultInstance()
+    val env = StandardLibrary.in(RuntimeEnvironments.system()).installInto(state)
+    val fn = CompilerChunkLoader.of("CoroutineThreadSpec").loadTextChunk(new Variable(env), "test", program)
+    val executor = DirectCallExecutor.newExecutor(SchedulingContexts.neverPauseFactory(), Coroutine.Mode.THREADED)
+    executor.call(state, fn, args: _*)
+  }
+
+  private def gcWhileAlive(threads: Seq[Thread]): Unit = {
+    var i = 0
+    while (threads.exists(_.isAlive) && i < 200) {
+      System.gc()
+      Thread.sleep(10)
+      i += 1
+    }
+  }
+
+  describe ("a threaded coroutine") {
+
+    it ("terminates its thread once suspended and unreachable") {
+      val record = new Record()
+      run(
+        """local record = ...
+          |for i = 1, 8 do
+          |  local co = coroutine.create(function() record(); coroutine.yield() end)
+          |  assert(coroutine.resume(co))
+          |end
+          |""".stripMargin, record)
+
+      val threads = record.threads.asScala.toList
+      threads.size mustBe 8
+      gcWhileAlive(threads)
+      threads.filter(_.isAlive) mustBe empty
+    }
+
+    it ("keeps its thread while reachable") {
+      val record = new Record()
+      val result = run(
+        """local record = ...
+          |local co = coroutine.create(function(x) record(); return coroutine.yield(x) + 1 end)
+          |assert(coroutine.resume(co, 1))
+          |return co
+          |""".stripMargin, record)
+
+      val co = result(0).asInstanceOf[Coroutine]
+      val threads = record.threads.asScala.toList
+      for (i <- 1 to 5) {
+        System.gc()
+        Thread.sleep(10)
+      }
+      threads.head.isAlive mustBe true
+
+      run("local co = ...; return coroutine.resume(co, 41)", co) mustEqual Array(java.lang.Boolean.TRUE, 42L)
+      co.getStatus mustBe Coroutine.Status.DEAD
+    }
+
+  }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Miroslav Janíček
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sandius.rembulan.runtime
+
+import java.lang.ref.WeakReference
+
+import net.sandius.rembulan.impl.DefaultTable
+import net.sandius.rembulan.{ByteString, Metatables, Table}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FunSpec, MustMatchers}
+
+@RunWith(classOf[JUnitRunner])
+class IndexCacheSpec extends FunSpec with MustMatchers {
+
+  private val k = ByteString.of("x")
+
+  private def gcUntilCleared(ref: WeakReference[_]): Unit = {
+    var i = 0
+    while (ref.get() != null && i < 50) {
+      System.gc()
+      Thread.sleep(10)
+      i += 1
+    }
+  }
+
+  describe ("an index cache") {
+
+    it ("returns the values of the key in the table") {
+      val cache = new IndexCache(k)
+      val t = new DefaultTable()
+      t.rawset(k, ByteString.of("a"))
+      cache.get(t) mustBe ByteString.of("a")
+      t.rawset(k, ByteString.of("b"))
+      cache.get(t) mustBe ByteString.of("b")
+    }
+
+    it ("misses once the key has been removed") {
+      val cache = new IndexCache(k)
+      val t = new DefaultTable()
+      t.rawset(k, ByteString.of("a"))
+      cache.get(t) mustBe ByteString.of("a")
+      t.rawset(k, null)
+      cache.get(t) mustBe (null: AnyRef)
+    }
+
+    it ("returns values inherited through __index tables") {
+      val cache = new IndexCache(k)
+      val cls = new DefaultTable()
+      cls.rawset(k, ByteString.of("inherited"))
+      val mt = new DefaultTable()
+      mt.rawset(Metatables.MT_INDEX, cls)
+
+      val a = new DefaultTable()
+      a.setMetatable(mt)
+      val b = new DefaultTable()
+      b.setMetatable(mt)
+      b.rawset(k, ByteString.of("own"))
+
+      cache.get(a) mustBe ByteString.of("inherited")
+      cache.get(b) mustBe ByteString.of("own")
+      cls.rawset(k, ByteString.of("changed"))
+      cache.get(a) mustBe ByteString.of("changed")
+    }
+
+    it ("sees a key added to an intermediate __index table") {
+      val cache = new IndexCache(k)
+      val base = new DefaultTable()
+      base.rawset(k, ByteString.of("base"))
+      val baseMt = new DefaultTable()
+      baseMt.rawset(Metatables.MT_INDEX, base)
+      val cls = new DefaultTable()
+      cls.setMetatable(baseMt)
+      val mt = new DefaultTable()
+      mt.rawset(Metatables.MT_INDEX, cls)
+
+      val a = new DefaultTable()
+      a.setMetatable(mt)
+      cache.get(a) mustBe ByteString.of("base")
+      cls.rawset(k, ByteString.of("cls"))
+      cache.get(a) mustBe ByteString.of("cls")
+    }
+
+    it ("relies on default tables updating their stamps whenever keys are added") {
+      val t = new DefaultTable()
+      t.supportsEntries() mustBe true
+      for (key <- Seq[AnyRef](k, Long.box(1L), Long.box(2L), Long.box(100L), Double.box(0.5))) {
+        val stamp = t.stamp()
+        t.rawset(key, ByteString.of("a"))
+        t.stamp() must not be stamp
+        val updated = t.stamp()
+        t.rawset(key, ByteString.of("b"))
+        t.stamp() mustBe updated
+      }
+      t.rawset(1L, null)
+      val stamp = t.stamp()
+      t.rawset(1L, ByteString.of("c"))
+      t.stamp() must not be stamp
+    }
+
+    it ("does not cache chains through tables that do not support entries") {
+      // a table that does not update its stamp when keys are added to it
+      class PlainTable extends Table {
+        private val values = new java.util.HashMap[AnyRef, AnyRef]()
+        override def rawget(key: AnyRef): AnyRef = values.get(key)
+        override def rawset(key: AnyRef, value: AnyRef): Unit = {
+          if (value == null) values.remove(key) else values.put(key, value)
+          updateMetamethodCache(key)
+        }
+        override def initialKey(): AnyRef = throw new UnsupportedOperationException()
+        override def successorKeyOf(key: AnyRef): AnyRef = throw new UnsupportedOperationException()
+        override def setMode(weakKeys: Boolean, weakValues: Boolean): Unit = ()
+      }
+
+      val cache = new IndexCache(k)
+      val base = new DefaultTable()
+      base.rawset(k, ByteString.of("base"))
+      val baseMt = new DefaultTable()
+      baseMt.rawset(Metatables.MT_INDEX, base)
+      val cls = new PlainTable()
+      cls.supportsEntries() mustBe false
+      cls.setMetatable(baseMt)
+      val mt = new DefaultTable()
+      mt.rawset(Metatables.MT_INDEX, cls)
+
+      val a = new DefaultTable()
+      a.setMetatable(mt)
+      cache.get(a) mustBe (null: AnyRef)
+      cls.rawset(k, ByteString.of("cls"))
+      cache.get(a) mustBe (null: AnyRef)
+    }
+
+    it ("does not keep the cached table reachable") {
+      val cache = new IndexCache(k)
+      var t: Table = new DefaultTable()
+      t.rawset(k, new Array[Byte](1024))
+      cache.get(t) must not be null
+
+      val ref = new WeakReference(t)
+      t = null
+      gcUntilCleared(ref)
+
+      ref.get() mustBe null
+    }
+
+    it ("does not keep the tables along an __index chain reachable") {
+      val cache = new IndexCache(k)
+      var cls: Table = new DefaultTable()
+      cls.rawset(k, ByteString.of("inherited"))
+      var mt: Table = new DefaultTable()
+      mt.rawset(Metatables.MT_INDEX, cls)
+      var a: Table = new DefaultTable()
+      a.setMetatable(mt)
+      cache.get(a) mustBe ByteString.of("inherited")
+
+      val clsRef = new WeakReference(cls)
+      val mtRef = new WeakReference(mt)
+      cls = null
+      mt = null
+      a = null
+      gcUntilCleared(clsRef)
+      gcUntilCleared(mtRef)
+
+      clsRef.get() mustBe null
+      mtRef.get() mustBe null
+    }
+
+  }
+
+}
@@ -20,10 +20,10 @@ import net.sandius.rembulan.compiler.CompilerSettings.CPUAccountingMode
 import net.sandius.rembulan.compiler.{CompilerChunkLoader, CompilerSettings}
 import net.sandius.rembulan.env.RuntimeEnvironments
 import net.sandius.rembulan.exec._
-import net.sandius.rembulan.impl.StateContexts
+import net.sandius.rembulan.impl.{ReturnBuffers, StateContexts}
 import net.sandius.rembulan.lib._
 import net.sandius.rembulan.load.{ChunkClassLoader, ChunkLoader}
-import net.sandius.rembulan.runtime.RuntimeCallInitialiser
+import net.sandius.rembulan.runtime.{Coroutine, RuntimeCallInitialiser}
 import net.sandius.rembulan.test.FragmentExpectations.Env
 import net.sandius.rembulan.test.Util.{BufferPrinter, Printer}
 import net.sandius.rembulan.{Conversions, StateContext, Table, Variable}
@@ -41,6 +41,8 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
 
   def compilerConfigs: CompilerConfigs = CompilerConfigs.DefaultOnly
 
+  def coroutineMode: Coroutine.Mode = Coroutine.Mode.STACKLESS
+
   protected val Empty = FragmentExpectations.Env.Empty
   protected val Basic = FragmentExpectations.Env.Basic
   protected val Mod = FragmentExpectations.Env.Module
@@ -201,7 +203,7 @@ trait FragmentExecTestSuite extends FunSpec with MustMatchers {
           val callExecutor = DirectCallExecutor.newExecutorWithTickLimit(s)
 
           var resultValues: Array[AnyRef] = null
-          var continuation: Continuation = RuntimeCallInitialiser.forState(state).newCall(func)
+          var continuation: Continuation = RuntimeCallInitialiser.forState(state, ReturnBuffers.defaultFactory(), coroutineMode).newCall(func)
           var error: CallException = null
 
           do {
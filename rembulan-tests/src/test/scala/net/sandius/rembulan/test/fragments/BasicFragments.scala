@@ -95,6 +95,21 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   }
   LocalReassignResolve in EmptyContext succeedsWith ("f1", "f2", "f3")
 
+  val GlobalReadsSeeUpdates = fragment ("GlobalReadsSeeUpdates") {
+    """local function get() return x, t.y end
+      |local r = {}
+      |t = {}
+      |for i = 1, 3 do x = i; t.y = -i; r[#r + 1] = tostring(get()) .. "," .. tostring(select(2, get())) end
+      |x = nil; t.y = nil
+      |local a, b = get()
+      |t = {y = "new"}
+      |setmetatable(_ENV, {__index = function(_, k) return "idx_" .. k end})
+      |local c, d = get()
+      |return r[1], r[2], r[3], a, b, c, d
+    """
+  }
+  GlobalReadsSeeUpdates in BasicContext succeedsWith ("1,-1", "2,-2", "3,-3", null, null, "idx_x", "new")
+
   val JustAdd = fragment ("JustAdd") {
     """return x + 1
     """
@@ -337,6 +352,30 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   }
   NaNForLoop in EmptyContext succeedsWith (0)
 
+  val IntegerForLoopAtIntegerBounds = fragment ("IntegerForLoopAtIntegerBounds") {
+    """local maxint = 9223372036854775807
+      |local minint = -maxint - 1
+      |local a, b, c, d = 0, 0, 0, 0
+      |for i = maxint - 1, maxint do a = a + 1 end
+      |for i = minint + 1, minint, -1 do b = b + 1 end
+      |for i = maxint, 0, minint do c = c + 1 end
+      |for i = maxint - 4, 1e100, 2 do d = i end
+      |return a, b, c, d
+    """
+  }
+  IntegerForLoopAtIntegerBounds in EmptyContext succeedsWith (2, 2, 1, 9223372036854775807L)
+
+  val ForLoopWithUnknownTypes = fragment ("ForLoopWithUnknownTypes") {
+    """local function sum(a, b, s)
+      |  local n = 0
+      |  for i = a, b, s do n = n + i end
+      |  return n
+      |end
+      |return sum(1, 10, 3), sum(10, 1.5, -3), sum(0.5, 2, 0.5), sum(1, 3.9, 1)
+    """
+  }
+  ForLoopWithUnknownTypes in EmptyContext succeedsWith (22, 21, 5.0, 6)
+
   val ZeroStepForLoop = fragment ("ZeroStepForLoop") {
     """for i = 1, 10, 0 do assert(false) end
     """
@@ -550,6 +589,32 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   }
   SeqTableLengthMultiAssign in EmptyContext succeedsWith (2, 0, 0)
 
+  val SeqTableLengthAfterRemovals = fragment ("SeqTableLengthAfterRemovals") {
+    """local t = {}
+      |for i = 1, 100 do t[i] = i end
+      |local a = #t
+      |t[100] = nil
+      |t[99] = nil
+      |local b = #t
+      |t[98] = nil
+      |t[97] = nil
+      |t[97] = 97
+      |local c = #t
+      |return a, b, c
+    """
+  }
+  SeqTableLengthAfterRemovals in EmptyContext succeedsWith (100, 98, 97)
+
+  val SeqTableLengthFilledBackwards = fragment ("SeqTableLengthFilledBackwards") {
+    """local t = {}
+      |for i = 10, 2, -1 do t[i] = i end
+      |local a = #t
+      |t[1] = 1
+      |return a, #t
+    """
+  }
+  SeqTableLengthFilledBackwards in EmptyContext succeedsWith (0, 10)
+
   val TableMultiAssign1 = fragment ("TableMultiAssign1") {
     """local t = {}
       |t["hi"], t['there'] = 1, 2
@@ -1429,6 +1494,102 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   }
   NextTraversesEverything in BasicContext succeedsWith (3)
 
+  val NextTraversesArrayAndHashParts = fragment ("NextTraversesArrayAndHashParts") {
+    """local t = {1, 2, 3, x = "x"}
+      |t[5] = 5
+      |t[4] = 4
+      |t[2] = nil
+      |
+      |local count, sum = 0, 0
+      |for k, v in pairs(t) do
+      |  count = count + 1
+      |  if type(k) == "number" then sum = sum + v end
+      |end
+      |
+      |return count, sum
+    """
+  }
+  NextTraversesArrayAndHashParts in BasicContext succeedsWith (5, 13)
+
+  val TableArrayPartGrowsFromHashPart = fragment ("TableArrayPartGrowsFromHashPart") {
+    """local t = {}
+      |for i = 10, 1, -1 do
+      |  t[i] = i
+      |end
+      |t[12] = 12
+      |t[11.0] = 11
+      |return #t, t[1], t[10], t[11], t[12], rawget(t, 12.0)
+    """
+  }
+  TableArrayPartGrowsFromHashPart in BasicContext succeedsWith (12, 1, 10, 11, 12, 12)
+
+  val ClearingArrayPartDuringTraversal = fragment ("ClearingArrayPartDuringTraversal") {
+    """local t = {"a", "b", "c", "d"}
+      |for k in pairs(t) do
+      |  t[k] = nil
+      |end
+      |return next(t), #t
+    """
+  }
+  ClearingArrayPartDuringTraversal in BasicContext succeedsWith (null, 0)
+
+  val ClearingHashPartDuringTraversal = fragment ("ClearingHashPartDuringTraversal") {
+    """local t = {}
+      |for i = 1, 10 do
+      |  t["k" .. i] = i
+      |  t[i * 0.5] = i
+      |end
+      |local count, sum = 0, 0
+      |for k, v in pairs(t) do
+      |  t[k] = nil
+      |  count = count + 1
+      |  sum = sum + v
+      |end
+      |return count, sum, next(t)
+    """
+  }
+  ClearingHashPartDuringTraversal in BasicContext succeedsWith (20, 110, null)
+
+  val ClearingHashPartDuringNextTraversal = fragment ("ClearingHashPartDuringNextTraversal") {
+    """local t = {}
+      |for i = 1, 10 do
+      |  t["k" .. i] = i
+      |  t[i * 0.5] = i
+      |end
+      |local count, sum = 0, 0
+      |local k, v = next(t)
+      |while k ~= nil do
+      |  t[k] = nil
+      |  if k == "k3" then t.k4 = nil end
+      |  count = count + 1
+      |  sum = sum + v
+      |  k, v = next(t, k)
+      |end
+      |return count, sum, next(t)
+    """
+  }
+  ClearingHashPartDuringNextTraversal in BasicContext succeedsWith (19, 106, null)
+
+  val NextAfterClearingLastKey = fragment ("NextAfterClearingLastKey") {
+    """local t = {x = 1}
+      |t.x = nil
+      |return next(t, "x")
+    """
+  }
+  NextAfterClearingLastKey in BasicContext succeedsWith (null)
+
+  val PairsLoopVariablesAreFreshInEveryIteration = fragment ("PairsLoopVariablesAreFreshInEveryIteration") {
+    """local fs = {}
+      |for k, v, x in pairs({"a", "b"}) do
+      |  fs[k] = function() return k, v, x end
+      |end
+      |local k1, v1, x1 = fs[1]()
+      |local k2, v2, x2 = fs[2]()
+      |return k1, v1, x1, k2, v2, x2
+    """
+  }
+  PairsLoopVariablesAreFreshInEveryIteration in BasicContext succeedsWith (1, "a", null, 2, "b", null)
+
   val NextArgMustBeTable = fragment ("NextArgMustBeTable") {
     """next(uu)
     """
@@ -1531,6 +1692,18 @@ object BasicFragments extends FragmentBundle with FragmentExpectations with OneL
   }
   IPairsRespectsIndexMetatable in BasicContext succeedsWith (4, 5, 166, "15243342")
 
+  val IPairsRespectsIndexMetatableSetDuringTraversal = fragment ("IPairsRespectsIndexMetatableSetDuringTraversal") {
+    """local l = {1, 2}
+      |local s = ""
+      |for i, v in ipairs(l) do
+      |  s = s .. i .. v
+      |  setmetatable(l, {__index = function(t, k) if k < 5 then return k * 10 end end})
+      |end
+      |return s
+    """
+  }
+  IPairsRespectsIndexMetatableSetDuringTraversal in BasicContext succeedsWith ("1122330440")
+
   val IPairsWithPairsMetatable = fragment ("IPairsWithPairsMetatable") {
     """local t = {}
       |local mt = { __pairs = function(x) error() end }
@@ -157,4 +157,27 @@ object CoroutineLibFragments extends FragmentBundle with FragmentExpectations  {
   }
   WrappedCoroutineRunning in CoroContext succeedsWith (classOf[Coroutine], false)
 
+  val YieldFromNestedFrames = fragment ("YieldFromNestedFrames") {
+    """local function deep(k, x, ...)
+      |  local a, b = x, select('#', ...)
+      |  if k == 0 then
+      |    return coroutine.yield(x)
+      |  else
+      |    local r = deep(k - 1, x + 1, ...)
+      |    return r .. ":" .. a .. "/" .. b
+      |  end
+      |end
+      |local co = coroutine.wrap(function(...)
+      |  local r
+      |  for i = 1, 3 do
+      |    local ok, v = pcall(deep, i, i * 10, ...)
+      |    if r then r = r .. "," .. v else r = v end
+      |  end
+      |  return r
+      |end)
+      |return co("x", "y"), co("a"), co("b"), co("c")
+    """
+  }
+  YieldFromNestedFrames in CoroContext succeedsWith (11, 22, 33, "a:10/2,b:21/2:20/2,c:32/2:31/2:30/2")
+
 }
@@ -17,6 +17,7 @@
 package net.sandius.rembulan.test.fragments
 
 import net.sandius.rembulan.test.{FragmentBundle, FragmentExpectations, OneLiners}
+import net.sandius.rembulan.LuaRuntimeException
 
 object MetatableFragments extends FragmentBundle with FragmentExpectations with OneLiners {
 
@@ -171,6 +172,86 @@ object MetatableFragments extends FragmentBundle with FragmentExpectations with
   
     }
   
+    val ConcatChainMetamethods = fragment("metamethod __concat in a chain of concatenations") {
+      """t = {}
+        |local mt = {}
+        |mt.__concat = function(a, b)
+        |  local function s(x)
+        |    if type(x) == 'table' then return 'T'
+        |    elseif type(x) == 'number' then return '#'
+        |    else return x end
+        |  end
+        |  return '(' .. s(a) .. ',' .. s(b) .. ')'
+        |end
+        |setmetatable(t, mt)
+        |
+        |return 'a' .. 1 .. t .. 'b' .. 'c' .. 2, t .. t .. 3, 1 .. 2 .. 3 .. 'x'
+      """
+    }
+    ConcatChainMetamethods in thisContext succeedsWith ("a1(T,bc2)", "(T,(T,#))", "123x")
+
+    val MetamethodUpdatesAreSeen = fragment("updates of metamethods in a metatable in use are seen") {
+      """local mt = {}
+        |local t = setmetatable({}, mt)
+        |local r = {}
+        |r[1] = tostring(t.a) .. #t
+        |mt.__index = {a = "x"}
+        |mt.__len = function() return 7 end
+        |r[2] = t.a .. #t
+        |mt.__index = function(_, k) return k .. "!" end
+        |rawset(mt, "__len", nil)
+        |r[3] = t.a .. #t
+        |mt.__index = nil
+        |r[4] = tostring(t.a)
+        |return r[1], r[2], r[3], r[4]
+      """
+    }
+    MetamethodUpdatesAreSeen in thisContext succeedsWith ("nil0", "x7", "a!0", "nil")
+
+    val InheritedLookupsSeeUpdates = fragment("lookups through chains of __index tables see updates") {
+      """local A = {}
+        |A.__index = A
+        |local B = setmetatable({}, A)
+        |B.__index = B
+        |local C = setmetatable({}, B)
+        |C.__index = C
+        |local o = setmetatable({}, C)
+        |local function get() return tostring(o.x) end
+        |local r = {}
+        |A.x = "a"
+        |r[1] = get() .. get()
+        |B.x = "b"
+        |r[2] = get()
+        |o.x = "o"
+        |r[3] = get()
+        |o.x = nil
+        |B.x = nil
+        |r[4] = get()
+        |setmetatable(B, {__index = {x = "m"}})
+        |r[5] = get()
+        |setmetatable(B, nil)
+        |r[6] = get()
+        |return r[1], r[2], r[3], r[4], r[5], r[6]
+      """
+    }
+    InheritedLookupsSeeUpdates in thisContext succeedsWith ("aa", "b", "o", "a", "m", "nil")
+
+    val IndexChainLoop = fragment("loops in chains of __index tables are detected") {
+      """local t = setmetatable({}, {})
+        |getmetatable(t).__index = t
+        |return t.x
+      """
+    }
+    IndexChainLoop in thisContext failsWith (classOf[LuaRuntimeException], "'__index' chain too long; possible loop")
+
+    val NewIndexChainLoop = fragment("loops in chains of __newindex tables are detected") {
+      """local t = setmetatable({}, {})
+        |getmetatable(t).__newindex = t
+        |t.x = 1
+      """
+    }
+    NewIndexChainLoop in thisContext failsWith (classOf[LuaRuntimeException], "'__newindex' chain too long; possible loop")
+
     val binaryBooleanMts = Seq(
       "__lt" -> ("<",  Associative.Left, true),
       "__lt" -> (">",  Associative.Left, false),
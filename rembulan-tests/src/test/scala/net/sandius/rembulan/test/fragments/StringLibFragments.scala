@@ -276,6 +276,42 @@ object StringLibFragments extends FragmentBundle with FragmentExpectations with
 
     }
 
+    // patterns match bytes, and character classes follow the C locale
+    about ("byte patterns") {
+
+      program ("""return string.find("\xe9", "%a")""") succeedsWith (null)
+      program ("""return string.find("\xe9", "%l")""") succeedsWith (null)
+      program ("""return string.find("\xc9", "%u")""") succeedsWith (null)
+      program ("""return string.find("\xe9", "%w")""") succeedsWith (null)
+      program ("""return string.find("\xe9", "%p")""") succeedsWith (null)
+      program ("""return string.find("\xa0\x85", "%s")""") succeedsWith (null)
+      program ("""return string.find("\xe9", "%A")""") succeedsWith (1, 1)
+      program ("""return string.find("a\xe9b", "%a+")""") succeedsWith (1, 1)
+      program ("""return string.find("abc\xe9", "[^%w]")""") succeedsWith (4, 4)
+      program ("""return string.find("\xe9abc", "%f[%a]")""") succeedsWith (2, 1)
+
+      program ("""return string.find("a\x80\xff", "[\x80-\xff]+")""") succeedsWith (2, 3)
+      program ("""return string.find("\x80\xffa", "[\0-\x7f]")""") succeedsWith (3, 3)
+      program ("""return string.find("x\xab..\xbby", "%b\xab\xbb")""") succeedsWith (2, 5)
+
+      program ("""return #string.match("\xc3\xa9", ".")""") succeedsWith (1)
+      program ("""return string.match("\xc3\xa9", "."):byte()""") succeedsWith (195)
+      program ("""return #string.match("\xc3\xa9\xa9\xc3\xa9", "\xc3\xa9+")""") succeedsWith (3)
+
+      program ("""local s, n = string.gsub("\xe9t\xe9", "%a", "x"); return n, s:byte(1, -1)""") succeedsWith (1, 233, 120, 233)
+
+      program ("""return string.find("a\0b", "\0")""") succeedsWith (2, 2)
+      program ("""return string.find("a\0b", "[\0]")""") succeedsWith (2, 2)
+      program ("""return string.find("a\0b", "%c")""") succeedsWith (2, 2)
+      program ("""return string.find("ab\0", "\0$")""") succeedsWith (3, 3)
+      program ("""return string.find("a\0b", "b", 1, true)""") succeedsWith (3, 3)
+      program ("""return string.find("a\0b", "\0b", 1, true)""") succeedsWith (2, 3)
+      program ("""return string.match("a\0b", "a(.)b"):byte()""") succeedsWith (0)
+      program ("""return #string.match("a\0b\0c", "^(.-)\0c")""") succeedsWith (3)
+      program ("""local s, n = string.gsub("a\0b\0c", "\0", "-"); return s, n""") succeedsWith ("a-b-c", 2)
+
+    }
+
     // will need table.unpack and coroutine.wrap for this
     in (FullContext) {
 